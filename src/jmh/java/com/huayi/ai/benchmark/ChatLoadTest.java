@@ -0,0 +1,230 @@
+package com.huayi.ai.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-25 14:00
+ * Description: 阻塞接口在不同执行模式下的并发压测
+ * <p>
+ * 用内置的模拟 Ollama 服务代替真实模型，使每个请求都等待固定的生成时间，从而只比较服务端线程模型的差异：
+ * <pre>
+ * # 1. 启动模拟 Ollama（每个回答 5 秒、50 个 token），保持运行
+ * mvn -Pjmh test-compile exec:exec -Dbench.main=com.huayi.ai.benchmark.ChatLoadTest -Djmh.args="stub=11435 delay=5000 tokens=50"
+ * # 2. 以某种执行模式启动应用，指向模拟服务，并关闭答案缓存和准入控制
+ * java -jar target/ai-*.jar --spring.ai.ollama.base-url=http://127.0.0.1:11435 --rag.execution.mode=virtual --rag.answer-cache.enabled=false --rag.admission.enabled=false
+ * # 3. 发起压测，分别对 platform / virtual / reactive 三种模式各运行一次
+ * mvn -Pjmh test-compile exec:exec -Dbench.main=com.huayi.ai.benchmark.ChatLoadTest -Djmh.args="url=http://127.0.0.1:8089/chat concurrency=2000 requests=10000 label=virtual"
+ * </pre>
+ * 输出吞吐量、延迟分位数和按状态码统计的失败数。platform 模式的并发上限约为 Undertow 工作线程数，
+ * 超出的请求在队列中等待，延迟随并发数线性增长。
+ * <p>
+ * 压测时应同时关闭准入控制（--rag.admission.enabled=false），否则三种模式的并发都被 Ollama 并发上限限制，测不出差异。
+ * 一次实测结果记录在 ReadMe 中。
+ */
+public class ChatLoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parse(args);
+        HttpServer stub = null;
+        if (params.containsKey("stub")) {
+            stub = startStub(Integer.parseInt(params.get("stub")),
+                    Long.parseLong(params.getOrDefault("delay", "5000")),
+                    Integer.parseInt(params.getOrDefault("tokens", "50")),
+                    Integer.parseInt(params.getOrDefault("dims", "768")));
+        }
+        if (!params.containsKey("url")) {
+            if (stub != null) {
+                System.out.println("模拟 Ollama 已启动，按 Ctrl+C 结束");
+                Thread.currentThread().join();
+            }
+            return;
+        }
+        try {
+            run(URI.create(params.get("url")),
+                    Integer.parseInt(params.getOrDefault("concurrency", "1000")),
+                    Integer.parseInt(params.getOrDefault("requests", "5000")),
+                    Duration.ofSeconds(Long.parseLong(params.getOrDefault("timeout", "300"))),
+                    params.getOrDefault("label", "-"));
+        } finally {
+            if (stub != null) {
+                stub.stop(0);
+            }
+        }
+    }
+
+    private static void run(URI url, int concurrency, int requests, Duration timeout, String label) throws InterruptedException {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(8);
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(clientExecutor)
+                .build();
+        Semaphore permits = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        long[] latencies = new long[requests];
+        AtomicInteger succeeded = new AtomicInteger();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        AtomicLong maxInFlight = new AtomicLong();
+        AtomicLong inFlight = new AtomicLong();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            HttpRequest request = HttpRequest.newBuilder(url)
+                    .timeout(timeout)
+                    .header("Content-Type", "text/plain;charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofString("压测问题 " + i))
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (e != null) {
+                    failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new AtomicInteger()).incrementAndGet();
+                } else if (response.statusCode() == 200) {
+                    succeeded.incrementAndGet();
+                } else {
+                    failures.computeIfAbsent("HTTP " + response.statusCode(), k -> new AtomicInteger()).incrementAndGet();
+                }
+                inFlight.decrementAndGet();
+                permits.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clientExecutor.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %-8s %-8s %-10s %-10s %-10s %-10s %-10s %-10s%n",
+                "mode", "conc", "ok", "req/s", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)", "inflight");
+        System.out.printf("%-10s %-8d %-8d %-10.1f %-10.0f %-10.0f %-10.0f %-10.0f %-10d%n",
+                label, concurrency, succeeded.get(), requests / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1e6, maxInFlight.get());
+        if (!failures.isEmpty()) {
+            System.out.println("失败：" + new TreeMap<>(failures));
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * 模拟 Ollama 的 /api/chat（同步与流式）和 /api/embed 接口
+     */
+    private static HttpServer startStub(int port, long delayMillis, int tokens, int dims) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 4096);
+        // 每个请求都要等待 delay，用线程数不受限的执行器，避免模拟服务成为瓶颈
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/chat", exchange -> {
+            try (exchange) {
+                JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+                String model = request.path("model").asText("stub");
+                if (request.path("stream").asBoolean(false)) {
+                    exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    for (int i = 0; i < tokens; i++) {
+                        sleep(delayMillis / tokens);
+                        writeLine(out, chatChunk(model, "字", false, 0));
+                    }
+                    writeLine(out, chatChunk(model, "", true, tokens));
+                } else {
+                    sleep(delayMillis);
+                    send(exchange, chatChunk(model, "字".repeat(tokens), true, tokens));
+                }
+            }
+        });
+        server.createContext("/api/embed", exchange -> {
+            try (exchange) {
+                JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+                int inputs = request.path("input").isArray() ? request.path("input").size() : 1;
+                float[] vector = new float[dims];
+                Arrays.fill(vector, (float) (1 / Math.sqrt(dims)));
+                Map<String, Object> response = new HashMap<>();
+                response.put("model", request.path("model").asText("stub"));
+                response.put("embeddings", Collections.nCopies(inputs, vector));
+                send(exchange, response);
+            }
+        });
+        server.start();
+        System.out.printf("模拟 Ollama 监听 %d 端口，每个回答 %d ms、%d 个 token%n", port, delayMillis, tokens);
+        return server;
+    }
+
+    private static Map<String, Object> chatChunk(String model, String content, boolean done, int evalCount) {
+        Map<String, Object> chunk = new HashMap<>();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        chunk.put("message", Map.of("role", "assistant", "content", content));
+        chunk.put("done", done);
+        if (done) {
+            chunk.put("done_reason", "stop");
+            chunk.put("prompt_eval_count", 16);
+            chunk.put("eval_count", evalCount);
+        }
+        return chunk;
+    }
+
+    private static void send(HttpExchange exchange, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void writeLine(OutputStream out, Object body) throws IOException {
+        out.write(MAPPER.writeValueAsBytes(body));
+        out.write('\n');
+        out.flush();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+}
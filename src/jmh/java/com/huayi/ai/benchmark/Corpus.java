@@ -0,0 +1,74 @@
+package com.huayi.ai.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-05 11:02
+ * Description: 基准测试使用的样例语料
+ * <p>
+ * 语料随基准测试一同打包在 classpath:/corpus 下，通过重复拼接生成指定大小的文本，不依赖任何外部服务。
+ */
+public final class Corpus {
+
+    private Corpus() {
+    }
+
+    /**
+     * 读取原始语料
+     *
+     * @param lang zh 或 en
+     */
+    public static String base(String lang) {
+        String path = "/corpus/" + lang + ".txt";
+        try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("语料不存在：" + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 生成 UTF-8 编码后约为指定大小的文本
+     *
+     * @param lang      zh 或 en
+     * @param kilobytes 目标大小（KB）
+     */
+    public static String text(String lang, int kilobytes) {
+        String base = base(lang);
+        int target = kilobytes * 1024;
+        int baseBytes = base.getBytes(StandardCharsets.UTF_8).length;
+        StringBuilder builder = new StringBuilder(target);
+        int bytes = 0;
+        while (bytes + baseBytes <= target) {
+            builder.append(base);
+            bytes += baseBytes;
+        }
+        // 剩余部分按字符比例截取，保证总大小接近目标值
+        int remaining = target - bytes;
+        if (remaining > 0) {
+            int chars = (int) ((long) base.length() * remaining / baseBytes);
+            builder.append(base, 0, chars);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 将文本切分为固定字符数的片段，模拟切分后的文档块
+     */
+    public static List<String> chunks(String text, int chunkChars) {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += chunkChars) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + chunkChars)));
+        }
+        return chunks;
+    }
+}
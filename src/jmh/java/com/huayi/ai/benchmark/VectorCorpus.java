@@ -0,0 +1,141 @@
+package com.huayi.ai.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-13 14:20
+ * Description: 基准测试使用的本地生成向量语料
+ * <p>
+ * 向量围绕若干随机中心点按高斯分布生成并归一化，模拟文本向量的聚簇分布；同一个随机种子生成的语料完全相同。
+ * 精确的 top-K 通过暴力计算余弦相似度得到，用于计算近似检索的召回率。
+ */
+public final class VectorCorpus {
+
+    private final float[][] vectors;
+
+    private final int dims;
+
+    private VectorCorpus(float[][] vectors, int dims) {
+        this.vectors = vectors;
+        this.dims = dims;
+    }
+
+    /**
+     * 生成语料
+     *
+     * @param size     向量数量
+     * @param dims     向量维度
+     * @param clusters 聚簇数量
+     * @param seed     随机种子
+     */
+    public static VectorCorpus generate(int size, int dims, int clusters, long seed) {
+        Random random = new Random(seed);
+        float[][] centroids = new float[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            centroids[c] = gaussian(random, dims, 1f);
+        }
+        float[][] vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            float[] noise = gaussian(random, dims, 0.6f);
+            float[] centroid = centroids[random.nextInt(clusters)];
+            for (int d = 0; d < dims; d++) {
+                noise[d] += centroid[d];
+            }
+            vectors[i] = normalize(noise);
+        }
+        return new VectorCorpus(vectors, dims);
+    }
+
+    /**
+     * 生成与语料同分布的查询向量
+     */
+    public float[][] queries(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] queries = new float[count][];
+        for (int i = 0; i < count; i++) {
+            float[] base = vectors[random.nextInt(vectors.length)];
+            float[] noise = gaussian(random, dims, 0.3f / (float) Math.sqrt(dims));
+            for (int d = 0; d < dims; d++) {
+                noise[d] += base[d];
+            }
+            queries[i] = normalize(noise);
+        }
+        return queries;
+    }
+
+    public float[][] vectors() {
+        return vectors;
+    }
+
+    public int dims() {
+        return dims;
+    }
+
+    public int size() {
+        return vectors.length;
+    }
+
+    /**
+     * 暴力计算余弦相似度最高的 k 个向量下标（向量已归一化，点积即余弦相似度）
+     */
+    public int[] exactTopK(float[] query, int k) {
+        int[] ids = new int[k];
+        float[] scores = new float[k];
+        Arrays.fill(scores, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < vectors.length; i++) {
+            float score = dot(query, vectors[i]);
+            if (score <= scores[k - 1]) {
+                continue;
+            }
+            int pos = k - 1;
+            while (pos > 0 && scores[pos - 1] < score) {
+                scores[pos] = scores[pos - 1];
+                ids[pos] = ids[pos - 1];
+                pos--;
+            }
+            scores[pos] = score;
+            ids[pos] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * 召回率：近似结果中命中精确 top-K 的比例
+     */
+    public static double recall(int[] exact, List<Integer> found) {
+        int hits = 0;
+        for (int id : exact) {
+            if (found.contains(id)) {
+                hits++;
+            }
+        }
+        return (double) hits / exact.length;
+    }
+
+    public static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] gaussian(Random random, int dims, float scale) {
+        float[] vector = new float[dims];
+        for (int d = 0; d < dims; d++) {
+            vector[d] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] /= norm;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,121 @@
+package com.huayi.ai.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-05 15:30
+ * Description: 会话记忆读写基准测试
+ * <p>
+ * 单线程用例测量 add/get 的基本开销；readWrite 分组用 3 个读线程和 1 个写线程同时访问，
+ * conversations 为 1 时所有线程竞争同一个会话，用于观察锁竞争对吞吐量的影响。
+ * 单线程用例使用 Benchmark 范围的状态，readWrite 分组使用 Group 范围的状态，组内线程共享同一个会话记忆。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MychatMemoryBenchmark {
+
+    private static final Message USER = new UserMessage("VPN 客户端提示错误代码 E1024 应该怎么处理？");
+
+    private static final Message ASSISTANT = new AssistantMessage("E1024 表示客户端与网关协商失败，请升级到最新版本客户端后重试。");
+
+    /**
+     * 两种状态共用的参数和初始化，子类决定共享范围
+     */
+    @State(Scope.Benchmark)
+    public abstract static class MemoryState {
+
+        @Param({"1", "64"})
+        public int conversations;
+
+        /**
+         * 与 ChatService.streamChat 中每轮读取的条数一致
+         */
+        @Param({"100"})
+        public int lastN;
+
+        MychatMemory memory;
+
+        /**
+         * 每轮迭代重建记忆，保证每轮从相同的初始状态开始
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            memory = new MychatMemory(new ChatMemoryProperties(), new SimpleMeterRegistry());
+            for (int c = 0; c < conversations; c++) {
+                for (int i = 0; i < lastN; i++) {
+                    memory.add(String.valueOf(c), i % 2 == 0 ? USER : ASSISTANT);
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            memory.shutdown();
+        }
+
+        String conversationId() {
+            return String.valueOf(ThreadLocalRandom.current().nextInt(conversations));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SingleState extends MemoryState {
+    }
+
+    @State(Scope.Group)
+    public static class GroupState extends MemoryState {
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add(SingleState state) {
+        state.memory.add(state.conversationId(), List.of(USER, ASSISTANT));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<Message> get(SingleState state) {
+        return state.memory.get(state.conversationId(), state.lastN);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public List<Message> concurrentGet(GroupState state) {
+        return state.memory.get(state.conversationId(), state.lastN);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void concurrentAdd(GroupState state) {
+        state.memory.add(state.conversationId(), List.of(USER, ASSISTANT));
+    }
+}
@@ -0,0 +1,51 @@
+package com.huayi.ai.ingestion.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-05 14:40
+ * Description: 检索时关键词过滤条件构建的基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordFilterBenchmark {
+
+    @Param({"1", "3", "5"})
+    private int keywordCount;
+
+    private List<String> keywords;
+
+    @Setup
+    public void setUp() {
+        keywords = new ArrayList<>();
+        String[] samples = {"防火墙", "口令", "VPN", "证书", "备份"};
+        for (int i = 0; i < keywordCount; i++) {
+            keywords.add(samples[i]);
+        }
+    }
+
+    @Benchmark
+    public Filter.Expression buildKeywordFilter() {
+        return IngestionService.buildKeywordFilter(keywords);
+    }
+}
@@ -0,0 +1,264 @@
+package com.huayi.ai.ingestion.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.RerankProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-27 14:00
+ * Description: 检索重排的离线评估：对比重排前后的 recall@k，并统计重排耗时
+ * <p>
+ * 评估集为 JSONL，每行一个问题，relevant 为相关文档块的编号或答案所在的原文片段（文档块包含该片段即视为相关）：
+ * <pre>
+ * {"question": "防火墙的默认策略是什么", "relevant": ["默认拒绝所有入站连接"]}
+ * </pre>
+ * 行内带有 candidates（id、text、score、doc_keyword）时直接使用，不需要任何外部服务；
+ * 否则通过 Ollama 向量化问题后从 Elasticsearch 做 kNN 检索取回候选，可用 save 保存，之后离线重复评估：
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Dbench.main=com.huayi.ai.ingestion.service.RerankEvaluation \
+ *     -Djmh.args="data=eval.jsonl es=http://127.0.0.1:9200 ollama=http://127.0.0.1:11434 save=eval-candidates.jsonl"
+ * mvn -Pjmh test-compile exec:exec -Dbench.main=com.huayi.ai.ingestion.service.RerankEvaluation \
+ *     -Djmh.args="data=eval-candidates.jsonl k=1,2,4,8 rounds=5"
+ * </pre>
+ * 第一轮重排包含文档块分词，之后各轮命中分词缓存，分别输出两者的耗时分位数。
+ */
+public class RerankEvaluation {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parse(args);
+        if (!params.containsKey("data")) {
+            System.out.println("缺少参数 data=评估集.jsonl");
+            return;
+        }
+        int[] ks = Arrays.stream(params.getOrDefault("k", "1,2,4,8").split(",")).mapToInt(Integer::parseInt).toArray();
+        int rounds = Math.max(1, Integer.parseInt(params.getOrDefault("rounds", "5")));
+        RerankProperties properties = new RerankProperties();
+        properties.setCandidates(Integer.parseInt(params.getOrDefault("candidates", "50")));
+        if (params.containsKey("weights")) {
+            // 检索得分、BM25、关键词重合三项权重，如 weights=0.4,0.4,0.2
+            String[] weights = params.get("weights").split(",");
+            properties.setRetrievalWeight(Double.parseDouble(weights[0]));
+            properties.setBm25Weight(Double.parseDouble(weights[1]));
+            properties.setKeywordWeight(Double.parseDouble(weights[2]));
+        }
+
+        List<Sample> samples = load(Path.of(params.get("data")), params, properties.getCandidates());
+        if (params.containsKey("save")) {
+            save(samples, Path.of(params.get("save")));
+        }
+        int maxK = Arrays.stream(ks).max().orElse(4);
+        double[] baseline = new double[ks.length];
+        double[] reranked = new double[ks.length];
+        double candidateRecall = 0;
+        long[] cold = new long[samples.size()];
+        long[] warm = new long[samples.size() * Math.max(1, rounds - 1)];
+        int warmCount = 0;
+        LexicalReranker reranker = new LexicalReranker(properties, new RagMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP));
+        for (int round = 0; round < rounds; round++) {
+            for (int s = 0; s < samples.size(); s++) {
+                Sample sample = samples.get(s);
+                List<Document> candidates = sample.documents();
+                long start = System.nanoTime();
+                List<Document> result = reranker.rerank(sample.question, candidates, Math.min(maxK, candidates.size()));
+                long elapsed = System.nanoTime() - start;
+                if (round == 0) {
+                    cold[s] = elapsed;
+                    for (int i = 0; i < ks.length; i++) {
+                        baseline[i] += recall(sample.relevant, candidates, ks[i]);
+                        reranked[i] += recall(sample.relevant, result, ks[i]);
+                    }
+                    candidateRecall += recall(sample.relevant, candidates, candidates.size());
+                } else {
+                    warm[warmCount++] = elapsed;
+                }
+            }
+        }
+
+        int n = samples.size();
+        System.out.printf("问题数：%d，候选数：%d%n", n, properties.getCandidates());
+        System.out.printf("%-8s %-12s %-12s%n", "k", "vector", "reranked");
+        for (int i = 0; i < ks.length; i++) {
+            System.out.printf("%-8d %-12.3f %-12.3f%n", ks[i], baseline[i] / n, reranked[i] / n);
+        }
+        System.out.printf("候选集召回（上限）：%.3f%n", candidateRecall / n);
+        Arrays.sort(cold);
+        System.out.printf("重排耗时（首轮，含分词） p50 %.2f ms，p99 %.2f ms，max %.2f ms%n",
+                percentile(cold, n, 0.50), percentile(cold, n, 0.99), cold[n - 1] / 1e6);
+        if (warmCount > 0) {
+            Arrays.sort(warm, 0, warmCount);
+            System.out.printf("重排耗时（分词已缓存） p50 %.2f ms，p99 %.2f ms，max %.2f ms%n",
+                    percentile(warm, warmCount, 0.50), percentile(warm, warmCount, 0.99), warm[warmCount - 1] / 1e6);
+        }
+    }
+
+    /**
+     * 前 k 个结果覆盖的相关项比例
+     */
+    private static double recall(List<String> relevant, List<Document> ranked, int k) {
+        if (relevant.isEmpty()) {
+            return 0;
+        }
+        int found = 0;
+        for (String target : relevant) {
+            for (int i = 0; i < Math.min(k, ranked.size()); i++) {
+                Document document = ranked.get(i);
+                if (target.equals(document.getId()) || (document.getText() != null && document.getText().contains(target))) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        return (double) found / relevant.size();
+    }
+
+    private static double percentile(long[] sorted, int size, double p) {
+        return sorted[Math.min(size - 1, Math.max(0, (int) Math.ceil(p * size) - 1))] / 1e6;
+    }
+
+    private static List<Sample> load(Path data, Map<String, String> params, int candidates) throws IOException, InterruptedException {
+        HttpClient client = null;
+        List<Sample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(data, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = MAPPER.readTree(line);
+            List<String> relevant = new ArrayList<>();
+            node.path("relevant").forEach(value -> relevant.add(value.asText()));
+            Sample sample = new Sample(node.path("question").asText(), relevant, new ArrayList<>());
+            if (node.has("candidates")) {
+                node.path("candidates").forEach(sample.candidates::add);
+            } else {
+                if (client == null) {
+                    client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+                }
+                fetchCandidates(client, params, sample, candidates);
+            }
+            samples.add(sample);
+        }
+        return samples;
+    }
+
+    /**
+     * 通过 Ollama 向量化问题，再从 Elasticsearch 做 kNN 检索取回候选
+     */
+    private static void fetchCandidates(HttpClient client, Map<String, String> params, Sample sample, int candidates)
+            throws IOException, InterruptedException {
+        String ollama = params.getOrDefault("ollama", "http://127.0.0.1:11434");
+        String es = params.getOrDefault("es", "http://127.0.0.1:9200");
+        String index = params.getOrDefault("index", "my-ai-document-index");
+        ObjectNode embed = MAPPER.createObjectNode()
+                .put("model", params.getOrDefault("model", "nomic-embed-text:latest"))
+                .put("input", sample.question);
+        JsonNode vector = post(client, ollama + "/api/embed", embed).path("embeddings").path(0);
+
+        ObjectNode search = MAPPER.createObjectNode().put("size", candidates);
+        search.putObject("knn")
+                .put("field", IngestionService.vectorField)
+                .put("k", candidates)
+                .put("num_candidates", Math.max(candidates * 2, 100))
+                .set("query_vector", vector);
+        search.putObject("_source").putArray("excludes").add(IngestionService.vectorField);
+        for (JsonNode hit : post(client, es + "/" + index + "/_search", search).path("hits").path("hits")) {
+            ObjectNode candidate = MAPPER.createObjectNode()
+                    .put("id", hit.path("_id").asText())
+                    .put("text", hit.path("_source").path(IngestionService.textField).asText())
+                    .put("score", hit.path("_score").asDouble());
+            candidate.set(IngestionService.DOC_KEYWORD,
+                    hit.path("_source").path("metadata").path(IngestionService.DOC_KEYWORD));
+            sample.candidates.add(candidate);
+        }
+    }
+
+    private static JsonNode post(HttpClient client, String url, JsonNode body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMinutes(1))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)))
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(url + " 返回 " + response.statusCode() + "：" + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return MAPPER.readTree(response.body());
+    }
+
+    private static void save(List<Sample> samples, Path target) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (Sample sample : samples) {
+                ObjectNode node = MAPPER.createObjectNode().put("question", sample.question);
+                ArrayNode relevant = node.putArray("relevant");
+                sample.relevant.forEach(relevant::add);
+                node.putArray("candidates").addAll(sample.candidates);
+                writer.write(MAPPER.writeValueAsString(node));
+                writer.newLine();
+            }
+        }
+        System.out.printf("候选已保存到 %s%n", target);
+    }
+
+    private record Sample(String question, List<String> relevant, List<JsonNode> candidates) {
+
+        /**
+         * 每次重排都使用新的 Document，避免上一轮写入的 rerank_score 影响结果
+         */
+        List<Document> documents() {
+            List<Document> documents = new ArrayList<>(candidates.size());
+            for (JsonNode candidate : candidates) {
+                Map<String, Object> metadata = new HashMap<>();
+                JsonNode keywords = candidate.path(IngestionService.DOC_KEYWORD);
+                if (keywords.isArray()) {
+                    List<String> values = new ArrayList<>();
+                    keywords.forEach(keyword -> values.add(keyword.asText()));
+                    metadata.put(IngestionService.DOC_KEYWORD, values);
+                } else if (keywords.isTextual()) {
+                    metadata.put(IngestionService.DOC_KEYWORD, keywords.asText());
+                }
+                String id = candidate.path("id").asText();
+                documents.add(Document.builder()
+                        .id(id.isEmpty() ? Integer.toHexString(candidate.path("text").asText().hashCode()) : id)
+                        .text(candidate.path("text").asText())
+                        .metadata(metadata)
+                        .score(candidate.has("score") ? candidate.path("score").asDouble() : null)
+                        .build());
+            }
+            return documents;
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,77 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.benchmark.Corpus;
+import com.huayi.ai.config.IngestionProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-05 14:10
+ * Description: 文档解析与切分（Tika + TokenTextSplitter）基准测试
+ * <p>
+ * transformDocument 一次性提取全文后切分，streamDocument 由 {@link StreamingDocumentReader} 边解析边切分，
+ * 可加 -prof gc 对比两者每次操作分配的内存。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformDocumentBenchmark {
+
+    @Param({"zh", "en"})
+    private String lang;
+
+    @Param({"16", "256", "1024"})
+    private int sizeKb;
+
+    private byte[] content;
+
+    private StreamingDocumentReader reader;
+
+    @Setup
+    public void setUp() {
+        content = Corpus.text(lang, sizeKb).getBytes(StandardCharsets.UTF_8);
+        reader = new StreamingDocumentReader(new IngestionProperties());
+    }
+
+    @Benchmark
+    public List<Document> transformDocument() {
+        return IngestionService.transformDocument(resource());
+    }
+
+    @Benchmark
+    public List<Document> streamDocument() throws Exception {
+        List<Document> chunks = new ArrayList<>();
+        reader.read(resource(), chunks::add);
+        return chunks;
+    }
+
+    private Resource resource() {
+        return new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return "corpus-" + lang + ".txt";
+            }
+        };
+    }
+}
@@ -0,0 +1,207 @@
+package com.huayi.ai.ingestion.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.huayi.ai.benchmark.VectorCorpus;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-13 14:50
+ * Description: 不同向量索引类型的召回率与检索延迟对比
+ * <p>
+ * 需要本地运行的 Elasticsearch（>= 8.15），不需要 Ollama：向量由 {@link VectorCorpus} 在本地生成，
+ * 每种索引类型各建一个临时索引，写入相同的语料后合并为一个段，再用不同的 num_candidates 检索，
+ * 与暴力计算得到的精确 top-K 对比召回率，并输出延迟分位数、磁盘占用和向量内存估算值。
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Dbench.main=com.huayi.ai.ingestion.service.VectorIndexRecallBenchmark \
+ *     -Djmh.args="es=http://127.0.0.1:9200 docs=20000 dims=768 queries=200 k=10 candidates=20,50,100,200"
+ * </pre>
+ */
+public class VectorIndexRecallBenchmark {
+
+    private static final String INDEX_PREFIX = "vector-index-bench-";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> params = parse(args);
+        String url = params.getOrDefault("es", "http://127.0.0.1:9200");
+        int docs = Integer.parseInt(params.getOrDefault("docs", "20000"));
+        int dims = Integer.parseInt(params.getOrDefault("dims", "768"));
+        int queryCount = Integer.parseInt(params.getOrDefault("queries", "200"));
+        int k = Integer.parseInt(params.getOrDefault("k", "10"));
+        int m = Integer.parseInt(params.getOrDefault("m", "16"));
+        int efConstruction = Integer.parseInt(params.getOrDefault("ef", "100"));
+        int[] candidates = Arrays.stream(params.getOrDefault("candidates", "20,50,100,200").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        String[] types = params.getOrDefault("types", "hnsw,int8_hnsw,int4_hnsw,flat").split(",");
+        boolean keep = Boolean.parseBoolean(params.getOrDefault("keep", "false"));
+
+        System.out.printf("生成语料：%d 个 %d 维向量，%d 个查询%n", docs, dims, queryCount);
+        VectorCorpus corpus = VectorCorpus.generate(docs, dims, 64, 42);
+        float[][] queries = corpus.queries(queryCount, 7);
+        int[][] exact = new int[queryCount][];
+        for (int q = 0; q < queryCount; q++) {
+            exact[q] = corpus.exactTopK(queries[q], k);
+        }
+
+        RestClient restClient = RestClient.builder(HttpHost.create(url)).build();
+        try (RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
+            ElasticsearchClient client = new ElasticsearchClient(transport);
+            System.out.printf("%-10s %-6s %-8s %-10s %-10s %-10s %-12s %-12s%n",
+                    "type", "k", "cand", "recall", "p50(ms)", "p99(ms)", "store(MB)", "vectors(MB)");
+            for (String type : types) {
+                String index = INDEX_PREFIX + type;
+                long load = load(client, index, type, m, efConstruction, corpus);
+                long storeBytes = client.indices().stats(s -> s.index(index)).indices().get(index)
+                        .total().store().sizeInBytes();
+                double vectorMb = estimateVectorBytes(type, docs, dims, m) / 1024.0 / 1024.0;
+                System.out.printf("# %s 写入并合并耗时 %d ms%n", type, load);
+                for (int candidate : candidates) {
+                    if (candidate < k) {
+                        continue;
+                    }
+                    warmUp(client, index, queries, k, candidate);
+                    long[] latencies = new long[queryCount];
+                    double recall = run(client, index, queries, k, candidate, latencies, exact);
+                    Arrays.sort(latencies);
+                    System.out.printf("%-10s %-6d %-8d %-10.4f %-10.2f %-10.2f %-12.1f %-12.1f%n",
+                            type, k, candidate, recall,
+                            latencies[queryCount / 2] / 1e6, latencies[Math.min(queryCount - 1, queryCount * 99 / 100)] / 1e6,
+                            storeBytes / 1024.0 / 1024.0, vectorMb);
+                }
+                if (!keep) {
+                    client.indices().delete(d -> d.index(index));
+                }
+            }
+        }
+    }
+
+    /**
+     * 预热，不统计结果
+     */
+    private static void warmUp(ElasticsearchClient client, String index, float[][] queries, int k,
+                               int candidates) throws IOException {
+        for (int r = 0; r < 3; r++) {
+            for (float[] query : queries) {
+                search(client, index, query, k, candidates);
+            }
+        }
+    }
+
+    private static double run(ElasticsearchClient client, String index, float[][] queries, int k, int candidates,
+                              long[] latencies, int[][] exact) throws IOException {
+        double recall = 0;
+        for (int q = 0; q < queries.length; q++) {
+            long start = System.nanoTime();
+            List<Integer> found = search(client, index, queries[q], k, candidates);
+            latencies[q] = System.nanoTime() - start;
+            recall += VectorCorpus.recall(exact[q], found);
+        }
+        return recall / queries.length;
+    }
+
+    private static List<Integer> search(ElasticsearchClient client, String index, float[] query, int k,
+                                        int candidates) throws IOException {
+        List<Float> vector = toList(query);
+        SearchResponse<Void> response = client.search(s -> s.index(index)
+                .knn(knn -> knn.field(IngestionService.vectorField).queryVector(vector).k(k).numCandidates(candidates))
+                .size(k)
+                .source(src -> src.fetch(false)), Void.class);
+        List<Integer> ids = new ArrayList<>(k);
+        for (Hit<Void> hit : response.hits().hits()) {
+            ids.add(Integer.parseInt(hit.id()));
+        }
+        return ids;
+    }
+
+    /**
+     * 创建索引、批量写入并合并为一个段，返回耗时
+     */
+    private static long load(ElasticsearchClient client, String index, String type, int m, int efConstruction,
+                             VectorCorpus corpus) throws IOException {
+        if (client.indices().exists(e -> e.index(index)).value()) {
+            client.indices().delete(d -> d.index(index));
+        }
+        boolean hnsw = type.endsWith("hnsw");
+        client.indices().create(c -> c.index(index)
+                .settings(s -> s.numberOfShards("1").numberOfReplicas("0").refreshInterval(t -> t.time("-1")))
+                .mappings(mp -> mp.properties(IngestionService.vectorField, Property.of(p -> p.denseVector(d -> d
+                        .index(true).dims(corpus.dims()).similarity("cosine")
+                        .indexOptions(o -> {
+                            o.type(type);
+                            if (hnsw) {
+                                o.m(m).efConstruction(efConstruction);
+                            }
+                            return o;
+                        }))))));
+        long start = System.currentTimeMillis();
+        float[][] vectors = corpus.vectors();
+        for (int from = 0; from < vectors.length; from += 500) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            for (int i = from; i < Math.min(vectors.length, from + 500); i++) {
+                String id = String.valueOf(i);
+                Map<String, Object> source = new HashMap<>();
+                source.put(IngestionService.vectorField, vectors[i]);
+                bulk.operations(op -> op.index(idx -> idx.index(index).id(id).document(source)));
+            }
+            BulkResponse response = client.bulk(bulk.build());
+            if (response.errors()) {
+                throw new IllegalStateException("写入失败：" + response.items().stream()
+                        .filter(item -> item.error() != null).findFirst().map(item -> item.error().reason()).orElse(""));
+            }
+        }
+        client.indices().refresh(r -> r.index(index));
+        client.indices().forcemerge(f -> f.index(index).maxNumSegments(1L));
+        client.indices().refresh(r -> r.index(index));
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 检索时需要常驻页缓存的向量数据估算：量化向量（或原始向量）加上 HNSW 图的邻居表
+     */
+    private static long estimateVectorBytes(String type, int docs, int dims, int m) {
+        long perVector;
+        if (type.startsWith("int8")) {
+            perVector = dims + 4L;
+        } else if (type.startsWith("int4")) {
+            perVector = dims / 2 + 4L;
+        } else {
+            perVector = dims * 4L;
+        }
+        long graph = type.endsWith("hnsw") ? (long) m * 2 * 4 : 0;
+        return docs * (perVector + graph);
+    }
+
+    private static List<Float> toList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+}
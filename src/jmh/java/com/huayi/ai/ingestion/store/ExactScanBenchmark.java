@@ -0,0 +1,126 @@
+package com.huayi.ai.ingestion.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 16:00
+ * Description: 精确 top-K 检索基准测试
+ * <p>
+ * 比较标量与 Vector API 点积、float 与 int8 量化扫描在不同语料规模下的单次查询耗时。
+ * 语料按批次生成后直接写入引擎，不额外保留一份，100 万条 768 维向量 float 与 int8 共约 3.8GB。
+ * <p>
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.args="ExactScanBenchmark -p size=10000,100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xms6g", "-Xmx6g"})
+public class ExactScanBenchmark {
+
+    private static final int DIMS = 768;
+
+    private static final int CLUSTERS = 64;
+
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean quantized;
+
+    /**
+     * scalar 为标量实现，vector 为 Vector API 实现
+     */
+    @Param({"scalar", "vector"})
+    private String scorer;
+
+    /**
+     * 并行扫描的线程数，1 表示单线程
+     */
+    @Param({"1"})
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    private ExactVectorIndex index;
+
+    private float[][] queries;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VectorScorer vectorScorer = "scalar".equals(scorer) ? new ScalarVectorScorer() : VectorScorer.create();
+        pool = new ForkJoinPool(parallelism);
+        index = new ExactVectorIndex(DIMS, quantized, 4, 16384, vectorScorer, pool);
+        index.reserve(size);
+
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, 1f);
+        }
+        List<float[]> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(around(random, centroids[random.nextInt(CLUSTERS)], 0.6f));
+            if (batch.size() == 10000) {
+                index.addAll(batch);
+                batch.clear();
+            }
+        }
+        index.addAll(batch);
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = around(random, centroids[random.nextInt(CLUSTERS)], 0.6f);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ScoredIds search() {
+        float[] query = queries[next++ & (QUERIES - 1)];
+        return index.search(query, 10, null);
+    }
+
+    private static float[] around(Random random, float[] centroid, float sigma) {
+        float[] vector = gaussian(random, sigma);
+        for (int d = 0; d < DIMS; d++) {
+            vector[d] += centroid[d];
+        }
+        return DocumentCodec.normalize(vector, DIMS);
+    }
+
+    private static float[] gaussian(Random random, float sigma) {
+        float[] vector = new float[DIMS];
+        for (int d = 0; d < DIMS; d++) {
+            vector[d] = (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+}
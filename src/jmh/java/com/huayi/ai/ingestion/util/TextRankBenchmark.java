@@ -0,0 +1,79 @@
+package com.huayi.ai.ingestion.util;
+
+import com.huayi.ai.benchmark.Corpus;
+import com.huayi.ai.ingestion.service.KeywordExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-05 11:20
+ * Description: 关键词提取基准测试
+ * <p>
+ * 分别测量完整的 {@link TextRankUtil#textRank(String, int)}（分词 + 计算）、仅 TextRank 计算部分，
+ * 以及 {@link KeywordExtractor} 对一批切分后文本的批量提取。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextRankBenchmark {
+
+    @Param({"zh", "en"})
+    private String lang;
+
+    @Param({"1", "16", "256"})
+    private int sizeKb;
+
+    private String text;
+
+    private List<String> tokens;
+
+    private List<String> chunks;
+
+    private KeywordExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        text = Corpus.text(lang, sizeKb);
+        tokens = TextRankUtil.parseTerms(text, TextRankUtil.newStopRecognition());
+        // 与 TokenTextSplitter 200 token 的分块大小大致相当
+        chunks = Corpus.chunks(text, "zh".equals(lang) ? 300 : 800);
+        extractor = new KeywordExtractor(0, 8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Benchmark
+    public List<String> textRank() {
+        return TextRankUtil.textRank(text, 30);
+    }
+
+    @Benchmark
+    public List<String> rankOnly() {
+        return TextRankEngine.local().rank(tokens, 30);
+    }
+
+    @Benchmark
+    public List<List<String>> extractChunks() {
+        return extractor.extract(chunks, 30);
+    }
+}
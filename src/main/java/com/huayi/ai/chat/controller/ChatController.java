@@ -1,15 +1,28 @@
 package com.huayi.ai.chat.controller;
 
 import com.huayi.ai.chat.domain.ChatResponseDTO;
+import com.huayi.ai.chat.domain.DeltaFrame;
 import com.huayi.ai.chat.service.ChatService;
+import com.huayi.ai.config.DeltaStreamer;
+import com.huayi.ai.config.RequestExecutor;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
 /**
  * Author: YuJian
  * Create: 2025-02-20 16:08
@@ -17,16 +30,37 @@ import reactor.core.publisher.Flux;
  */
 @RestController
 public class ChatController {
+    /**
+     * 请求和响应中携带会话编号的请求头
+     */
+    public static final String CONVERSATION_ID_HEADER = "X-Conversation-Id";
+
+    private static final Pattern CONVERSATION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
     private final ChatService chatService;
 
-    public ChatController(ChatService chatService) {
+    private final DeltaStreamer deltaStreamer;
+
+    private final RequestExecutor requestExecutor;
+
+    public ChatController(ChatService chatService, DeltaStreamer deltaStreamer, RequestExecutor requestExecutor) {
         this.chatService = chatService;
+        this.deltaStreamer = deltaStreamer;
+        this.requestExecutor = requestExecutor;
     }
 
+    /**
+     * 同步对话，执行方式由 rag.execution.mode 决定
+     */
     @PostMapping("/chat")
-    public ResponseEntity<ChatResponseDTO> chat(@RequestBody String query) {
-        ChatResponse response = chatService.chat(query);
+    public CompletableFuture<ResponseEntity<ChatResponseDTO>> chat(@RequestBody String query) {
+        CompletableFuture<ChatResponse> response = requestExecutor.isReactive()
+                ? chatService.chatReactive(query).toFuture()
+                : requestExecutor.submit(() -> chatService.chat(query));
+        return response.thenApply(ChatController::toResponseEntity);
+    }
 
+    private static ResponseEntity<ChatResponseDTO> toResponseEntity(ChatResponse response) {
         if (response == null || response.getResult() == null) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new ChatResponseDTO("网络繁忙"));
@@ -35,8 +69,39 @@ public class ChatController {
         return ResponseEntity.ok(new ChatResponseDTO(answer));
     }
 
+    /**
+     * 流式对话，会话编号通过请求头 X-Conversation-Id 或参数 conversationId 传入；
+     * 未传入时生成新的会话编号，并通过响应头返回给调用方用于后续请求
+     */
     @PostMapping("/streamChat")
-    public Flux<ChatResponse> streamChat(@RequestBody String query) {
-        return chatService.streamChat(query);
+    public Flux<ChatResponse> streamChat(@RequestBody String query,
+                                         @RequestHeader(value = CONVERSATION_ID_HEADER, required = false) String headerId,
+                                         @RequestParam(value = "conversationId", required = false) String paramId,
+                                         HttpServletResponse response) {
+        return chatService.streamChat(resolveConversationId(headerId, paramId, response), query);
+    }
+
+    /**
+     * SSE 模式的流式对话，请求头 Accept: text/event-stream 时使用。
+     * 每帧只包含新增文本 {"t":"..."}，结束时发送 done 事件；客户端断开后停止生成
+     */
+    @PostMapping(value = "/streamChat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DeltaFrame>> streamChatEvents(@RequestBody String query,
+                                                              @RequestHeader(value = CONVERSATION_ID_HEADER, required = false) String headerId,
+                                                              @RequestParam(value = "conversationId", required = false) String paramId,
+                                                              HttpServletResponse response) {
+        String conversationId = resolveConversationId(headerId, paramId, response);
+        return deltaStreamer.stream("streamChat", chatService.streamChatText(conversationId, query));
+    }
+
+    private static String resolveConversationId(String headerId, String paramId, HttpServletResponse response) {
+        String conversationId = headerId != null ? headerId : paramId;
+        if (conversationId == null || conversationId.isBlank()) {
+            conversationId = UUID.randomUUID().toString();
+        } else if (!CONVERSATION_ID.matcher(conversationId).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "会话编号只能包含字母、数字、下划线和短横线，长度不超过 64");
+        }
+        response.setHeader(CONVERSATION_ID_HEADER, conversationId);
+        return conversationId;
     }
 }
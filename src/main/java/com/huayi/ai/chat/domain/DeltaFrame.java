@@ -0,0 +1,11 @@
+package com.huayi.ai.chat.domain;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-24 09:10
+ * Description: SSE 增量帧，只包含本帧新增的文本
+ * <p>
+ * 文本放在 JSON 中发送，避免 SSE 的 data 字段吞掉开头的空格以及换行被拆成多行。
+ */
+public record DeltaFrame(String t) {
+}
@@ -1,14 +1,25 @@
 package com.huayi.ai.chat.service;
 
+import com.huayi.ai.config.AdmissionLimiter;
+import com.huayi.ai.config.ChatMemoryProperties;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.SemanticAnswerCache;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
-import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 
 /**
@@ -20,23 +31,100 @@ import reactor.core.publisher.Flux;
 public class ChatService {
 
     @Resource
-    private OllamaChatModel chatModel;
+    private ChatModel chatModel;
 
     @Resource
     private ChatClient myChatClient;
 
+    @Resource
+    private SemanticAnswerCache answerCache;
+
+    @Resource
+    private ChatMemoryProperties chatMemoryProperties;
+
+    @Resource
+    private RagMetrics ragMetrics;
+
+    @Resource
+    private AdmissionLimiter admissionLimiter;
+
     public ChatResponse chat(String query) {
-        return chatModel.call(new Prompt(query));
+        if (!answerCache.isEnabled()) {
+            return ragMetrics.observeCall(RagMetrics.CHAT, () -> chatModel.call(new Prompt(query)));
+        }
+        float[] queryVector = ragMetrics.observe(RagMetrics.CHAT, "query_embedding", () -> answerCache.embed(query));
+        Optional<String> cached = ragMetrics.observe(RagMetrics.CHAT, "cache_lookup",
+                () -> answerCache.lookup(SemanticAnswerCache.NAMESPACE_CHAT, queryVector));
+        if (cached.isPresent()) {
+            return toResponse(cached.get());
+        }
+        ChatResponse response = ragMetrics.observeCall(RagMetrics.CHAT, () -> chatModel.call(new Prompt(query)));
+        if (response != null && response.getResult() != null) {
+            answerCache.put(SemanticAnswerCache.NAMESPACE_CHAT, queryVector,
+                    response.getResult().getOutput().getText(), List.of());
+        }
+        return response;
     }
 
-    public Flux<ChatResponse> streamChat(String query) {
-        return myChatClient.prompt()
+    /**
+     * 非阻塞对话：通过 Ollama 的流式接口生成并拼接完整回答，等待生成期间不占用线程；
+     * 问题向量化仍是同步请求，交给 boundedElastic 线程执行
+     */
+    public Mono<ChatResponse> chatReactive(String query) {
+        Mono<ChatResponse> generate = ragMetrics.observeStream(RagMetrics.CHAT, chatModel.stream(new Prompt(query)))
+                .mapNotNull(ChatService::textOf)
+                .collect(Collectors.joining())
+                .map(ChatService::toResponse);
+        if (!answerCache.isEnabled()) {
+            return generate;
+        }
+        return Mono.fromCallable(() -> ragMetrics.observe(RagMetrics.CHAT, "query_embedding", () -> answerCache.embed(query)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(queryVector -> {
+                    Optional<String> cached = ragMetrics.observe(RagMetrics.CHAT, "cache_lookup",
+                            () -> answerCache.lookup(SemanticAnswerCache.NAMESPACE_CHAT, queryVector));
+                    if (cached.isPresent()) {
+                        return Mono.just(toResponse(cached.get()));
+                    }
+                    return generate.doOnNext(response -> answerCache.put(SemanticAnswerCache.NAMESPACE_CHAT, queryVector,
+                            response.getResult().getOutput().getText(), List.of()));
+                });
+    }
+
+    /**
+     * 流式对话
+     *
+     * @param conversationId 会话唯一标识，由调用方提供，不同用户的对话互不影响
+     */
+    public Flux<ChatResponse> streamChat(String conversationId, String query) {
+        // 响应开始写出后无法再返回 429，排队已满时在返回流之前拒绝
+        admissionLimiter.ensureCapacity(AdmissionLimiter.Priority.INTERACTIVE);
+        // 会话历史的读取与拼接在 PromptChatMemoryAdvisor 中完成，耗时记录在 spring.ai.advisor 指标中
+        return ragMetrics.observeStream(RagMetrics.CHAT, myChatClient.prompt()
                 .user(query)
                 .advisors(adv -> adv
-                        // 设置检索的上下文记录条数
-                        .param(AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100)
+                        // 读取的历史条数上限，实际放入提示词的历史由 token 预算决定
+                        .param(AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY, chatMemoryProperties.getCapacity())
                         // 指定会话唯一标识，用于区分不同的用户对话
-                        .param(AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY, 1))
-                .stream().chatResponse();
+                        .param(AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY, conversationId))
+                .stream().chatResponse());
+    }
+
+    /**
+     * 流式对话，只返回每个片段新增的文本
+     */
+    public Flux<String> streamChatText(String conversationId, String query) {
+        return streamChat(conversationId, query).mapNotNull(ChatService::textOf);
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    private static ChatResponse toResponse(String answer) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
     }
 }
@@ -0,0 +1,74 @@
+package com.huayi.ai.chat.util;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-20 10:00
+ * Description: 提示词 token 数估算
+ * <p>
+ * 不依赖具体模型的分词器：中日韩字符按每字 1 个 token，其余非空白字符按每 4 个 1 个 token，
+ * 每条消息另加 4 个 token 的角色与分隔开销。用于上下文窗口预算，误差在可接受范围内即可。
+ */
+public final class TokenEstimator {
+
+    /**
+     * 每条消息的角色与分隔符开销
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的 token 数
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                cjk++;
+            } else if (!Character.isWhitespace(codePoint)) {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 估算单条消息的 token 数
+     */
+    public static int estimate(Message message) {
+        return MESSAGE_OVERHEAD + estimate(message.getText());
+    }
+
+    /**
+     * 估算多条消息的 token 数
+     */
+    public static int estimate(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += estimate(message);
+        }
+        return total;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL
+                // 全角标点
+                || (codePoint >= 0x3000 && codePoint <= 0x303f)
+                || (codePoint >= 0xff00 && codePoint <= 0xffef);
+    }
+}
@@ -0,0 +1,23 @@
+package com.huayi.ai.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 11:10
+ * Description: 准入控制拒绝的请求统一返回 HTTP 429，Retry-After 为建议的重试秒数
+ */
+@RestControllerAdvice
+public class AdmissionExceptionHandler {
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<String> handleRejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body("服务繁忙，请在 " + e.getRetryAfter().toSeconds() + " 秒后重试");
+    }
+}
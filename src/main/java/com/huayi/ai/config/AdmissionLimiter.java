@@ -0,0 +1,440 @@
+package com.huayi.ai.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 09:40
+ * Description: Ollama 调用的自适应并发限制与优先级排队
+ * <p>
+ * 并发上限按梯度算法调整：每类调用（同步对话、流式对话首字、单条文本向量化）分别维护长期平均延迟，
+ * 新样本的梯度为 tolerance × 长期延迟 / 本次延迟，限制在 [0.5, 1]，新上限 = 上限 × 梯度 + √上限，
+ * 再与当前上限按 smoothing 加权平均。延迟稳定时上限逐步增加，Ollama 内部开始排队、延迟上升时上限随之下降；
+ * 调用失败或超时时上限乘以 backoffRatio。
+ * <p>
+ * 达到上限后请求按优先级进入各自的队列，释放许可时先唤醒高优先级的请求；队列满时立即拒绝，
+ * 排队超过 maxWait 时也会被拒绝，两种情况都抛出 {@link AdmissionRejectedException}。
+ */
+public class AdmissionLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionLimiter.class);
+
+    /**
+     * 优先级从高到低
+     */
+    public enum Priority {
+        INTERACTIVE, BACKGROUND, BULK
+    }
+
+    /**
+     * 调用方通过 {@link #callAs(Priority, Supplier)} 指定的优先级
+     */
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final AdmissionProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Priority, ArrayDeque<Waiter>> queues = new EnumMap<>(Priority.class);
+
+    /**
+     * 每类调用的长期平均延迟（纳秒），只在持有 lock 时访问
+     */
+    private final Map<String, Double> longLatency = new HashMap<>();
+
+    private volatile double limit;
+
+    private volatile int inFlight;
+
+    private final ScheduledExecutorService timer;
+
+    private final Map<Priority, Counter> queueFull = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> timeouts = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+
+    public AdmissionLimiter(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.limit = clamp(properties.getInitialLimit());
+        for (Priority priority : Priority.values()) {
+            ArrayDeque<Waiter> queue = new ArrayDeque<>();
+            queues.put(priority, queue);
+            String tag = priority.name().toLowerCase();
+            Gauge.builder("rag.admission.queue", this, limiter -> limiter.queueSize(priority))
+                    .description("排队等待 Ollama 的请求数").tag("priority", tag).register(meterRegistry);
+            queueFull.put(priority, Counter.builder("rag.admission.rejected")
+                    .tag("priority", tag).tag("reason", "queue_full").register(meterRegistry));
+            timeouts.put(priority, Counter.builder("rag.admission.rejected")
+                    .tag("priority", tag).tag("reason", "timeout").register(meterRegistry));
+            waitTimers.put(priority, Timer.builder("rag.admission.wait")
+                    .description("获得许可前的排队时间").tag("priority", tag).register(meterRegistry));
+        }
+        Gauge.builder("rag.admission.limit", this, limiter -> limiter.limit)
+                .description("当前的并发上限").register(meterRegistry);
+        Gauge.builder("rag.admission.inflight", this, limiter -> limiter.inFlight)
+                .description("正在执行的 Ollama 调用数").register(meterRegistry);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 以指定的优先级执行，期间当前线程发起的 Ollama 调用使用该优先级
+     */
+    public static <T> T callAs(Priority priority, Supplier<T> work) {
+        Priority previous = CURRENT.get();
+        CURRENT.set(priority);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void runAs(Priority priority, Runnable work) {
+        callAs(priority, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * 当前线程指定的优先级，未指定时为 fallback
+     */
+    public static Priority currentPriority(Priority fallback) {
+        Priority priority = CURRENT.get();
+        return priority == null ? fallback : priority;
+    }
+
+    /**
+     * 申请许可，kind 为调用类别，用于区分不同量级的延迟
+     */
+    public CompletableFuture<Permit> acquire(String kind, Priority priority) {
+        AdmissionProperties.Queue settings = settings(priority);
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (inFlight < (int) limit && !hasWaitersAtOrAbove(priority)) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(kind, System.nanoTime()));
+            }
+            ArrayDeque<Waiter> queue = queues.get(priority);
+            if (queue.size() >= settings.getCapacity()) {
+                queueFull.get(priority).increment();
+                return CompletableFuture.failedFuture(
+                        new AdmissionRejectedException(priority, "queue_full", retryAfter(kind, priority)));
+            }
+            waiter = new Waiter(kind, priority, System.nanoTime());
+            queue.addLast(waiter);
+        } finally {
+            lock.unlock();
+        }
+        long maxWait = settings.getMaxWait().toNanos();
+        waiter.timeout = timer.schedule(() -> expire(waiter), maxWait, TimeUnit.NANOSECONDS);
+        // 调用方取消（如客户端断开）时从队列中移除
+        waiter.future.whenComplete((permit, e) -> {
+            if (e instanceof CancellationException) {
+                remove(waiter);
+            }
+        });
+        return waiter.future;
+    }
+
+    /**
+     * 阻塞等待许可
+     */
+    public Permit acquireBlocking(String kind, Priority priority) {
+        CompletableFuture<Permit> future = acquire(kind, priority);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            abandon(future);
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException(priority, "interrupted", Duration.ofSeconds(1));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 放弃申请：排队中的请求被取消并移出队列；取消时许可恰好已经授予的，直接归还该许可
+     */
+    public static void abandon(CompletableFuture<Permit> future) {
+        if (future.cancel(false) || future.isCompletedExceptionally()) {
+            return;
+        }
+        Permit permit = future.getNow(null);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * 队列已满时立即拒绝，流式接口在返回响应前调用，使拒绝能以 HTTP 429 返回
+     */
+    public void ensureCapacity(Priority priority) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (inFlight < (int) limit || queues.get(priority).size() < settings(priority).getCapacity()) {
+                return;
+            }
+            queueFull.get(priority).increment();
+            throw new AdmissionRejectedException(priority, "queue_full", retryAfter(null, priority));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public int queueSize(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void expire(Waiter waiter) {
+        if (!remove(waiter)) {
+            return;
+        }
+        timeouts.get(waiter.priority).increment();
+        Duration retryAfter;
+        lock.lock();
+        try {
+            retryAfter = retryAfter(waiter.kind, waiter.priority);
+        } finally {
+            lock.unlock();
+        }
+        waiter.future.completeExceptionally(new AdmissionRejectedException(waiter.priority, "timeout", retryAfter));
+    }
+
+    private boolean remove(Waiter waiter) {
+        lock.lock();
+        try {
+            return queues.get(waiter.priority).remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还许可并按新的上限唤醒排队的请求，latency 为负数时不作为延迟样本
+     */
+    private void release(String kind, long latency, boolean success) {
+        List<Waiter> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            inFlight--;
+            if (latency >= 0) {
+                update(kind, latency, success);
+            }
+            while (inFlight < (int) limit) {
+                Waiter next = pollHighest();
+                if (next == null) {
+                    break;
+                }
+                if (next.future.isDone()) {
+                    continue;
+                }
+                inFlight++;
+                granted.add(next);
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 在锁外完成，避免在锁内执行调用方的回调
+        for (Waiter waiter : granted) {
+            ScheduledFuture<?> timeout = waiter.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            waitTimers.get(waiter.priority).record(System.nanoTime() - waiter.enqueued, TimeUnit.NANOSECONDS);
+            Permit permit = new Permit(waiter.kind, System.nanoTime());
+            if (!waiter.future.complete(permit)) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * 按梯度调整并发上限，调用方持有 lock
+     */
+    private void update(String kind, long latency, boolean success) {
+        double previous = limit;
+        if (!success) {
+            limit = clamp(limit * properties.getBackoffRatio());
+        } else {
+            double sample = Math.max(1, latency);
+            Double average = longLatency.get(kind);
+            double longRtt = average == null ? sample : average + (sample - average) / Math.max(1, properties.getLongWindow());
+            // 负载下降后长期平均值偏高，加快向新延迟回落
+            if (longRtt / sample > 2) {
+                longRtt *= 0.95;
+            }
+            longLatency.put(kind, longRtt);
+            double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longRtt / sample));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            // 并发远未用满时不继续增加上限
+            if (newLimit > limit && inFlight + 1 < limit / 2) {
+                newLimit = limit;
+            }
+            limit = clamp(limit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing());
+        }
+        if ((int) previous != (int) limit) {
+            logger.debug("Ollama 并发上限 {} -> {}（{}，延迟 {} ms）", (int) previous, (int) limit, kind,
+                    TimeUnit.NANOSECONDS.toMillis(latency));
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), value));
+    }
+
+    private boolean hasWaitersAtOrAbove(Priority priority) {
+        for (Priority p : Priority.values()) {
+            if (!queues.get(p).isEmpty()) {
+                return true;
+            }
+            if (p == priority) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private Waiter pollHighest() {
+        for (Priority priority : Priority.values()) {
+            Waiter waiter = queues.get(priority).pollFirst();
+            if (waiter != null) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按排在前面的请求数、当前上限和该类调用的平均延迟估算重试时间，调用方持有 lock
+     */
+    private Duration retryAfter(String kind, Priority priority) {
+        int ahead = 0;
+        for (Priority p : Priority.values()) {
+            ahead += queues.get(p).size();
+            if (p == priority) {
+                break;
+            }
+        }
+        Double average = kind == null ? null : longLatency.get(kind);
+        if (average == null) {
+            average = longLatency.values().stream().mapToDouble(Double::doubleValue).max().orElse(1e9);
+        }
+        double seconds = (ahead + 1.0) / Math.max(1, (int) limit) * average / 1e9;
+        return Duration.ofSeconds(Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, (long) Math.ceil(seconds))));
+    }
+
+    private AdmissionProperties.Queue settings(Priority priority) {
+        return switch (priority) {
+            case INTERACTIVE -> properties.getInteractive();
+            case BACKGROUND -> properties.getBackground();
+            case BULK -> properties.getBulk();
+        };
+    }
+
+    private static final class Waiter {
+        private final String kind;
+        private final Priority priority;
+        private final long enqueued;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timeout;
+
+        Waiter(String kind, Priority priority, long enqueued) {
+            this.kind = kind;
+            this.priority = priority;
+            this.enqueued = enqueued;
+        }
+    }
+
+    /**
+     * 一次调用的许可，先记录延迟样本（可选），最后必须 release
+     */
+    public final class Permit {
+        private final String kind;
+        private final long granted;
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long latency = -1;
+        private volatile boolean success = true;
+
+        private Permit(String kind, long granted) {
+            this.kind = kind;
+            this.granted = granted;
+        }
+
+        public long granted() {
+            return granted;
+        }
+
+        /**
+         * 记录延迟样本，只有第一次调用生效
+         */
+        public void sample(long latencyNanos, boolean success) {
+            if (sampled.compareAndSet(false, true)) {
+                this.latency = latencyNanos;
+                this.success = success;
+            }
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionLimiter.this.release(kind, latency, success);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 09:00
+ * Description: Ollama 调用的准入控制配置
+ * <p>
+ * 对话与向量化共用一个并发上限，上限根据观测到的延迟在 minLimit 与 maxLimit 之间自动调整；
+ * 超出上限的请求按优先级排队，交互请求（对话、问题向量化）先于后台摘要和批量导入的向量化。
+ */
+@ConfigurationProperties(prefix = "rag.admission")
+public class AdmissionProperties {
+
+    /**
+     * 是否启用准入控制，关闭时直接调用 Ollama
+     */
+    private boolean enabled = true;
+
+    /**
+     * 初始并发上限
+     */
+    private int initialLimit = 2;
+
+    private int minLimit = 1;
+
+    private int maxLimit = 8;
+
+    /**
+     * 延迟容忍倍数：最近的延迟超过长期平均延迟的该倍数时开始降低并发上限
+     */
+    private double tolerance = 2.0;
+
+    /**
+     * 并发上限的平滑系数，越大调整越快
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * 长期平均延迟的样本窗口
+     */
+    private int longWindow = 100;
+
+    /**
+     * 调用超时或失败时并发上限乘以该系数
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 对话和问题向量化
+     */
+    private Queue interactive = new Queue(64, Duration.ofSeconds(30));
+
+    /**
+     * 会话摘要等后台任务
+     */
+    private Queue background = new Queue(16, Duration.ofMinutes(2));
+
+    /**
+     * 文档导入的批量向量化
+     */
+    private Queue bulk = new Queue(256, Duration.ofMinutes(5));
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public int getLongWindow() {
+        return longWindow;
+    }
+
+    public void setLongWindow(int longWindow) {
+        this.longWindow = longWindow;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public Queue getInteractive() {
+        return interactive;
+    }
+
+    public void setInteractive(Queue interactive) {
+        this.interactive = interactive;
+    }
+
+    public Queue getBackground() {
+        return background;
+    }
+
+    public void setBackground(Queue background) {
+        this.background = background;
+    }
+
+    public Queue getBulk() {
+        return bulk;
+    }
+
+    public void setBulk(Queue bulk) {
+        this.bulk = bulk;
+    }
+
+    public static class Queue {
+
+        /**
+         * 排队请求数上限，队列满时直接拒绝（HTTP 429）
+         */
+        private int capacity;
+
+        /**
+         * 排队的最长等待时间，超时后拒绝
+         */
+        private Duration maxWait;
+
+        public Queue() {
+        }
+
+        public Queue(int capacity, Duration maxWait) {
+            this.capacity = capacity;
+            this.maxWait = maxWait;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.huayi.ai.config;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 09:20
+ * Description: 准入控制拒绝请求，接口返回 HTTP 429 并通过 Retry-After 告知建议的重试时间
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final AdmissionLimiter.Priority priority;
+
+    /**
+     * queue_full、timeout 或 interrupted
+     */
+    private final String reason;
+
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(AdmissionLimiter.Priority priority, String reason, Duration retryAfter) {
+        super("Ollama 繁忙，请求被拒绝（" + priority.name().toLowerCase() + "，" + reason + "）");
+        this.priority = priority;
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public AdmissionLimiter.Priority getPriority() {
+        return priority;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
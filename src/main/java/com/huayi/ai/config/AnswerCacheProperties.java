@@ -0,0 +1,77 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-11 10:15
+ * Description: 语义答案缓存配置
+ */
+@ConfigurationProperties(prefix = "rag.answer-cache")
+public class AnswerCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 问题向量的余弦相似度不低于该值时直接返回缓存的答案
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 缓存占用内存上限（估算值），超出后淘汰最近最少使用的答案
+     */
+    private DataSize maxMemory = DataSize.ofMegabytes(64);
+
+    /**
+     * 答案的有效期
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * 回放缓存答案时每个流式片段的字符数
+     */
+    private int replayChunkSize = 16;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public DataSize getMaxMemory() {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(DataSize maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getReplayChunkSize() {
+        return replayChunkSize;
+    }
+
+    public void setReplayChunkSize(int replayChunkSize) {
+        this.replayChunkSize = replayChunkSize;
+    }
+}
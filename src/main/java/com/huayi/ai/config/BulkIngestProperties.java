@@ -0,0 +1,106 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-12 09:20
+ * Description: Elasticsearch 批量写入配置
+ */
+@ConfigurationProperties(prefix = "rag.elasticsearch.bulk")
+public class BulkIngestProperties {
+
+    /**
+     * 单个 _bulk 请求的最大文档数
+     */
+    private int maxActions = 500;
+
+    /**
+     * 单个 _bulk 请求的最大字节数（估算值）
+     */
+    private DataSize maxBytes = DataSize.ofMegabytes(10);
+
+    /**
+     * 同时进行中的 _bulk 请求数
+     */
+    private int maxInFlight = 4;
+
+    /**
+     * 被拒绝（429/503）的文档最多重试次数
+     */
+    private int maxRetries = 3;
+
+    /**
+     * 首次重试前的等待时间，之后每次翻倍
+     */
+    private Duration initialBackoff = Duration.ofMillis(200);
+
+    /**
+     * 大批量导入期间是否关闭刷新并将副本数设为 0，导入结束后恢复
+     */
+    private boolean tuneIndexSettings = true;
+
+    /**
+     * 文件大小达到该值时视为大批量导入
+     */
+    private DataSize largeLoadThreshold = DataSize.ofMegabytes(5);
+
+    public int getMaxActions() {
+        return maxActions;
+    }
+
+    public void setMaxActions(int maxActions) {
+        this.maxActions = maxActions;
+    }
+
+    public DataSize getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(DataSize maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public boolean isTuneIndexSettings() {
+        return tuneIndexSettings;
+    }
+
+    public void setTuneIndexSettings(boolean tuneIndexSettings) {
+        this.tuneIndexSettings = tuneIndexSettings;
+    }
+
+    public DataSize getLargeLoadThreshold() {
+        return largeLoadThreshold;
+    }
+
+    public void setLargeLoadThreshold(DataSize largeLoadThreshold) {
+        this.largeLoadThreshold = largeLoadThreshold;
+    }
+}
@@ -1,10 +1,13 @@
 package com.huayi.ai.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
-import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * Author: YuJian
@@ -13,14 +16,26 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class ChatConfiguration {
+
+    /**
+     * 在内存或持久化会话记忆之上按 token 预算截取历史，并在后台压缩为摘要
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public TokenBudgetChatMemory tokenBudgetChatMemory(ChatMemory chatMemory, ChatModel chatModel,
+                                                       ChatMemoryProperties properties, MeterRegistry meterRegistry) {
+        return new TokenBudgetChatMemory(chatMemory, chatModel, properties, meterRegistry);
+    }
+
     @Bean
-    public ChatClient myChatClient(OllamaChatModel ollamaChatModel, MychatMemory mychatMemory) {
-        return ChatClient.builder(ollamaChatModel).defaultSystem(
+    public ChatClient myChatClient(ChatModel chatModel, ChatMemory chatMemory, RagMetrics ragMetrics) {
+        return ChatClient.builder(chatModel, ragMetrics.observationRegistry(), null).defaultSystem(
                         """
                                 你是一家名叫“xx信息科技”的知识库文档助手。
                                 """
                 )
-                .defaultAdvisors(new PromptChatMemoryAdvisor(mychatMemory))
+                .defaultAdvisors(new PromptChatMemoryAdvisor(chatMemory),
+                        new PromptMetricsAdvisor(ragMetrics, RagMetrics.CHAT))
                 .build();
     }
 }
@@ -0,0 +1,382 @@
+package com.huayi.ai.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-19 14:00
+ * Description: 会话日志的一个段文件
+ * <p>
+ * 文件前 capacity 字节是内存映射的记录区：16 字节文件头之后依次追加记录，
+ * 每条记录为 [正文长度 int][正文 CRC32 int][类型 byte][序号 long][时间戳 long][会话编号长度 short][会话编号][消息内容]。
+ * 段写满后封存：在记录区之后写入页脚（每条记录的会话编号、类型、序号、时间戳、位置），文件末尾 16 字节为页脚位置、CRC 和魔数。
+ * 启动时封存的段只读取页脚，未封存的段逐条扫描到第一条不完整的记录为止。
+ */
+final class ChatLogSegment {
+
+    static final byte MESSAGE = 1;
+
+    static final byte CLEAR = 2;
+
+    private static final int MAGIC = 0x43484154;
+    private static final int FOOTER_MAGIC = 0x464f4f54;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int TRAILER_BYTES = 16;
+
+    /**
+     * 长度、CRC、类型、序号、时间戳、会话编号长度
+     */
+    private static final int RECORD_OVERHEAD = 4 + 4 + 1 + 8 + 8 + 2;
+
+    private final long id;
+
+    private final Path file;
+
+    private final int capacity;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * 下一条记录的写入位置，只在持有追加锁时修改
+     */
+    private int position = HEADER_BYTES;
+
+    private int synced;
+
+    private boolean sealed;
+
+    /**
+     * 未封存时为段内全部记录，用于封存时生成页脚
+     */
+    private List<Entry> entries = new ArrayList<>();
+
+    private final List<Entry> tombstones = new ArrayList<>();
+
+    /**
+     * 仍被会话索引引用的消息记录字节数
+     */
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private long recordBytes;
+
+    private ChatLogSegment(long id, Path file, int capacity, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.capacity = capacity;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 创建新的段文件
+     */
+    static ChatLogSegment create(Path dir, long id, int capacity) throws IOException {
+        Path file = dir.resolve(fileName(id));
+        ChatLogSegment segment = new ChatLogSegment(id, file, capacity, map(file, capacity));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putLong(8, id);
+        return segment;
+    }
+
+    /**
+     * 打开已有的段文件，有完整页脚时只读取页脚，否则扫描记录区
+     */
+    static ChatLogSegment open(Path file, long id, int capacity) throws IOException {
+        ChatLogSegment segment = new ChatLogSegment(id, file, capacity, map(file, capacity));
+        if (segment.buffer.getInt(0) != MAGIC) {
+            // 创建文件后还没写入文件头就中断了
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putLong(8, id);
+        } else if (segment.buffer.getInt(4) != VERSION) {
+            throw new IOException("无法识别的会话日志版本：" + file);
+        }
+        if (!segment.readFooter()) {
+            segment.scan();
+        }
+        segment.synced = segment.position;
+        return segment;
+    }
+
+    static String fileName(long id) {
+        return String.format("chat-%010d.log", id);
+    }
+
+    /**
+     * 编码一条记录
+     */
+    static byte[] encode(byte kind, long seq, long timestamp, String conversationId, byte[] payload) {
+        byte[] idBytes = conversationId.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[RECORD_OVERHEAD + idBytes.length + payload.length];
+        ByteBuffer out = ByteBuffer.wrap(record);
+        out.putInt(record.length - 8).putInt(0)
+                .put(kind).putLong(seq).putLong(timestamp)
+                .putShort((short) idBytes.length).put(idBytes).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        out.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * 记录中的消息内容
+     */
+    static byte[] payload(byte[] record) {
+        int start = RECORD_OVERHEAD + (ByteBuffer.wrap(record).getShort(25) & 0xffff);
+        byte[] payload = new byte[record.length - start];
+        System.arraycopy(record, start, payload, 0, payload.length);
+        return payload;
+    }
+
+    long id() {
+        return id;
+    }
+
+    int position() {
+        return position;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    boolean fits(int length) {
+        return !sealed && position + length <= capacity;
+    }
+
+    /**
+     * 单条记录允许的最大长度
+     */
+    int maxRecordLength() {
+        return capacity - HEADER_BYTES;
+    }
+
+    /**
+     * 在记录区末尾写入一条编码好的记录，调用方需持有追加锁
+     */
+    Entry write(byte[] record, String conversationId) {
+        ByteBuffer in = ByteBuffer.wrap(record);
+        Entry entry = new Entry(conversationId, in.get(8), in.getLong(9), in.getLong(17), position, record.length);
+        buffer.put(position, record);
+        position += record.length;
+        add(entry);
+        return entry;
+    }
+
+    /**
+     * 读取指定位置的完整记录
+     */
+    byte[] read(int offset) {
+        byte[] record = new byte[buffer.getInt(offset) + 8];
+        buffer.get(offset, record);
+        return record;
+    }
+
+    /**
+     * 将 end 之前写入的记录刷到磁盘
+     */
+    synchronized void force(int end) {
+        if (end > synced) {
+            buffer.force(synced, end - synced);
+            synced = end;
+        }
+    }
+
+    /**
+     * 封存：刷盘后在记录区之后写入页脚，之后不再写入
+     */
+    void seal() throws IOException {
+        force(position);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.conversationId());
+                out.writeByte(entry.kind());
+                out.writeLong(entry.seq());
+                out.writeLong(entry.timestamp());
+                out.writeInt(entry.offset());
+                out.writeInt(entry.length());
+            }
+        }
+        byte[] footer = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(footer);
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES)
+                .putLong(capacity).putInt((int) crc.getValue()).putInt(FOOTER_MAGIC).flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(capacity);
+            writeFully(channel, ByteBuffer.wrap(footer), capacity);
+            writeFully(channel, trailer, capacity + footer.length);
+            channel.force(false);
+        }
+        sealed = true;
+        entries = null;
+    }
+
+    /**
+     * 段内的全部记录，只在启动恢复和封存前可用
+     */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * 启动恢复完成后释放封存段的记录列表，只保留清除标记
+     */
+    void releaseEntries() {
+        if (sealed) {
+            entries = null;
+        }
+    }
+
+    List<Entry> tombstones() {
+        return tombstones;
+    }
+
+    AtomicLong liveBytes() {
+        return liveBytes;
+    }
+
+    long recordBytes() {
+        return recordBytes;
+    }
+
+    long tombstoneBytes() {
+        long total = 0;
+        for (Entry tombstone : tombstones) {
+            total += tombstone.length();
+        }
+        return total;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void add(Entry entry) {
+        recordBytes += entry.length();
+        if (entry.kind() == CLEAR) {
+            tombstones.add(entry);
+        }
+        if (entries != null) {
+            entries.add(entry);
+        }
+    }
+
+    private boolean readFooter() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < (long) capacity + TRAILER_BYTES) {
+                return false;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            readFully(channel, trailer, size - TRAILER_BYTES);
+            long footerStart = trailer.getLong(0);
+            if (trailer.getInt(12) != FOOTER_MAGIC || footerStart != capacity) {
+                return false;
+            }
+            byte[] footer = new byte[(int) (size - TRAILER_BYTES - footerStart)];
+            readFully(channel, ByteBuffer.wrap(footer), footerStart);
+            CRC32 crc = new CRC32();
+            crc.update(footer);
+            if ((int) crc.getValue() != trailer.getInt(8)) {
+                return false;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Entry entry = new Entry(in.readUTF(), in.readByte(), in.readLong(), in.readLong(), in.readInt(), in.readInt());
+                    add(entry);
+                    position = Math.max(position, entry.offset() + entry.length());
+                }
+            }
+        }
+        sealed = true;
+        return true;
+    }
+
+    /**
+     * 逐条校验记录，遇到长度越界或 CRC 不一致即视为未写完的尾部，并清零其后的区域
+     */
+    private void scan() {
+        int offset = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_OVERHEAD <= capacity) {
+            int bodyLength = buffer.getInt(offset);
+            if (bodyLength < RECORD_OVERHEAD - 8 || offset + 8L + bodyLength > capacity) {
+                break;
+            }
+            byte[] record = read(offset);
+            crc.reset();
+            crc.update(record, 8, bodyLength);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            ByteBuffer in = ByteBuffer.wrap(record);
+            int idLength = in.getShort(25) & 0xffff;
+            String conversationId = new String(record, RECORD_OVERHEAD, idLength, StandardCharsets.UTF_8);
+            add(new Entry(conversationId, in.get(8), in.getLong(9), in.getLong(17), offset, record.length));
+            offset += record.length;
+        }
+        position = offset;
+        // 只改写非零的块，避免整段变脏
+        byte[] chunk = new byte[8192];
+        byte[] zeros = new byte[chunk.length];
+        for (int p = offset; p < capacity; p += chunk.length) {
+            int length = Math.min(chunk.length, capacity - p);
+            buffer.get(p, chunk, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] != 0) {
+                    buffer.put(p, zeros, 0, length);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("会话日志页脚不完整");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 段内一条记录的位置和索引信息
+     */
+    record Entry(String conversationId, byte kind, long seq, long timestamp, int offset, int length) {
+    }
+}
@@ -0,0 +1,254 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-19 09:30
+ * Description: 会话记忆配置
+ */
+@ConfigurationProperties(prefix = "rag.chat.memory")
+public class ChatMemoryProperties {
+
+    /**
+     * 会话记忆的存储方式：memory（只在内存中）或 durable（本地磁盘日志，重启后保留）
+     */
+    private String store = "memory";
+
+    /**
+     * 每个会话保留的最近消息条数，超出后覆盖最早的消息
+     */
+    private int capacity = 100;
+
+    /**
+     * 会话空闲超过该时间后整体淘汰
+     */
+    private Duration idleTtl = Duration.ofMinutes(30);
+
+    /**
+     * 所有会话占用内存上限（估算值），超出后淘汰最久未访问的会话
+     */
+    private DataSize maxMemory = DataSize.ofMegabytes(64);
+
+    /**
+     * 空闲会话的清理间隔
+     */
+    private Duration sweepInterval = Duration.ofMinutes(1);
+
+    private final Durable durable = new Durable();
+
+    private final Window window = new Window();
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public Duration getIdleTtl() {
+        return idleTtl;
+    }
+
+    public void setIdleTtl(Duration idleTtl) {
+        this.idleTtl = idleTtl;
+    }
+
+    public DataSize getMaxMemory() {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(DataSize maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public Durable getDurable() {
+        return durable;
+    }
+
+    public Window getWindow() {
+        return window;
+    }
+
+    public static class Window {
+
+        /**
+         * 是否按 token 预算截取历史并压缩为摘要，关闭时按消息条数返回
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每轮放入提示词的历史（含摘要）的 token 上限（估算值）
+         */
+        private int tokenBudget = 2000;
+
+        /**
+         * 会话历史超过该 token 数时在后台压缩：较早的消息与原有摘要合并为一条新的摘要
+         */
+        private int compactionThreshold = 3000;
+
+        /**
+         * 压缩时保留原文的最近消息的 token 数
+         */
+        private int keepRecentTokens = 1200;
+
+        /**
+         * 摘要的 token 上限
+         */
+        private int summaryMaxTokens = 400;
+
+        /**
+         * 同时进行的摘要任务数
+         */
+        private int summaryWorkers = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTokenBudget() {
+            return tokenBudget;
+        }
+
+        public void setTokenBudget(int tokenBudget) {
+            this.tokenBudget = tokenBudget;
+        }
+
+        public int getCompactionThreshold() {
+            return compactionThreshold;
+        }
+
+        public void setCompactionThreshold(int compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+        }
+
+        public int getKeepRecentTokens() {
+            return keepRecentTokens;
+        }
+
+        public void setKeepRecentTokens(int keepRecentTokens) {
+            this.keepRecentTokens = keepRecentTokens;
+        }
+
+        public int getSummaryMaxTokens() {
+            return summaryMaxTokens;
+        }
+
+        public void setSummaryMaxTokens(int summaryMaxTokens) {
+            this.summaryMaxTokens = summaryMaxTokens;
+        }
+
+        public int getSummaryWorkers() {
+            return summaryWorkers;
+        }
+
+        public void setSummaryWorkers(int summaryWorkers) {
+            this.summaryWorkers = summaryWorkers;
+        }
+    }
+
+    public static class Durable {
+
+        /**
+         * 日志段文件所在目录
+         */
+        private String dir = "data/chat-memory";
+
+        /**
+         * 单个日志段的大小，写满后封存并创建新段
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 为 true 时写入在刷盘后才返回，同一时间到达的写入合并为一次刷盘；为 false 时按 flushInterval 定期刷盘
+         */
+        private boolean sync = true;
+
+        /**
+         * 非同步模式下的刷盘间隔
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * 压缩检查间隔
+         */
+        private Duration compactionInterval = Duration.ofMinutes(10);
+
+        /**
+         * 封存段中仍被引用的数据占比低于该值时压缩
+         */
+        private double compactionThreshold = 0.5;
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public boolean isSync() {
+            return sync;
+        }
+
+        public void setSync(boolean sync) {
+            this.sync = sync;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public Duration getCompactionInterval() {
+            return compactionInterval;
+        }
+
+        public void setCompactionInterval(Duration compactionInterval) {
+            this.compactionInterval = compactionInterval;
+        }
+
+        public double getCompactionThreshold() {
+            return compactionThreshold;
+        }
+
+        public void setCompactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+        }
+    }
+}
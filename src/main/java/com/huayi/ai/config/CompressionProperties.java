@@ -0,0 +1,93 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-28 09:30
+ * Description: 检索结果的上下文压缩配置
+ * <p>
+ * 检索到的文档块按句切分，同一文件的文档块合并、重复句去重；总长度超过 tokenBudget 时，
+ * 按与问题的词语重合度和句子在候选句图中的 TextRank 中心度打分，保留得分高的句子直到用完预算。
+ */
+@ConfigurationProperties(prefix = "rag.compression")
+public class CompressionProperties {
+
+    /**
+     * 是否启用上下文压缩
+     */
+    private boolean enabled = true;
+
+    /**
+     * 放入提示词的文档内容 token 上限（按 TokenEstimator 估算）
+     */
+    private int tokenBudget = 600;
+
+    /**
+     * 与问题词语重合度的权重
+     */
+    private double queryWeight = 0.7;
+
+    /**
+     * 句子中心度的权重
+     */
+    private double centralityWeight = 0.3;
+
+    /**
+     * 低于该得分的句子在超出预算时直接丢弃
+     */
+    private double minScore = 0.05;
+
+    /**
+     * 两个句子的词语 Jaccard 相似度达到该值时在句图中相连
+     */
+    private double similarityThreshold = 0.15;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public void setTokenBudget(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    public double getQueryWeight() {
+        return queryWeight;
+    }
+
+    public void setQueryWeight(double queryWeight) {
+        this.queryWeight = queryWeight;
+    }
+
+    public double getCentralityWeight() {
+        return centralityWeight;
+    }
+
+    public void setCentralityWeight(double centralityWeight) {
+        this.centralityWeight = centralityWeight;
+    }
+
+    public double getMinScore() {
+        return minScore;
+    }
+
+    public void setMinScore(double minScore) {
+        this.minScore = minScore;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+}
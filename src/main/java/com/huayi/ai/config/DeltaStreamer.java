@@ -0,0 +1,141 @@
+package com.huayi.ai.config;
+
+import com.huayi.ai.chat.domain.DeltaFrame;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-24 09:20
+ * Description: 将模型输出的文本片段转换为 SSE 增量帧
+ * <p>
+ * 片段按 {@link StreamingProperties} 合并后写出，每帧的 data 为 {"t":"..."}，生成结束时发送 done 事件，
+ * 生成失败时发送 error 事件。等待期间定时发送 SSE 注释作为心跳。
+ * <p>
+ * 客户端断开后，下一次写入（帧或心跳）失败时取消订阅，取消信号沿 Flux 传到 Ollama 的流式请求并关闭连接，
+ * Ollama 随之停止生成，不再为已放弃的请求继续推理。
+ */
+@Component
+public class DeltaStreamer {
+    private static final Logger logger = LoggerFactory.getLogger(DeltaStreamer.class);
+
+    public static final String DONE = "done";
+
+    public static final String ERROR = "error";
+
+    private static final ServerSentEvent<DeltaFrame> HEARTBEAT = ServerSentEvent.<DeltaFrame>builder().comment("").build();
+
+    private final StreamingProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, StreamMeters> meters = new ConcurrentHashMap<>();
+
+    public DeltaStreamer(StreamingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param endpoint 接口名称，作为指标标签
+     * @param deltas   模型输出的文本片段
+     */
+    public Flux<ServerSentEvent<DeltaFrame>> stream(String endpoint, Flux<String> deltas) {
+        StreamMeters streamMeters = meters.computeIfAbsent(endpoint, e -> new StreamMeters(meterRegistry, e));
+        Flux<ServerSentEvent<DeltaFrame>> frames = coalesce(deltas.filter(delta -> !delta.isEmpty()), streamMeters)
+                .map(text -> ServerSentEvent.builder(new DeltaFrame(text)).build())
+                .concatWith(Mono.fromSupplier(() -> ServerSentEvent.builder(new DeltaFrame("")).event(DONE).build()))
+                .onErrorResume(e -> {
+                    if (e instanceof AdmissionRejectedException rejected) {
+                        // 排队超时时响应已经开始写出，通过 retry 字段告知客户端重连的等待时间
+                        logger.info("{} 请求未获准入：{}", endpoint, rejected.getMessage());
+                        return Mono.just(ServerSentEvent.builder(new DeltaFrame("服务繁忙，请稍后重试")).event(ERROR)
+                                .retry(rejected.getRetryAfter()).build());
+                    }
+                    logger.warn("{} 流式生成失败", endpoint, e);
+                    return Mono.just(ServerSentEvent.builder(new DeltaFrame("生成失败，请稍后重试")).event(ERROR).build());
+                });
+        Duration heartbeat = properties.getHeartbeatInterval();
+        Flux<ServerSentEvent<DeltaFrame>> events = heartbeat == null || heartbeat.isZero() ? frames
+                : frames.publish(shared -> Flux.merge(shared,
+                        Flux.interval(heartbeat, heartbeat).map(i -> HEARTBEAT).takeUntilOther(shared.then())));
+        return Flux.defer(() -> {
+            AtomicLong written = new AtomicLong();
+            AtomicBoolean failed = new AtomicBoolean();
+            return events
+                    .doOnNext(event -> {
+                        if (event.data() != null) {
+                            written.incrementAndGet();
+                        }
+                        if (ERROR.equals(event.event())) {
+                            failed.set(true);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        (failed.get() ? streamMeters.errors : streamMeters.completed).increment();
+                        streamMeters.frames.record(written.get());
+                    })
+                    .doOnCancel(() -> {
+                        streamMeters.cancelled.increment();
+                        streamMeters.frames.record(written.get());
+                        logger.debug("{} 客户端已断开，停止生成，已发送 {} 帧", endpoint, written.get());
+                    });
+        });
+    }
+
+    private Flux<String> coalesce(Flux<String> deltas, StreamMeters streamMeters) {
+        Duration interval = properties.getCoalesceInterval();
+        int maxTokens = properties.getCoalesceMaxTokens();
+        if (interval == null || interval.isZero() || maxTokens <= 1) {
+            return deltas;
+        }
+        return deltas.bufferTimeout(maxTokens, interval)
+                .map(parts -> {
+                    streamMeters.tokensPerFrame.record(parts.size());
+                    return parts.size() == 1 ? parts.get(0) : String.join("", parts);
+                });
+    }
+
+    private static final class StreamMeters {
+        private final Counter completed;
+        private final Counter cancelled;
+        private final Counter errors;
+        private final DistributionSummary frames;
+        private final DistributionSummary tokensPerFrame;
+
+        StreamMeters(MeterRegistry meterRegistry, String endpoint) {
+            this.completed = outcome(meterRegistry, endpoint, "completed");
+            this.cancelled = outcome(meterRegistry, endpoint, "cancelled");
+            this.errors = outcome(meterRegistry, endpoint, "error");
+            this.frames = DistributionSummary.builder("rag.stream.frames")
+                    .description("每次流式响应发送的帧数")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            this.tokensPerFrame = DistributionSummary.builder("rag.stream.coalesced")
+                    .description("每帧合并的模型输出片段数")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        private static Counter outcome(MeterRegistry meterRegistry, String endpoint, String outcome) {
+            return Counter.builder("rag.stream.responses")
+                    .description("流式响应数，cancelled 为客户端中途断开")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
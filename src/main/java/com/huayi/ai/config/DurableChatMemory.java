@@ -0,0 +1,634 @@
+package com.huayi.ai.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-19 15:00
+ * Description: 基于本地追加日志的持久化会话记忆
+ * <p>
+ * 消息按到达顺序追加到内存映射的日志段（{@link ChatLogSegment}），内存中只保存每个会话最近 capacity 条消息在日志中的位置，
+ * 读取最近 N 条时直接按位置读取这几条记录。清除会话时追加一条清除标记，所有记录带有全局递增的序号，
+ * 恢复时序号小于清除标记的记录被丢弃。
+ * <p>
+ * 同步模式下写入等待刷盘后返回，刷盘由单独的线程执行，等待期间到达的写入合并为一次刷盘。
+ * 后台任务定期淘汰空闲会话，并把有效数据占比过低的封存段中仍被引用的记录复制到当前段后删除旧段。
+ */
+@Component
+@ConditionalOnProperty(prefix = "rag.chat.memory", name = "store", havingValue = "durable")
+public class DurableChatMemory implements ChatMemory {
+    private static final Logger logger = LoggerFactory.getLogger(DurableChatMemory.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("chat-(\\d{10})\\.log");
+
+    private final ChatMemoryProperties properties;
+
+    private final ChatMemoryProperties.Durable durable;
+
+    private final Path dir;
+
+    private final int segmentBytes;
+
+    private final ConcurrentSkipListMap<Long, ChatLogSegment> segments = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    /**
+     * 追加锁，保护当前段、序号和已追加字节数；与会话锁同时持有时先取会话锁
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private ChatLogSegment active;
+
+    private long nextSeq;
+
+    private long appendedRecords;
+
+    /**
+     * 已追加的字节数，作为等待刷盘的凭据
+     */
+    private volatile long appended;
+
+    private final Object commitMonitor = new Object();
+
+    /**
+     * 已刷盘的字节数，只在持有 commitMonitor 时访问
+     */
+    private long committed;
+
+    private long committedRecords;
+
+    private volatile boolean closed;
+
+    private final Thread flusher;
+
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * 压缩后删除失败的旧段（例如 Windows 下文件仍被映射），下次压缩时重试
+     */
+    private final List<ChatLogSegment> pendingDeletes = new ArrayList<>();
+
+    private final Counter records;
+    private final Counter commits;
+    private final DistributionSummary commitBatch;
+    private final Counter compactions;
+    private final Counter idleEvictions;
+
+    public DurableChatMemory(ChatMemoryProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.durable = properties.getDurable();
+        this.dir = Paths.get(durable.getDir());
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE - 8, durable.getSegmentSize().toBytes());
+        this.records = Counter.builder("rag.chat.memory.log.records").register(meterRegistry);
+        this.commits = Counter.builder("rag.chat.memory.log.commits").register(meterRegistry);
+        this.commitBatch = DistributionSummary.builder("rag.chat.memory.log.commit.batch")
+                .description("每次刷盘包含的记录数").register(meterRegistry);
+        this.compactions = Counter.builder("rag.chat.memory.log.compactions").register(meterRegistry);
+        this.idleEvictions = Counter.builder("rag.chat.memory.evictions").tag("reason", "idle").register(meterRegistry);
+        Gauge.builder("rag.chat.memory.conversations", conversations, Map::size).register(meterRegistry);
+        Gauge.builder("rag.chat.memory.log.segments", segments, Map::size).register(meterRegistry);
+        try {
+            Files.createDirectories(dir);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载会话日志失败：" + dir, e);
+        }
+        this.flusher = new Thread(this::flushLoop, "chat-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweep = properties.getSweepInterval().toMillis();
+        long compaction = durable.getCompactionInterval().toMillis();
+        maintenance.scheduleWithFixedDelay(this::evictIdle, 0, sweep, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compactQuietly, compaction, compaction, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            // 工具调用结果不进入会话记忆
+            if (message.getMessageType() != MessageType.TOOL) {
+                payloads.add(encodeMessage(message));
+            }
+        }
+        if (payloads.isEmpty()) {
+            return;
+        }
+        long ticket;
+        while (true) {
+            Conversation conversation = conversations.computeIfAbsent(conversationId,
+                    id -> new Conversation(id, properties.getCapacity()));
+            synchronized (conversation) {
+                // 会话在取出后被清除，重新创建后再写入
+                if (conversation.retired) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                for (byte[] payload : payloads) {
+                    conversation.push(append(ChatLogSegment.MESSAGE, conversationId, now, payload));
+                }
+                conversation.lastTimestamp = now;
+                ticket = appended;
+            }
+            break;
+        }
+        awaitCommit(ticket);
+    }
+
+    @Override
+    public void add(String conversationId, Message message) {
+        add(conversationId, List.of(message));
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null || lastN <= 0) {
+            return List.of();
+        }
+        List<Pointer> tail;
+        synchronized (conversation) {
+            tail = conversation.last(lastN);
+        }
+        List<Message> messages = new ArrayList<>(tail.size());
+        for (Pointer pointer : tail) {
+            messages.add(decodeMessage(ChatLogSegment.payload(pointer.segment().read(pointer.offset()))));
+        }
+        return List.copyOf(messages);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation != null) {
+            retire(conversation);
+        }
+    }
+
+    /**
+     * 关闭时等待刷盘线程结束并刷盘，当前段不封存，下次启动时扫描恢复
+     */
+    @PreDestroy
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        synchronized (commitMonitor) {
+            commitMonitor.notifyAll();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+    }
+
+    /**
+     * 从日志段恢复会话索引：封存段只读取页脚，当前段逐条扫描
+     */
+    private void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(file -> SEGMENT_FILE.matcher(file.getFileName().toString()).matches()).sorted().toList();
+        }
+        Map<String, Recovered> recovered = new HashMap<>();
+        long maxSeq = -1;
+        ChatLogSegment last = null;
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+            matcher.matches();
+            ChatLogSegment segment = ChatLogSegment.open(file, Long.parseLong(matcher.group(1)), segmentBytes);
+            for (ChatLogSegment.Entry entry : segment.entries()) {
+                maxSeq = Math.max(maxSeq, entry.seq());
+                Recovered conversation = recovered.computeIfAbsent(entry.conversationId(), id -> new Recovered());
+                conversation.lastTimestamp = Math.max(conversation.lastTimestamp, entry.timestamp());
+                if (entry.kind() == ChatLogSegment.CLEAR) {
+                    conversation.clearedBefore = Math.max(conversation.clearedBefore, entry.seq());
+                } else {
+                    conversation.pointers.add(new Pointer(segment, entry.offset(), entry.length(), entry.seq()));
+                }
+            }
+            // 上次运行在切换段的过程中中断，补写页脚
+            if (last != null && !last.isSealed()) {
+                last.seal();
+            }
+            segments.put(segment.id(), segment);
+            last = segment;
+        }
+        for (Map.Entry<String, Recovered> entry : recovered.entrySet()) {
+            Recovered state = entry.getValue();
+            // 按序号排序，压缩复制产生的重复记录保留后出现的一条
+            List<Pointer> pointers = state.pointers;
+            pointers.sort(Comparator.comparingLong(Pointer::seq));
+            Conversation conversation = new Conversation(entry.getKey(), properties.getCapacity());
+            for (int i = 0; i < pointers.size(); i++) {
+                Pointer pointer = pointers.get(i);
+                boolean duplicate = i + 1 < pointers.size() && pointers.get(i + 1).seq() == pointer.seq();
+                if (pointer.seq() > state.clearedBefore && !duplicate) {
+                    conversation.push(pointer);
+                }
+            }
+            if (!conversation.pointers.isEmpty()) {
+                conversation.lastTimestamp = state.lastTimestamp;
+                conversations.put(entry.getKey(), conversation);
+            }
+        }
+        segments.values().forEach(ChatLogSegment::releaseEntries);
+        nextSeq = maxSeq + 1;
+        active = last != null && !last.isSealed() ? last : newSegment(last == null ? 1 : last.id() + 1);
+        appended = 0;
+        logger.info("会话日志恢复完成，日志段 {} 个，会话 {} 个，耗时 {} ms",
+                segments.size(), conversations.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 追加一条新记录并分配序号，调用方需持有会话锁
+     */
+    private Pointer append(byte kind, String conversationId, long timestamp, byte[] payload) {
+        appendLock.lock();
+        try {
+            byte[] record = ChatLogSegment.encode(kind, nextSeq++, timestamp, conversationId, payload);
+            return write(record, conversationId);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 写入一条编码好的记录，当前段放不下时封存并切换到新段
+     */
+    private Pointer write(byte[] record, String conversationId) {
+        appendLock.lock();
+        try {
+            if (record.length > active.maxRecordLength()) {
+                throw new IllegalArgumentException("单条消息大小 " + record.length + " 字节，超过会话日志段的容量");
+            }
+            if (!active.fits(record.length)) {
+                active.seal();
+                active = newSegment(active.id() + 1);
+            }
+            ChatLogSegment.Entry entry = active.write(record, conversationId);
+            appended += record.length;
+            appendedRecords++;
+            records.increment();
+            return new Pointer(active, entry.offset(), entry.length(), entry.seq());
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入会话日志失败", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private ChatLogSegment newSegment(long id) throws IOException {
+        ChatLogSegment segment = ChatLogSegment.create(dir, id, segmentBytes);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * 同步模式下等待 ticket 之前追加的数据刷盘
+     */
+    private void awaitCommit(long ticket) {
+        if (!durable.isSync()) {
+            return;
+        }
+        synchronized (commitMonitor) {
+            commitMonitor.notifyAll();
+            while (committed < ticket && !closed) {
+                try {
+                    commitMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        long interval = Math.max(1, durable.getFlushInterval().toMillis());
+        while (!closed) {
+            try {
+                synchronized (commitMonitor) {
+                    if (durable.isSync()) {
+                        while (!closed && committed >= appended) {
+                            commitMonitor.wait(interval);
+                        }
+                    } else {
+                        commitMonitor.wait(interval);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            commit();
+        }
+    }
+
+    /**
+     * 刷盘：封存的段在切换时已刷盘，这里只需要刷当前段
+     */
+    private void commit() {
+        long target;
+        long recordCount;
+        ChatLogSegment segment;
+        int end;
+        appendLock.lock();
+        try {
+            target = appended;
+            recordCount = appendedRecords;
+            segment = active;
+            end = segment.position();
+        } finally {
+            appendLock.unlock();
+        }
+        long batch;
+        synchronized (commitMonitor) {
+            if (target <= committed) {
+                return;
+            }
+            batch = recordCount - committedRecords;
+        }
+        try {
+            segment.force(end);
+        } catch (RuntimeException e) {
+            logger.error("会话日志刷盘失败", e);
+            return;
+        }
+        commits.increment();
+        commitBatch.record(batch);
+        synchronized (commitMonitor) {
+            if (target > committed) {
+                committed = target;
+                committedRecords = recordCount;
+            }
+            commitMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * 清除会话：追加清除标记并从索引中移除
+     */
+    private void retire(Conversation conversation) {
+        long ticket;
+        synchronized (conversation) {
+            if (conversation.retired) {
+                return;
+            }
+            conversation.retired = true;
+            conversations.remove(conversation.id, conversation);
+            append(ChatLogSegment.CLEAR, conversation.id, System.currentTimeMillis(), new byte[0]);
+            conversation.dropAll();
+            ticket = appended;
+        }
+        awaitCommit(ticket);
+    }
+
+    /**
+     * 淘汰最后一次写入早于 idleTtl 的会话
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - properties.getIdleTtl().toMillis();
+        int evicted = 0;
+        for (Conversation conversation : conversations.values()) {
+            if (conversation.lastTimestamp < deadline) {
+                retire(conversation);
+                idleEvictions.increment();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("淘汰空闲会话 {} 个，剩余 {} 个", evicted, conversations.size());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            logger.error("会话日志压缩失败", e);
+        }
+    }
+
+    /**
+     * 压缩有效数据占比低于阈值的封存段：仍被引用的记录和清除标记复制到当前段，然后删除旧段。
+     * 最早的段之前没有更早的记录，其中的清除标记不再需要保留。
+     */
+    void compact() {
+        pendingDeletes.removeIf(this::deleteQuietly);
+        for (ChatLogSegment segment : new ArrayList<>(segments.values())) {
+            if (!segment.isSealed() || !segments.containsKey(segment.id())) {
+                continue;
+            }
+            boolean oldest = segments.firstKey() == segment.id();
+            long live = segment.liveBytes().get() + (oldest ? 0 : segment.tombstoneBytes());
+            if (live >= segment.recordBytes() * durable.getCompactionThreshold()) {
+                continue;
+            }
+            if (!oldest) {
+                for (ChatLogSegment.Entry tombstone : segment.tombstones()) {
+                    write(segment.read(tombstone.offset()), tombstone.conversationId());
+                }
+            }
+            for (Conversation conversation : conversations.values()) {
+                synchronized (conversation) {
+                    if (!conversation.retired) {
+                        conversation.relocate(segment);
+                    }
+                }
+            }
+            // 复制的记录刷盘后才能删除旧段
+            commit();
+            segments.remove(segment.id());
+            if (!deleteQuietly(segment)) {
+                pendingDeletes.add(segment);
+            }
+            compactions.increment();
+            logger.info("会话日志段 {} 压缩完成，有效数据 {} / {} 字节", segment.id(), live, segment.recordBytes());
+        }
+    }
+
+    private boolean deleteQuietly(ChatLogSegment segment) {
+        try {
+            segment.delete();
+            return true;
+        } catch (IOException e) {
+            logger.warn("删除会话日志段 {} 失败，稍后重试", segment.id(), e);
+            return false;
+        }
+    }
+
+    private static byte[] encodeMessage(Message message) {
+        byte[] metadata;
+        try {
+            metadata = OBJECT_MAPPER.writeValueAsBytes(message.getMetadata());
+        } catch (JsonProcessingException e) {
+            logger.debug("消息元数据无法序列化，只保存正文", e);
+            metadata = "{}".getBytes(StandardCharsets.UTF_8);
+        }
+        String text = message.getText() == null ? "" : message.getText();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(message.getMessageType().name());
+            writeBytes(out, text.getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Message decodeMessage(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            MessageType type = MessageType.valueOf(in.readUTF());
+            String text = new String(readBytes(in), StandardCharsets.UTF_8);
+            Map<String, Object> metadata = OBJECT_MAPPER.readValue(readBytes(in), METADATA_TYPE);
+            return switch (type) {
+                case USER -> new UserMessage(text);
+                case SYSTEM -> new SystemMessage(text);
+                default -> new AssistantMessage(text, metadata);
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException("会话日志记录损坏", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * 一条消息记录在日志中的位置
+     */
+    private record Pointer(ChatLogSegment segment, int offset, int length, long seq) {
+    }
+
+    private static final class Recovered {
+        private final List<Pointer> pointers = new ArrayList<>();
+        private long clearedBefore = -1;
+        private long lastTimestamp;
+    }
+
+    /**
+     * 会话索引，所有字段在持有该对象的监视器时访问
+     */
+    private final class Conversation {
+        private final String id;
+        private final int capacity;
+        private ArrayDeque<Pointer> pointers = new ArrayDeque<>();
+        private volatile long lastTimestamp;
+        private boolean retired;
+
+        Conversation(String id, int capacity) {
+            this.id = id;
+            this.capacity = Math.max(1, capacity);
+        }
+
+        void push(Pointer pointer) {
+            pointers.addLast(pointer);
+            pointer.segment().liveBytes().addAndGet(pointer.length());
+            if (pointers.size() > capacity) {
+                Pointer evicted = pointers.pollFirst();
+                evicted.segment().liveBytes().addAndGet(-evicted.length());
+            }
+        }
+
+        List<Pointer> last(int n) {
+            List<Pointer> tail = new ArrayList<>(Math.min(n, pointers.size()));
+            int skip = pointers.size() - n;
+            for (Pointer pointer : pointers) {
+                if (skip-- <= 0) {
+                    tail.add(pointer);
+                }
+            }
+            return tail;
+        }
+
+        void dropAll() {
+            for (Pointer pointer : pointers) {
+                pointer.segment().liveBytes().addAndGet(-pointer.length());
+            }
+            pointers.clear();
+        }
+
+        /**
+         * 把位于 segment 中的记录复制到当前段，并更新位置
+         */
+        void relocate(ChatLogSegment segment) {
+            ArrayDeque<Pointer> relocated = new ArrayDeque<>(pointers.size());
+            for (Pointer pointer : pointers) {
+                if (pointer.segment() != segment) {
+                    relocated.addLast(pointer);
+                    continue;
+                }
+                Pointer copy = write(segment.read(pointer.offset()), id);
+                segment.liveBytes().addAndGet(-pointer.length());
+                copy.segment().liveBytes().addAndGet(copy.length());
+                relocated.addLast(copy);
+            }
+            pointers = relocated;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-07 09:40
+ * Description: 向量化结果缓存配置
+ */
+@ConfigurationProperties(prefix = "rag.embedding.cache")
+public class EmbeddingCacheProperties {
+
+    /**
+     * 是否启用文档块向量缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 未命中的文本按该大小分批请求向量化模型
+     */
+    private int batchSize = 64;
+
+    /**
+     * 内存缓存的最大条目数，超出后按最近最少使用淘汰
+     */
+    private int memoryMaxEntries = 20000;
+
+    /**
+     * 磁盘缓存目录，为空时不启用磁盘缓存
+     */
+    private String diskDir;
+
+    /**
+     * 检索时用户问题向量的缓存配置
+     */
+    private final Query query = new Query();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMemoryMaxEntries() {
+        return memoryMaxEntries;
+    }
+
+    public void setMemoryMaxEntries(int memoryMaxEntries) {
+        this.memoryMaxEntries = memoryMaxEntries;
+    }
+
+    public String getDiskDir() {
+        return diskDir;
+    }
+
+    public void setDiskDir(String diskDir) {
+        this.diskDir = diskDir;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public static class Query {
+
+        private boolean enabled = true;
+
+        /**
+         * 最大缓存的问题数量
+         */
+        private int maxEntries = 10000;
+
+        /**
+         * 问题向量的有效期
+         */
+        private Duration ttl = Duration.ofHours(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-25 09:00
+ * Description: 阻塞接口（/chat、/documents）的执行方式
+ * <p>
+ * platform：在 Undertow 工作线程中同步执行，等待 Ollama 期间一直占用工作线程；
+ * virtual：通过 Servlet 异步请求交给虚拟线程执行，工作线程立即释放；
+ * reactive：/chat 通过 Ollama 的流式接口非阻塞地等待结果，等待期间不占用任何线程，其余阻塞操作交给 Reactor 的 boundedElastic 线程池。
+ */
+@ConfigurationProperties(prefix = "rag.execution")
+public class ExecutionProperties {
+
+    public enum Mode {
+        PLATFORM, VIRTUAL, REACTIVE
+    }
+
+    private Mode mode = Mode.PLATFORM;
+
+    /**
+     * 异步请求的超时时间，需大于 Ollama 的读取超时
+     */
+    private Duration asyncTimeout = Duration.ofMinutes(5);
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Duration getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    public void setAsyncTimeout(Duration asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+}
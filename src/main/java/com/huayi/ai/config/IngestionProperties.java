@@ -0,0 +1,211 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 10:05
+ * Description: 异步文档导入流水线配置
+ */
+@ConfigurationProperties(prefix = "rag.ingestion")
+public class IngestionProperties {
+
+    /**
+     * 同时运行的导入任务数，超出的任务排队等待
+     */
+    private int maxConcurrentJobs = 2;
+
+    /**
+     * 阶段之间队列的容量（以批次计），队列满时上游阶段阻塞，形成背压
+     */
+    private int queueCapacity = 8;
+
+    /**
+     * 切分后每个批次包含的文档块数量
+     */
+    private int batchSize = 32;
+
+    /**
+     * 关键词提取阶段的并发数
+     */
+    private int keywordWorkers = 2;
+
+    /**
+     * 向量化阶段的并发数
+     */
+    private int embedWorkers = 2;
+
+    /**
+     * 写入向量库阶段的并发数
+     */
+    private int indexWorkers = 1;
+
+    /**
+     * 已结束任务的状态保留时间
+     */
+    private Duration jobRetention = Duration.ofHours(1);
+
+    /**
+     * 上传文件的暂存目录，为空时使用系统临时目录
+     */
+    private String spoolDir;
+
+    /**
+     * 每个文件的导入清单（文档块编号与内容摘要）所在目录，为空时只保存在内存中；向量库被清空或重建时需一并删除
+     */
+    private String manifestDir = "data/ingestion-manifest";
+
+    /**
+     * 流式解析时缓冲区累积的字符数，达到后在段落结束处切分并输出文档块；解析占用的内存与该值成正比，与文档大小无关
+     */
+    private int parseBufferChars = 16384;
+
+    /**
+     * 目录与压缩包的批量导入
+     */
+    private final Bulk bulk = new Bulk();
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getKeywordWorkers() {
+        return keywordWorkers;
+    }
+
+    public void setKeywordWorkers(int keywordWorkers) {
+        this.keywordWorkers = keywordWorkers;
+    }
+
+    public int getEmbedWorkers() {
+        return embedWorkers;
+    }
+
+    public void setEmbedWorkers(int embedWorkers) {
+        this.embedWorkers = embedWorkers;
+    }
+
+    public int getIndexWorkers() {
+        return indexWorkers;
+    }
+
+    public void setIndexWorkers(int indexWorkers) {
+        this.indexWorkers = indexWorkers;
+    }
+
+    public Duration getJobRetention() {
+        return jobRetention;
+    }
+
+    public void setJobRetention(Duration jobRetention) {
+        this.jobRetention = jobRetention;
+    }
+
+    public String getSpoolDir() {
+        return spoolDir;
+    }
+
+    public void setSpoolDir(String spoolDir) {
+        this.spoolDir = spoolDir;
+    }
+
+    public String getManifestDir() {
+        return manifestDir;
+    }
+
+    public void setManifestDir(String manifestDir) {
+        this.manifestDir = manifestDir;
+    }
+
+    public int getParseBufferChars() {
+        return parseBufferChars;
+    }
+
+    public void setParseBufferChars(int parseBufferChars) {
+        this.parseBufferChars = parseBufferChars;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public static class Bulk {
+
+        /**
+         * 解析、切分与关键词提取的并行度，0 表示使用 CPU 核数；向量化与写入使用 embedWorkers、indexWorkers 之外的独立线程
+         */
+        private int parallelism = 0;
+
+        /**
+         * 同时处理中（已开始解析、尚未写入完成）的文件数上限，0 表示并行度的 2 倍，决定批量导入占用的内存与临时文件
+         */
+        private int maxFilesInFlight = 0;
+
+        /**
+         * 压缩包中单个文件解压后的大小上限，超出的文件记为失败并跳过
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(100);
+
+        /**
+         * 允许通过接口导入的服务器目录，为空时禁用目录导入接口；命令行导入不受限制
+         */
+        private List<String> allowedRoots = new ArrayList<>();
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getMaxFilesInFlight() {
+            return maxFilesInFlight;
+        }
+
+        public void setMaxFilesInFlight(int maxFilesInFlight) {
+            this.maxFilesInFlight = maxFilesInFlight;
+        }
+
+        public DataSize getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public void setMaxEntrySize(DataSize maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        public List<String> getAllowedRoots() {
+            return allowedRoots;
+        }
+
+        public void setAllowedRoots(List<String> allowedRoots) {
+            this.allowedRoots = allowedRoots;
+        }
+    }
+}
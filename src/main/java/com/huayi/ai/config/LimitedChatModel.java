@@ -0,0 +1,75 @@
+package com.huayi.ai.config;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 10:30
+ * Description: 经过 {@link AdmissionLimiter} 准入控制的对话模型
+ * <p>
+ * 同步调用以整次调用的耗时作为延迟样本；流式调用以首个分片的耗时（TTFT）作为样本，
+ * 生成长度不同的回答因此可以互相比较，许可在流结束、出错或被取消时归还（release 可重复调用，只生效一次）。
+ * 优先级默认为交互，会话摘要等后台任务通过 {@link AdmissionLimiter#callAs} 指定。
+ */
+public class LimitedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final AdmissionLimiter limiter;
+
+    public LimitedChatModel(ChatModel delegate, AdmissionLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        AdmissionLimiter.Permit permit = limiter.acquireBlocking("chat.call",
+                AdmissionLimiter.currentPriority(AdmissionLimiter.Priority.INTERACTIVE));
+        boolean success = false;
+        try {
+            ChatResponse response = delegate.call(prompt);
+            success = true;
+            return response;
+        } finally {
+            permit.sample(System.nanoTime() - permit.granted(), success);
+            permit.release();
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        AdmissionLimiter.Priority priority = AdmissionLimiter.currentPriority(AdmissionLimiter.Priority.INTERACTIVE);
+        // 订阅时才申请许可，取消订阅时放弃申请：排队中的请求移出队列，与取消同时授予的许可直接归还
+        return Mono.defer(() -> {
+                    CompletableFuture<AdmissionLimiter.Permit> future = limiter.acquire("chat.stream", priority);
+                    return Mono.fromFuture(future, true)
+                            .doOnCancel(() -> AdmissionLimiter.abandon(future));
+                })
+                .doOnDiscard(AdmissionLimiter.Permit.class, AdmissionLimiter.Permit::release)
+                .flatMapMany(permit -> {
+                    AtomicBoolean first = new AtomicBoolean(true);
+                    return delegate.stream(prompt)
+                            .doOnNext(response -> {
+                                if (first.compareAndSet(true, false)) {
+                                    permit.sample(System.nanoTime() - permit.granted(), true);
+                                }
+                            })
+                            .doOnError(e -> permit.sample(System.nanoTime() - permit.granted(), false))
+                            .doFinally(signal -> permit.release());
+                });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+}
@@ -0,0 +1,57 @@
+package com.huayi.ai.config;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-26 10:50
+ * Description: 经过 {@link AdmissionLimiter} 准入控制的向量化模型
+ * <p>
+ * 单条文本（通常是用户问题）默认为交互优先级，多条文本的批量请求默认为批量优先级；
+ * 延迟样本按每条文本的平均耗时计算，不同批次大小的请求因此可以互相比较。
+ */
+public class LimitedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    private final AdmissionLimiter limiter;
+
+    public LimitedEmbeddingModel(EmbeddingModel delegate, AdmissionLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        int inputs = Math.max(1, request.getInstructions().size());
+        AdmissionLimiter.Priority priority = AdmissionLimiter.currentPriority(
+                inputs > 1 ? AdmissionLimiter.Priority.BULK : AdmissionLimiter.Priority.INTERACTIVE);
+        AdmissionLimiter.Permit permit = limiter.acquireBlocking("embedding", priority);
+        boolean success = false;
+        try {
+            EmbeddingResponse response = delegate.call(request);
+            success = true;
+            return response;
+        } finally {
+            permit.sample((System.nanoTime() - permit.granted()) / inputs, success);
+            permit.release();
+        }
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return call(new EmbeddingRequest(List.of(document.getText()), EmbeddingOptionsBuilder.builder().build()))
+                .getResult().getOutput();
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,253 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 11:50
+ * Description: 向量库选择及本地向量库配置
+ */
+@ConfigurationProperties(prefix = "rag.vectorstore")
+public class LocalVectorStoreProperties {
+
+    /**
+     * 检索和写入使用的向量库：elasticsearch、local（进程内 HNSW）或 exact（进程内精确检索）
+     */
+    private String type = "elasticsearch";
+
+    private final Local local = new Local();
+
+    private final Exact exact = new Exact();
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Local getLocal() {
+        return local;
+    }
+
+    public Exact getExact() {
+        return exact;
+    }
+
+    public static class Local {
+
+        /**
+         * 向量段文件与快照所在目录，为空时只保存在内存中
+         */
+        private String dir;
+
+        /**
+         * 向量维度，需与向量化模型一致
+         */
+        private int dimensions = 768;
+
+        /**
+         * HNSW 每个节点的邻居数（第 0 层为 2 倍）
+         */
+        private int m = 16;
+
+        /**
+         * 构建图时的候选队列大小
+         */
+        private int efConstruction = 100;
+
+        /**
+         * 检索时的候选队列大小，不小于 topK
+         */
+        private int efSearch = 64;
+
+        /**
+         * 每个向量段文件容纳的向量数量
+         */
+        private int segmentSize = 16384;
+
+        /**
+         * 有新写入时保存快照的间隔
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(5);
+
+        /**
+         * 被删除（含被覆盖）的节点占比达到该值时重建图并回收空间，0 表示不压缩
+         */
+        private double compactionRatio = 0.3;
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public int getDimensions() {
+            return dimensions;
+        }
+
+        public void setDimensions(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        public int getM() {
+            return m;
+        }
+
+        public void setM(int m) {
+            this.m = m;
+        }
+
+        public int getEfConstruction() {
+            return efConstruction;
+        }
+
+        public void setEfConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public Duration getSnapshotInterval() {
+            return snapshotInterval;
+        }
+
+        public void setSnapshotInterval(Duration snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        public double getCompactionRatio() {
+            return compactionRatio;
+        }
+
+        public void setCompactionRatio(double compactionRatio) {
+            this.compactionRatio = compactionRatio;
+        }
+    }
+
+    public static class Exact {
+
+        /**
+         * 快照文件路径，为空时只保存在内存中
+         */
+        private String file;
+
+        /**
+         * 向量维度，需与向量化模型一致
+         */
+        private int dimensions = 768;
+
+        /**
+         * 是否使用 int8 量化扫描，命中的候选再用原始向量重新打分
+         */
+        private boolean quantized = true;
+
+        /**
+         * int8 扫描的候选数量为 topK 的倍数
+         */
+        private int oversample = 4;
+
+        /**
+         * 并行扫描的线程数，0 表示使用 CPU 核数
+         */
+        private int parallelism = 0;
+
+        /**
+         * 每个并行分区最少的向量数量，数据量较小时不拆分
+         */
+        private int minPartitionSize = 16384;
+
+        /**
+         * 有新写入时保存快照的间隔
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(5);
+
+        /**
+         * 被删除（含被覆盖）的向量占比达到该值时重建引擎并回收空间，0 表示不压缩
+         */
+        private double compactionRatio = 0.3;
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public int getDimensions() {
+            return dimensions;
+        }
+
+        public void setDimensions(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        public boolean isQuantized() {
+            return quantized;
+        }
+
+        public void setQuantized(boolean quantized) {
+            this.quantized = quantized;
+        }
+
+        public int getOversample() {
+            return oversample;
+        }
+
+        public void setOversample(int oversample) {
+            this.oversample = oversample;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getMinPartitionSize() {
+            return minPartitionSize;
+        }
+
+        public void setMinPartitionSize(int minPartitionSize) {
+            this.minPartitionSize = minPartitionSize;
+        }
+
+        public Duration getSnapshotInterval() {
+            return snapshotInterval;
+        }
+
+        public void setSnapshotInterval(Duration snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        public double getCompactionRatio() {
+            return compactionRatio;
+        }
+
+        public void setCompactionRatio(double compactionRatio) {
+            this.compactionRatio = compactionRatio;
+        }
+    }
+}
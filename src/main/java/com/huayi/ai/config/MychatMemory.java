@@ -1,24 +1,86 @@
 package com.huayi.ai.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Author: YuJian
  * Create: 2025-02-28 09:21
- * Description:
+ * Description: 有界的内存会话记忆
+ * <p>
+ * 每个会话是一个固定容量的环形缓冲区，只保留最近 capacity 条消息。写入只锁定所属会话，
+ * 读取不加锁：按已发布的序号读取最近 N 条，被覆盖的槽位通过序号校验跳过，只复制需要返回的消息。
+ * <p>
+ * 会话空闲超过 idleTtl 后由后台线程淘汰；所有会话的估算内存超过上限时，按最近访问时间淘汰最久未使用的会话。
  */
 @Component
+@ConditionalOnProperty(prefix = "rag.chat.memory", name = "store", havingValue = "memory", matchIfMissing = true)
 public class MychatMemory implements ChatMemory {
+    private static final Logger logger = LoggerFactory.getLogger(MychatMemory.class);
 
-    Map<String, List<Message>> conversationHistory = new ConcurrentHashMap<>();
+    /**
+     * 超出内存上限后淘汰到上限的该比例，避免每次写入都触发淘汰
+     */
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final ChatMemoryProperties properties;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    private final AtomicLong memoryBytes = new AtomicLong();
+
+    private final AtomicLong messageCount = new AtomicLong();
+
+    /**
+     * 只有一个线程执行按内存淘汰，其他线程 tryLock 失败时直接返回
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ScheduledExecutorService sweeper;
+
+    private final Counter budgetEvictions;
+    private final Counter idleEvictions;
+    private final Counter overwrites;
+    private final Counter contention;
+
+    public MychatMemory(ChatMemoryProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.budgetEvictions = Counter.builder("rag.chat.memory.evictions").tag("reason", "budget").register(meterRegistry);
+        this.idleEvictions = Counter.builder("rag.chat.memory.evictions").tag("reason", "idle").register(meterRegistry);
+        this.overwrites = Counter.builder("rag.chat.memory.overwrites").register(meterRegistry);
+        this.contention = Counter.builder("rag.chat.memory.contention").register(meterRegistry);
+        Gauge.builder("rag.chat.memory.conversations", conversations, Map::size).register(meterRegistry);
+        Gauge.builder("rag.chat.memory.messages", messageCount, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("rag.chat.memory.memory", memoryBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSweepInterval().toMillis();
+        sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
     /**
      * 添加多条消息到指定会话的历史记录中
@@ -27,9 +89,16 @@ public class MychatMemory implements ChatMemory {
      */
     @Override
     public void add(String conversationId, List<Message> messages) {
-        // 当会话不存在时创建线程安全的空列表，并将新消息批量追加到列表末尾
-        this.conversationHistory.computeIfAbsent(conversationId, id -> Collections.synchronizedList(new ArrayList<>()))
-                .addAll(messages);
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 会话可能在取出后被淘汰，此时重新创建会话后再写入
+        while (!conversation(conversationId).append(messages)) {
+            // 重试时 computeIfAbsent 会创建新的会话
+        }
+        if (memoryBytes.get() > properties.getMaxMemory().toBytes()) {
+            evictOverBudget();
+        }
     }
 
     /**
@@ -39,9 +108,7 @@ public class MychatMemory implements ChatMemory {
      */
     @Override
     public void add(String conversationId, Message message) {
-        // 当会话不存在时创建线程安全的空列表，并将新消息追加到列表末尾
-        this.conversationHistory.computeIfAbsent(conversationId, id -> Collections.synchronizedList(new ArrayList<>()))
-                .add(message);
+        add(conversationId, List.of(message));
     }
 
     /**
@@ -52,14 +119,11 @@ public class MychatMemory implements ChatMemory {
      */
     @Override
     public List<Message> get(String conversationId, int lastN) {
-        List<Message> allMessages = conversationHistory.get(conversationId);
-        // 处理空会话记录的特殊情况
-        if (allMessages == null || allMessages.isEmpty()) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null || lastN <= 0) {
             return List.of();
         }
-        // 计算截取起始位置，确保不会越界。通过创建新列表隔离原始数据
-        int start = Math.max(0, allMessages.size() - lastN);
-        return new ArrayList<>(allMessages.subList(start, allMessages.size()));
+        return conversation.last(lastN);
     }
 
     /**
@@ -68,8 +132,193 @@ public class MychatMemory implements ChatMemory {
      */
     @Override
     public void clear(String conversationId) {
-        // 直接移除整个会话的存储条目
-        conversationHistory.remove(conversationId);
+        Conversation conversation = conversations.remove(conversationId);
+        if (conversation != null) {
+            conversation.retire();
+        }
+    }
+
+    int conversationCount() {
+        return conversations.size();
+    }
+
+    long memoryBytes() {
+        return memoryBytes.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private Conversation conversation(String conversationId) {
+        return conversations.computeIfAbsent(conversationId, id -> new Conversation(properties.getCapacity()));
+    }
+
+    /**
+     * 淘汰空闲超过 idleTtl 的会话
+     */
+    private void evictIdle() {
+        long deadline = System.nanoTime() - properties.getIdleTtl().toNanos();
+        int evicted = 0;
+        for (Map.Entry<String, Conversation> entry : conversations.entrySet()) {
+            Conversation conversation = entry.getValue();
+            if (conversation.lastAccess - deadline < 0 && conversations.remove(entry.getKey(), conversation)) {
+                conversation.retire();
+                idleEvictions.increment();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("淘汰空闲会话 {} 个，剩余 {} 个", evicted, conversations.size());
+        }
+    }
+
+    /**
+     * 按最近访问时间从旧到新淘汰会话，直到内存降到上限的 {@link #LOW_WATERMARK}
+     */
+    private void evictOverBudget() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long target = (long) (properties.getMaxMemory().toBytes() * LOW_WATERMARK);
+            if (memoryBytes.get() <= target) {
+                return;
+            }
+            List<Map.Entry<String, Conversation>> candidates = new ArrayList<>(conversations.entrySet());
+            // lastAccess 会被并发更新，先取快照再排序，保证比较器前后一致
+            long[] accessed = new long[candidates.size()];
+            Integer[] order = new Integer[candidates.size()];
+            for (int i = 0; i < order.length; i++) {
+                accessed[i] = candidates.get(i).getValue().lastAccess;
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> accessed[i]));
+            for (int i = 0; i < order.length && memoryBytes.get() > target; i++) {
+                Map.Entry<String, Conversation> entry = candidates.get(order[i]);
+                if (conversations.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().retire();
+                    budgetEvictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
+    /**
+     * 估算单条消息占用的内存：对象与字段固定开销按 96 字节、文本按 UTF-16 计算
+     */
+    private static long estimateBytes(Message message) {
+        String text = message.getText();
+        return 96L + (text == null ? 0 : text.length() * 2L) + message.getMetadata().size() * 64L;
+    }
+
+    /**
+     * 环形缓冲区中的一个槽位，seq 用于读取时判断槽位是否已被新消息覆盖
+     */
+    private record Slot(long seq, Message message, long bytes) {
+    }
+
+    private final class Conversation {
+        private final AtomicReferenceArray<Slot> slots;
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 下一条消息的序号，写入槽位后才递增，读取线程只读取小于该值的序号
+         */
+        private volatile long published;
+
+        private volatile long lastAccess = System.nanoTime();
+
+        /**
+         * 当前保存的消息占用的内存，只在持有 lock 时修改
+         */
+        private long bytes;
+
+        private boolean retired;
+
+        Conversation(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.slots = new AtomicReferenceArray<>(this.capacity);
+        }
+
+        /**
+         * 追加消息，会话已被淘汰时返回 false
+         */
+        boolean append(List<Message> messages) {
+            if (!lock.tryLock()) {
+                contention.increment();
+                lock.lock();
+            }
+            try {
+                if (retired) {
+                    return false;
+                }
+                long seq = published;
+                long delta = 0;
+                int added = 0;
+                for (Message message : messages) {
+                    int index = (int) (seq % capacity);
+                    Slot old = slots.get(index);
+                    if (old != null) {
+                        delta -= old.bytes;
+                        added--;
+                        overwrites.increment();
+                    }
+                    Slot slot = new Slot(seq, message, estimateBytes(message));
+                    slots.set(index, slot);
+                    delta += slot.bytes;
+                    added++;
+                    seq++;
+                }
+                published = seq;
+                bytes += delta;
+                memoryBytes.addAndGet(delta);
+                messageCount.addAndGet(added);
+                lastAccess = System.nanoTime();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 读取最近 n 条消息，不加锁
+         */
+        List<Message> last(int n) {
+            lastAccess = System.nanoTime();
+            long end = published;
+            long start = Math.max(0, end - Math.min(n, capacity));
+            List<Message> result = new ArrayList<>((int) (end - start));
+            for (long seq = start; seq < end; seq++) {
+                Slot slot = slots.get((int) (seq % capacity));
+                // 读取期间被新消息覆盖的最早几条直接跳过
+                if (slot != null && slot.seq == seq) {
+                    result.add(slot.message);
+                }
+            }
+            return List.copyOf(result);
+        }
+
+        /**
+         * 从记忆中移除后调用，扣除占用的内存，之后的写入会转到新建的会话
+         */
+        void retire() {
+            lock.lock();
+            try {
+                if (retired) {
+                    return;
+                }
+                retired = true;
+                memoryBytes.addAndGet(-bytes);
+                long held = Math.min(published, capacity);
+                messageCount.addAndGet(-held);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
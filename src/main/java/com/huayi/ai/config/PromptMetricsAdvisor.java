@@ -0,0 +1,78 @@
+package com.huayi.ai.config;
+
+import com.huayi.ai.chat.util.TokenEstimator;
+import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-21 10:10
+ * Description: 记录最终提示词大小与检索文档块数的 Advisor
+ * <p>
+ * 排在所有 Advisor 之后、调用模型之前执行，此时检索结果和会话历史都已放入请求参数，
+ * 按 {@link TokenEstimator} 估算系统提示词、用户提示词、模板参数与历史消息的 token 数。
+ */
+public class PromptMetricsAdvisor implements CallAroundAdvisor, StreamAroundAdvisor {
+
+    private final RagMetrics metrics;
+
+    private final String pipeline;
+
+    public PromptMetricsAdvisor(RagMetrics metrics, String pipeline) {
+        this.metrics = metrics;
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public String getName() {
+        return PromptMetricsAdvisor.class.getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // 调用模型的 Advisor 为 LOWEST_PRECEDENCE
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        record(advisedRequest);
+        return chain.nextAroundCall(advisedRequest);
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        record(advisedRequest);
+        return chain.nextAroundStream(advisedRequest);
+    }
+
+    private void record(AdvisedRequest request) {
+        int tokens = TokenEstimator.estimate(request.systemText())
+                + estimate(request.systemParams())
+                + TokenEstimator.estimate(request.userText())
+                + estimate(request.userParams())
+                + TokenEstimator.estimate(request.messages());
+        Object retrieved = request.adviseContext().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+        metrics.recordPrompt(pipeline, tokens, retrieved instanceof List<?> documents ? documents.size() : -1);
+    }
+
+    private static int estimate(Map<String, Object> params) {
+        int tokens = 0;
+        for (Object value : params.values()) {
+            if (value != null) {
+                tokens += TokenEstimator.estimate(value.toString());
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,16 +1,29 @@
 package com.huayi.ai.config;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.huayi.ai.ingestion.service.CachingEmbeddingModel;
+import com.huayi.ai.ingestion.service.ElasticsearchRetrievalStore;
+import com.huayi.ai.ingestion.store.ExactVectorStore;
+import com.huayi.ai.ingestion.store.LocalHnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.elasticsearch.client.RestClient;
 import org.springframework.ai.autoconfigure.vectorstore.elasticsearch.ElasticsearchVectorStoreProperties;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchVectorStore;
 import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchVectorStoreOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.util.Optional;
 
@@ -20,20 +33,94 @@ import java.util.Optional;
  * Description:
  */
 @Configuration
+@EnableConfigurationProperties({IngestionProperties.class, EmbeddingCacheProperties.class, AnswerCacheProperties.class,
+        BulkIngestProperties.class, VectorIndexProperties.class, RetrievalProperties.class,
+        LocalVectorStoreProperties.class, ChatMemoryProperties.class, StreamingProperties.class,
+        ExecutionProperties.class, AdmissionProperties.class, RerankProperties.class, CompressionProperties.class})
 public class RAGConfiguration {
 
+    @Bean(destroyMethod = "shutdown")
+    public AdmissionLimiter admissionLimiter(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        return new AdmissionLimiter(properties, meterRegistry);
+    }
+
+    /**
+     * 对话、RAG 问答和会话摘要共用的对话模型，经过准入控制后再调用 Ollama
+     */
+    @Bean
+    @Primary
+    public ChatModel limitedChatModel(OllamaChatModel ollamaChatModel, AdmissionLimiter admissionLimiter,
+                                      AdmissionProperties properties) {
+        if (!properties.isEnabled()) {
+            return ollamaChatModel;
+        }
+        return new LimitedChatModel(ollamaChatModel, admissionLimiter);
+    }
+
+    /**
+     * 在 Ollama 向量化模型外包装一层缓存，文档块缓存和问题缓存都关闭时直接使用原始模型；
+     * 准入控制在缓存之内，命中缓存的文本不占用 Ollama 的并发
+     */
+    @Bean
+    @Primary
+    public EmbeddingModel cachingEmbeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                                EmbeddingCacheProperties cacheProperties,
+                                                AdmissionLimiter admissionLimiter,
+                                                AdmissionProperties admissionProperties,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${spring.ai.ollama.embedding.model:nomic-embed-text}") String modelName) {
+        EmbeddingModel model = admissionProperties.isEnabled()
+                ? new LimitedEmbeddingModel(ollamaEmbeddingModel, admissionLimiter) : ollamaEmbeddingModel;
+        if (!cacheProperties.isEnabled() && !cacheProperties.getQuery().isEnabled()) {
+            return model;
+        }
+        return new CachingEmbeddingModel(model, modelName, cacheProperties, meterRegistry);
+    }
+
     @Bean
-    public ElasticsearchVectorStore elasticsearchVectorStore(OllamaEmbeddingModel ollamaEmbeddingModel, RestClient restClient, ElasticsearchVectorStoreProperties properties) {
+    public ElasticsearchVectorStore elasticsearchVectorStore(EmbeddingModel embeddingModel, RestClient restClient, ElasticsearchVectorStoreProperties properties,
+                                                             ObservationRegistry observationRegistry) {
         ElasticsearchVectorStoreOptions options = new ElasticsearchVectorStoreOptions();
         options.setIndexName(properties.getIndexName());
         options.setDimensions(properties.getDimensions());
         options.setSimilarity(properties.getSimilarity());
-        return ElasticsearchVectorStore.builder(restClient, ollamaEmbeddingModel).options(options).build();
+        return ElasticsearchVectorStore.builder(restClient, embeddingModel).options(options)
+                .observationRegistry(observationRegistry).build();
+    }
+
+    /**
+     * 进程内 HNSW 向量库，rag.vectorstore.type=local 时启用
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.vectorstore", name = "type", havingValue = "local")
+    public LocalHnswVectorStore localHnswVectorStore(EmbeddingModel embeddingModel, LocalVectorStoreProperties properties) {
+        return new LocalHnswVectorStore(embeddingModel, properties.getLocal());
+    }
+
+    /**
+     * 进程内精确检索向量库，rag.vectorstore.type=exact 时启用
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "rag.vectorstore", name = "type", havingValue = "exact")
+    public ExactVectorStore exactVectorStore(EmbeddingModel embeddingModel, LocalVectorStoreProperties properties) {
+        return new ExactVectorStore(embeddingModel, properties.getExact());
     }
 
+    /**
+     * 文档写入与检索使用的向量库
+     */
     @Bean
-    public SimpleVectorStore simpleVectorStore(OllamaEmbeddingModel embeddingModel) {
-        return SimpleVectorStore.builder(embeddingModel).build();
+    public VectorStore ragVectorStore(LocalVectorStoreProperties properties,
+                                      ElasticsearchRetrievalStore elasticsearchRetrievalStore,
+                                      ObjectProvider<LocalHnswVectorStore> localHnswVectorStore,
+                                      ObjectProvider<ExactVectorStore> exactVectorStore) {
+        if ("local".equalsIgnoreCase(properties.getType())) {
+            return localHnswVectorStore.getObject();
+        }
+        if ("exact".equalsIgnoreCase(properties.getType())) {
+            return exactVectorStore.getObject();
+        }
+        return elasticsearchRetrievalStore;
     }
 
     @Bean
@@ -43,14 +130,16 @@ public class RAGConfiguration {
     }
 
     @Bean(name = "ragClient")
-    public ChatClient ragClient(OllamaChatModel ollamaChatModel) {
-        return ChatClient.builder(ollamaChatModel).defaultSystem(
+    public ChatClient ragClient(ChatModel chatModel, RagMetrics ragMetrics) {
+        // 传入 ObservationRegistry 后 ChatClient 与各 Advisor（包括 QuestionAnswerAdvisor）的耗时也会被记录
+        return ChatClient.builder(chatModel, ragMetrics.observationRegistry(), null).defaultSystem(
                         """
                                 你是一家名叫“xx信息科技”的知识库助手。
                                 你会严格依据给定文档信息而不是已有的知识来回复用户问题。
                                 如果答案不在文档信息中，你会准确的通知用户未找到匹配的内容。
                                 """
                 )
+                .defaultAdvisors(new PromptMetricsAdvisor(ragMetrics, RagMetrics.QUERY))
                 .build();
     }
 }
@@ -0,0 +1,295 @@
+package com.huayi.ai.config;
+
+import com.huayi.ai.chat.util.TokenEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-21 09:30
+ * Description: 问答、对话与导入流程的耗时和吞吐指标
+ * <p>
+ * 各阶段通过 Observation 记录为 rag.stage 计时器（标签 pipeline、stage），没有引入链路追踪时只产生计时器，
+ * 引入 micrometer-tracing 后同一个 Observation 会同时生成 span。流式生成额外记录首字延迟与每秒 token 数，
+ * 提示词大小与检索到的文档块数由 {@link PromptMetricsAdvisor} 在调用模型前记录。
+ * <p>
+ * 指标通过 /actuator/prometheus 以 Prometheus 格式输出。
+ */
+@Component
+public class RagMetrics {
+
+    public static final String QUERY = "query";
+    public static final String CHAT = "chat";
+    public static final String INGEST = "ingest";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ObservationRegistry observationRegistry;
+
+    /**
+     * 按 pipeline 缓存的指标，避免每次请求都查找注册表
+     */
+    private final Map<String, GenerationMeters> generationMeters = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributionSummary> ingestionThroughput = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> ingestedChunks = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> skippedChunks = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> deletedChunks = new ConcurrentHashMap<>();
+
+    public RagMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    public ObservationRegistry observationRegistry() {
+        return observationRegistry;
+    }
+
+    /**
+     * 在 pipeline 的 stage 阶段内执行并计时
+     */
+    public <T> T observe(String pipeline, String stage, Supplier<T> work) {
+        return stage(pipeline, stage).observe(work);
+    }
+
+    public void observe(String pipeline, String stage, Runnable work) {
+        stage(pipeline, stage).observe(work);
+    }
+
+    private Observation stage(String pipeline, String stage) {
+        return Observation.createNotStarted("rag.stage", observationRegistry)
+                .contextualName(pipeline + " " + stage)
+                .lowCardinalityKeyValue("pipeline", pipeline)
+                .lowCardinalityKeyValue("stage", stage);
+    }
+
+    /**
+     * 包装向量库，检索耗时计入 pipeline 的 retrieval 阶段
+     */
+    public VectorStore observe(String pipeline, VectorStore delegate) {
+        return new ObservedVectorStore(delegate, pipeline);
+    }
+
+    /**
+     * 为流式生成计时：订阅到第一个非空片段为首字延迟，第一个片段到结束之间的输出 token 数折算为每秒 token 数。
+     * 输出 token 数优先取模型返回的用量，没有时按输出文本估算。
+     */
+    public Flux<ChatResponse> observeStream(String pipeline, Flux<ChatResponse> responses) {
+        GenerationMeters meters = generationMeters(pipeline);
+        return Flux.defer(() -> {
+            Observation observation = stage(pipeline, "generation").start();
+            long start = System.nanoTime();
+            StreamState state = new StreamState();
+            return responses
+                    .doOnNext(response -> {
+                        String text = textOf(response);
+                        if (text != null && !text.isEmpty()) {
+                            if (state.firstToken == 0) {
+                                state.firstToken = System.nanoTime();
+                                meters.ttft.record(state.firstToken - start, TimeUnit.NANOSECONDS);
+                            }
+                            state.estimatedTokens += TokenEstimator.estimate(text);
+                        }
+                        long reported = generationTokens(response);
+                        if (reported > 0) {
+                            state.reportedTokens = reported;
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        meters.record(state.tokens(), state.firstToken == 0 ? 0 : System.nanoTime() - state.firstToken);
+                        observation.stop();
+                    })
+                    .doOnError(e -> {
+                        observation.error(e);
+                        observation.stop();
+                    })
+                    .doOnCancel(observation::stop);
+        });
+    }
+
+    /**
+     * 为同步生成计时，每秒 token 数按整个调用耗时计算
+     */
+    public ChatResponse observeCall(String pipeline, Supplier<ChatResponse> call) {
+        GenerationMeters meters = generationMeters(pipeline);
+        long start = System.nanoTime();
+        ChatResponse response = observe(pipeline, "generation", call);
+        long tokens = generationTokens(response);
+        if (tokens <= 0) {
+            String text = textOf(response);
+            tokens = text == null ? 0 : TokenEstimator.estimate(text);
+        }
+        meters.record(tokens, System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * 记录一次放入提示词的 token 数（估算）与检索到的文档块数，没有检索时 documents 为负数
+     */
+    public void recordPrompt(String pipeline, int promptTokens, int documents) {
+        GenerationMeters meters = generationMeters(pipeline);
+        meters.promptTokens.record(promptTokens);
+        if (documents >= 0) {
+            meters.retrievedDocuments.record(documents);
+        }
+    }
+
+    /**
+     * 记录一次导入写入的文档块数与耗时
+     */
+    public void recordIngestion(String source, long chunks, long nanos) {
+        ingestedChunks.computeIfAbsent(source, s -> Counter.builder("rag.ingestion.chunks")
+                .description("写入向量库的文档块数").tag("source", s).register(meterRegistry)).increment(chunks);
+        if (chunks > 0 && nanos > 0) {
+            ingestionThroughput.computeIfAbsent(source, s -> DistributionSummary.builder("rag.ingestion.chunks.per.second")
+                    .description("每次导入每秒写入的文档块数").tag("source", s).register(meterRegistry))
+                    .record(chunks * 1e9 / nanos);
+        }
+    }
+
+    /**
+     * 记录一次增量导入中内容未变而跳过的文档块数，以及删除的旧版本文档块数
+     */
+    public void recordIncremental(String source, long skipped, long deleted) {
+        skippedChunks.computeIfAbsent(source, s -> Counter.builder("rag.ingestion.chunks.skipped")
+                .description("内容未变、跳过向量化的文档块数").tag("source", s).register(meterRegistry)).increment(skipped);
+        deletedChunks.computeIfAbsent(source, s -> Counter.builder("rag.ingestion.chunks.deleted")
+                .description("重新导入时删除的旧版本文档块数").tag("source", s).register(meterRegistry)).increment(deleted);
+    }
+
+    private GenerationMeters generationMeters(String pipeline) {
+        return generationMeters.computeIfAbsent(pipeline, p -> new GenerationMeters(meterRegistry, p));
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    /**
+     * 模型返回的输出 token 数，Ollama 只在最后一个流式片段中返回
+     */
+    private static long generationTokens(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return 0;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        Number tokens = usage == null ? null : usage.getGenerationTokens();
+        return tokens == null ? 0 : tokens.longValue();
+    }
+
+    private static final class StreamState {
+        private long firstToken;
+        private long estimatedTokens;
+        private long reportedTokens;
+
+        long tokens() {
+            return reportedTokens > 0 ? reportedTokens : estimatedTokens;
+        }
+    }
+
+    private static final class GenerationMeters {
+        private final Timer ttft;
+        private final DistributionSummary tokensPerSecond;
+        private final DistributionSummary outputTokens;
+        private final DistributionSummary promptTokens;
+        private final DistributionSummary retrievedDocuments;
+
+        GenerationMeters(MeterRegistry meterRegistry, String pipeline) {
+            this.ttft = Timer.builder("rag.generation.ttft")
+                    .description("从发起生成到收到第一个输出片段的时间")
+                    .tag("pipeline", pipeline)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.tokensPerSecond = DistributionSummary.builder("rag.generation.tokens.per.second")
+                    .description("生成阶段每秒输出的 token 数")
+                    .tag("pipeline", pipeline)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(1000.0)
+                    .register(meterRegistry);
+            this.outputTokens = DistributionSummary.builder("rag.generation.tokens")
+                    .description("每次生成输出的 token 数")
+                    .baseUnit("tokens")
+                    .tag("pipeline", pipeline)
+                    .register(meterRegistry);
+            this.promptTokens = DistributionSummary.builder("rag.prompt.tokens")
+                    .description("每次放入提示词的 token 数（估算）")
+                    .baseUnit("tokens")
+                    .tag("pipeline", pipeline)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(32768.0)
+                    .register(meterRegistry);
+            this.retrievedDocuments = DistributionSummary.builder("rag.retrieval.documents")
+                    .description("每次检索放入提示词的文档块数")
+                    .tag("pipeline", pipeline)
+                    .register(meterRegistry);
+        }
+
+        void record(long tokens, long nanos) {
+            outputTokens.record(tokens);
+            if (tokens > 0 && nanos > 0) {
+                tokensPerSecond.record(tokens * 1e9 / nanos);
+            }
+        }
+    }
+
+    /**
+     * 只为检索计时的向量库包装，写入和删除直接转发
+     */
+    private final class ObservedVectorStore implements VectorStore {
+        private final VectorStore delegate;
+        private final String pipeline;
+
+        ObservedVectorStore(VectorStore delegate, String pipeline) {
+            this.delegate = delegate;
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            delegate.add(documents);
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+            delegate.delete(idList);
+        }
+
+        public void delete(Filter.Expression filterExpression) {
+            delegate.delete(filterExpression);
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return observe(pipeline, "retrieval", () -> delegate.similaritySearch(request));
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+    }
+}
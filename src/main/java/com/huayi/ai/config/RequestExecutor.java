@@ -0,0 +1,90 @@
+package com.huayi.ai.config;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-25 09:20
+ * Description: 按 {@link ExecutionProperties} 的模式执行阻塞接口的处理逻辑
+ * <p>
+ * 接口返回 CompletableFuture，Spring MVC 将其作为异步请求处理：platform 模式在当前线程中执行完后返回已完成的结果，
+ * 其余模式在返回后释放 Undertow 工作线程，由虚拟线程或 boundedElastic 线程执行。
+ * virtual 模式下 Spring MVC 写出流式响应使用的线程也换成虚拟线程。
+ * <p>
+ * Ollama 的同步请求和 Elasticsearch 客户端都在调用线程中阻塞等待，在虚拟线程中等待时只占用很少的内存，
+ * 不需要为这两个客户端单独配置线程池。
+ */
+@Component
+public class RequestExecutor implements WebMvcConfigurer {
+    private static final Logger logger = LoggerFactory.getLogger(RequestExecutor.class);
+
+    private final ExecutionProperties properties;
+
+    /**
+     * virtual 模式的执行器，其他模式为空
+     */
+    private final ExecutorService executor;
+
+    public RequestExecutor(ExecutionProperties properties) {
+        this.properties = properties;
+        this.executor = properties.getMode() == ExecutionProperties.Mode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        logger.info("阻塞接口执行模式：{}", properties.getMode());
+    }
+
+    public boolean isReactive() {
+        return properties.getMode() == ExecutionProperties.Mode.REACTIVE;
+    }
+
+    /**
+     * 按当前模式执行，异常通过返回的 CompletableFuture 传递
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> work) {
+        return switch (properties.getMode()) {
+            case PLATFORM -> {
+                try {
+                    yield CompletableFuture.completedFuture(work.call());
+                } catch (Exception e) {
+                    yield CompletableFuture.failedFuture(e);
+                }
+            }
+            case VIRTUAL -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return work.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            case REACTIVE -> Mono.fromCallable(work).subscribeOn(Schedulers.boundedElastic()).toFuture();
+        };
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(properties.getAsyncTimeout().toMillis());
+        if (executor != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
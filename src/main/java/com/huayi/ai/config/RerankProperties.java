@@ -0,0 +1,132 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-27 09:30
+ * Description: 检索结果重排配置
+ * <p>
+ * 先从向量库多取 candidates 个候选，在应用内按 BM25（ansj 分词）、doc_keyword 关键词重合度与原检索得分加权重排，
+ * 只把得分最高的 topN 个文档块放入提示词。
+ */
+@ConfigurationProperties(prefix = "rag.rerank")
+public class RerankProperties {
+
+    /**
+     * 是否启用重排，关闭时直接取检索结果的前 topN 个
+     */
+    private boolean enabled = true;
+
+    /**
+     * 从向量库取回的候选数量
+     */
+    private int candidates = 50;
+
+    /**
+     * 放入提示词的文档块数量
+     */
+    private int topN = 4;
+
+    /**
+     * BM25 词频饱和参数
+     */
+    private double k1 = 1.2;
+
+    /**
+     * BM25 文档长度归一化参数
+     */
+    private double b = 0.75;
+
+    /**
+     * 原检索得分（向量相似度或 RRF 得分）的权重，得分在候选集内按最大最小值归一化
+     */
+    private double retrievalWeight = 0.4;
+
+    /**
+     * BM25 得分的权重，得分除以候选集内的最大值
+     */
+    private double bm25Weight = 0.4;
+
+    /**
+     * 问题分词与 doc_keyword 重合比例的权重
+     */
+    private double keywordWeight = 0.2;
+
+    /**
+     * 缓存分词结果的文档块数量，为 0 时不缓存
+     */
+    private int cacheSize = 4096;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public void setCandidates(int candidates) {
+        this.candidates = candidates;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
+    public double getK1() {
+        return k1;
+    }
+
+    public void setK1(double k1) {
+        this.k1 = k1;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    public void setB(double b) {
+        this.b = b;
+    }
+
+    public double getRetrievalWeight() {
+        return retrievalWeight;
+    }
+
+    public void setRetrievalWeight(double retrievalWeight) {
+        this.retrievalWeight = retrievalWeight;
+    }
+
+    public double getBm25Weight() {
+        return bm25Weight;
+    }
+
+    public void setBm25Weight(double bm25Weight) {
+        this.bm25Weight = bm25Weight;
+    }
+
+    public double getKeywordWeight() {
+        return keywordWeight;
+    }
+
+    public void setKeywordWeight(double keywordWeight) {
+        this.keywordWeight = keywordWeight;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+}
@@ -0,0 +1,119 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-14 09:30
+ * Description: 检索配置
+ * <p>
+ * 混合检索时 BM25（content 字段）与 kNN 两路查询通过一次 _msearch 请求发出，
+ * 在应用端按倒数排名融合（RRF）：score = Σ weight / (rank-constant + rank)。
+ */
+@ConfigurationProperties(prefix = "rag.retrieval")
+public class RetrievalProperties {
+
+    /**
+     * 是否启用 BM25 + kNN 混合检索，关闭时只做向量检索
+     */
+    private boolean hybrid = true;
+
+    /**
+     * RRF 排名常数，值越大排名靠后的结果影响越大
+     */
+    private int rankConstant = 60;
+
+    /**
+     * 向量检索结果的融合权重
+     */
+    private double vectorWeight = 1.0;
+
+    /**
+     * BM25 检索结果的融合权重
+     */
+    private double textWeight = 1.0;
+
+    /**
+     * 参与融合的向量检索结果数，不小于 topK
+     */
+    private int vectorCandidates = 20;
+
+    /**
+     * 参与融合的 BM25 检索结果数，不小于 topK
+     */
+    private int textCandidates = 20;
+
+    /**
+     * content 字段的索引分词器，如 ansj 插件的 index_ansj、IK 插件的 ik_max_word，为空时使用 standard；只对新建索引生效
+     */
+    private String analyzer;
+
+    /**
+     * content 字段的查询分词器，如 query_ansj、ik_smart，为空时与索引分词器相同
+     */
+    private String searchAnalyzer;
+
+    public boolean isHybrid() {
+        return hybrid;
+    }
+
+    public void setHybrid(boolean hybrid) {
+        this.hybrid = hybrid;
+    }
+
+    public int getRankConstant() {
+        return rankConstant;
+    }
+
+    public void setRankConstant(int rankConstant) {
+        this.rankConstant = rankConstant;
+    }
+
+    public double getVectorWeight() {
+        return vectorWeight;
+    }
+
+    public void setVectorWeight(double vectorWeight) {
+        this.vectorWeight = vectorWeight;
+    }
+
+    public double getTextWeight() {
+        return textWeight;
+    }
+
+    public void setTextWeight(double textWeight) {
+        this.textWeight = textWeight;
+    }
+
+    public int getVectorCandidates() {
+        return vectorCandidates;
+    }
+
+    public void setVectorCandidates(int vectorCandidates) {
+        this.vectorCandidates = vectorCandidates;
+    }
+
+    public int getTextCandidates() {
+        return textCandidates;
+    }
+
+    public void setTextCandidates(int textCandidates) {
+        this.textCandidates = textCandidates;
+    }
+
+    public String getAnalyzer() {
+        return analyzer;
+    }
+
+    public void setAnalyzer(String analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    public String getSearchAnalyzer() {
+        return searchAnalyzer;
+    }
+
+    public void setSearchAnalyzer(String searchAnalyzer) {
+        this.searchAnalyzer = searchAnalyzer;
+    }
+}
@@ -0,0 +1,330 @@
+package com.huayi.ai.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-11 10:30
+ * Description: 以问题向量为键的语义答案缓存
+ * <p>
+ * 新问题与已缓存问题的余弦相似度超过阈值时直接返回已生成的答案，省去一次完整的大模型生成。
+ * 每条答案记录其引用的源文档，源文档重新导入时相关答案失效；总内存按估算值限制，超出后按最近最少使用淘汰。
+ * 知识库问答中没有引用任何源文档的答案（检索为空）不缓存，否则导入新文档后仍会返回旧答案；
+ * 生成期间引用的源文档被重新导入过的答案也不缓存，见 {@link #epoch()}。
+ * <p>
+ * 查找在锁外扫描条目的快照，快照在写入、失效和淘汰时重建；只有命中后更新访问顺序和清理过期条目时才需要加锁。
+ */
+@Component
+public class SemanticAnswerCache {
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    /**
+     * 知识库问答（/query）
+     */
+    public static final String NAMESPACE_QUERY = "query";
+
+    /**
+     * 普通聊天（/chat）
+     */
+    public static final String NAMESPACE_CHAT = "chat";
+
+    private final EmbeddingModel embeddingModel;
+
+    private final AnswerCacheProperties properties;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 源文档名称到答案编号的索引，用于文档重新导入时失效
+     */
+    private final Map<String, Set<Long>> entriesBySource = new HashMap<>();
+
+    /**
+     * entries 的只读快照，供 lookup 在锁外扫描
+     */
+    private volatile Entry[] snapshot = new Entry[0];
+
+    private long nextId;
+
+    /**
+     * 失效序号，每次 invalidateSource 加一
+     */
+    private long epoch;
+
+    /**
+     * 源文档最近一次失效时的序号。答案写入时与开始检索前取得的序号比较，期间源文档被重新导入过的答案不缓存；
+     * 每个导入过的文件保留一项
+     */
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+
+    private long memoryBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel, AnswerCacheProperties properties, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.properties = properties;
+        this.hits = Counter.builder("rag.answer.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("rag.answer.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("rag.answer.cache.evictions").register(meterRegistry);
+        this.invalidations = Counter.builder("rag.answer.cache.invalidations").register(meterRegistry);
+        Gauge.builder("rag.answer.cache.size", this, SemanticAnswerCache::size).register(meterRegistry);
+        Gauge.builder("rag.answer.cache.memory", this, SemanticAnswerCache::memoryBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 对问题向量化，返回单位化后的向量
+     */
+    public float[] embed(String question) {
+        return normalize(embeddingModel.embed(question));
+    }
+
+    /**
+     * 查找与问题向量足够相似的已缓存答案
+     *
+     * @param namespace   缓存分区，不同接口的答案互不共享
+     * @param queryVector 经过 {@link #embed(String)} 处理的问题向量
+     */
+    public Optional<String> lookup(String namespace, float[] queryVector) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        long ttlNanos = properties.getTtl().toNanos();
+        Entry best = null;
+        double bestScore = properties.getSimilarityThreshold();
+        boolean expired = false;
+        for (Entry entry : snapshot) {
+            if (now - entry.createdAt > ttlNanos) {
+                expired = true;
+                continue;
+            }
+            if (!entry.namespace.equals(namespace)) {
+                continue;
+            }
+            double score = dot(queryVector, entry.vector);
+            if (score >= bestScore) {
+                best = entry;
+                bestScore = score;
+            }
+        }
+        if (expired) {
+            removeExpired(now, ttlNanos);
+        }
+        // 扫描期间答案可能已失效或被淘汰
+        if (best == null || !touch(best)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(best.answer);
+    }
+
+    /**
+     * 更新访问顺序，条目已被移除时返回 false
+     */
+    private synchronized boolean touch(Entry entry) {
+        return entries.get(entry.id) != null;
+    }
+
+    private synchronized void removeExpired(long now, long ttlNanos) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.createdAt > ttlNanos) {
+                iterator.remove();
+                unlink(entry);
+            }
+        }
+        refreshSnapshot();
+    }
+
+    /**
+     * 重建快照，调用方持有监视器锁
+     */
+    private void refreshSnapshot() {
+        snapshot = entries.values().toArray(new Entry[0]);
+    }
+
+    /**
+     * 当前的失效序号，在查找缓存、开始检索之前取得，生成完成后随答案一起传给 {@link #put}
+     */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * 缓存一条不依赖知识库的答案（/chat）
+     */
+    public void put(String namespace, float[] queryVector, String answer, Collection<String> sources) {
+        put(namespace, queryVector, answer, sources, epoch());
+    }
+
+    /**
+     * 缓存一条生成完成的答案
+     *
+     * @param sources 生成答案时引用的源文档名称
+     * @param epoch   开始检索前通过 {@link #epoch()} 取得的序号，之后有源文档被重新导入时答案可能已过时，不缓存
+     */
+    public synchronized void put(String namespace, float[] queryVector, String answer, Collection<String> sources, long epoch) {
+        if (!isEnabled() || answer == null || answer.isBlank()) {
+            return;
+        }
+        // 没有引用源文档的知识库答案无法随文档导入失效
+        if (NAMESPACE_QUERY.equals(namespace) && (sources == null || sources.isEmpty())) {
+            return;
+        }
+        for (String source : sources) {
+            Long invalidated = invalidatedAt.get(source);
+            if (invalidated != null && invalidated > epoch) {
+                return;
+            }
+        }
+        Entry entry = new Entry(nextId++, namespace, queryVector, answer, new HashSet<>(sources), System.nanoTime());
+        entries.put(entry.id, entry);
+        memoryBytes += entry.bytes;
+        for (String source : entry.sources) {
+            entriesBySource.computeIfAbsent(source, s -> new HashSet<>()).add(entry.id);
+        }
+        long maxBytes = properties.getMaxMemory().toBytes();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (memoryBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            unlink(eldest);
+            evictions.increment();
+        }
+        refreshSnapshot();
+    }
+
+    /**
+     * 使引用了指定源文档的答案全部失效
+     */
+    public synchronized void invalidateSource(String source) {
+        invalidatedAt.put(source, ++epoch);
+        Set<Long> ids = entriesBySource.remove(source);
+        if (ids == null) {
+            return;
+        }
+        for (Long id : ids) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                unlink(entry);
+                invalidations.increment();
+            }
+        }
+        refreshSnapshot();
+        logger.info("源文档 {} 重新导入，失效缓存答案 {} 条", source, ids.size());
+    }
+
+    /**
+     * 将缓存的答案切分为小片段，以流的形式回放
+     */
+    public Flux<String> replay(String answer) {
+        int size = Math.max(1, properties.getReplayChunkSize());
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < answer.length(); i += size) {
+            chunks.add(answer.substring(i, Math.min(answer.length(), i + size)));
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private void unlink(Entry entry) {
+        memoryBytes -= entry.bytes;
+        for (String source : entry.sources) {
+            Set<Long> ids = entriesBySource.get(source);
+            if (ids != null) {
+                ids.remove(entry.id);
+                if (ids.isEmpty()) {
+                    entriesBySource.remove(source);
+                }
+            }
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final String namespace;
+        private final float[] vector;
+        private final String answer;
+        private final Set<String> sources;
+        private final long createdAt;
+        private final long bytes;
+
+        Entry(long id, String namespace, float[] vector, String answer, Set<String> sources, long createdAt) {
+            this.id = id;
+            this.namespace = namespace;
+            this.vector = vector;
+            this.answer = answer;
+            this.sources = sources;
+            this.createdAt = createdAt;
+            long sourceBytes = 0;
+            for (String source : sources) {
+                sourceBytes += 48L + source.length() * 2L;
+            }
+            // 对象头、数组头及字段的固定开销按 128 字节估算
+            this.bytes = 128L + vector.length * 4L + answer.length() * 2L + sourceBytes;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-24 09:00
+ * Description: SSE 流式输出配置
+ * <p>
+ * 模型每输出一个 token 产生一个片段，逐个写出会产生大量很小的写入和刷新。
+ * SSE 模式下片段先合并，达到数量上限或等待超过间隔时作为一帧写出。
+ */
+@ConfigurationProperties(prefix = "rag.streaming")
+public class StreamingProperties {
+
+    /**
+     * 合并等待的最长时间，为 0 时不合并，每个片段单独成帧
+     */
+    private Duration coalesceInterval = Duration.ofMillis(50);
+
+    /**
+     * 一帧最多合并的片段数
+     */
+    private int coalesceMaxTokens = 32;
+
+    /**
+     * 心跳间隔，用于保持连接并及时发现已断开的客户端；生成首个 token 前（如推理模型思考阶段）也会发送
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+
+    public Duration getCoalesceInterval() {
+        return coalesceInterval;
+    }
+
+    public void setCoalesceInterval(Duration coalesceInterval) {
+        this.coalesceInterval = coalesceInterval;
+    }
+
+    public int getCoalesceMaxTokens() {
+        return coalesceMaxTokens;
+    }
+
+    public void setCoalesceMaxTokens(int coalesceMaxTokens) {
+        this.coalesceMaxTokens = coalesceMaxTokens;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+}
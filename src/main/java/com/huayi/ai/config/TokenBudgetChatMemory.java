@@ -0,0 +1,316 @@
+package com.huayi.ai.config;
+
+import com.huayi.ai.chat.util.TokenEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-20 10:30
+ * Description: 按 token 预算截取历史的会话记忆装饰器
+ * <p>
+ * 读取时从最新的消息向前累加估算的 token 数，超过预算即停止，会话开头的摘要消息总是保留。
+ * 写入后如果会话历史超过压缩阈值，在后台调用模型把较早的消息与原有摘要合并为一条新的摘要，
+ * 只保留最近 keepRecentTokens 的原文，使每轮提示词的大小保持稳定。
+ * <p>
+ * 压缩时先在锁外生成摘要，再在会话锁内确认被折叠的消息仍是历史的开头后整体改写；期间历史被清除或覆盖时放弃本次压缩。
+ * <p>
+ * 摘要以带前缀的助手消息保存：PromptChatMemoryAdvisor 只把用户和助手消息放入提示词，系统消息会被丢弃。
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+    private static final Logger logger = LoggerFactory.getLogger(TokenBudgetChatMemory.class);
+
+    /**
+     * 摘要消息的前缀，用于识别会话开头的摘要
+     */
+    static final String SUMMARY_PREFIX = "【此前对话摘要】";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMemory delegate;
+
+    private final ChatModel chatModel;
+
+    private final ChatMemoryProperties.Window window;
+
+    /**
+     * 从底层记忆读取的最大消息条数
+     */
+    private final int fetchSize;
+
+    /**
+     * 改写会话与写入消息互斥，按会话编号分段加锁
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 每个会话已被摘要替代的原文 token 数，用于计算节省量
+     */
+    private final Map<String, Integer> foldedTokens = new ConcurrentHashMap<>();
+
+    private final ExecutorService summarizer;
+
+    private final DistributionSummary historyTokens;
+    private final DistributionSummary savedTokens;
+    private final Counter summarySuccess;
+    private final Counter summarySkipped;
+    private final Counter summaryFailure;
+
+    public TokenBudgetChatMemory(ChatMemory delegate, ChatModel chatModel, ChatMemoryProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.chatModel = chatModel;
+        this.window = properties.getWindow();
+        this.fetchSize = properties.getCapacity();
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.summarizer = Executors.newFixedThreadPool(Math.max(1, window.getSummaryWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "chat-summary-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.historyTokens = DistributionSummary.builder("rag.chat.prompt.history.tokens")
+                .description("每轮放入提示词的历史 token 数（估算）").register(meterRegistry);
+        this.savedTokens = DistributionSummary.builder("rag.chat.prompt.tokens.saved")
+                .description("与放入全部原文历史相比每轮节省的 token 数（估算）").register(meterRegistry);
+        this.summarySuccess = Counter.builder("rag.chat.memory.summaries").tag("result", "success").register(meterRegistry);
+        this.summarySkipped = Counter.builder("rag.chat.memory.summaries").tag("result", "skipped").register(meterRegistry);
+        this.summaryFailure = Counter.builder("rag.chat.memory.summaries").tag("result", "failure").register(meterRegistry);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        synchronized (lock(conversationId)) {
+            delegate.add(conversationId, messages);
+        }
+        if (window.isEnabled()) {
+            scheduleCompaction(conversationId);
+        }
+    }
+
+    @Override
+    public void add(String conversationId, Message message) {
+        add(conversationId, List.of(message));
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        List<Message> history = delegate.get(conversationId, lastN);
+        if (!window.isEnabled() || history.isEmpty()) {
+            return history;
+        }
+        int budget = window.getTokenBudget();
+        int start = 0;
+        Message summary = null;
+        if (isSummary(history.get(0))) {
+            // 早期版本以系统消息保存摘要，读取时统一转换为助手消息
+            summary = history.get(0).getMessageType() == MessageType.ASSISTANT
+                    ? history.get(0) : new AssistantMessage(history.get(0).getText());
+            start = 1;
+            budget -= TokenEstimator.estimate(summary);
+        }
+        int from = history.size();
+        int used = 0;
+        while (from > start) {
+            int tokens = TokenEstimator.estimate(history.get(from - 1));
+            if (used + tokens > budget) {
+                break;
+            }
+            used += tokens;
+            from--;
+        }
+        List<Message> result = new ArrayList<>(history.size() - from + 1);
+        if (summary != null) {
+            result.add(summary);
+        }
+        result.addAll(history.subList(from, history.size()));
+
+        int windowTokens = TokenEstimator.estimate(result);
+        int fullTokens = TokenEstimator.estimate(history) + foldedTokens.getOrDefault(conversationId, 0)
+                - (summary == null ? 0 : TokenEstimator.estimate(summary));
+        historyTokens.record(windowTokens);
+        savedTokens.record(Math.max(0, fullTokens - windowTokens));
+        logger.debug("会话 {} 历史 {} 条，放入提示词 {} 条，约 {} tokens，节省约 {} tokens",
+                conversationId, history.size(), result.size(), windowTokens, Math.max(0, fullTokens - windowTokens));
+        return result;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        synchronized (lock(conversationId)) {
+            delegate.clear(conversationId);
+            foldedTokens.remove(conversationId);
+        }
+    }
+
+    public void shutdown() {
+        summarizer.shutdownNow();
+    }
+
+    private void scheduleCompaction(String conversationId) {
+        if (compacting.contains(conversationId)) {
+            return;
+        }
+        List<Message> history = delegate.get(conversationId, fetchSize);
+        if (TokenEstimator.estimate(history) <= window.getCompactionThreshold() || !compacting.add(conversationId)) {
+            return;
+        }
+        try {
+            summarizer.execute(() -> {
+                try {
+                    compact(conversationId);
+                } catch (RuntimeException e) {
+                    summaryFailure.increment();
+                    logger.warn("会话 {} 摘要压缩失败", conversationId, e);
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compacting.remove(conversationId);
+        }
+    }
+
+    /**
+     * 把较早的消息（含原有摘要）折叠为一条新的摘要，保留最近 keepRecentTokens 的原文
+     */
+    private void compact(String conversationId) {
+        List<Message> history = delegate.get(conversationId, fetchSize);
+        int keep = history.size();
+        int used = 0;
+        while (keep > 0) {
+            int tokens = TokenEstimator.estimate(history.get(keep - 1));
+            if (used + tokens > window.getKeepRecentTokens()) {
+                break;
+            }
+            used += tokens;
+            keep--;
+        }
+        // 保留的部分从用户消息开始，避免问答被拆开
+        while (keep < history.size() && history.get(keep).getMessageType() != MessageType.USER) {
+            keep++;
+        }
+        List<Message> folded = history.subList(0, keep);
+        if (folded.isEmpty() || (folded.size() == 1 && isSummary(folded.get(0)))) {
+            summarySkipped.increment();
+            return;
+        }
+        String summary = summarize(folded);
+        if (summary.isEmpty()) {
+            summaryFailure.increment();
+            return;
+        }
+        int foldedOriginal = 0;
+        for (Message message : folded) {
+            if (!isSummary(message)) {
+                foldedOriginal += TokenEstimator.estimate(message);
+            }
+        }
+        synchronized (lock(conversationId)) {
+            List<Message> current = delegate.get(conversationId, fetchSize);
+            if (!startsWith(current, folded)) {
+                summarySkipped.increment();
+                return;
+            }
+            List<Message> rewritten = new ArrayList<>(current.size() - folded.size() + 1);
+            rewritten.add(new AssistantMessage(SUMMARY_PREFIX + summary));
+            rewritten.addAll(current.subList(folded.size(), current.size()));
+            delegate.clear(conversationId);
+            delegate.add(conversationId, rewritten);
+            foldedTokens.merge(conversationId, foldedOriginal, Integer::sum);
+        }
+        summarySuccess.increment();
+        logger.info("会话 {} 的 {} 条较早消息已压缩为摘要，约 {} tokens", conversationId, folded.size(),
+                TokenEstimator.estimate(summary));
+    }
+
+    private String summarize(List<Message> folded) {
+        StringBuilder transcript = new StringBuilder();
+        for (Message message : folded) {
+            if (isSummary(message)) {
+                transcript.append("此前的摘要：").append(message.getText().substring(SUMMARY_PREFIX.length()));
+            } else {
+                transcript.append(message.getMessageType() == MessageType.USER ? "用户：" : "助手：")
+                        .append(message.getText());
+            }
+            transcript.append('\n');
+        }
+        String prompt = "请将下面的对话压缩为一段摘要，保留用户提出的问题、已经给出的结论和尚未解决的事项，"
+                + "不超过 " + window.getSummaryMaxTokens() + " 字，只输出摘要本身。\n\n" + transcript;
+        // 摘要在后台执行，排在交互对话之后
+        ChatResponse response = AdmissionLimiter.callAs(AdmissionLimiter.Priority.BACKGROUND,
+                () -> chatModel.call(new Prompt(prompt)));
+        if (response == null || response.getResult() == null || response.getResult().getOutput().getText() == null) {
+            return "";
+        }
+        // 推理模型会输出思考过程，只保留最终回答
+        String text = response.getResult().getOutput().getText().replaceAll("(?s)<think>.*?</think>", "").trim();
+        return truncate(text, window.getSummaryMaxTokens());
+    }
+
+    private static String truncate(String text, int maxTokens) {
+        if (TokenEstimator.estimate(text) <= maxTokens) {
+            return text;
+        }
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (TokenEstimator.estimate(text.substring(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return text.substring(0, low);
+    }
+
+    private static boolean startsWith(List<Message> history, List<Message> prefix) {
+        if (history.size() < prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            Message a = history.get(i);
+            Message b = prefix.get(i);
+            if (a.getMessageType() != b.getMessageType() || !Objects.equals(a.getText(), b.getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isSummary(Message message) {
+        MessageType type = message.getMessageType();
+        return (type == MessageType.ASSISTANT || type == MessageType.SYSTEM)
+                && message.getText() != null && message.getText().startsWith(SUMMARY_PREFIX);
+    }
+
+    private Object lock(String conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+}
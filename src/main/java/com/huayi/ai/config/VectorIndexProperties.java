@@ -0,0 +1,121 @@
+package com.huayi.ai.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-13 10:05
+ * Description: Elasticsearch 向量字段的索引参数与 kNN 检索参数
+ * <p>
+ * 与 Spring AI 的 ElasticsearchVectorStoreProperties 共用 spring.ai.vectorstore.elasticsearch 前缀，
+ * 修改 type/m/ef-construction 只对新建索引生效，已有索引需要重建或迁移。
+ */
+@ConfigurationProperties(prefix = "spring.ai.vectorstore.elasticsearch.index-options")
+public class VectorIndexProperties {
+
+    /**
+     * 向量索引类型：hnsw、int8_hnsw、int4_hnsw、flat、int8_flat、int4_flat
+     * <p>
+     * int8 约为 float 的 1/4 内存，int4 约为 1/8，检索时 Elasticsearch 会用原始向量对候选结果重新打分
+     */
+    private String type = "int8_hnsw";
+
+    /**
+     * HNSW 图中每个节点的邻居数，仅对 hnsw 类型有效
+     */
+    private Integer m = 16;
+
+    /**
+     * 构建 HNSW 图时的候选队列大小，仅对 hnsw 类型有效
+     */
+    private Integer efConstruction = 100;
+
+    /**
+     * 量化时计算分位数使用的置信区间，仅对 int8/int4 类型有效，为空时使用 Elasticsearch 默认值
+     */
+    private Float confidenceInterval;
+
+    /**
+     * kNN 检索时每个分片的候选数量，为空时按 topK * num-candidates-factor 计算
+     */
+    private Integer numCandidates;
+
+    /**
+     * 未指定候选数量时，候选数量相对 topK 的倍数
+     */
+    private double numCandidatesFactor = 10;
+
+    public boolean isHnsw() {
+        return type != null && type.endsWith("hnsw");
+    }
+
+    public boolean isQuantized() {
+        return type != null && (type.startsWith("int8") || type.startsWith("int4"));
+    }
+
+    /**
+     * 计算 kNN 检索的候选数量，不小于 topK，且不超过 Elasticsearch 的上限 10000
+     *
+     * @param topK      需要返回的结果数
+     * @param requested 调用方指定的候选数量，为空时使用配置
+     */
+    public int resolveNumCandidates(int topK, Integer requested) {
+        int candidates;
+        if (requested != null) {
+            candidates = requested;
+        } else if (numCandidates != null) {
+            candidates = numCandidates;
+        } else {
+            candidates = (int) Math.ceil(topK * numCandidatesFactor);
+        }
+        return Math.min(10000, Math.max(topK, candidates));
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Integer getM() {
+        return m;
+    }
+
+    public void setM(Integer m) {
+        this.m = m;
+    }
+
+    public Integer getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(Integer efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public Float getConfidenceInterval() {
+        return confidenceInterval;
+    }
+
+    public void setConfidenceInterval(Float confidenceInterval) {
+        this.confidenceInterval = confidenceInterval;
+    }
+
+    public Integer getNumCandidates() {
+        return numCandidates;
+    }
+
+    public void setNumCandidates(Integer numCandidates) {
+        this.numCandidates = numCandidates;
+    }
+
+    public double getNumCandidatesFactor() {
+        return numCandidatesFactor;
+    }
+
+    public void setNumCandidatesFactor(double numCandidatesFactor) {
+        this.numCandidatesFactor = numCandidatesFactor;
+    }
+}
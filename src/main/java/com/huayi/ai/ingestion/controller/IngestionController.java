@@ -1,19 +1,36 @@
 package com.huayi.ai.ingestion.controller;
 
+import com.huayi.ai.chat.domain.DeltaFrame;
+import com.huayi.ai.config.AdmissionRejectedException;
+import com.huayi.ai.config.DeltaStreamer;
+import com.huayi.ai.config.RequestExecutor;
+import com.huayi.ai.ingestion.domain.BulkIngestionJob;
+import com.huayi.ai.ingestion.domain.BulkIngestionStatus;
+import com.huayi.ai.ingestion.domain.IngestionJob;
+import com.huayi.ai.ingestion.domain.IngestionJobStatus;
+import com.huayi.ai.ingestion.service.BulkIngestionService;
+import com.huayi.ai.ingestion.service.IndexMigrationService;
+import com.huayi.ai.ingestion.service.IngestionJobService;
 import com.huayi.ai.ingestion.service.IngestionService;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Author: YuJian
@@ -26,24 +43,156 @@ public class IngestionController {
 
     private final IngestionService ingestionService;
 
-    public IngestionController(IngestionService ingestionService) {
+    private final IngestionJobService ingestionJobService;
+
+    private final IndexMigrationService indexMigrationService;
+
+    private final DeltaStreamer deltaStreamer;
+
+    private final RequestExecutor requestExecutor;
+
+    private final BulkIngestionService bulkIngestionService;
+
+    public IngestionController(IngestionService ingestionService, IngestionJobService ingestionJobService,
+                               IndexMigrationService indexMigrationService, DeltaStreamer deltaStreamer,
+                               RequestExecutor requestExecutor, BulkIngestionService bulkIngestionService) {
         this.ingestionService = ingestionService;
+        this.ingestionJobService = ingestionJobService;
+        this.indexMigrationService = indexMigrationService;
+        this.deltaStreamer = deltaStreamer;
+        this.requestExecutor = requestExecutor;
+        this.bulkIngestionService = bulkIngestionService;
     }
 
+    /**
+     * 同步导入文档，执行方式由 rag.execution.mode 决定
+     */
     @PostMapping("/documents")
-    public ResponseEntity<String> uploadDocument(
+    public CompletableFuture<ResponseEntity<String>> uploadDocument(
             @RequestParam("file") MultipartFile file
     ) {
+        return requestExecutor.submit(() -> {
+            Path spooledFile = null;
+            try {
+                // 先暂存到磁盘，Tika 可以直接随机读取文件，不必把整个上传内容读入内存
+                spooledFile = ingestionJobService.createSpoolFile();
+                file.transferTo(spooledFile);
+                ingestionService.ingest(createFileResource(spooledFile, file.getOriginalFilename()));
+                return ResponseEntity.ok("文档上传成功，名称：" + file.getOriginalFilename());
+            } catch (IOException e) {
+                return handleException("文件处理失败：", e, HttpStatus.BAD_REQUEST);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return handleException("文档导入被中断：", e, HttpStatus.SERVICE_UNAVAILABLE);
+            } catch (AdmissionRejectedException e) {
+                // 交给 AdmissionExceptionHandler 返回 429
+                throw e;
+            } catch (RuntimeException e) {
+                return handleException("文档接收失败：", e, HttpStatus.INTERNAL_SERVER_ERROR);
+            } finally {
+                deleteQuietly(spooledFile);
+            }
+        });
+    }
+
+    /**
+     * 以异步任务方式导入文档，文件暂存到本地后立即返回任务编号
+     */
+    @PostMapping("/documents/jobs")
+    public ResponseEntity<?> submitDocumentJob(
+            @RequestParam("file") MultipartFile file
+    ) {
+        Path spooledFile = null;
         try {
-            ingestionService.ingest(createFileResource(file));
-            return ResponseEntity.ok("文档上传成功，名称：" + file.getOriginalFilename());
+            spooledFile = ingestionJobService.createSpoolFile();
+            file.transferTo(spooledFile);
+            IngestionJob job = ingestionJobService.submit(spooledFile, file.getOriginalFilename());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/documents/jobs/" + job.getId()))
+                    .body(job.snapshot());
         } catch (IOException e) {
+            deleteQuietly(spooledFile);
+            return handleException("文件处理失败：", e, HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            deleteQuietly(spooledFile);
+            return handleException("文档接收失败：", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * 查询导入任务的进度、吞吐量和错误信息
+     */
+    @GetMapping("/documents/jobs/{id}")
+    public ResponseEntity<IngestionJobStatus> getDocumentJob(@PathVariable("id") String id) {
+        return ingestionJobService.find(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 批量导入压缩包（zip、tar、tar.gz、tgz）中的所有文件，压缩包暂存到本地后立即返回任务编号
+     */
+    @PostMapping("/documents/bulk")
+    public ResponseEntity<?> submitBulkArchive(
+            @RequestParam("file") MultipartFile file
+    ) {
+        Path spooledFile = null;
+        try {
+            spooledFile = ingestionJobService.createSpoolFile();
+            file.transferTo(spooledFile);
+            BulkIngestionJob job = bulkIngestionService.submitArchive(spooledFile, file.getOriginalFilename());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/documents/bulk/" + job.getId()))
+                    .body(job.snapshot());
+        } catch (IOException | IllegalArgumentException e) {
+            deleteQuietly(spooledFile);
             return handleException("文件处理失败：", e, HttpStatus.BAD_REQUEST);
         } catch (RuntimeException e) {
+            deleteQuietly(spooledFile);
             return handleException("文档接收失败：", e, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * 批量导入服务器上的目录或压缩包，路径必须位于 rag.ingestion.bulk.allowed-roots 之下
+     */
+    @PostMapping("/documents/bulk/directory")
+    public ResponseEntity<?> submitBulkDirectory(@RequestParam("path") String path) {
+        try {
+            BulkIngestionJob job = bulkIngestionService.submitPath(bulkIngestionService.checkAllowed(path));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/documents/bulk/" + job.getId()))
+                    .body(job.snapshot());
+        } catch (IllegalArgumentException e) {
+            return handleException("路径不可导入：", e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 查询批量导入任务的文件数、文档块数、吞吐量和失败文件
+     */
+    @GetMapping("/documents/bulk/{id}")
+    public ResponseEntity<BulkIngestionStatus> getBulkJob(@PathVariable("id") String id) {
+        return bulkIngestionService.find(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 将旧索引中字符串形式的 doc_keyword 迁移为关键词数组，迁移期间请暂停文档导入
+     */
+    @PostMapping("/documents/migrations/doc-keyword")
+    public ResponseEntity<String> migrateDocKeyword() {
+        try {
+            return ResponseEntity.ok(indexMigrationService.migrateDocKeyword());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return handleException("索引迁移被中断：", e, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IOException | RuntimeException e) {
+            return handleException("索引迁移失败：", e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @GetMapping("/query")
     public Flux<String> query(String question,
                              HttpServletResponse response
@@ -55,15 +204,37 @@ public class IngestionController {
         return ingestionService.retrieve(question);
     }
 
-    private Resource createFileResource(MultipartFile file) throws IOException {
-        return new InputStreamResource(file.getInputStream()) {
+    /**
+     * SSE 模式的知识库问答，请求头 Accept: text/event-stream 时使用，帧格式与 /streamChat 相同
+     */
+    @GetMapping(value = "/query", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DeltaFrame>> queryEvents(String question) {
+        if (!StringUtils.hasText(question)) {
+            return deltaStreamer.stream("query", Flux.just("请输入您想要询问的内容"));
+        }
+        return deltaStreamer.stream("query", ingestionService.retrieve(question));
+    }
+
+    private Resource createFileResource(Path spooledFile, String fileName) {
+        return new FileSystemResource(spooledFile) {
             @Override
             public String getFilename() {
-                return file.getOriginalFilename();
+                return fileName;
             }
         };
     }
 
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除暂存文件失败：{}", file, e);
+        }
+    }
+
     private ResponseEntity<String> handleException(String message, Exception e, HttpStatus status) {
         logger.error("消息: {}, 状态: {}", message, status, e);
         return ResponseEntity.status(status).body(message + e.getMessage());
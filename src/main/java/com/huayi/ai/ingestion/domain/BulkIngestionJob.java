@@ -0,0 +1,136 @@
+package com.huayi.ai.ingestion.domain;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-31 09:30
+ * Description: 目录或压缩包的批量导入任务，按文件统计成功与失败，并记录文档块的写入、跳过与删除数量
+ * <p>
+ * 计数器由解析、向量化和写入线程并发更新，状态变更与错误记录通过对象锁保护。
+ */
+public class BulkIngestionJob {
+
+    private static final int MAX_ERRORS = 100;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String source;
+    private final Instant createdAt = Instant.now();
+    private final AtomicLong filesFound = new AtomicLong();
+    private final AtomicLong filesSucceeded = new AtomicLong();
+    private final AtomicLong filesFailed = new AtomicLong();
+    private final AtomicLong chunksIndexed = new AtomicLong();
+    private final AtomicLong chunksUnchanged = new AtomicLong();
+    private final AtomicLong chunksDeleted = new AtomicLong();
+    private final Deque<String> errors = new ArrayDeque<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile IngestionJob.Status status = IngestionJob.Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private long errorCount;
+
+    public BulkIngestionJob(String source) {
+        this.source = source;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void fileFound() {
+        filesFound.incrementAndGet();
+    }
+
+    public void fileSucceeded(long unchanged, long deleted) {
+        filesSucceeded.incrementAndGet();
+        chunksUnchanged.addAndGet(unchanged);
+        chunksDeleted.addAndGet(deleted);
+    }
+
+    public void fileFailed(String fileName, String message) {
+        filesFailed.incrementAndGet();
+        recordError(fileName + ": " + message);
+    }
+
+    public void chunksIndexed(long count) {
+        chunksIndexed.addAndGet(count);
+    }
+
+    public long chunksIndexed() {
+        return chunksIndexed.get();
+    }
+
+    public long chunksUnchanged() {
+        return chunksUnchanged.get();
+    }
+
+    public long chunksDeleted() {
+        return chunksDeleted.get();
+    }
+
+    public synchronized void start() {
+        status = IngestionJob.Status.RUNNING;
+        startedAt = Instant.now();
+    }
+
+    /**
+     * 记录错误，只保留最近的 {@value #MAX_ERRORS} 条
+     */
+    public synchronized void recordError(String message) {
+        errorCount++;
+        if (errors.size() == MAX_ERRORS) {
+            errors.removeFirst();
+        }
+        errors.addLast(message);
+    }
+
+    /**
+     * 结束任务：没有错误时为完成；有错误时，没有任何文件导入成功为失败，否则为部分完成
+     */
+    public synchronized void finish() {
+        finishedAt = Instant.now();
+        if (errorCount == 0) {
+            status = IngestionJob.Status.COMPLETED;
+        } else {
+            status = filesSucceeded.get() == 0 ? IngestionJob.Status.FAILED : IngestionJob.Status.PARTIAL;
+        }
+        finished.countDown();
+    }
+
+    /**
+     * 等待任务结束，超时返回 false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public synchronized BulkIngestionStatus snapshot() {
+        long elapsed = 0;
+        if (startedAt != null) {
+            elapsed = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+        }
+        long files = filesSucceeded.get() + filesFailed.get();
+        return new BulkIngestionStatus(id, source, status, createdAt, startedAt, finishedAt,
+                filesFound.get(), filesSucceeded.get(), filesFailed.get(),
+                chunksIndexed.get(), chunksUnchanged.get(), chunksDeleted.get(), elapsed,
+                elapsed > 0 ? files * 1000.0 / elapsed : 0,
+                elapsed > 0 ? chunksIndexed.get() * 1000.0 / elapsed : 0,
+                new ArrayList<>(errors));
+    }
+}
@@ -0,0 +1,44 @@
+package com.huayi.ai.ingestion.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-31 09:20
+ * Description: 批量导入任务的状态快照，用于接口返回
+ *
+ * @param id              任务编号
+ * @param source          导入的目录或压缩包
+ * @param status          任务状态
+ * @param createdAt       提交时间
+ * @param startedAt       开始处理时间
+ * @param finishedAt      结束时间
+ * @param filesFound      已发现的文件数
+ * @param filesSucceeded  导入成功的文件数（包括内容未变化的文件）
+ * @param filesFailed     导入失败的文件数
+ * @param chunksIndexed   写入向量库的文档块数
+ * @param chunksUnchanged 内容未变、跳过向量化的文档块数
+ * @param chunksDeleted   删除的旧版本文档块数
+ * @param elapsedMillis   已耗时（毫秒）
+ * @param filesPerSecond  处理完成的文件数吞吐量（个/秒）
+ * @param chunksPerSecond 写入向量库的吞吐量（块/秒）
+ * @param errors          处理过程中的错误信息（最多保留最近的若干条）
+ */
+public record BulkIngestionStatus(String id,
+                                  String source,
+                                  IngestionJob.Status status,
+                                  Instant createdAt,
+                                  Instant startedAt,
+                                  Instant finishedAt,
+                                  long filesFound,
+                                  long filesSucceeded,
+                                  long filesFailed,
+                                  long chunksIndexed,
+                                  long chunksUnchanged,
+                                  long chunksDeleted,
+                                  long elapsedMillis,
+                                  double filesPerSecond,
+                                  double chunksPerSecond,
+                                  List<String> errors) {
+}
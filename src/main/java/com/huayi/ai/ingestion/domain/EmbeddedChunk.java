@@ -0,0 +1,11 @@
+package com.huayi.ai.ingestion.domain;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 09:30
+ * Description: 已完成向量化、等待写入向量库的文档块
+ */
+public record EmbeddedChunk(Document document, float[] embedding) {
+}
@@ -0,0 +1,24 @@
+package com.huayi.ai.ingestion.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-29 09:30
+ * Description: 单个文件上一次导入后的清单，记录向量库中该文件的文档块编号及其内容摘要
+ *
+ * @param fileName  文件名
+ * @param chunks    文档块编号 → 内容的 SHA-256，按文档块在文件中的顺序排列
+ * @param updatedAt 清单写入时间（毫秒）
+ */
+public record FileManifest(String fileName, Map<String, String> chunks, long updatedAt) {
+
+    public static FileManifest empty(String fileName) {
+        return new FileManifest(fileName, new LinkedHashMap<>(), 0);
+    }
+
+    public boolean contains(String chunkId) {
+        return chunks.containsKey(chunkId);
+    }
+}
@@ -0,0 +1,137 @@
+package com.huayi.ai.ingestion.domain;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 09:35
+ * Description: 文档导入任务，记录各处理阶段的进度与错误
+ * <p>
+ * 计数器由流水线各阶段的工作线程并发更新，状态变更与错误记录通过对象锁保护。
+ */
+public class IngestionJob {
+
+    /**
+     * PARTIAL：部分文档块处理失败，成功的部分已写入，但旧版本与导入清单保持不变，需要重新导入
+     */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, PARTIAL, FAILED
+    }
+
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_SPLIT = "split";
+    public static final String STAGE_KEYWORD = "keyword";
+    public static final String STAGE_EMBED = "embed";
+    public static final String STAGE_INDEX = "index";
+    /**
+     * 增量导入中内容未变、跳过向量化的文档块数
+     */
+    public static final String STAGE_UNCHANGED = "unchanged";
+    /**
+     * 增量导入中删除的旧版本文档块数
+     */
+    public static final String STAGE_DELETE = "delete";
+
+    private static final int MAX_ERRORS = 50;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String fileName;
+    private final Instant createdAt = Instant.now();
+    private final Map<String, AtomicLong> progress = new LinkedHashMap<>();
+    private final Deque<String> errors = new ArrayDeque<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private long errorCount;
+
+    public IngestionJob(String fileName) {
+        this.fileName = fileName;
+        for (String stage : List.of(STAGE_PARSE, STAGE_SPLIT, STAGE_UNCHANGED, STAGE_KEYWORD, STAGE_EMBED, STAGE_INDEX, STAGE_DELETE)) {
+            progress.put(stage, new AtomicLong());
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * 累加某个阶段已处理的数量
+     */
+    public void advance(String stage, long count) {
+        progress.get(stage).addAndGet(count);
+    }
+
+    public long processed(String stage) {
+        return progress.get(stage).get();
+    }
+
+    public synchronized void start() {
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+    }
+
+    /**
+     * 记录处理错误，只保留最近的 {@value #MAX_ERRORS} 条
+     */
+    public synchronized void recordError(String stage, Throwable e) {
+        recordError(stage, e.getMessage());
+    }
+
+    public synchronized void recordError(String stage, String message) {
+        errorCount++;
+        if (errors.size() == MAX_ERRORS) {
+            errors.removeFirst();
+        }
+        errors.addLast(stage + ": " + message);
+    }
+
+    public synchronized boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * 结束任务：没有错误时为完成；有错误时，没有任何文档块写入成功为失败，否则为部分完成
+     */
+    public synchronized void finish() {
+        finishedAt = Instant.now();
+        if (errorCount == 0) {
+            status = Status.COMPLETED;
+        } else {
+            status = processed(STAGE_INDEX) == 0 ? Status.FAILED : Status.PARTIAL;
+        }
+    }
+
+    public synchronized IngestionJobStatus snapshot() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        progress.forEach((stage, count) -> counts.put(stage, count.get()));
+        long elapsed = 0;
+        if (startedAt != null) {
+            elapsed = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+        }
+        double throughput = elapsed > 0 ? processed(STAGE_INDEX) * 1000.0 / elapsed : 0;
+        return new IngestionJobStatus(id, fileName, status, createdAt, startedAt, finishedAt,
+                counts, elapsed, throughput, new ArrayList<>(errors));
+    }
+}
@@ -0,0 +1,33 @@
+package com.huayi.ai.ingestion.domain;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 09:42
+ * Description: 文档导入任务的状态快照，用于接口返回
+ *
+ * @param id              任务编号
+ * @param fileName        文件名称
+ * @param status          任务状态
+ * @param createdAt       提交时间
+ * @param startedAt       开始处理时间
+ * @param finishedAt      结束时间
+ * @param progress        各阶段已处理的数量（parse 为文档数，其余为文档块数）
+ * @param elapsedMillis   已耗时（毫秒）
+ * @param chunksPerSecond 写入向量库的吞吐量（块/秒）
+ * @param errors          处理过程中的错误信息（最多保留最近的若干条）
+ */
+public record IngestionJobStatus(String id,
+                                 String fileName,
+                                 IngestionJob.Status status,
+                                 Instant createdAt,
+                                 Instant startedAt,
+                                 Instant finishedAt,
+                                 Map<String, Long> progress,
+                                 long elapsedMillis,
+                                 double chunksPerSecond,
+                                 List<String> errors) {
+}
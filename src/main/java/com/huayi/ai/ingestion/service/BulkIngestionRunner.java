@@ -0,0 +1,76 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.ingestion.domain.BulkIngestionJob;
+import com.huayi.ai.ingestion.domain.BulkIngestionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-31 11:00
+ * Description: 命令行批量导入，启动参数中带有 --bulk-ingest 时依次导入指定的目录或压缩包
+ * <p>
+ * 示例：{@code java -jar ai.jar --spring.main.web-application-type=none --bulk-ingest=/data/kb.zip}
+ * <p>
+ * 导入过程中定期打印进度，全部结束后打印吞吐量并退出，有文件导入失败时退出码为 1；
+ * 同时指定 --bulk-ingest-keep-running 时导入结束后继续运行。
+ */
+@Component
+public class BulkIngestionRunner implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngestionRunner.class);
+
+    static final String OPTION = "bulk-ingest";
+
+    static final String KEEP_RUNNING = "bulk-ingest-keep-running";
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 5;
+
+    private final BulkIngestionService bulkIngestionService;
+
+    private final ConfigurableApplicationContext applicationContext;
+
+    public BulkIngestionRunner(BulkIngestionService bulkIngestionService, ConfigurableApplicationContext applicationContext) {
+        this.bulkIngestionService = bulkIngestionService;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<String> paths = args.getOptionValues(OPTION);
+        if (paths == null || paths.isEmpty()) {
+            return;
+        }
+        long failed = 0;
+        for (String path : paths) {
+            BulkIngestionJob job = bulkIngestionService.submitPath(Paths.get(path));
+            while (!job.await(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                BulkIngestionStatus status = job.snapshot();
+                logger.info("批量导入进行中：{}，文件 {}/{}，失败 {}，写入文档块 {}（{} 块/秒）",
+                        path, status.filesSucceeded() + status.filesFailed(), status.filesFound(), status.filesFailed(),
+                        status.chunksIndexed(), String.format("%.1f", status.chunksPerSecond()));
+            }
+            BulkIngestionStatus status = job.snapshot();
+            failed += status.filesFailed();
+            logger.info("批量导入完成：{}，状态：{}，耗时 {} ms，文件：成功 {} 失败 {}（{} 个/秒），文档块：写入 {}（{} 块/秒），未变化 {}，删除 {}",
+                    path, status.status(), status.elapsedMillis(), status.filesSucceeded(), status.filesFailed(),
+                    String.format("%.2f", status.filesPerSecond()), status.chunksIndexed(),
+                    String.format("%.1f", status.chunksPerSecond()), status.chunksUnchanged(), status.chunksDeleted());
+            for (String error : status.errors()) {
+                logger.warn("导入失败：{}", error);
+            }
+        }
+        if (!args.containsOption(KEEP_RUNNING)) {
+            int exitCode = failed > 0 ? 1 : 0;
+            System.exit(SpringApplication.exit(applicationContext, () -> exitCode));
+        }
+    }
+}
@@ -0,0 +1,750 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.config.AdmissionLimiter;
+import com.huayi.ai.config.IngestionProperties;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.SemanticAnswerCache;
+import com.huayi.ai.ingestion.domain.BulkIngestionJob;
+import com.huayi.ai.ingestion.domain.BulkIngestionStatus;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import com.huayi.ai.ingestion.store.EmbeddedVectorStore;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-31 10:00
+ * Description: 批量导入目录或压缩包（zip、tar、tar.gz）中的所有文件
+ * <p>
+ * 文件由大小与 CPU 核数一致的 ForkJoinPool 并行解析、切分并提取关键词，结果经有界队列交给独立的向量化线程，
+ * 再通过同一个批量写入会话写入向量库，解析与向量化互不占用线程。同时处理中的文件数受 maxFilesInFlight 限制，
+ * 压缩包逐个条目解压到暂存目录、解析后立即删除，因此内存与临时文件占用与压缩包大小无关。
+ * <p>
+ * 每个文件单独增量导入（见 {@link IngestionManifest}），文件名为“目录或压缩包名/相对路径”；
+ * 单个文件解析或写入失败只记录到任务中，不影响其他文件，失败文件的旧版本保持不变。
+ * 同一时间只运行一个批量导入任务，后提交的任务排队。
+ */
+@Service
+public class BulkIngestionService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngestionService.class);
+
+    /**
+     * 向量化线程的结束标记
+     */
+    private static final Object END = new Object();
+
+    private final IngestionService ingestionService;
+
+    private final IngestionJobService ingestionJobService;
+
+    private final KeywordExtractor keywordExtractor;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ElasticsearchBulkIndexer bulkIndexer;
+
+    private final StreamingDocumentReader documentReader;
+
+    private final IngestionManifest manifest;
+
+    private final IngestionProperties properties;
+
+    private final SemanticAnswerCache answerCache;
+
+    private final RagMetrics ragMetrics;
+
+    private final Map<String, BulkIngestionJob> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService jobExecutor;
+
+    /**
+     * 解析、切分与关键词提取，同时执行写入完成后的旧版本删除
+     */
+    private final ForkJoinPool parsePool;
+
+    /**
+     * 向量化与写入线程
+     */
+    private final ExecutorService embedExecutor;
+
+    private final int parallelism;
+
+    public BulkIngestionService(IngestionService ingestionService,
+                                IngestionJobService ingestionJobService,
+                                KeywordExtractor keywordExtractor,
+                                EmbeddingModel embeddingModel,
+                                ElasticsearchBulkIndexer bulkIndexer,
+                                StreamingDocumentReader documentReader,
+                                IngestionManifest manifest,
+                                IngestionProperties properties,
+                                SemanticAnswerCache answerCache,
+                                RagMetrics ragMetrics) {
+        this.ingestionService = ingestionService;
+        this.ingestionJobService = ingestionJobService;
+        this.keywordExtractor = keywordExtractor;
+        this.embeddingModel = embeddingModel;
+        this.bulkIndexer = bulkIndexer;
+        this.documentReader = documentReader;
+        this.manifest = manifest;
+        this.properties = properties;
+        this.answerCache = answerCache;
+        this.ragMetrics = ragMetrics;
+        int configured = properties.getBulk().getParallelism();
+        this.parallelism = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        this.parsePool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("bulk-parse-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.jobExecutor = Executors.newSingleThreadExecutor(namedThreads("bulk-job-"));
+        this.embedExecutor = Executors.newCachedThreadPool(namedThreads("bulk-embed-"));
+        logger.info("批量导入解析线程池初始化完成，并行度：{}", parallelism);
+    }
+
+    /**
+     * 提交已暂存的压缩包，任务结束后删除
+     *
+     * @param archiveName 原始文件名，用于判断压缩格式和生成文件名前缀
+     */
+    public BulkIngestionJob submitArchive(Path spooledArchive, String archiveName) {
+        if (!isArchive(archiveName)) {
+            throw new IllegalArgumentException("不支持的压缩格式，请上传 zip、tar、tar.gz 或 tgz 文件：" + archiveName);
+        }
+        return submit(archiveName, job -> new ArchiveSource(job, spooledArchive, archiveName), spooledArchive);
+    }
+
+    /**
+     * 提交服务器上的目录或压缩包
+     */
+    public BulkIngestionJob submitPath(Path path) {
+        Path source = path.toAbsolutePath().normalize();
+        if (!Files.isDirectory(source) && !(Files.isRegularFile(source) && isArchive(source.getFileName().toString()))) {
+            throw new IllegalArgumentException("路径不是目录或支持的压缩包：" + path);
+        }
+        String name = source.getFileName() == null ? source.toString() : source.getFileName().toString();
+        return submit(source.toString(), job -> Files.isDirectory(source)
+                ? new DirectorySource(source, name) : new ArchiveSource(job, source, name), null);
+    }
+
+    /**
+     * 检查目录是否位于 rag.ingestion.bulk.allowed-roots 之下，接口导入服务器目录前调用
+     * <p>
+     * 目录与允许的根目录都解析符号链接后再比较，指向范围之外的链接不能绕过检查；
+     * 根目录本身（或其上级）是符号链接时，实际位置与配置不一致，该根目录不生效。
+     */
+    public Path checkAllowed(String directory) {
+        List<String> roots = properties.getBulk().getAllowedRoots();
+        if (roots == null || roots.isEmpty()) {
+            throw new IllegalArgumentException("未配置 rag.ingestion.bulk.allowed-roots，目录导入接口已禁用");
+        }
+        Path path;
+        try {
+            path = Paths.get(directory).toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("目录不存在或无法访问：" + directory);
+        }
+        for (String root : roots) {
+            Path configured = Paths.get(root).toAbsolutePath().normalize();
+            Path real;
+            try {
+                real = configured.toRealPath();
+            } catch (IOException e) {
+                logger.warn("允许导入的根目录不存在，已忽略：{}", root);
+                continue;
+            }
+            if (!real.equals(configured)) {
+                logger.warn("允许导入的根目录是符号链接或位于符号链接之下，已忽略：{} -> {}", root, real);
+                continue;
+            }
+            if (path.startsWith(real)) {
+                return path;
+            }
+        }
+        throw new IllegalArgumentException("目录不在允许导入的范围内：" + directory);
+    }
+
+    public Optional<BulkIngestionJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private BulkIngestionJob submit(String sourceName, SourceFactory factory, Path deleteAfter) {
+        evictFinishedJobs();
+        BulkIngestionJob job = new BulkIngestionJob(sourceName);
+        jobs.put(job.getId(), job);
+        jobExecutor.execute(() -> run(job, factory, deleteAfter));
+        logger.info("批量导入任务已提交，任务：{}，来源：{}", job.getId(), sourceName);
+        return job;
+    }
+
+    private void run(BulkIngestionJob job, SourceFactory factory, Path deleteAfter) {
+        job.start();
+        long start = System.nanoTime();
+        int maxFiles = properties.getBulk().getMaxFilesInFlight() > 0
+                ? properties.getBulk().getMaxFilesInFlight() : parallelism * 2;
+        int embedWorkers = Math.max(1, properties.getEmbedWorkers());
+        Context context = new Context(job, new Semaphore(maxFiles),
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                ingestionService.ragVectorStore() instanceof EmbeddedVectorStore localStore ? localStore : null);
+        CountDownLatch embedDone = new CountDownLatch(embedWorkers);
+        for (int w = 0; w < embedWorkers; w++) {
+            embedExecutor.execute(() -> {
+                try {
+                    embedLoop(context);
+                } finally {
+                    embedDone.countDown();
+                }
+            });
+        }
+        try {
+            if (context.localStore == null) {
+                ingestionService.createIndexIfNotExists();
+                // 批量导入按大批量处理：导入期间关闭索引刷新，结束后恢复
+                context.session = bulkIndexer.openSession(true, job::chunksIndexed,
+                        (id, reason) -> job.recordError(id + " " + reason));
+            }
+            try (FileSource source = factory.open(job)) {
+                source.forEach((fileName, file, temporary) -> {
+                    context.inFlight.acquire();
+                    job.fileFound();
+                    parsePool.execute(() -> parseFile(context, fileName, file, temporary));
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.recordError("任务被中断");
+            } catch (IOException | RuntimeException e) {
+                logger.error("批量导入任务 {} 读取来源失败", job.getId(), e);
+                job.recordError("读取来源失败：" + e.getMessage());
+            }
+            // 所有已提交的文件处理完成（包括旧版本删除）后才能关闭写入会话
+            context.inFlight.acquireUninterruptibly(maxFiles);
+            context.inFlight.release(maxFiles);
+        } catch (IOException | RuntimeException e) {
+            logger.error("批量导入任务 {} 执行失败", job.getId(), e);
+            job.recordError(e.getMessage());
+        } finally {
+            try {
+                // 此时所有文件已处理完，队列中没有待向量化的批次
+                for (int w = 0; w < embedWorkers; w++) {
+                    context.queue.put(END);
+                }
+                embedDone.await();
+                if (context.session != null) {
+                    context.session.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (deleteAfter != null) {
+                deleteQuietly(deleteAfter);
+            }
+            job.finish();
+            long elapsed = System.nanoTime() - start;
+            ragMetrics.recordIngestion("bulk", job.chunksIndexed(), elapsed);
+            ragMetrics.recordIncremental("bulk", job.chunksUnchanged(), job.chunksDeleted());
+            BulkIngestionStatus status = job.snapshot();
+            logger.info("批量导入任务结束，任务：{}，状态：{}，文件：成功 {} 失败 {}（{} 个/秒），文档块：写入 {}（{} 块/秒），未变化 {}，删除 {}",
+                    job.getId(), status.status(), status.filesSucceeded(), status.filesFailed(),
+                    String.format("%.2f", status.filesPerSecond()), status.chunksIndexed(),
+                    String.format("%.1f", status.chunksPerSecond()), status.chunksUnchanged(), status.chunksDeleted());
+        }
+    }
+
+    /**
+     * 在解析线程池中解析一个文件，切分后的文档块分配编号、提取关键词后按批次交给向量化线程
+     */
+    private void parseFile(Context context, String fileName, Path file, boolean temporary) {
+        FileTask task = null;
+        try {
+            IngestionManifest.Tracker tracker = manifest.tryBegin(fileName);
+            if (tracker == null) {
+                context.job.fileFailed(fileName, "同名文件正在导入");
+                context.inFlight.release();
+                return;
+            }
+            task = new FileTask(fileName, tracker);
+            ingestionService.deleteUntracked(tracker, fileName);
+            FileTask current = task;
+            int batchSize = Math.max(1, properties.getBatchSize());
+            List<Document> batch = new ArrayList<>(batchSize);
+            documentReader.read(fileResource(file, fileName), chunk -> {
+                batch.add(chunk);
+                if (batch.size() >= batchSize) {
+                    enqueue(context, current, batch);
+                    batch.clear();
+                }
+            });
+            enqueue(context, task, batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failTask(context, task, fileName, "interrupted");
+        } catch (IOException | RuntimeException e) {
+            logger.warn("批量导入文件失败：{}", fileName, e);
+            failTask(context, task, fileName, e.getMessage());
+        } finally {
+            if (temporary) {
+                deleteQuietly(file);
+            }
+            if (task != null) {
+                // 解析结束，释放解析占用的计数
+                operationsDone(context, task, 1, true);
+            }
+        }
+    }
+
+    private void failTask(Context context, FileTask task, String fileName, String message) {
+        if (task == null) {
+            context.job.fileFailed(fileName, message);
+            context.inFlight.release();
+        } else {
+            task.fail(message);
+        }
+    }
+
+    private void enqueue(Context context, FileTask task, List<Document> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Document> documents = task.tracker.assign(batch);
+        if (documents.isEmpty()) {
+            return;
+        }
+        // 关键词在解析线程上逐段提取，多个文件并行时已占满所有核，不再交给关键词提取线程池
+        ragMetrics.observe(RagMetrics.INGEST, "keyword_extraction", () -> {
+            for (Document document : documents) {
+                IngestionService.applyMetadata(document, task.fileName, keywordExtractor.extract(document.getText(), 30));
+            }
+        });
+        task.pending.addAndGet(documents.size());
+        context.queue.put(new FileBatch(task, documents));
+    }
+
+    private void embedLoop(Context context) {
+        while (true) {
+            Object item;
+            try {
+                item = context.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (item == END) {
+                return;
+            }
+            FileBatch batch = (FileBatch) item;
+            List<Document> documents = batch.documents;
+            List<EmbeddedChunk> chunks = new ArrayList<>(documents.size());
+            try {
+                List<float[]> embeddings = ragMetrics.observe(RagMetrics.INGEST, "embed",
+                        () -> AdmissionLimiter.callAs(AdmissionLimiter.Priority.BULK,
+                                () -> embeddingModel.embed(documents.stream().map(Document::getText).toList())));
+                for (int i = 0; i < documents.size(); i++) {
+                    chunks.add(new EmbeddedChunk(documents.get(i), embeddings.get(i)));
+                }
+            } catch (RuntimeException e) {
+                batch.task.fail("向量化失败：" + e.getMessage());
+                operationsDone(context, batch.task, documents.size(), false);
+                continue;
+            }
+            if (context.localStore != null) {
+                boolean success = true;
+                try {
+                    context.localStore.addEmbedded(chunks);
+                    context.job.chunksIndexed(chunks.size());
+                } catch (RuntimeException e) {
+                    batch.task.fail("写入失败：" + e.getMessage());
+                    success = false;
+                }
+                operationsDone(context, batch.task, chunks.size(), success);
+                continue;
+            }
+            int submitted = 0;
+            try {
+                for (EmbeddedChunk chunk : chunks) {
+                    context.session.add(chunk, success -> operationsDone(context, batch.task, 1, success));
+                    submitted++;
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                batch.task.fail("写入失败：" + e.getMessage());
+                operationsDone(context, batch.task, chunks.size() - submitted, false);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 文件的若干个待完成操作结束，全部结束时在解析线程池中继续处理，避免在写入会话的回调线程中再提交操作
+     */
+    private void operationsDone(Context context, FileTask task, int count, boolean success) {
+        if (!success) {
+            task.failed = true;
+        }
+        if (count > 0 && task.pending.addAndGet(-count) == 0) {
+            parsePool.execute(() -> completeFile(context, task));
+        }
+    }
+
+    /**
+     * 新版本全部写入后删除旧版本中已不存在的文档块，删除完成后保存清单
+     */
+    private void completeFile(Context context, FileTask task) {
+        try {
+            if (task.failed) {
+                finishFile(context, task, false);
+                return;
+            }
+            if (!task.deleting) {
+                List<String> stale = task.tracker.staleIds();
+                task.deleting = true;
+                task.deleted = stale.size();
+                if (!stale.isEmpty() && context.session != null) {
+                    // 多计一次，所有删除操作提交之后再释放，避免提交过程中计数提前归零
+                    task.pending.set(stale.size() + 1);
+                    for (String id : stale) {
+                        context.session.delete(id, success -> operationsDone(context, task, 1, success));
+                    }
+                    operationsDone(context, task, 1, true);
+                    return;
+                }
+                if (!stale.isEmpty()) {
+                    context.localStore.delete(stale);
+                }
+            }
+            task.tracker.commit();
+            finishFile(context, task, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.fail("interrupted");
+            finishFile(context, task, false);
+        } catch (RuntimeException e) {
+            task.fail(e.getMessage());
+            finishFile(context, task, false);
+        }
+    }
+
+    private void finishFile(Context context, FileTask task, boolean success) {
+        // 中断等异常情况下，已提交操作的回调仍可能再次触发完成处理
+        if (!task.finished.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (success) {
+                context.job.fileSucceeded(task.tracker.skipped(), task.deleted);
+            } else {
+                context.job.fileFailed(task.fileName, task.error == null ? "部分文档块写入失败" : task.error);
+            }
+            answerCache.invalidateSource(task.fileName);
+        } finally {
+            task.tracker.close();
+            context.inFlight.release();
+        }
+    }
+
+    static boolean isArchive(String name) {
+        String lower = name == null ? "" : name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".zip") || lower.endsWith(".tar") || lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+    }
+
+    /**
+     * 跳过隐藏文件和 macOS 压缩时附带的元数据目录
+     */
+    private static boolean isIgnored(String relativePath) {
+        for (String part : relativePath.split("/")) {
+            if (part.startsWith(".") || part.equals("__MACOSX")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Resource fileResource(Path file, String fileName) {
+        return new FileSystemResource(file) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    private void evictFinishedJobs() {
+        Instant expireBefore = Instant.now().minus(properties.getJobRetention());
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expireBefore));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除暂存文件失败：{}", file, e);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        parsePool.shutdownNow();
+        embedExecutor.shutdownNow();
+    }
+
+    /**
+     * 一次批量导入共享的状态
+     */
+    private static final class Context {
+        private final BulkIngestionJob job;
+        private final Semaphore inFlight;
+        private final BlockingQueue<Object> queue;
+        private final EmbeddedVectorStore localStore;
+        private volatile ElasticsearchBulkIndexer.BulkSession session;
+
+        Context(BulkIngestionJob job, Semaphore inFlight, BlockingQueue<Object> queue, EmbeddedVectorStore localStore) {
+            this.job = job;
+            this.inFlight = inFlight;
+            this.queue = queue;
+            this.localStore = localStore;
+        }
+    }
+
+    /**
+     * 单个文件的处理状态。pending 为尚未结束的操作数：解析本身计 1，每个待写入或待删除的文档块各计 1
+     */
+    private static final class FileTask {
+        private final String fileName;
+        private final IngestionManifest.Tracker tracker;
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean failed;
+        private volatile String error;
+        private boolean deleting;
+        private int deleted;
+
+        FileTask(String fileName, IngestionManifest.Tracker tracker) {
+            this.fileName = fileName;
+            this.tracker = tracker;
+        }
+
+        void fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+            failed = true;
+        }
+    }
+
+    private record FileBatch(FileTask task, List<Document> documents) {
+    }
+
+    @FunctionalInterface
+    private interface SourceFactory {
+        FileSource open(BulkIngestionJob job) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface FileVisitor {
+        /**
+         * @param fileName  写入元数据的文件名
+         * @param file      本地文件
+         * @param temporary 是否为解压出的临时文件，解析后删除
+         */
+        void visit(String fileName, Path file, boolean temporary) throws IOException, InterruptedException;
+    }
+
+    private interface FileSource extends AutoCloseable {
+        void forEach(FileVisitor visitor) throws IOException, InterruptedException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * 递归遍历目录，按需读取目录项，不会一次性列出全部文件；符号链接（包括指向文件的链接）不导入，
+     * 目录中的链接因此不能把范围之外的文件带进来
+     */
+    private static final class DirectorySource implements FileSource {
+        private final Path root;
+        private final String name;
+        private final Stream<Path> paths;
+
+        DirectorySource(Path root, String name) throws IOException {
+            this.root = root;
+            this.name = name;
+            this.paths = Files.walk(root);
+        }
+
+        @Override
+        public void forEach(FileVisitor visitor) throws IOException, InterruptedException {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                String relative = root.relativize(path).toString().replace('\\', '/');
+                if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) && !isIgnored(relative)) {
+                    visitor.visit(name + "/" + relative, path, false);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            paths.close();
+        }
+    }
+
+    /**
+     * 顺序读取压缩包，每个条目解压到暂存目录后交给解析线程；条目名只用作文件名，不用于拼接解压路径
+     */
+    private final class ArchiveSource implements FileSource {
+        private final BulkIngestionJob job;
+        private final String name;
+        private final ZipInputStream zip;
+        private final TarArchiveInputStream tar;
+
+        ArchiveSource(BulkIngestionJob job, Path archive, String name) throws IOException {
+            this.job = job;
+            this.name = name;
+            InputStream input = new BufferedInputStream(Files.newInputStream(archive));
+            String lower = name.toLowerCase(Locale.ROOT);
+            try {
+                if (lower.endsWith(".zip")) {
+                    this.zip = new ZipInputStream(input);
+                    this.tar = null;
+                } else {
+                    this.zip = null;
+                    this.tar = new TarArchiveInputStream(lower.endsWith(".tar") ? input : new GZIPInputStream(input));
+                }
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void forEach(FileVisitor visitor) throws IOException, InterruptedException {
+            InputStream entries = zip != null ? zip : tar;
+            while (true) {
+                String entryName;
+                if (zip != null) {
+                    ZipEntry entry = zip.getNextEntry();
+                    if (entry == null) {
+                        return;
+                    }
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    entryName = entry.getName();
+                } else {
+                    TarArchiveEntry entry = tar.getNextEntry();
+                    if (entry == null) {
+                        return;
+                    }
+                    if (!entry.isFile()) {
+                        continue;
+                    }
+                    entryName = entry.getName();
+                }
+                String relative = entryName.replace('\\', '/');
+                while (relative.startsWith("/") || relative.startsWith("./")) {
+                    relative = relative.substring(relative.startsWith("/") ? 1 : 2);
+                }
+                if (relative.isEmpty() || isIgnored(relative)) {
+                    continue;
+                }
+                String fileName = name + "/" + relative;
+                Path spooled = ingestionJobService.createSpoolFile();
+                try {
+                    if (!copyLimited(entries, spooled, properties.getBulk().getMaxEntrySize().toBytes())) {
+                        deleteQuietly(spooled);
+                        job.fileFound();
+                        job.fileFailed(fileName, "文件超过 rag.ingestion.bulk.max-entry-size");
+                        continue;
+                    }
+                } catch (IOException e) {
+                    deleteQuietly(spooled);
+                    throw e;
+                }
+                try {
+                    visitor.visit(fileName, spooled, true);
+                } catch (InterruptedException e) {
+                    deleteQuietly(spooled);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            (zip != null ? zip : tar).close();
+        }
+    }
+
+    /**
+     * 复制当前条目，超过上限时返回 false
+     */
+    private static boolean copyLimited(InputStream input, Path target, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (OutputStream output = Files.newOutputStream(target)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    return false;
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+}
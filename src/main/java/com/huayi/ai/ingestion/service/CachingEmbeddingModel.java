@@ -0,0 +1,301 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.config.EmbeddingCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-07 10:00
+ * Description: 带缓存的向量化模型装饰器
+ * <p>
+ * 缓存键为“模型名称 + 规范化后的文本”的 SHA-256，命中顺序为内存 → 磁盘，
+ * 未命中的文本去重后按批次交给被装饰的模型处理。页眉、页脚、法律声明等重复出现的文档块因此只需向量化一次。
+ * <p>
+ * 向量库检索时通过 {@link #embed(String)} 对用户问题向量化，这条路径额外经过带过期时间和 single-flight 的问题向量缓存。
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+
+    private final String modelName;
+
+    private final int batchSize;
+
+    private final boolean contentCacheEnabled;
+
+    private final MemoryTier memory;
+
+    private final DiskTier disk;
+
+    private final QueryEmbeddingCache queryCache;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter batches;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName,
+                                 EmbeddingCacheProperties properties, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.batchSize = Math.max(1, properties.getBatchSize());
+        this.contentCacheEnabled = properties.isEnabled();
+        this.queryCache = properties.getQuery().isEnabled()
+                ? new QueryEmbeddingCache(properties.getQuery().getMaxEntries(), properties.getQuery().getTtl(), meterRegistry)
+                : null;
+        this.memory = new MemoryTier(Math.max(0, properties.getMemoryMaxEntries()));
+        this.disk = properties.getDiskDir() == null || properties.getDiskDir().isBlank()
+                ? null : new DiskTier(Paths.get(properties.getDiskDir()));
+        this.memoryHits = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "hit").tag("tier", "memory").register(meterRegistry);
+        this.diskHits = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "hit").tag("tier", "disk").register(meterRegistry);
+        this.misses = Counter.builder("rag.embedding.cache.requests")
+                .tag("result", "miss").tag("tier", "none").register(meterRegistry);
+        this.batches = Counter.builder("rag.embedding.cache.delegate.batches")
+                .description("未命中缓存时向模型发出的批量请求次数").register(meterRegistry);
+        Gauge.builder("rag.embedding.cache.size", memory, MemoryTier::size)
+                .tag("tier", "memory").register(meterRegistry);
+        logger.info("向量化缓存已启用，模型：{}，文档块缓存：{}，内存上限：{}，磁盘目录：{}，问题缓存：{}",
+                modelName, contentCacheEnabled, properties.getMemoryMaxEntries(), properties.getDiskDir(),
+                queryCache != null);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        String model = modelOf(request.getOptions());
+        float[][] results = new float[inputs.size()][];
+        // 未命中的文本按缓存键去重，同一批次中重复的文本只请求一次
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        Map<String, String> pendingTexts = new LinkedHashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            String key = cacheKey(model, inputs.get(i));
+            float[] cached = lookup(key);
+            if (cached != null) {
+                results[i] = cached;
+                continue;
+            }
+            pending.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            pendingTexts.putIfAbsent(key, inputs.get(i));
+        }
+        if (!pending.isEmpty()) {
+            misses.increment(pending.size());
+            embedMisses(pendingTexts, pending, results, request.getOptions());
+        }
+        List<Embedding> embeddings = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            embeddings.add(new Embedding(results[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * 单条文本向量化，向量库检索用户问题时走这条路径
+     */
+    @Override
+    public float[] embed(String text) {
+        if (queryCache == null) {
+            return embedSingle(text);
+        }
+        return queryCache.get(cacheKey(modelName, text), () -> embedSingle(text));
+    }
+
+    private float[] embedSingle(String text) {
+        return call(new EmbeddingRequest(List.of(text), EmbeddingOptionsBuilder.builder().build()))
+                .getResult().getOutput();
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return call(new EmbeddingRequest(List.of(document.getText()), EmbeddingOptionsBuilder.builder().build()))
+                .getResult().getOutput();
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private void embedMisses(Map<String, String> pendingTexts, Map<String, List<Integer>> pending,
+                             float[][] results, EmbeddingOptions options) {
+        List<String> keys = new ArrayList<>(pendingTexts.keySet());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String> batchKeys = keys.subList(from, Math.min(keys.size(), from + batchSize));
+            List<String> batchTexts = batchKeys.stream().map(pendingTexts::get).toList();
+            batches.increment();
+            List<Embedding> embeddings = delegate.call(new EmbeddingRequest(batchTexts, options)).getResults();
+            for (int i = 0; i < embeddings.size(); i++) {
+                String key = batchKeys.get(i);
+                float[] vector = embeddings.get(i).getOutput();
+                store(key, vector);
+                for (int index : pending.get(key)) {
+                    results[index] = vector;
+                }
+            }
+        }
+    }
+
+    private float[] lookup(String key) {
+        if (!contentCacheEnabled) {
+            return null;
+        }
+        float[] vector = memory.get(key);
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        if (disk != null) {
+            vector = disk.get(key);
+            if (vector != null) {
+                diskHits.increment();
+                memory.put(key, vector);
+                return vector;
+            }
+        }
+        return null;
+    }
+
+    private void store(String key, float[] vector) {
+        if (!contentCacheEnabled) {
+            return;
+        }
+        memory.put(key, vector);
+        if (disk != null) {
+            disk.put(key, vector);
+        }
+    }
+
+    private String modelOf(EmbeddingOptions options) {
+        if (options != null && options.getModel() != null) {
+            return options.getModel();
+        }
+        return modelName;
+    }
+
+    /**
+     * 计算缓存键：Unicode 规范化、合并空白后与模型名称一起做 SHA-256
+     */
+    static String cacheKey(String model, String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").trim();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按条目数限制大小的 LRU 内存缓存
+     */
+    private static final class MemoryTier {
+        private final int maxEntries;
+        private final LinkedHashMap<String, float[]> entries;
+
+        MemoryTier(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                    return size() > MemoryTier.this.maxEntries;
+                }
+            };
+        }
+
+        synchronized float[] get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, float[] vector) {
+            if (maxEntries > 0) {
+                entries.put(key, vector);
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 本地磁盘缓存，每个向量以小端序 float 数组保存为一个文件，按键的前两位分目录存放，重启后仍然有效
+     */
+    private static final class DiskTier {
+        private final Path root;
+
+        DiskTier(Path root) {
+            this.root = root;
+        }
+
+        float[] get(String key) {
+            Path file = pathOf(key);
+            if (!Files.exists(file)) {
+                return null;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+                float[] vector = new float[buffer.remaining() / Float.BYTES];
+                buffer.asFloatBuffer().get(vector);
+                return vector;
+            } catch (IOException e) {
+                logger.warn("读取磁盘向量缓存失败：{}", file, e);
+                return null;
+            }
+        }
+
+        void put(String key, float[] vector) {
+            Path file = pathOf(key);
+            try {
+                Files.createDirectories(file.getParent());
+                ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asFloatBuffer().put(vector);
+                // 先写临时文件再原子替换，避免进程中断留下不完整的缓存文件
+                Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+                Files.write(temp, buffer.array());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("写入磁盘向量缓存失败：{}", file, e);
+            }
+        }
+
+        private Path pathOf(String key) {
+            return root.resolve(key.substring(0, 2)).resolve(key + ".vec");
+        }
+    }
+}
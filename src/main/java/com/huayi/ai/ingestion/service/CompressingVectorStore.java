@@ -0,0 +1,49 @@
+package com.huayi.ai.ingestion.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-28 10:40
+ * Description: 检索后经 {@link ContextCompressor} 压缩文档内容的向量库装饰器，写入与删除直接委托
+ */
+public class CompressingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+
+    private final ContextCompressor compressor;
+
+    public CompressingVectorStore(VectorStore delegate, ContextCompressor compressor) {
+        this.delegate = delegate;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return compressor.compress(request.getQuery(), delegate.similaritySearch(request));
+    }
+}
@@ -0,0 +1,305 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.chat.util.TokenEstimator;
+import com.huayi.ai.config.CompressionProperties;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.ingestion.util.TextRankEngine;
+import com.huayi.ai.ingestion.util.TextRankUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-28 10:00
+ * Description: 按问题压缩检索到的文档内容，缩短提示词
+ * <p>
+ * 文档块按句切分，同一 file_name 的文档块合并为一个文档，跨文档块重复的句子只保留一次。
+ * 总长度超过预算时，每个句子的得分 = queryWeight × 问题词语命中比例 + centralityWeight × 中心度，
+ * 中心度是在所有候选句构成的相似度图上用 {@link TextRankEngine#rankGraph} 计算的 TextRank 得分；
+ * 按得分从高到低选取句子直到用完预算，再按原文顺序拼接，不相邻的句子之间用省略号连接。
+ * 每次压缩减少的 token 数记录在 rag.context.tokens.saved 指标中，耗时记录在 query 流程的 compress 阶段（rag.stage{pipeline=query,stage=compress}）中。线程安全。
+ */
+@Component
+public class ContextCompressor {
+
+    private static final String GAP = "……";
+
+    private final CompressionProperties properties;
+
+    private final DistributionSummary tokensSaved;
+
+    private final DistributionSummary compressionRatio;
+
+    private final RagMetrics ragMetrics;
+
+    public ContextCompressor(CompressionProperties properties, RagMetrics ragMetrics, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.ragMetrics = ragMetrics;
+        this.tokensSaved = DistributionSummary.builder("rag.context.tokens.saved")
+                .description("上下文压缩减少的提示词 token 数（估算）")
+                .register(meterRegistry);
+        this.compressionRatio = DistributionSummary.builder("rag.context.compression.ratio")
+                .description("压缩后与压缩前文档内容 token 数之比")
+                .register(meterRegistry);
+    }
+
+    public CompressionProperties properties() {
+        return properties;
+    }
+
+    /**
+     * 压缩检索结果，返回的文档按文件合并，顺序与各文件首次出现的顺序一致
+     */
+    public List<Document> compress(String query, List<Document> documents) {
+        if (documents.isEmpty()) {
+            return documents;
+        }
+        return ragMetrics.observe(RagMetrics.QUERY, "compress", () -> doCompress(query, documents));
+    }
+
+    private List<Document> doCompress(String query, List<Document> documents) {
+        int original = 0;
+        Map<String, Group> groups = new LinkedHashMap<>();
+        List<Sentence> sentences = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int d = 0; d < documents.size(); d++) {
+            Document document = documents.get(d);
+            String text = document.getText() == null ? "" : document.getText();
+            original += TokenEstimator.estimate(text);
+            Object fileName = document.getMetadata().get(IngestionService.FILE_NAME);
+            Group group = groups.computeIfAbsent(fileName == null ? "#" + document.getId() : fileName.toString(),
+                    key -> new Group(document));
+            for (String sentence : splitSentences(text)) {
+                // 重叠的文档块中重复出现的句子只保留第一次；位置只按保留的句子递增，去重不会被当作删减
+                if (seen.add(sentence.replaceAll("\\s+", ""))) {
+                    Sentence entry = new Sentence(d, group.nextPosition++, sentence, TokenEstimator.estimate(sentence));
+                    group.sentences.add(entry);
+                    sentences.add(entry);
+                }
+            }
+        }
+
+        int total = sentences.stream().mapToInt(sentence -> sentence.tokens).sum();
+        if (total > properties.getTokenBudget()) {
+            select(query, sentences);
+        } else {
+            sentences.forEach(sentence -> sentence.selected = true);
+        }
+
+        List<Document> result = new ArrayList<>(groups.size());
+        int compressed = 0;
+        for (Group group : groups.values()) {
+            String text = join(group.sentences);
+            if (text.isEmpty()) {
+                continue;
+            }
+            compressed += TokenEstimator.estimate(text);
+            result.add(Document.builder()
+                    .id(group.first.getId())
+                    .text(text)
+                    .metadata(new HashMap<>(group.first.getMetadata()))
+                    .score(group.first.getScore())
+                    .build());
+        }
+        tokensSaved.record(Math.max(0, original - compressed));
+        if (original > 0) {
+            compressionRatio.record((double) compressed / original);
+        }
+        return result;
+    }
+
+    /**
+     * 按得分从高到低选取句子，直到用完预算
+     */
+    private void select(String query, List<Sentence> sentences) {
+        int n = sentences.size();
+        Set<String> queryTerms = terms(query);
+        List<Set<String>> sentenceTerms = new ArrayList<>(n);
+        for (Sentence sentence : sentences) {
+            sentenceTerms.add(terms(sentence.text));
+        }
+        float[] centrality = centrality(sentenceTerms);
+        float maxCentrality = 0;
+        for (float value : centrality) {
+            maxCentrality = Math.max(maxCentrality, value);
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            int hits = 0;
+            for (String term : sentenceTerms.get(i)) {
+                if (queryTerms.contains(term)) {
+                    hits++;
+                }
+            }
+            double relevance = queryTerms.isEmpty() ? 0 : (double) hits / queryTerms.size();
+            sentences.get(i).score = properties.getQueryWeight() * relevance
+                    + properties.getCentralityWeight() * (maxCentrality == 0 ? 0 : centrality[i] / maxCentrality);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> -sentences.get(i).score).thenComparingInt(i -> i));
+
+        int budget = properties.getTokenBudget();
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            Sentence sentence = sentences.get(order[i]);
+            if (i > 0 && sentence.score < properties.getMinScore()) {
+                break;
+            }
+            // 得分最高的句子即使超出预算也保留，避免上下文为空
+            if (i == 0 || used + sentence.tokens <= budget) {
+                sentence.selected = true;
+                used += sentence.tokens;
+            }
+        }
+    }
+
+    /**
+     * 句子按词语 Jaccard 相似度连边，在该图上计算 TextRank 得分
+     */
+    private float[] centrality(List<Set<String>> sentenceTerms) {
+        int n = sentenceTerms.size();
+        List<List<Integer>> adjacency = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            adjacency.add(new ArrayList<>());
+        }
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            Set<String> a = sentenceTerms.get(i);
+            if (a.isEmpty()) {
+                continue;
+            }
+            for (int j = i + 1; j < n; j++) {
+                Set<String> b = sentenceTerms.get(j);
+                if (b.isEmpty()) {
+                    continue;
+                }
+                Set<String> smaller = a.size() <= b.size() ? a : b;
+                Set<String> larger = smaller == a ? b : a;
+                int shared = 0;
+                for (String term : smaller) {
+                    if (larger.contains(term)) {
+                        shared++;
+                    }
+                }
+                if (shared > 0 && (double) shared / (a.size() + b.size() - shared) >= properties.getSimilarityThreshold()) {
+                    adjacency.get(i).add(j);
+                    adjacency.get(j).add(i);
+                    edges += 2;
+                }
+            }
+        }
+        int[] offsets = new int[n + 1];
+        int[] neighbors = new int[edges];
+        int write = 0;
+        for (int u = 0; u < n; u++) {
+            offsets[u] = write;
+            for (int v : adjacency.get(u)) {
+                neighbors[write++] = v;
+            }
+        }
+        offsets[n] = write;
+        return TextRankEngine.local().rankGraph(n, offsets, neighbors);
+    }
+
+    /**
+     * 按原文顺序拼接选中的句子：同一文档块内相邻的句子直接连接，中间有句子未被选中时用省略号连接，不同文档块之间换行
+     */
+    private static String join(List<Sentence> sentences) {
+        StringBuilder builder = new StringBuilder();
+        Sentence previous = null;
+        for (Sentence sentence : sentences) {
+            if (!sentence.selected) {
+                continue;
+            }
+            if (previous != null) {
+                if (previous.chunk != sentence.chunk) {
+                    builder.append('\n');
+                } else if (previous.position + 1 != sentence.position) {
+                    builder.append(GAP);
+                } else if (builder.charAt(builder.length() - 1) < 0x80 && sentence.text.charAt(0) < 0x80) {
+                    // 英文句子之间补回切分时去掉的空格
+                    builder.append(' ');
+                }
+            }
+            builder.append(sentence.text);
+            previous = sentence;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 按中英文句末标点和换行切分，标点保留在句子末尾
+     */
+    static List<String> splitSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean end = c == '。' || c == '！' || c == '？' || c == '；' || c == '!' || c == '?' || c == ';' || c == '\n'
+                    || (c == '.' && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))));
+            if (end) {
+                addSentence(sentences, text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        addSentence(sentences, text.substring(start));
+        return sentences;
+    }
+
+    private static void addSentence(List<String> sentences, String sentence) {
+        String trimmed = sentence.strip();
+        if (!trimmed.isEmpty()) {
+            sentences.add(trimmed);
+        }
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String term : TextRankUtil.parseTerms(text == null ? "" : text)) {
+            terms.add(term.toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    private static final class Group {
+        private final Document first;
+        private final List<Sentence> sentences = new ArrayList<>();
+        /**
+         * 下一个保留句子在文件中的序号，不计因重复而去掉的句子
+         */
+        private int nextPosition;
+
+        Group(Document first) {
+            this.first = first;
+        }
+    }
+
+    private static final class Sentence {
+        private final int chunk;
+        private final int position;
+        private final String text;
+        private final int tokens;
+        private double score;
+        private boolean selected;
+
+        Sentence(int chunk, int position, String text, int tokens) {
+            this.chunk = chunk;
+            this.position = position;
+            this.text = text;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.huayi.ai.ingestion.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.huayi.ai.config.BulkIngestProperties;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import jakarta.annotation.PreDestroy;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.autoconfigure.vectorstore.elasticsearch.ElasticsearchVectorStoreProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 10:30
+ * Description: 将已向量化的文档块批量写入 Elasticsearch
+ * <p>
+ * 写入的文档结构与 ElasticsearchVectorStore 保持一致（id/content/metadata/embedding），
+ * 因此写入的数据可以直接被向量库检索。
+ * <p>
+ * 通过 {@link #openSession(boolean, IntConsumer, BiConsumer)} 打开批量写入会话：文档按数量和字节数攒批，
+ * 多个 _bulk 请求并行发送，被拒绝的文档单独重试。大批量导入期间临时关闭索引刷新并将副本数设为 0，
+ * 所有大批量会话结束后恢复原设置。原设置在修改前记录到索引的 _meta 中，进程在导入期间退出时，
+ * 下次启动由 {@link #recoverLeftoverSettings()} 恢复；原来没有显式设置的项恢复为 Elasticsearch 的默认值。
+ */
+@Component
+public class ElasticsearchBulkIndexer {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticsearchBulkIndexer.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String REFRESH_INTERVAL = "refresh_interval";
+
+    private static final String NUMBER_OF_REPLICAS = "number_of_replicas";
+
+    /**
+     * 索引 _meta 中记录原设置的键
+     */
+    private static final String META_KEY = "bulk_load";
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    /**
+     * 恢复默认值需要发送值为 null 的设置，类型化的客户端无法表达，因此这部分请求使用底层客户端
+     */
+    private final RestClient restClient;
+
+    private final ElasticsearchVectorStoreProperties options;
+
+    private final BulkIngestProperties properties;
+
+    private final ExecutorService executor;
+
+    /**
+     * 正在进行的大批量会话数量，第一个会话调整索引设置，最后一个会话恢复
+     */
+    private int largeLoads;
+
+    /**
+     * 导入前的设置，为 null 表示原来没有显式设置
+     */
+    private String savedRefreshInterval;
+
+    private String savedReplicas;
+
+    private boolean leftoverChecked;
+
+    public ElasticsearchBulkIndexer(ElasticsearchClient elasticsearchClient,
+                                    RestClient restClient,
+                                    ElasticsearchVectorStoreProperties options,
+                                    BulkIngestProperties properties) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.restClient = restClient;
+        this.options = options;
+        this.properties = properties;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 判断指定大小的导入是否按大批量导入处理
+     */
+    public boolean isLargeLoad(long bytes) {
+        return bytes >= properties.getLargeLoadThreshold().toBytes();
+    }
+
+    /**
+     * 打开批量写入会话
+     *
+     * @param largeLoad 是否为大批量导入，大批量导入期间会调整索引设置
+     * @param onIndexed 一批文档写入成功后的回调，参数为成功的文档数
+     * @param onFailure 文档最终写入失败时的回调，参数为文档编号和失败原因
+     */
+    public BulkSession openSession(boolean largeLoad, IntConsumer onIndexed, BiConsumer<String, String> onFailure) throws IOException {
+        boolean tuned = largeLoad && properties.isTuneIndexSettings();
+        if (tuned) {
+            beginLargeLoad();
+        }
+        return new BulkSession(tuned, onIndexed, onFailure);
+    }
+
+    /**
+     * 第一个大批量会话开始时记录原设置，并关闭刷新、将副本数设为 0
+     */
+    private synchronized void beginLargeLoad() throws IOException {
+        if (largeLoads > 0) {
+            largeLoads++;
+            return;
+        }
+        String indexName = options.getIndexName();
+        GetIndicesSettingsResponse response = elasticsearchClient.indices().getSettings(g -> g.index(indexName));
+        // 索引名可能是迁移后指向新索引的别名，返回结果以实际索引名为键
+        IndexState state = response.result().isEmpty() ? null : response.result().values().iterator().next();
+        IndexSettings settings = state == null ? null : state.settings();
+        if (settings != null && settings.index() != null) {
+            settings = settings.index();
+        }
+        savedRefreshInterval = settings != null && settings.refreshInterval() != null && settings.refreshInterval().isTime()
+                ? settings.refreshInterval().time() : null;
+        savedReplicas = settings == null ? null : settings.numberOfReplicas();
+        // 先记录原设置再修改，修改后进程异常退出时下次启动仍能恢复
+        Map<String, Object> saved = new LinkedHashMap<>();
+        saved.put(REFRESH_INTERVAL, savedRefreshInterval);
+        saved.put(NUMBER_OF_REPLICAS, savedReplicas);
+        perform("PUT", "/" + indexName + "/_mapping", Map.of("_meta", Map.of(META_KEY, saved)));
+        elasticsearchClient.indices().putSettings(p -> p.index(indexName)
+                .settings(s -> s.refreshInterval(Time.of(t -> t.time("-1"))).numberOfReplicas("0")));
+        largeLoads = 1;
+        logger.info("索引 {} 进入批量导入模式，原 refresh_interval={}，number_of_replicas={}",
+                indexName, describe(savedRefreshInterval), describe(savedReplicas));
+    }
+
+    /**
+     * 最后一个大批量会话结束时恢复原设置并刷新索引
+     */
+    private synchronized void endLargeLoad() {
+        if (--largeLoads > 0) {
+            return;
+        }
+        String indexName = options.getIndexName();
+        try {
+            restoreSettings(indexName, savedRefreshInterval, savedReplicas);
+            elasticsearchClient.indices().refresh(r -> r.index(indexName));
+            logger.info("索引 {} 退出批量导入模式，已恢复原设置", indexName);
+        } catch (IOException e) {
+            logger.error("恢复索引 {} 设置失败，下次启动时自动恢复，也可手动恢复 refresh_interval={}，number_of_replicas={}",
+                    indexName, describe(savedRefreshInterval), describe(savedReplicas), e);
+        }
+    }
+
+    /**
+     * 检查上一次运行是否在大批量导入期间退出、没有恢复索引设置，是则恢复。
+     * 只在第一次成功检查时执行，本进程已有大批量会话时跳过，避免撤销正在进行的导入的设置
+     */
+    public synchronized void recoverLeftoverSettings() {
+        if (leftoverChecked || largeLoads > 0) {
+            return;
+        }
+        String indexName = options.getIndexName();
+        try {
+            JsonNode saved = firstIndex(perform("GET", "/" + indexName + "/_mapping", null))
+                    .path("mappings").path("_meta").path(META_KEY);
+            if (saved.isObject()) {
+                String refreshInterval = textOf(saved.get(REFRESH_INTERVAL));
+                String replicas = textOf(saved.get(NUMBER_OF_REPLICAS));
+                restoreSettings(indexName, refreshInterval, replicas);
+                logger.warn("索引 {} 上次批量导入未正常结束，已恢复 refresh_interval={}，number_of_replicas={}",
+                        indexName, describe(refreshInterval), describe(replicas));
+            } else {
+                JsonNode settings = firstIndex(perform("GET", "/" + indexName + "/_settings", null))
+                        .path("settings").path("index");
+                if ("-1".equals(textOf(settings.get(REFRESH_INTERVAL)))) {
+                    // 之前的版本没有记录原设置，refresh_interval 恢复为默认值，副本数为 0 时同样恢复为默认值
+                    String replicas = textOf(settings.get(NUMBER_OF_REPLICAS));
+                    restoreSettings(indexName, null, "0".equals(replicas) ? null : replicas);
+                    logger.warn("索引 {} 的 refresh_interval 为 -1，可能是批量导入未正常结束，已恢复为默认值", indexName);
+                }
+            }
+            leftoverChecked = true;
+        } catch (IOException e) {
+            logger.warn("检查索引 {} 的批量导入设置失败，下次导入时重试", indexName, e);
+        }
+    }
+
+    /**
+     * 恢复 refresh_interval 与副本数并清除 _meta 中的记录，值为 null 时恢复为默认值
+     */
+    private void restoreSettings(String indexName, String refreshInterval, String replicas) throws IOException {
+        Map<String, Object> index = new LinkedHashMap<>();
+        index.put(REFRESH_INTERVAL, refreshInterval);
+        index.put(NUMBER_OF_REPLICAS, replicas);
+        perform("PUT", "/" + indexName + "/_settings", Map.of("index", index));
+        perform("PUT", "/" + indexName + "/_mapping", Map.of("_meta", Collections.singletonMap(META_KEY, null)));
+    }
+
+    private JsonNode perform(String method, String endpoint, Object body) throws IOException {
+        Request request = new Request(method, endpoint);
+        if (body != null) {
+            request.setJsonEntity(OBJECT_MAPPER.writeValueAsString(body));
+        }
+        Response response = restClient.performRequest(request);
+        try (InputStream content = response.getEntity().getContent()) {
+            return OBJECT_MAPPER.readTree(content);
+        }
+    }
+
+    /**
+     * 响应以实际索引名为键，索引名是别名时也只对应一个索引
+     */
+    private static JsonNode firstIndex(JsonNode response) {
+        Iterator<JsonNode> indices = response.elements();
+        return indices.hasNext() ? indices.next() : MissingNode.getInstance();
+    }
+
+    private static String textOf(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
+    private static String describe(String value) {
+        return value == null ? "默认值" : value;
+    }
+
+    static Map<String, Object> source(EmbeddedChunk chunk) {
+        Document document = chunk.document();
+        Map<String, Object> source = new HashMap<>();
+        source.put("id", document.getId());
+        source.put(IngestionService.textField, document.getText());
+        source.put("metadata", document.getMetadata());
+        source.put(IngestionService.vectorField, chunk.embedding());
+        return source;
+    }
+
+    /**
+     * 估算文档序列化后的字节数：正文、元数据以及每个向量分量约 12 个字符
+     */
+    private static long estimateBytes(EmbeddedChunk chunk) {
+        Document document = chunk.document();
+        return 64L
+                + document.getText().getBytes(StandardCharsets.UTF_8).length
+                + document.getMetadata().toString().getBytes(StandardCharsets.UTF_8).length
+                + chunk.embedding().length * 12L;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 批量写入会话，add 可被多个线程同时调用
+     */
+    public final class BulkSession implements AutoCloseable {
+        private final boolean tuned;
+        private final IntConsumer onIndexed;
+        private final BiConsumer<String, String> onFailure;
+        private final Semaphore inFlight;
+        private final int maxInFlight;
+        private List<PendingOperation> batch = new ArrayList<>();
+        private long batchBytes;
+        private boolean closed;
+
+        private BulkSession(boolean tuned, IntConsumer onIndexed, BiConsumer<String, String> onFailure) {
+            this.tuned = tuned;
+            this.onIndexed = onIndexed;
+            this.onFailure = onFailure;
+            this.maxInFlight = Math.max(1, properties.getMaxInFlight());
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        /**
+         * 添加一个待写入的文档块，批次满时提交，进行中的请求数达到上限时阻塞
+         */
+        public void add(EmbeddedChunk chunk) throws InterruptedException {
+            add(chunk, null);
+        }
+
+        /**
+         * 添加一个待写入的文档块，该文档最终写入成功或失败后调用 listener
+         */
+        public void add(EmbeddedChunk chunk, OperationListener listener) throws InterruptedException {
+            String id = chunk.document().getId();
+            BulkOperation operation = BulkOperation.of(op -> op.index(idx -> idx
+                    .index(options.getIndexName())
+                    .id(id)
+                    .document(source(chunk))));
+            append(new PendingOperation(id, operation, listener), estimateBytes(chunk));
+        }
+
+        /**
+         * 添加一个删除操作，与写入操作在同一批次中提交
+         */
+        public void delete(String id) throws InterruptedException {
+            delete(id, null);
+        }
+
+        public void delete(String id, OperationListener listener) throws InterruptedException {
+            BulkOperation operation = BulkOperation.of(op -> op.delete(d -> d.index(options.getIndexName()).id(id)));
+            append(new PendingOperation(id, operation, listener), 64L + id.length());
+        }
+
+        private void append(PendingOperation operation, long bytes) throws InterruptedException {
+            List<PendingOperation> full = null;
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("bulk session already closed");
+                }
+                batch.add(operation);
+                batchBytes += bytes;
+                if (batch.size() >= properties.getMaxActions() || batchBytes >= properties.getMaxBytes().toBytes()) {
+                    full = takeBatch();
+                }
+            }
+            if (full != null) {
+                submit(full);
+            }
+        }
+
+        private List<PendingOperation> takeBatch() {
+            List<PendingOperation> taken = batch;
+            batch = new ArrayList<>();
+            batchBytes = 0;
+            return taken;
+        }
+
+        private void submit(List<PendingOperation> operations) throws InterruptedException {
+            inFlight.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        send(operations);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        /**
+         * 发送一个批次，只重试被拒绝（429/503）的文档，其他错误直接记为失败
+         */
+        private void send(List<PendingOperation> operations) {
+            List<PendingOperation> pending = operations;
+            long backoff = properties.getInitialBackoff().toMillis();
+            for (int attempt = 0; !pending.isEmpty(); attempt++) {
+                List<PendingOperation> rejected = new ArrayList<>();
+                List<BulkOperation> request = pending.stream().map(PendingOperation::operation).toList();
+                try {
+                    BulkResponse response = elasticsearchClient.bulk(b -> b.operations(request));
+                    int succeeded = 0;
+                    List<BulkResponseItem> items = response.items();
+                    for (int i = 0; i < items.size(); i++) {
+                        BulkResponseItem item = items.get(i);
+                        if (item.error() == null) {
+                            // 进度只统计写入的文档，删除操作（包括删除不存在的文档）不计入
+                            if (pending.get(i).operation().isIndex()) {
+                                succeeded++;
+                            }
+                            pending.get(i).complete(true);
+                        } else if (isRejected(item.status()) && attempt < properties.getMaxRetries()) {
+                            rejected.add(pending.get(i));
+                        } else {
+                            onFailure.accept(pending.get(i).id(), item.error().reason());
+                            pending.get(i).complete(false);
+                        }
+                    }
+                    if (succeeded > 0) {
+                        onIndexed.accept(succeeded);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (attempt >= properties.getMaxRetries()) {
+                        logger.error("批量写入失败，放弃 {} 个文档", pending.size(), e);
+                        for (PendingOperation operation : pending) {
+                            onFailure.accept(operation.id(), e.getMessage());
+                            operation.complete(false);
+                        }
+                        return;
+                    }
+                    logger.warn("批量写入请求失败，{} ms 后重试", backoff, e);
+                    rejected = pending;
+                }
+                if (!rejected.isEmpty()) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        for (PendingOperation operation : rejected) {
+                            onFailure.accept(operation.id(), "interrupted");
+                            operation.complete(false);
+                        }
+                        return;
+                    }
+                    backoff *= 2;
+                }
+                pending = rejected;
+            }
+        }
+
+        private boolean isRejected(int status) {
+            return status == 429 || status == 503;
+        }
+
+        /**
+         * 提交剩余的文档并等待所有请求完成，大批量会话结束时恢复索引设置
+         */
+        @Override
+        public void close() throws InterruptedException {
+            List<PendingOperation> remaining;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                remaining = takeBatch();
+            }
+            try {
+                if (!remaining.isEmpty()) {
+                    submit(remaining);
+                }
+                inFlight.acquire(maxInFlight);
+                inFlight.release(maxInFlight);
+            } finally {
+                if (tuned) {
+                    endLargeLoad();
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个操作的最终结果回调，在发送批次的线程中调用，不能在回调中再向同一会话添加操作
+     */
+    @FunctionalInterface
+    public interface OperationListener {
+        void onComplete(boolean success);
+    }
+
+    private record PendingOperation(String id, BulkOperation operation, OperationListener listener) {
+
+        void complete(boolean success) {
+            if (listener != null) {
+                listener.onComplete(success);
+            }
+        }
+    }
+}
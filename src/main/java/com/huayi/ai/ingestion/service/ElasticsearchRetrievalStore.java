@@ -0,0 +1,442 @@
+package com.huayi.ai.ingestion.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.KnnSearch;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryResponse;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.huayi.ai.config.RetrievalProperties;
+import com.huayi.ai.config.VectorIndexProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.autoconfigure.vectorstore.elasticsearch.ElasticsearchVectorStoreProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchAiSearchFilterExpressionConverter;
+import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchVectorStore;
+import org.springframework.ai.vectorstore.elasticsearch.SimilarityFunction;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-13 10:40
+ * Description: 检索用的 Elasticsearch 向量库
+ * <p>
+ * 写入和删除委托给 ElasticsearchVectorStore；检索时自行发起 kNN 请求，候选数量（num_candidates）可配置，
+ * 也可以通过 {@link #withNumCandidates(int)} 为单次检索指定，不再固定为 topK 的 1.5 倍。
+ * 元数据过滤条件作为 kNN 的预过滤，在候选集选取之前生效；等值和 in 条件直接构造为 terms 查询。
+ * <p>
+ * 开启混合检索时，content 字段的 BM25 查询与 kNN 查询通过一次 _msearch 请求发出，两路结果在应用端按倒数排名融合（RRF），
+ * 以便型号、错误码等精确词也能被召回。Elasticsearch 自带的 rrf retriever 需要商业许可，因此没有使用。
+ * 各阶段耗时记录在 rag.retrieval.stage 指标中。
+ */
+@Component
+public class ElasticsearchRetrievalStore implements VectorStore {
+
+    private final ElasticsearchVectorStore delegate;
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ElasticsearchVectorStoreProperties options;
+
+    private final VectorIndexProperties indexProperties;
+
+    private final RetrievalProperties retrievalProperties;
+
+    private final Timer embedTimer;
+
+    private final Timer vectorSearchTimer;
+
+    private final Timer hybridSearchTimer;
+
+    private final Timer fuseTimer;
+
+    private final ElasticsearchAiSearchFilterExpressionConverter filterConverter =
+            new ElasticsearchAiSearchFilterExpressionConverter();
+
+    /**
+     * 调用方指定的候选数量，为空时使用配置
+     */
+    private final Integer numCandidates;
+
+    @Autowired
+    public ElasticsearchRetrievalStore(ElasticsearchVectorStore elasticsearchVectorStore,
+                                       ElasticsearchClient elasticsearchClient,
+                                       EmbeddingModel embeddingModel,
+                                       ElasticsearchVectorStoreProperties options,
+                                       VectorIndexProperties indexProperties,
+                                       RetrievalProperties retrievalProperties,
+                                       MeterRegistry meterRegistry) {
+        this.delegate = elasticsearchVectorStore;
+        this.elasticsearchClient = elasticsearchClient;
+        this.embeddingModel = embeddingModel;
+        this.options = options;
+        this.indexProperties = indexProperties;
+        this.retrievalProperties = retrievalProperties;
+        this.embedTimer = stageTimer(meterRegistry, "embed");
+        this.vectorSearchTimer = stageTimer(meterRegistry, "vector_search");
+        this.hybridSearchTimer = stageTimer(meterRegistry, "hybrid_search");
+        this.fuseTimer = stageTimer(meterRegistry, "fuse");
+        this.numCandidates = null;
+    }
+
+    private ElasticsearchRetrievalStore(ElasticsearchRetrievalStore source, Integer numCandidates) {
+        this.delegate = source.delegate;
+        this.elasticsearchClient = source.elasticsearchClient;
+        this.embeddingModel = source.embeddingModel;
+        this.options = source.options;
+        this.indexProperties = source.indexProperties;
+        this.retrievalProperties = source.retrievalProperties;
+        this.embedTimer = source.embedTimer;
+        this.vectorSearchTimer = source.vectorSearchTimer;
+        this.hybridSearchTimer = source.hybridSearchTimer;
+        this.fuseTimer = source.fuseTimer;
+        this.numCandidates = numCandidates;
+    }
+
+    private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("rag.retrieval.stage")
+                .description("检索各阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 返回使用指定候选数量检索的视图，写入与删除行为不变
+     */
+    public ElasticsearchRetrievalStore withNumCandidates(int numCandidates) {
+        return new ElasticsearchRetrievalStore(this, numCandidates);
+    }
+
+    @Override
+    public String getName() {
+        return "ElasticsearchRetrievalStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    /**
+     * 按元数据条件删除，条件与检索的预过滤一样直接构造查询，文件名中的空格、斜杠等字符按原值匹配
+     */
+    public void delete(Filter.Expression filterExpression) {
+        Query query = toQuery(filterExpression);
+        try {
+            DeleteByQueryResponse response = elasticsearchClient.deleteByQuery(d -> d
+                    .index(options.getIndexName())
+                    .query(query));
+            if (!response.failures().isEmpty()) {
+                throw new IllegalStateException("按条件删除失败：" + response.failures().get(0).cause().reason());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] queryVector = embedTimer.record(() -> embeddingModel.embed(request.getQuery()));
+        if (retrievalProperties.isHybrid() && StringUtils.hasText(request.getQuery())) {
+            return hybridSearch(request, queryVector);
+        }
+        return search(request, queryVector);
+    }
+
+    /**
+     * 使用已经计算好的问题向量检索
+     */
+    public List<Document> search(SearchRequest request, float[] queryVector) {
+        int topK = request.getTopK();
+        Query filter = filterQuery(request);
+        KnnSearch knn = knnSearch(queryVector, topK, request.getSimilarityThreshold(), filter);
+        try {
+            SearchResponse<StoredChunk> response = timed(vectorSearchTimer, () -> elasticsearchClient.search(s -> s
+                    .index(options.getIndexName())
+                    .knn(knn)
+                    .size(topK)
+                    .source(src -> src.filter(f -> f.excludes(IngestionService.vectorField))), StoredChunk.class));
+            List<Document> documents = new ArrayList<>(response.hits().hits().size());
+            for (Hit<StoredChunk> hit : response.hits().hits()) {
+                documents.add(toDocument(hit));
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * BM25 与 kNN 混合检索：两路查询在一次 _msearch 请求中发出，结果按 RRF 融合后取前 topK 个
+     */
+    public List<Document> hybridSearch(SearchRequest request, float[] queryVector) {
+        int topK = request.getTopK();
+        int vectorSize = Math.max(topK, retrievalProperties.getVectorCandidates());
+        int textSize = Math.max(topK, retrievalProperties.getTextCandidates());
+        Query filter = filterQuery(request);
+        KnnSearch knn = knnSearch(queryVector, vectorSize, request.getSimilarityThreshold(), filter);
+        Query text = Query.of(q -> q.bool(b -> {
+            b.must(m -> m.match(match -> match.field(IngestionService.textField).query(request.getQuery())));
+            if (filter != null) {
+                b.filter(filter);
+            }
+            return b;
+        }));
+        MsearchResponse<StoredChunk> response;
+        try {
+            response = timed(hybridSearchTimer, () -> elasticsearchClient.msearch(m -> m
+                    .index(options.getIndexName())
+                    .searches(item -> item.header(h -> h).body(body -> body
+                            .knn(knn)
+                            .size(vectorSize)
+                            .source(src -> src.filter(f -> f.excludes(IngestionService.vectorField)))))
+                    .searches(item -> item.header(h -> h).body(body -> body
+                            .query(text)
+                            .size(textSize)
+                            .source(src -> src.filter(f -> f.excludes(IngestionService.vectorField))))), StoredChunk.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Hit<StoredChunk>> vectorHits = hits(response.responses().get(0));
+        List<Hit<StoredChunk>> textHits = hits(response.responses().get(1));
+        return fuseTimer.record(() -> fuse(vectorHits, textHits, topK));
+    }
+
+    private static <T> T timed(Timer timer, ElasticsearchCall<T> call) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try {
+            return call.execute();
+        } finally {
+            sample.stop(timer);
+        }
+    }
+
+    private static List<Hit<StoredChunk>> hits(MultiSearchResponseItem<StoredChunk> item) {
+        if (item.isFailure()) {
+            throw new IllegalStateException("检索失败：" + item.failure().error().reason());
+        }
+        return item.result().hits().hits();
+    }
+
+    /**
+     * 倒数排名融合，同一文档在两路结果中的得分相加；向量检索命中的文档保留其相似度换算的 distance
+     */
+    private List<Document> fuse(List<Hit<StoredChunk>> vectorHits, List<Hit<StoredChunk>> textHits, int topK) {
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        int rankConstant = retrievalProperties.getRankConstant();
+        for (int i = 0; i < vectorHits.size(); i++) {
+            Hit<StoredChunk> hit = vectorHits.get(i);
+            Fused entry = fused.computeIfAbsent(hit.id(), id -> new Fused(hit));
+            entry.similarity = toSimilarity(hit.score() == null ? 0 : hit.score());
+            entry.score += retrievalProperties.getVectorWeight() / (rankConstant + i + 1);
+        }
+        for (int i = 0; i < textHits.size(); i++) {
+            Hit<StoredChunk> hit = textHits.get(i);
+            fused.computeIfAbsent(hit.id(), id -> new Fused(hit)).score
+                    += retrievalProperties.getTextWeight() / (rankConstant + i + 1);
+        }
+        return fused.values().stream()
+                .sorted(Comparator.comparingDouble((Fused entry) -> entry.score).reversed())
+                .limit(topK)
+                .map(entry -> {
+                    Map<String, Object> metadata = metadataOf(entry.hit);
+                    metadata.put("rrf_score", entry.score);
+                    if (entry.similarity != null) {
+                        metadata.put("distance", 1 - entry.similarity);
+                    }
+                    return Document.builder()
+                            .id(entry.hit.id())
+                            .text(entry.hit.source() == null ? "" : entry.hit.source().content())
+                            .metadata(metadata)
+                            .score(entry.score)
+                            .build();
+                })
+                .toList();
+    }
+
+    private Query filterQuery(SearchRequest request) {
+        if (!request.hasFilterExpression()) {
+            return null;
+        }
+        return toQuery(request.getFilterExpression());
+    }
+
+    /**
+     * 将元数据过滤条件转换为 Elasticsearch 查询
+     * <p>
+     * EQ/IN 直接构造 terms 查询，AND/OR/NOT 构造 bool 查询，关键词中的保留字（AND、OR 等）和特殊字符按原值精确匹配，
+     * 不会被当作查询语法解析；其余条件（范围比较等）仍由 Spring AI 转换为 query_string。
+     */
+    private Query toQuery(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return toQuery(group.content());
+        }
+        Filter.Expression expression = (Filter.Expression) operand;
+        switch (expression.type()) {
+            case AND -> {
+                Query left = toQuery(expression.left());
+                Query right = toQuery(expression.right());
+                return Query.of(q -> q.bool(b -> b.filter(left, right)));
+            }
+            case OR -> {
+                Query left = toQuery(expression.left());
+                Query right = toQuery(expression.right());
+                return Query.of(q -> q.bool(b -> b.should(left, right).minimumShouldMatch("1")));
+            }
+            case NOT -> {
+                Query negated = toQuery(expression.left());
+                return Query.of(q -> q.bool(b -> b.mustNot(negated)));
+            }
+            case EQ, IN -> {
+                if (expression.left() instanceof Filter.Key key && expression.right() instanceof Filter.Value value) {
+                    String field = "metadata." + unquote(key.key());
+                    List<FieldValue> values = fieldValues(value.value());
+                    return Query.of(q -> q.terms(t -> t.field(field).terms(v -> v.value(values))));
+                }
+            }
+            default -> {
+            }
+        }
+        String filter = filterConverter.convertExpression(expression);
+        return Query.of(q -> q.queryString(qs -> qs.query(filter)));
+    }
+
+    private static String unquote(String key) {
+        if (key.length() > 1 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static List<FieldValue> fieldValues(Object value) {
+        List<FieldValue> values = new ArrayList<>();
+        if (value instanceof Collection<?> collection) {
+            for (Object item : collection) {
+                values.add(fieldValue(item));
+            }
+        } else {
+            values.add(fieldValue(value));
+        }
+        return values;
+    }
+
+    private static FieldValue fieldValue(Object value) {
+        if (value instanceof Boolean bool) {
+            return FieldValue.of(bool);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return FieldValue.of(((Number) value).longValue());
+        }
+        if (value instanceof Number number) {
+            return FieldValue.of(number.doubleValue());
+        }
+        return FieldValue.of(String.valueOf(value));
+    }
+
+    private KnnSearch knnSearch(float[] queryVector, int k, double threshold, Query filter) {
+        int candidates = indexProperties.resolveNumCandidates(k, numCandidates);
+        Float similarity = minSimilarity(threshold);
+        List<Float> vector = new ArrayList<>(queryVector.length);
+        for (float value : queryVector) {
+            vector.add(value);
+        }
+        return KnnSearch.of(knn -> {
+            knn.field(IngestionService.vectorField)
+                    .queryVector(vector)
+                    .k(k)
+                    .numCandidates(candidates);
+            if (similarity != null) {
+                knn.similarity(similarity);
+            }
+            if (filter != null) {
+                knn.filter(filter);
+            }
+            return knn;
+        });
+    }
+
+    /**
+     * 将 Spring AI 的相似度阈值转换为 kNN 的 similarity 参数；l2_norm 的 similarity 是距离，不做转换
+     */
+    private Float minSimilarity(double threshold) {
+        if (threshold <= 0 || options.getSimilarity() == SimilarityFunction.l2_norm) {
+            return null;
+        }
+        return (float) threshold;
+    }
+
+    private Document toDocument(Hit<StoredChunk> hit) {
+        StoredChunk chunk = hit.source();
+        Map<String, Object> metadata = metadataOf(hit);
+        double similarity = toSimilarity(hit.score() == null ? 0 : hit.score());
+        metadata.put("distance", 1 - similarity);
+        return Document.builder()
+                .id(hit.id())
+                .text(chunk == null ? "" : chunk.content())
+                .metadata(metadata)
+                .score(similarity)
+                .build();
+    }
+
+    /**
+     * Elasticsearch 的 _score 到相似度的换算，与 ElasticsearchVectorStore 保持一致
+     */
+    private double toSimilarity(double score) {
+        if (options.getSimilarity() == SimilarityFunction.l2_norm) {
+            return 1 - Math.sqrt(1 / score - 1);
+        }
+        return 2 * score - 1;
+    }
+
+    private static Map<String, Object> metadataOf(Hit<StoredChunk> hit) {
+        StoredChunk chunk = hit.source();
+        return chunk == null || chunk.metadata() == null ? new HashMap<>() : new HashMap<>(chunk.metadata());
+    }
+
+    private static final class Fused {
+        private final Hit<StoredChunk> hit;
+        private Double similarity;
+        private double score;
+
+        private Fused(Hit<StoredChunk> hit) {
+            this.hit = hit;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ElasticsearchCall<T> {
+        T execute() throws IOException;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record StoredChunk(String id, String content, Map<String, Object> metadata) {
+    }
+}
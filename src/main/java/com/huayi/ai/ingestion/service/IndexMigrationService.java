@@ -0,0 +1,143 @@
+package com.huayi.ai.ingestion.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch.core.ReindexResponse;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
+import co.elastic.clients.elasticsearch.indices.get_mapping.IndexMappingRecord;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.autoconfigure.vectorstore.elasticsearch.ElasticsearchVectorStoreProperties;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-07 09:40
+ * Description: 索引迁移服务
+ * <p>
+ * 早期版本把 doc_keyword 存成 "[a, b, c]" 形式的单个字符串，且索引中没有为它声明映射，关键词过滤实际上是在做字符串匹配。
+ * 迁移步骤：按当前映射创建新索引 → reindex 时用脚本把字符串拆成关键词数组 → 原子地删除旧索引并把旧索引名作为别名指向新索引，
+ * 因此向量库与批量写入仍使用原来的索引名，无需修改配置。迁移期间请暂停文档导入。
+ */
+@Service
+public class IndexMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(IndexMigrationService.class);
+
+    /**
+     * 将 "[a, b, c]" 形式的字符串拆分为关键词数组，已是数组的文档保持不变
+     */
+    private static final String SPLIT_KEYWORD_SCRIPT = """
+            def metadata = ctx._source.metadata;
+            if (metadata != null && metadata.doc_keyword instanceof String) {
+              String s = metadata.doc_keyword.trim();
+              if (s.startsWith('[') && s.endsWith(']')) {
+                s = s.substring(1, s.length() - 1);
+              }
+              List keywords = new ArrayList();
+              for (String token : s.splitOnToken(',')) {
+                String keyword = token.trim();
+                if (!keyword.isEmpty()) {
+                  keywords.add(keyword);
+                }
+              }
+              metadata.doc_keyword = keywords;
+            }
+            """;
+
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    private final ElasticsearchVectorStoreProperties options;
+
+    private final IngestionService ingestionService;
+
+    public IndexMigrationService(ElasticsearchClient elasticsearchClient,
+                                 ElasticsearchVectorStoreProperties options,
+                                 IngestionService ingestionService) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.options = options;
+        this.ingestionService = ingestionService;
+    }
+
+    /**
+     * 将 doc_keyword 迁移为关键词数组，索引已是新映射时直接返回
+     *
+     * @return 迁移结果说明
+     */
+    public synchronized String migrateDocKeyword() throws IOException, InterruptedException {
+        String name = options.getIndexName();
+        if (!elasticsearchClient.indices().exists(e -> e.index(name)).value()) {
+            ingestionService.createIndexIfNotExists();
+            return "索引 " + name + " 不存在，已按新映射创建";
+        }
+        // 索引名可能已经是上一次迁移留下的别名，这里取实际的索引名
+        GetMappingResponse mappings = elasticsearchClient.indices().getMapping(g -> g.index(name));
+        if (mappings.result().size() != 1) {
+            throw new IllegalStateException("索引名 " + name + " 对应多个索引，无法迁移");
+        }
+        Map.Entry<String, IndexMappingRecord> current = mappings.result().entrySet().iterator().next();
+        String sourceIndex = current.getKey();
+        if (isKeywordMapped(current.getValue())) {
+            return "索引 " + sourceIndex + " 的 doc_keyword 已是关键词数组，无需迁移";
+        }
+
+        String targetIndex = name + "-" + System.currentTimeMillis();
+        ingestionService.createIndex(targetIndex);
+        logger.info("开始迁移索引 {} -> {}", sourceIndex, targetIndex);
+        ReindexResponse reindex = elasticsearchClient.reindex(r -> r
+                .source(s -> s.index(sourceIndex))
+                .dest(d -> d.index(targetIndex))
+                .script(s -> s.source(SPLIT_KEYWORD_SCRIPT))
+                .waitForCompletion(false));
+        awaitTask(reindex.task());
+
+        elasticsearchClient.indices().refresh(r -> r.index(targetIndex));
+        long expected = elasticsearchClient.count(c -> c.index(sourceIndex)).count();
+        long actual = elasticsearchClient.count(c -> c.index(targetIndex)).count();
+        if (actual != expected) {
+            throw new IllegalStateException("迁移后文档数量不一致，原索引 " + expected + "，新索引 " + actual
+                    + "，已保留原索引 " + sourceIndex + "，请检查后删除 " + targetIndex);
+        }
+
+        // 删除旧索引与添加别名在同一个请求中完成，检索不会看到中间状态
+        elasticsearchClient.indices().updateAliases(u -> u
+                .actions(a -> a.removeIndex(ri -> ri.index(sourceIndex)))
+                .actions(a -> a.add(add -> add.index(targetIndex).alias(name))));
+        logger.info("索引迁移完成 {} -> {}，共 {} 个文档", sourceIndex, targetIndex, actual);
+        return "迁移完成，" + sourceIndex + " -> " + targetIndex + "，共 " + actual + " 个文档，" + name + " 已指向新索引";
+    }
+
+    private static boolean isKeywordMapped(IndexMappingRecord record) {
+        Property metadata = record.mappings().properties().get("metadata");
+        if (metadata == null || !metadata.isObject()) {
+            return false;
+        }
+        Property keyword = metadata.object().properties().get(IngestionService.DOC_KEYWORD);
+        return keyword != null && keyword.isKeyword();
+    }
+
+    /**
+     * 轮询 reindex 任务直到完成，任务失败时抛出异常
+     */
+    private void awaitTask(String taskId) throws IOException, InterruptedException {
+        if (taskId == null) {
+            return;
+        }
+        while (true) {
+            GetTasksResponse task = elasticsearchClient.tasks().get(g -> g.taskId(taskId));
+            if (task.completed()) {
+                if (task.error() != null) {
+                    throw new IllegalStateException("reindex 任务失败：" + task.error().reason());
+                }
+                return;
+            }
+            logger.info("reindex 任务 {} 进行中：{}", taskId, task.task().status());
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.config.AdmissionLimiter;
+import com.huayi.ai.config.IngestionProperties;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.SemanticAnswerCache;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import com.huayi.ai.ingestion.domain.IngestionJob;
+import com.huayi.ai.ingestion.store.EmbeddedVectorStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 14:00
+ * Description: 异步文档导入任务管理
+ * <p>
+ * 上传的文件先暂存到本地磁盘，任务提交后立即返回任务编号，
+ * 由 parse → split → keyword → embed → index 五个阶段组成的流水线在后台处理。
+ * parse 阶段由 {@link StreamingDocumentReader} 边解析边切分，按批次输出文档块；
+ * split 阶段为文档块分配编号并与该文件上一次导入的清单对比，内容未变的文档块不进入后续阶段，
+ * 旧版本中已不存在的文档块在同一个批量写入会话中删除。
+ */
+@Service
+public class IngestionJobService {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    private final IngestionService ingestionService;
+
+    private final KeywordExtractor keywordExtractor;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ElasticsearchBulkIndexer bulkIndexer;
+
+    private final IngestionProperties properties;
+
+    private final SemanticAnswerCache answerCache;
+
+    private final RagMetrics ragMetrics;
+
+    private final IngestionManifest manifest;
+
+    private final StreamingDocumentReader documentReader;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 任务调度线程池，线程数即同时运行的任务数
+     */
+    private final ExecutorService jobExecutor;
+
+    /**
+     * 流水线各阶段的工作线程
+     */
+    private final ExecutorService stageExecutor;
+
+    public IngestionJobService(IngestionService ingestionService,
+                               KeywordExtractor keywordExtractor,
+                               EmbeddingModel embeddingModel,
+                               ElasticsearchBulkIndexer bulkIndexer,
+                               IngestionProperties properties,
+                               SemanticAnswerCache answerCache,
+                               RagMetrics ragMetrics,
+                               IngestionManifest manifest,
+                               StreamingDocumentReader documentReader) {
+        this.ingestionService = ingestionService;
+        this.keywordExtractor = keywordExtractor;
+        this.embeddingModel = embeddingModel;
+        this.bulkIndexer = bulkIndexer;
+        this.properties = properties;
+        this.answerCache = answerCache;
+        this.ragMetrics = ragMetrics;
+        this.manifest = manifest;
+        this.documentReader = documentReader;
+        this.jobExecutor = Executors.newFixedThreadPool(properties.getMaxConcurrentJobs(), namedThreads("ingest-job-"));
+        this.stageExecutor = Executors.newCachedThreadPool(namedThreads("ingest-stage-"));
+    }
+
+    /**
+     * 提交导入任务
+     *
+     * @param spooledFile 已暂存到本地的文件，任务结束后删除
+     * @param fileName    原始文件名
+     */
+    public IngestionJob submit(Path spooledFile, String fileName) {
+        evictFinishedJobs();
+        IngestionJob job = new IngestionJob(fileName);
+        jobs.put(job.getId(), job);
+        Resource resource = new FileSystemResource(spooledFile) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+        jobExecutor.execute(() -> run(job, resource, spooledFile));
+        logger.info("导入任务已提交，任务：{}，文档：{}", job.getId(), fileName);
+        return job;
+    }
+
+    public Optional<IngestionJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * 在暂存目录中创建一个临时文件，用于保存上传内容
+     */
+    public Path createSpoolFile() throws IOException {
+        if (properties.getSpoolDir() == null || properties.getSpoolDir().isBlank()) {
+            return Files.createTempFile("rag-upload-", ".tmp");
+        }
+        Path dir = Files.createDirectories(Paths.get(properties.getSpoolDir()));
+        return Files.createTempFile(dir, "rag-upload-", ".tmp");
+    }
+
+    private void run(IngestionJob job, Resource resource, Path spooledFile) {
+        job.start();
+        long start = System.nanoTime();
+        try (IngestionManifest.Tracker tracker = manifest.begin(job.getFileName())) {
+            if (ingestionService.ragVectorStore() instanceof EmbeddedVectorStore localStore) {
+                ingestionService.deleteUntracked(tracker, job.getFileName());
+                // 本地向量库直接写入已向量化的文档块
+                newPipeline(job, tracker, (chunks, emit) -> {
+                    localStore.addEmbedded(chunks);
+                    job.advance(IngestionJob.STAGE_INDEX, chunks.size());
+                }).run(List.of(resource));
+                if (!job.hasErrors()) {
+                    List<String> stale = tracker.staleIds();
+                    localStore.delete(stale);
+                    job.advance(IngestionJob.STAGE_DELETE, stale.size());
+                    tracker.commit();
+                }
+                return;
+            }
+            ingestionService.createIndexIfNotExists();
+            ingestionService.deleteUntracked(tracker, job.getFileName());
+            boolean largeLoad = bulkIndexer.isLargeLoad(Files.size(spooledFile));
+            List<String> stale = List.of();
+            try (ElasticsearchBulkIndexer.BulkSession session = bulkIndexer.openSession(largeLoad,
+                    count -> job.advance(IngestionJob.STAGE_INDEX, count),
+                    (id, reason) -> job.recordError(IngestionJob.STAGE_INDEX, id + " " + reason))) {
+                // 写入会话负责攒批和并发发送，成功数量通过回调计入进度
+                newPipeline(job, tracker, (chunks, emit) -> {
+                    for (EmbeddedChunk chunk : chunks) {
+                        session.add(chunk);
+                    }
+                }).run(List.of(resource));
+                // 有文档块处理失败时保留旧版本，清单也不更新，下次导入重新处理
+                if (!job.hasErrors()) {
+                    stale = tracker.staleIds();
+                    for (String id : stale) {
+                        session.delete(id);
+                    }
+                }
+            }
+            if (!job.hasErrors()) {
+                job.advance(IngestionJob.STAGE_DELETE, stale.size());
+                tracker.commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.recordError("job", e);
+        } catch (IOException | RuntimeException e) {
+            logger.error("导入任务 {} 执行失败", job.getId(), e);
+            job.recordError("job", e);
+        } finally {
+            job.finish();
+            ragMetrics.recordIngestion("job", job.processed(IngestionJob.STAGE_INDEX), System.nanoTime() - start);
+            ragMetrics.recordIncremental("job", job.processed(IngestionJob.STAGE_UNCHANGED), job.processed(IngestionJob.STAGE_DELETE));
+            deleteQuietly(spooledFile);
+            answerCache.invalidateSource(job.getFileName());
+            logger.info("导入任务结束，任务：{}，状态：{}，写入文档块：{}，未变化：{}，删除：{}",
+                    job.getId(), job.getStatus(), job.processed(IngestionJob.STAGE_INDEX),
+                    job.processed(IngestionJob.STAGE_UNCHANGED), job.processed(IngestionJob.STAGE_DELETE));
+        }
+    }
+
+    private IngestionPipeline newPipeline(IngestionJob job, IngestionManifest.Tracker tracker,
+                                          IngestionPipeline.StageFunction<List<EmbeddedChunk>, Void> indexer) {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        return new IngestionPipeline(job, stageExecutor, properties.getQueueCapacity())
+                .<Resource, List<Document>>stage(IngestionJob.STAGE_PARSE, 1, (resource, emit) -> {
+                    // 边解析边切分，每攒够一个批次就交给下游，解析尚未结束时后续阶段已经开始向量化
+                    List<Document> batch = new ArrayList<>(batchSize);
+                    documentReader.read(resource, chunk -> {
+                        batch.add(chunk);
+                        if (batch.size() >= batchSize) {
+                            emit.emit(new ArrayList<>(batch));
+                            batch.clear();
+                        }
+                    });
+                    if (!batch.isEmpty()) {
+                        emit.emit(new ArrayList<>(batch));
+                    }
+                    job.advance(IngestionJob.STAGE_PARSE, 1);
+                })
+                .<List<Document>, List<Document>>stage(IngestionJob.STAGE_SPLIT, 1, (batch, emit) -> {
+                    // 该阶段只有一个工作线程，文档块按文件中的顺序分配编号；内容未变的文档块到此为止
+                    List<Document> chunks = tracker.assign(batch);
+                    job.advance(IngestionJob.STAGE_SPLIT, batch.size());
+                    job.advance(IngestionJob.STAGE_UNCHANGED, batch.size() - chunks.size());
+                    if (!chunks.isEmpty()) {
+                        emit.emit(chunks);
+                    }
+                })
+                .<List<Document>, List<Document>>stage(IngestionJob.STAGE_KEYWORD, properties.getKeywordWorkers(), (batch, emit) -> {
+                    List<List<String>> keywords = ragMetrics.observe(RagMetrics.INGEST, "keyword_extraction",
+                            () -> keywordExtractor.extract(batch.stream().map(Document::getText).toList(), 30));
+                    for (int i = 0; i < batch.size(); i++) {
+                        IngestionService.applyMetadata(batch.get(i), job.getFileName(), keywords.get(i));
+                    }
+                    job.advance(IngestionJob.STAGE_KEYWORD, batch.size());
+                    emit.emit(batch);
+                })
+                .<List<Document>, List<EmbeddedChunk>>stage(IngestionJob.STAGE_EMBED, properties.getEmbedWorkers(), (batch, emit) -> {
+                    List<float[]> embeddings = ragMetrics.observe(RagMetrics.INGEST, "embed",
+                            () -> AdmissionLimiter.callAs(AdmissionLimiter.Priority.BULK,
+                                    () -> embeddingModel.embed(batch.stream().map(Document::getText).toList())));
+                    List<EmbeddedChunk> chunks = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        chunks.add(new EmbeddedChunk(batch.get(i), embeddings.get(i)));
+                    }
+                    job.advance(IngestionJob.STAGE_EMBED, chunks.size());
+                    emit.emit(chunks);
+                })
+                .stage(IngestionJob.STAGE_INDEX, properties.getIndexWorkers(), indexer);
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    private void evictFinishedJobs() {
+        Instant expireBefore = Instant.now().minus(properties.getJobRetention());
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expireBefore));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除暂存文件失败：{}", file, e);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        stageExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,269 @@
+package com.huayi.ai.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huayi.ai.config.IngestionProperties;
+import com.huayi.ai.ingestion.domain.FileManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-29 10:00
+ * Description: 增量导入：为文档块生成确定的编号，并按文件保存上一次导入的清单
+ * <p>
+ * 文档块编号由 file_name、内容的 SHA-256 以及相同内容在文件中第几次出现共同决定，同一文件重复导入时编号不变，
+ * 写入向量库即覆盖（upsert）而不会产生重复文档。与清单对比后，编号已存在的文档块跳过关键词提取和向量化，
+ * 只有新增或修改的文档块需要向量化；清单中有而本次没有的编号即旧版本中已不存在的文档块，导入结束时统一删除。
+ * 编号不包含文档块的绝对位置，文件中间插入或删除内容时，其后未改变的文档块仍然命中清单。
+ * 没有清单的文件按文件名清除旧文档块后全部重新写入，见 {@link Tracker#tracked()}。
+ */
+@Component
+public class IngestionManifest {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionManifest.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 清单目录，为空时清单只保存在内存中
+     */
+    private final Path dir;
+
+    private final Map<String, FileManifest> memory = new ConcurrentHashMap<>();
+
+    /**
+     * 同一文件的导入串行执行，避免两次导入基于同一份旧清单计算出相互冲突的删除；
+     * 批量导入时文件的写入在其他线程中完成，因此使用可由任意线程释放的信号量而不是锁
+     */
+    private final Map<String, Semaphore> locks = new ConcurrentHashMap<>();
+
+    public IngestionManifest(IngestionProperties properties) {
+        String manifestDir = properties.getManifestDir();
+        this.dir = manifestDir == null || manifestDir.isBlank() ? null : Paths.get(manifestDir);
+    }
+
+    /**
+     * 开始导入一个文件：获取该文件的导入锁并读取上一次的清单，导入结束后必须关闭
+     */
+    public Tracker begin(String fileName) {
+        while (true) {
+            Semaphore lock = locks.computeIfAbsent(fileName, name -> new Semaphore(1));
+            lock.acquireUninterruptibly();
+            // 等待期间该信号量可能已被移除（见 unlock），此时重新获取映射中的信号量
+            if (locks.get(fileName) != lock) {
+                lock.release();
+                continue;
+            }
+            return open(fileName, lock);
+        }
+    }
+
+    /**
+     * 与 begin 相同，但该文件正在导入时不等待，返回 null
+     */
+    public Tracker tryBegin(String fileName) {
+        while (true) {
+            Semaphore lock = locks.computeIfAbsent(fileName, name -> new Semaphore(1));
+            if (!lock.tryAcquire()) {
+                if (locks.get(fileName) != lock) {
+                    continue;
+                }
+                return null;
+            }
+            if (locks.get(fileName) != lock) {
+                lock.release();
+                continue;
+            }
+            return open(fileName, lock);
+        }
+    }
+
+    private Tracker open(String fileName, Semaphore lock) {
+        try {
+            return new Tracker(fileName, load(fileName), lock);
+        } catch (RuntimeException e) {
+            unlock(fileName, lock);
+            throw e;
+        }
+    }
+
+    /**
+     * 释放文件的导入锁；没有其他导入在等待时同时移除该信号量，避免每个导入过的文件都留下一个。
+     * 移除时持有该信号量，之后获取到它的调用方会发现映射已变化并重新获取
+     */
+    private void unlock(String fileName, Semaphore lock) {
+        lock.release();
+        if (lock.tryAcquire()) {
+            locks.remove(fileName, lock);
+            lock.release();
+        }
+    }
+
+    /**
+     * 读取文件的清单，不存在时返回空清单
+     */
+    public FileManifest load(String fileName) {
+        if (dir == null) {
+            return memory.getOrDefault(fileName, FileManifest.empty(fileName));
+        }
+        Path file = pathOf(fileName);
+        if (!Files.exists(file)) {
+            return FileManifest.empty(fileName);
+        }
+        try {
+            FileManifest manifest = OBJECT_MAPPER.readValue(file.toFile(), FileManifest.class);
+            return manifest.chunks() == null ? FileManifest.empty(fileName) : manifest;
+        } catch (IOException e) {
+            // 清单损坏时按首次导入处理：全部文档块重新向量化，编号不变因此不会产生重复
+            logger.warn("读取导入清单失败，按首次导入处理：{}", file, e);
+            return FileManifest.empty(fileName);
+        }
+    }
+
+    private void save(FileManifest manifest) {
+        if (dir == null) {
+            memory.put(manifest.fileName(), manifest);
+            return;
+        }
+        Path file = pathOf(manifest.fileName());
+        try {
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, "manifest-", ".tmp");
+            OBJECT_MAPPER.writeValue(temp.toFile(), manifest);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入导入清单失败：" + file, e);
+        }
+    }
+
+    private Path pathOf(String fileName) {
+        return dir.resolve(sha256(fileName) + ".json");
+    }
+
+    /**
+     * 文档块内容的摘要
+     */
+    static String contentHash(String text) {
+        return sha256(text == null ? "" : text);
+    }
+
+    /**
+     * 文档块编号：同一文件中内容相同的文档块按出现顺序区分
+     */
+    static String chunkId(String fileName, String contentHash, int occurrence) {
+        String key = fileName + '\u0000' + contentHash + '\u0000' + occurrence;
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一次导入的增量状态。assign 需按文档块在文件中的顺序调用，不支持多线程同时调用；close 可在任意线程调用
+     */
+    public final class Tracker implements AutoCloseable {
+        private final String fileName;
+        private final FileManifest previous;
+        private final Semaphore lock;
+        private final Map<String, String> current = new LinkedHashMap<>();
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private long skipped;
+        private boolean closed;
+
+        private Tracker(String fileName, FileManifest previous, Semaphore lock) {
+            this.fileName = fileName;
+            this.previous = previous;
+            this.lock = lock;
+        }
+
+        /**
+         * 为文档块分配确定的编号，返回清单中不存在、需要向量化并写入的文档块
+         */
+        public List<Document> assign(List<Document> chunks) {
+            List<Document> changed = new ArrayList<>(chunks.size());
+            for (Document chunk : chunks) {
+                String hash = contentHash(chunk.getText());
+                int occurrence = occurrences.merge(hash, 1, Integer::sum) - 1;
+                String id = chunkId(fileName, hash, occurrence);
+                current.put(id, hash);
+                if (previous.contains(id)) {
+                    skipped++;
+                    continue;
+                }
+                Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+                metadata.put(IngestionService.CHUNK_HASH, hash);
+                changed.add(Document.builder().id(id).text(chunk.getText()).metadata(metadata).build());
+            }
+            return changed;
+        }
+
+        /**
+         * 上一版本中存在、本次导入已没有的文档块编号，在所有文档块 assign 之后调用
+         */
+        public List<String> staleIds() {
+            List<String> stale = new ArrayList<>();
+            for (String id : previous.chunks().keySet()) {
+                if (!current.containsKey(id)) {
+                    stale.add(id);
+                }
+            }
+            return stale;
+        }
+
+        /**
+         * 该文件是否有上一次导入的清单。没有清单的文件可能是清单功能之前导入的，向量库中的文档块编号是随机生成的，
+         * 无法通过清单对比删除，见 {@link IngestionService#deleteUntracked}
+         */
+        public boolean tracked() {
+            return !previous.chunks().isEmpty();
+        }
+
+        /**
+         * 内容未变、跳过向量化的文档块数
+         */
+        public long skipped() {
+            return skipped;
+        }
+
+        /**
+         * 写入与删除全部成功后保存本次的清单；未调用时下次导入仍与上一次的清单对比
+         */
+        public void commit() {
+            save(new FileManifest(fileName, new LinkedHashMap<>(current), System.currentTimeMillis()));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                unlock(fileName, lock);
+            }
+        }
+    }
+}
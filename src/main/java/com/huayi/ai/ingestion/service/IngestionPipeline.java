@@ -0,0 +1,174 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.ingestion.domain.IngestionJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-06 11:10
+ * Description: 由有界队列串联的多阶段处理流水线
+ * <p>
+ * 每个阶段拥有独立的工作线程数，阶段之间通过容量固定的阻塞队列传递数据，
+ * 下游处理不过来时上游阻塞在 put 上，从而实现背压。单条数据处理失败只记录到任务中，不会中断整个流水线。
+ * <p>
+ * 工作线程无论正常结束、被中断还是遇到 Error 都会在退出时计数并通知下游；某个阶段的工作线程全部退出后，
+ * 上游发往该阶段的数据直接丢弃，不会因为无人消费而永久阻塞。
+ */
+final class IngestionPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    /**
+     * 结束标记，上游阶段全部结束后向下游每个工作线程发送一个
+     */
+    private static final Object END = new Object();
+
+    /**
+     * 阶段处理函数，通过 emit 向下游输出任意数量的结果
+     */
+    @FunctionalInterface
+    interface StageFunction<I, O> {
+        void apply(I item, Emitter<O> emit) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface Emitter<O> {
+        void emit(O item) throws InterruptedException;
+    }
+
+    private final IngestionJob job;
+    private final Executor executor;
+    private final int queueCapacity;
+    private final List<Stage<?, ?>> stages = new ArrayList<>();
+
+    IngestionPipeline(IngestionJob job, Executor executor, int queueCapacity) {
+        this.job = job;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * 追加一个处理阶段，阶段按添加顺序串联
+     */
+    <I, O> IngestionPipeline stage(String name, int workers, StageFunction<I, O> function) {
+        stages.add(new Stage<>(name, Math.max(1, workers), function, new ArrayBlockingQueue<>(queueCapacity)));
+        return this;
+    }
+
+    /**
+     * 将数据源送入第一个阶段并阻塞等待所有阶段处理完成
+     */
+    void run(Iterable<?> source) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            Stage<?, ?> stage = stages.get(i);
+            Stage<?, ?> next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+            for (int w = 0; w < stage.workers; w++) {
+                executor.execute(() -> stage.work(next, done));
+            }
+        }
+        Stage<?, ?> first = stages.get(0);
+        for (Object item : source) {
+            send(first, item);
+        }
+        for (int w = 0; w < first.workers; w++) {
+            send(first, END);
+        }
+        done.await();
+    }
+
+    /**
+     * 向阶段发送数据，队列满时阻塞；目标阶段的工作线程已全部退出时丢弃
+     */
+    private static void send(Stage<?, ?> target, Object item) throws InterruptedException {
+        while (target.running.get() > 0) {
+            if (target.input.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private final class Stage<I, O> {
+        private final String name;
+        private final int workers;
+        private final StageFunction<I, O> function;
+        private final BlockingQueue<Object> input;
+        private final AtomicInteger running;
+
+        Stage(String name, int workers, StageFunction<I, O> function, BlockingQueue<Object> input) {
+            this.name = name;
+            this.workers = workers;
+            this.function = function;
+            this.input = input;
+            this.running = new AtomicInteger(workers);
+        }
+
+        @SuppressWarnings("unchecked")
+        void work(Stage<?, ?> next, CountDownLatch done) {
+            try {
+                Object item;
+                while ((item = input.take()) != END) {
+                    try {
+                        function.apply((I) item, out -> {
+                            if (next != null) {
+                                send(next, out);
+                            }
+                        });
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        // 包括 Tika 解析个别文件时抛出的 LinkageError 等，单条数据失败不能使工作线程退出
+                        logger.error("导入任务 {} 的 {} 阶段处理失败", job.getId(), name, e);
+                        job.recordError(name, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.recordError(name, e);
+            } finally {
+                // 最后一个退出的工作线程负责通知下游结束
+                if (running.decrementAndGet() == 0) {
+                    try {
+                        if (next != null) {
+                            endDownstream(next);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 向下游每个工作线程发送结束标记，当前线程已被中断时也必须送达，结束后恢复中断状态
+         */
+        private void endDownstream(Stage<?, ?> next) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                for (int w = 0; w < next.workers; w++) {
+                    while (true) {
+                        try {
+                            send(next, END);
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
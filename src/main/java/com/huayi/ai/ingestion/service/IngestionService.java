@@ -2,30 +2,44 @@ package com.huayi.ai.ingestion.service;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.indices.IndexSettings;
-import com.huayi.ai.ingestion.util.TextRankUtil;
+import com.huayi.ai.config.AdmissionLimiter;
+import com.huayi.ai.config.IngestionProperties;
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.RetrievalProperties;
+import com.huayi.ai.config.SemanticAnswerCache;
+import com.huayi.ai.config.VectorIndexProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.autoconfigure.vectorstore.elasticsearch.ElasticsearchVectorStoreProperties;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchVectorStore;
 import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.io.IOException;
 import java.util.Map;
 
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorIndexOptions;
 import co.elastic.clients.elasticsearch._types.mapping.DenseVectorProperty;
 import co.elastic.clients.elasticsearch._types.mapping.KeywordProperty;
 import co.elastic.clients.elasticsearch._types.mapping.ObjectProperty;
@@ -55,41 +69,160 @@ public class IngestionService {
 
     private final ElasticsearchVectorStoreProperties options;
 
-    private static final String textField = "content";
+    private final KeywordExtractor keywordExtractor;
 
-    private static final String vectorField = "embedding";
-    private static final String FILE_NAME = "file_name";
-    private static final String FILE_TYPE = "file_type";
-    private static final String DOC_KEYWORD = "doc_keyword";
+    private final SemanticAnswerCache answerCache;
+
+    /**
+     * 写入与检索使用的向量库，由 rag.vectorstore.type 决定是 Elasticsearch 还是本地向量库
+     */
+    private final VectorStore ragVectorStore;
+
+    private final VectorIndexProperties indexProperties;
+
+    private final RetrievalProperties retrievalProperties;
+
+    private final RagMetrics ragMetrics;
+
+    private final AdmissionLimiter admissionLimiter;
+
+    private final LexicalReranker reranker;
+
+    private final IngestionManifest manifest;
+
+    private final StreamingDocumentReader documentReader;
+
+    private final IngestionProperties ingestionProperties;
+
+    private final ElasticsearchBulkIndexer bulkIndexer;
+
+    /**
+     * 问答检索使用的向量库，启用重排时多取候选后在应用内重排，检索与重排耗时计入 query 流程的 retrieval 阶段，
+     * 重排耗时另外计入 rerank 阶段；启用上下文压缩时再按问题删减句子，耗时计入 compress 阶段
+     */
+    private final VectorStore retrievalStore;
+
+    static final String textField = "content";
+
+    static final String vectorField = "embedding";
+    static final String FILE_NAME = "file_name";
+    static final String FILE_TYPE = "file_type";
+    static final String DOC_KEYWORD = "doc_keyword";
+    static final String CHUNK_HASH = "chunk_hash";
 
 
     public IngestionService(
             ElasticsearchVectorStore elasticsearchVectorStore,
             ElasticsearchClient elasticsearchClient,
             ElasticsearchVectorStoreProperties options,
-            ChatClient ragClient) {
+            ChatClient ragClient,
+            KeywordExtractor keywordExtractor,
+            SemanticAnswerCache answerCache,
+            @Qualifier("ragVectorStore") VectorStore ragVectorStore,
+            VectorIndexProperties indexProperties,
+            RetrievalProperties retrievalProperties,
+            RagMetrics ragMetrics,
+            AdmissionLimiter admissionLimiter,
+            LexicalReranker reranker,
+            ContextCompressor contextCompressor,
+            IngestionManifest manifest,
+            StreamingDocumentReader documentReader,
+            IngestionProperties ingestionProperties,
+            ElasticsearchBulkIndexer bulkIndexer) {
         this.vectorStore = elasticsearchVectorStore;
         this.elasticsearchClient = elasticsearchClient;
         this.options = options;
         this.ragClient = ragClient;
+        this.keywordExtractor = keywordExtractor;
+        this.answerCache = answerCache;
+        this.ragVectorStore = ragVectorStore;
+        this.indexProperties = indexProperties;
+        this.retrievalProperties = retrievalProperties;
+        this.ragMetrics = ragMetrics;
+        this.admissionLimiter = admissionLimiter;
+        this.reranker = reranker;
+        this.manifest = manifest;
+        this.documentReader = documentReader;
+        this.ingestionProperties = ingestionProperties;
+        this.bulkIndexer = bulkIndexer;
+        VectorStore store = ragMetrics.observe(RagMetrics.QUERY, reranker.properties().isEnabled()
+                ? new RerankingVectorStore(ragVectorStore, reranker) : ragVectorStore);
+        // 压缩在检索之后、提示词组装之前进行，耗时计入 compress 阶段，不计入 retrieval
+        this.retrievalStore = contextCompressor.properties().isEnabled()
+                ? new CompressingVectorStore(store, contextCompressor) : store;
     }
 
     /**
      * 通过读取、转换和存储文档到向量存储库中
+     * <p>
+     * 导入是增量的：与该文件上一次导入的清单对比，内容未变的文档块不再提取关键词和向量化，
+     * 新增或修改的文档块按确定的编号覆盖写入，旧版本中已不存在的文档块在写入之后删除。
+     * 文档由 {@link StreamingDocumentReader} 边解析边切分，每攒够 rag.ingestion.batch-size 个文档块就写入一次，
+     * 内存占用与文档大小无关。
+     *
+     * @throws IOException 文档读取或解析失败
      */
-    public void ingest(Resource file) {
-        logger.info("开始接收文档，文档：{}", file.getFilename());
-        List<Document> documents = transformDocument(file);
-        documents.forEach(document -> {
-            document.getMetadata().put(FILE_NAME, file.getFilename());
-            document.getMetadata().put(FILE_TYPE, "网络安全");
-            document.getMetadata().put(DOC_KEYWORD, TextRankUtil.textRank(document.getText(), 30).toString());
-        });
-        logger.info("开始导入数据到 ES =================================");
-        logger.info("create embedding and save to vector store");
-        createIndexIfNotExists();
-        vectorStore.add(documents);
-        logger.info("导入数据到 ES 完成=================================");
+    public void ingest(Resource file) throws IOException, InterruptedException {
+        String fileName = file.getFilename();
+        logger.info("开始接收文档，文档：{}", fileName);
+        long start = System.nanoTime();
+        int batchSize = Math.max(1, ingestionProperties.getBatchSize());
+        try (IngestionManifest.Tracker tracker = manifest.begin(fileName)) {
+            logger.info("开始导入数据到 ES =================================");
+            logger.info("create embedding and save to vector store");
+            createIndexIfNotExists();
+            deleteUntracked(tracker, fileName);
+            List<Document> batch = new ArrayList<>(batchSize);
+            long[] written = {0};
+            documentReader.read(file, chunk -> {
+                batch.add(chunk);
+                if (batch.size() >= batchSize) {
+                    written[0] += store(tracker, fileName, batch);
+                    batch.clear();
+                }
+            });
+            written[0] += store(tracker, fileName, batch);
+            // 新版本写入之后再删除旧文档块，导入期间检索不会缺失该文件的内容
+            List<String> stale = tracker.staleIds();
+            if (!stale.isEmpty()) {
+                ragVectorStore.delete(stale);
+            }
+            tracker.commit();
+            ragMetrics.recordIngestion("sync", written[0], System.nanoTime() - start);
+            ragMetrics.recordIncremental("sync", tracker.skipped(), stale.size());
+            logger.info("导入数据到 ES 完成，写入 {}，未变化 {}，删除 {} =================================",
+                    written[0], tracker.skipped(), stale.size());
+        }
+        answerCache.invalidateSource(fileName);
+    }
+
+    /**
+     * 写入一批文档块中内容有变化的部分，返回写入的数量
+     */
+    private int store(IngestionManifest.Tracker tracker, String fileName, List<Document> batch) {
+        List<Document> documents = tracker.assign(batch);
+        if (documents.isEmpty()) {
+            return 0;
+        }
+        // 关键词提取是 CPU 密集型操作，批量交给提取组件并行处理
+        List<List<String>> keywords = ragMetrics.observe(RagMetrics.INGEST, "keyword_extraction",
+                () -> keywordExtractor.extract(documents.stream().map(Document::getText).toList(), 30));
+        for (int i = 0; i < documents.size(); i++) {
+            applyMetadata(documents.get(i), fileName, keywords.get(i));
+        }
+        // 向量化与写入在向量库内部完成，合并为一个阶段；文档块向量化按批量优先级排在问答之后
+        ragMetrics.observe(RagMetrics.INGEST, "embed_store",
+                () -> AdmissionLimiter.runAs(AdmissionLimiter.Priority.BULK, () -> ragVectorStore.add(documents)));
+        return documents.size();
+    }
+
+    /**
+     * 为文档块写入文件名、分类和关键词等元数据
+     */
+    static void applyMetadata(Document document, String fileName, List<String> keywords) {
+        document.getMetadata().put(FILE_NAME, fileName);
+        document.getMetadata().put(FILE_TYPE, "网络安全");
+        document.getMetadata().put(DOC_KEYWORD, new ArrayList<>(keywords));
     }
 
     /**
@@ -101,7 +234,7 @@ public class IngestionService {
      * 3. 构建索引字段映射：
      * - vectorField: 稠密向量类型，配置维度数和相似度算法
      * - textField: 文本类型字段
-     * - metadata: 包含ref_doc_id关键字类型的元数据字段
+     * - metadata: 包含ref_doc_id、file_name、file_type、chunk_hash关键字类型字段，doc_keyword为关键字数组
      * 4. 调用Elasticsearch客户端创建索引
      * 5. 处理创建结果，失败时抛出运行时异常
      * <p>
@@ -109,123 +242,165 @@ public class IngestionService {
      * - 捕获IO异常并转换为运行时异常向上抛出
      * - 记录详细的错误日志
      */
-    private void createIndexIfNotExists() {
+    void createIndexIfNotExists() {
+        if (!usesElasticsearch()) {
+            return;
+        }
         try {
-            // 从配置对象获取索引参数
-            String indexName = options.getIndexName();
-            Integer dimsLength = options.getDimensions();
-            String similarityAlgo = options.getSimilarity().name();
-
             // 检查索引是否已存在
             if (vectorStore.indexExists()) {
                 logger.debug("Index {} already exists. Skipping creation.", vectorStore.getName());
+                // 上次运行在大批量导入期间退出时，索引仍处于关闭刷新的状态
+                bulkIndexer.recoverLeftoverSettings();
                 return;
             }
-
-            // 配置索引基础设置（1分片1副本）
-            IndexSettings indexSettings = IndexSettings
-                    .of(settings -> settings.numberOfShards(String.valueOf(1)).numberOfReplicas(String.valueOf(1)));
-
-            // 构建字段映射配置
-            Map<String, Property> properties = new HashMap<>();
-            // 向量字段配置：开启索引、设置维度、指定相似度算法
-            properties.put(vectorField, Property.of(property -> property.denseVector(
-                    DenseVectorProperty.of(dense -> dense.index(true).dims(dimsLength).similarity(similarityAlgo)))));
-            // 文本字段基础配置
-            properties.put(textField, Property.of(property -> property.text(TextProperty.of(t -> t))));
-
-            // 构建元数据字段映射
-            Map<String, Property> metadata = new HashMap<>();
-            metadata.put("ref_doc_id", Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
-            properties.put("metadata",
-                    Property.of(property -> property.object(ObjectProperty.of(op -> op.properties(metadata)))));
-
-            // 执行索引创建请求
-            CreateIndexResponse indexResponse = elasticsearchClient.indices()
-                    .create(createIndexBuilder -> createIndexBuilder.index(indexName)
-                            .settings(indexSettings)
-                            .mappings(TypeMapping.of(mappings -> mappings.properties(properties))));
-
-            // 处理创建结果
-            if (!indexResponse.acknowledged()) {
-                throw new RuntimeException("failed to create index");
-            }
-            logger.info("create elasticsearch index {} successfully", indexName);
+            createIndex(options.getIndexName());
         } catch (IOException e) {
             logger.error("failed to create index", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 文件没有导入清单时（清单功能之前导入的文件，或清单丢失），向量库中该文件已有的文档块编号是随机生成的，
+     * 无法通过清单对比删除，在写入之前按 file_name 全部删除；随后所有文档块都会按确定的编号重新写入，不会留下重复内容。
+     * 新文件执行一次匹配为空的删除。
+     */
+    void deleteUntracked(IngestionManifest.Tracker tracker, String fileName) {
+        if (tracker.tracked()) {
+            return;
+        }
+        ragVectorStore.delete(new FilterExpressionBuilder().eq(FILE_NAME, fileName).build());
+    }
+
+    /**
+     * 是否使用 Elasticsearch 向量库，使用本地向量库时不需要创建索引
+     */
+    boolean usesElasticsearch() {
+        return ragVectorStore instanceof ElasticsearchRetrievalStore;
+    }
+
+    VectorStore ragVectorStore() {
+        return ragVectorStore;
+    }
+
+    /**
+     * 按当前的字段映射创建指定名称的索引，索引迁移时也用它创建新索引
+     */
+    void createIndex(String indexName) throws IOException {
+        // 从配置对象获取索引参数
+        Integer dimsLength = options.getDimensions();
+        String similarityAlgo = options.getSimilarity().name();
+
+        // 配置索引基础设置（1分片1副本）
+        IndexSettings indexSettings = IndexSettings
+                .of(settings -> settings.numberOfShards(String.valueOf(1)).numberOfReplicas(String.valueOf(1)));
+
+        // 构建字段映射配置
+        Map<String, Property> properties = new HashMap<>();
+        // 向量字段配置：开启索引、设置维度、指定相似度算法和索引类型（量化方式、HNSW 参数）
+        properties.put(vectorField, Property.of(property -> property.denseVector(
+                DenseVectorProperty.of(dense -> dense.index(true).dims(dimsLength).similarity(similarityAlgo)
+                        .indexOptions(vectorIndexOptions())))));
+        // 文本字段配置：混合检索时对该字段做 BM25 查询，中文语料可配置 ansj/IK 分词器
+        properties.put(textField, Property.of(property -> property.text(TextProperty.of(t -> {
+            if (StringUtils.hasText(retrievalProperties.getAnalyzer())) {
+                t.analyzer(retrievalProperties.getAnalyzer());
+            }
+            if (StringUtils.hasText(retrievalProperties.getSearchAnalyzer())) {
+                t.searchAnalyzer(retrievalProperties.getSearchAnalyzer());
+            }
+            return t;
+        }))));
+
+        // 构建元数据字段映射
+        Map<String, Property> metadata = new HashMap<>();
+        metadata.put("ref_doc_id", Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
+        metadata.put(FILE_NAME, Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
+        metadata.put(FILE_TYPE, Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
+        metadata.put(CHUNK_HASH, Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
+        // 关键词以数组形式存储，keyword 类型天然支持多值，检索时可以直接用 terms 过滤
+        metadata.put(DOC_KEYWORD, Property.of(property -> property.keyword(KeywordProperty.of(k -> k))));
+        properties.put("metadata",
+                Property.of(property -> property.object(ObjectProperty.of(op -> op.properties(metadata)))));
+
+        // 执行索引创建请求
+        CreateIndexResponse indexResponse = elasticsearchClient.indices()
+                .create(createIndexBuilder -> createIndexBuilder.index(indexName)
+                        .settings(indexSettings)
+                        .mappings(TypeMapping.of(mappings -> mappings.properties(properties))));
+
+        // 处理创建结果
+        if (!indexResponse.acknowledged()) {
+            throw new RuntimeException("failed to create index");
+        }
+        logger.info("create elasticsearch index {} successfully, vector index type: {}", indexName,
+                indexProperties.getType());
+    }
+
+    private DenseVectorIndexOptions vectorIndexOptions() {
+        return DenseVectorIndexOptions.of(o -> {
+            o.type(indexProperties.getType());
+            if (indexProperties.isHnsw()) {
+                o.m(indexProperties.getM()).efConstruction(indexProperties.getEfConstruction());
+            }
+            if (indexProperties.isQuantized() && indexProperties.getConfidenceInterval() != null) {
+                o.confidenceInterval(indexProperties.getConfidenceInterval());
+            }
+            return o;
+        });
+    }
+
 
     /**
-     * 读取并转换文档内容
+     * 一次性读取全文后切分，导入已改用 {@link StreamingDocumentReader}，保留用于基准测试对比
      */
-    private List<Document> transformDocument(Resource file) {
+    static List<Document> transformDocument(Resource file) {
         List<Document> documentText = new TikaDocumentReader(file).get();
+        return newSplitter().apply(documentText);
+    }
+
+    /**
+     * 创建文档切分器，同步导入与异步流水线使用相同的切分参数
+     */
+    static TokenTextSplitter newSplitter() {
         return TokenTextSplitter.builder()
                 .withChunkSize(200)
                 .withKeepSeparator(true)
-                .build().apply(documentText);
+                .build();
     }
 
     public Flux<String> retrieve(String prompt) {
-        String promptTemplate = getPromptTemplate(systemResource);
-        List<String> keyword = TextRankUtil.textRank(prompt, 5);
-        Filter.Expression expression = null;
-        switch (keyword.size()) {
-            case 1:
-                expression = new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(0)).build();
-                break;
-            case 2:
-                expression = new FilterExpressionBuilder().or(
-                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(0)),
-                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(1))
-                ).build();
-                break;
-            case 3:
-                expression = new FilterExpressionBuilder().or(
-                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(0)),
-                        new FilterExpressionBuilder().or(
-                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(1)),
-                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(2))
-                        )
-                ).build();
-                break;
-            case 4:
-                expression = new FilterExpressionBuilder().or(
-                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(0)),
-                        new FilterExpressionBuilder().or(
-                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(1)),
-                                new FilterExpressionBuilder().or(
-                                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(2)),
-                                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(3))
-                                )
-                        )
-                ).build();
-                break;
-            case 5:
-                expression = new FilterExpressionBuilder().or(
-                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(0)),
-                        new FilterExpressionBuilder().or(
-                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(1)),
-                                new FilterExpressionBuilder().or(
-                                        new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(2)),
-                                        new FilterExpressionBuilder().or(
-                                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(3)),
-                                                new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.get(4))
-                                        )
-                                )
-                        )
-                ).build();
-                break;
-            default:
-                new FilterExpressionBuilder().nin(DOC_KEYWORD, "");
-                break;
+        if (!answerCache.isEnabled()) {
+            return generate(prompt, null, 0);
         }
+        // 在查找缓存和检索之前取得失效序号，生成期间引用的文档被重新导入时答案不写入缓存
+        long epoch = answerCache.epoch();
+        // 问题向量会进入问题向量缓存，后续向量检索不会再次请求 Ollama
+        float[] queryVector = ragMetrics.observe(RagMetrics.QUERY, "query_embedding", () -> answerCache.embed(prompt));
+        Optional<String> cached = ragMetrics.observe(RagMetrics.QUERY, "cache_lookup",
+                () -> answerCache.lookup(SemanticAnswerCache.NAMESPACE_QUERY, queryVector));
+        if (cached.isPresent()) {
+            logger.info("命中答案缓存：{}", prompt);
+            return answerCache.replay(cached.get());
+        }
+        return generate(prompt, queryVector, epoch);
+    }
+
+    /**
+     * 检索并生成答案，queryVector 不为空时在生成完成后写入答案缓存
+     */
+    private Flux<String> generate(String prompt, float[] queryVector, long epoch) {
+        // 响应开始写出后无法再返回 429，排队已满时在返回流之前拒绝
+        admissionLimiter.ensureCapacity(AdmissionLimiter.Priority.INTERACTIVE);
+        String promptTemplate = getPromptTemplate(systemResource);
+        List<String> keyword = ragMetrics.observe(RagMetrics.QUERY, "keyword_extraction",
+                () -> keywordExtractor.extract(prompt, 5));
+        Filter.Expression expression = buildKeywordFilter(keyword);
 //        logger.info(expression.toString());
+        // 放入提示词的文档块数量，启用重排时从更多的候选中选出
         SearchRequest searchRequest = SearchRequest.builder().
-                topK(4)
+                topK(reranker.properties().getTopN())
                 .similarityThresholdAll()
                 .filterExpression(expression)
                 .query(prompt)
@@ -234,11 +409,60 @@ public class IngestionService {
 //        String documents = vectorStoreResult.stream().map(Document::getText)
 //                .collect(Collectors.joining(System.lineSeparator()));
 //        logger.info(documents);
-        return ragClient.prompt()
-                .advisors(new QuestionAnswerAdvisor(vectorStore, searchRequest, promptTemplate))
+        // 检索与提示词组装在 QuestionAnswerAdvisor 中完成，耗时分别记录在 retrieval 阶段和 spring.ai.advisor 指标中
+        Flux<ChatResponse> responses = ragMetrics.observeStream(RagMetrics.QUERY, ragClient.prompt()
+                .advisors(new QuestionAnswerAdvisor(retrievalStore, searchRequest, promptTemplate))
                 .user(prompt)
                 .stream()
-                .content();
+                .chatResponse());
+        if (queryVector == null) {
+            return responses.mapNotNull(IngestionService::textOf);
+        }
+        StringBuffer answer = new StringBuffer();
+        Set<String> sources = ConcurrentHashMap.newKeySet();
+        return responses
+                .doOnNext(response -> collectSources(response, sources))
+                .mapNotNull(IngestionService::textOf)
+                .doOnNext(answer::append)
+                .doOnComplete(() -> answerCache.put(SemanticAnswerCache.NAMESPACE_QUERY, queryVector, answer.toString(), sources, epoch));
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    /**
+     * 从响应元数据中收集检索到的文档所属的文件名
+     */
+    private static void collectSources(ChatResponse response, Set<String> sources) {
+        if (response.getMetadata() == null) {
+            return;
+        }
+        Object retrieved = response.getMetadata().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+        if (retrieved instanceof List<?> documents) {
+            for (Object document : documents) {
+                if (document instanceof Document doc && doc.getMetadata().get(FILE_NAME) != null) {
+                    sources.add(doc.getMetadata().get(FILE_NAME).toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据问题关键词构建向量检索的元数据过滤条件
+     * <p>
+     * doc_keyword 为 keyword 数组字段，任意数量的关键词编译为一个 in 条件。本地向量库直接按该条件过滤；
+     * Elasticsearch 中由 ElasticsearchRetrievalStore 转换为 metadata.doc_keyword 上的 terms 查询，作为 kNN 检索的预过滤，
+     * 关键词中的保留字和特殊字符按原值匹配。没有关键词时不过滤。
+     */
+    static Filter.Expression buildKeywordFilter(List<String> keyword) {
+        if (keyword == null || keyword.isEmpty()) {
+            return null;
+        }
+        return new FilterExpressionBuilder().in(DOC_KEYWORD, keyword.toArray()).build();
     }
 
     private String getPromptTemplate(Resource systemResource) {
@@ -0,0 +1,112 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.ingestion.util.TextRankUtil;
+import jakarta.annotation.PreDestroy;
+import org.ansj.recognition.impl.StopRecognition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-04 15:20
+ * Description: 可复用、线程安全的关键词提取组件
+ * <p>
+ * 停用过滤器只在构建时创建一次；批量提取时超过阈值的任务会被拆分到有界的 ForkJoin 线程池中并行执行。
+ */
+@Component
+public class KeywordExtractor {
+    private static final Logger logger = LoggerFactory.getLogger(KeywordExtractor.class);
+
+    private final StopRecognition stopFilter = TextRankUtil.newStopRecognition();
+
+    private final ForkJoinPool pool;
+
+    /**
+     * 单个子任务最多处理的文本数量，小于该值的批次直接在调用线程上执行
+     */
+    private final int batchThreshold;
+
+    public KeywordExtractor(
+            @Value("${rag.keyword.parallelism:0}") int parallelism,
+            @Value("${rag.keyword.batch-threshold:8}") int batchThreshold) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("keyword-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.batchThreshold = Math.max(1, batchThreshold);
+        logger.info("关键词提取线程池初始化完成，并行度：{}", threads);
+    }
+
+    /**
+     * 提取单段文本的关键词
+     */
+    public List<String> extract(String text, int n) {
+        return TextRankUtil.textRank(text, n, stopFilter);
+    }
+
+    /**
+     * 批量提取关键词，返回结果与输入文本一一对应
+     *
+     * @param texts 待提取的文本集合
+     * @param n     每段文本需要返回的关键词数量
+     */
+    public List<List<String>> extract(List<String> texts, int n) {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        @SuppressWarnings("unchecked")
+        List<String>[] results = new List[texts.size()];
+        ExtractTask task = new ExtractTask(texts, n, results, 0, texts.size());
+        if (texts.size() <= batchThreshold) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class ExtractTask extends RecursiveAction {
+        private final List<String> texts;
+        private final int n;
+        private final List<String>[] results;
+        private final int from;
+        private final int to;
+
+        ExtractTask(List<String> texts, int n, List<String>[] results, int from, int to) {
+            this.texts = texts;
+            this.n = n;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchThreshold) {
+                for (int i = from; i < to; i++) {
+                    results[i] = extract(texts.get(i), n);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ExtractTask(texts, n, results, from, mid),
+                    new ExtractTask(texts, n, results, mid, to));
+        }
+    }
+}
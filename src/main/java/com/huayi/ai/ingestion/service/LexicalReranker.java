@@ -0,0 +1,232 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.config.RagMetrics;
+import com.huayi.ai.config.RerankProperties;
+import com.huayi.ai.ingestion.util.TextRankUtil;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-27 10:00
+ * Description: 在应用内对检索候选重排
+ * <p>
+ * 问题与候选文档块使用与关键词提取相同的 ansj 分词和停用过滤，BM25 的 IDF 与平均长度在候选集内计算；
+ * 最终得分 = retrievalWeight × 归一化的原检索得分 + bm25Weight × BM25 / 最大 BM25 + keywordWeight × doc_keyword 重合比例。
+ * 文档块的分词结果按编号缓存，同一批热门文档块被反复检索时不需要重新分词。
+ * 耗时记录在 query 流程的 rerank 阶段（rag.stage{pipeline=query,stage=rerank}）中。线程安全。
+ */
+@Component
+public class LexicalReranker {
+
+    /**
+     * 重排得分写入文档元数据的字段
+     */
+    public static final String RERANK_SCORE = "rerank_score";
+
+    private final RerankProperties properties;
+
+    private final Map<String, TermStats> cache;
+
+    private final RagMetrics ragMetrics;
+
+    public LexicalReranker(RerankProperties properties, RagMetrics ragMetrics) {
+        this.properties = properties;
+        this.ragMetrics = ragMetrics;
+        int cacheSize = properties.getCacheSize();
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TermStats> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public RerankProperties properties() {
+        return properties;
+    }
+
+    /**
+     * 重排候选文档块，返回得分最高的 topN 个，得分记录在元数据 rerank_score 中
+     *
+     * @param query      用户问题
+     * @param candidates 检索返回的候选，按原检索得分从高到低排列
+     * @param topN       返回的文档块数量
+     */
+    public List<Document> rerank(String query, List<Document> candidates, int topN) {
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        return ragMetrics.observe(RagMetrics.QUERY, "rerank", () -> doRerank(query, candidates, topN));
+    }
+
+    private List<Document> doRerank(String query, List<Document> candidates, int topN) {
+        int n = candidates.size();
+        List<String> queryTerms = distinctTerms(query);
+        if (queryTerms.isEmpty()) {
+            return candidates.subList(0, Math.min(n, topN));
+        }
+        TermStats[] stats = new TermStats[n];
+        double totalLength = 0;
+        int[] df = new int[queryTerms.size()];
+        for (int i = 0; i < n; i++) {
+            stats[i] = termStats(candidates.get(i));
+            totalLength += stats[i].length;
+            for (int t = 0; t < df.length; t++) {
+                if (stats[i].frequencies.containsKey(queryTerms.get(t))) {
+                    df[t]++;
+                }
+            }
+        }
+        double averageLength = Math.max(1, totalLength / n);
+        double[] idf = new double[df.length];
+        for (int t = 0; t < df.length; t++) {
+            idf[t] = Math.log(1 + (n - df[t] + 0.5) / (df[t] + 0.5));
+        }
+
+        double k1 = properties.getK1();
+        double b = properties.getB();
+        double[] bm25 = new double[n];
+        double maxBm25 = 0;
+        for (int i = 0; i < n; i++) {
+            double norm = k1 * (1 - b + b * stats[i].length / averageLength);
+            double score = 0;
+            for (int t = 0; t < df.length; t++) {
+                Integer tf = stats[i].frequencies.get(queryTerms.get(t));
+                if (tf != null) {
+                    score += idf[t] * tf * (k1 + 1) / (tf + norm);
+                }
+            }
+            bm25[i] = score;
+            maxBm25 = Math.max(maxBm25, score);
+        }
+
+        double[] retrieval = normalizedRetrievalScores(candidates);
+        Set<String> querySet = new HashSet<>(queryTerms);
+        Integer[] order = new Integer[n];
+        double[] finalScores = new double[n];
+        for (int i = 0; i < n; i++) {
+            int overlap = 0;
+            for (String keyword : docKeywords(candidates.get(i))) {
+                if (querySet.contains(keyword)) {
+                    overlap++;
+                }
+            }
+            finalScores[i] = properties.getRetrievalWeight() * retrieval[i]
+                    + properties.getBm25Weight() * (maxBm25 == 0 ? 0 : bm25[i] / maxBm25)
+                    + properties.getKeywordWeight() * Math.min(1.0, (double) overlap / querySet.size());
+            order[i] = i;
+        }
+        // 得分相同时保持原检索顺序
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> -finalScores[i]).thenComparingInt(i -> i));
+        List<Document> result = new ArrayList<>(Math.min(n, topN));
+        for (int i = 0; i < Math.min(n, topN); i++) {
+            Document document = candidates.get(order[i]);
+            document.getMetadata().put(RERANK_SCORE, finalScores[order[i]]);
+            result.add(document);
+        }
+        return result;
+    }
+
+    /**
+     * 原检索得分按最大最小值归一化到 [0, 1]；没有得分时按排名线性递减
+     */
+    private static double[] normalizedRetrievalScores(List<Document> candidates) {
+        int n = candidates.size();
+        double[] scores = new double[n];
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Double score = candidates.get(i).getScore();
+            if (score == null) {
+                for (int j = 0; j < n; j++) {
+                    scores[j] = 1 - (double) j / n;
+                }
+                return scores;
+            }
+            scores[i] = score;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        for (int i = 0; i < n; i++) {
+            scores[i] = max > min ? (scores[i] - min) / (max - min) : 1;
+        }
+        return scores;
+    }
+
+    private TermStats termStats(Document document) {
+        String text = document.getText() == null ? "" : document.getText();
+        String key = document.getId();
+        if (properties.getCacheSize() <= 0 || key == null) {
+            return TermStats.of(text);
+        }
+        TermStats stats;
+        synchronized (cache) {
+            stats = cache.get(key);
+        }
+        // 同一编号的文档块内容可能已被重新导入
+        if (stats != null && stats.textHash == text.hashCode()) {
+            return stats;
+        }
+        stats = TermStats.of(text);
+        synchronized (cache) {
+            cache.put(key, stats);
+        }
+        return stats;
+    }
+
+    private static List<String> distinctTerms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : TextRankUtil.parseTerms(text == null ? "" : text)) {
+            terms.add(term.toLowerCase(Locale.ROOT));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * doc_keyword 在新索引中是关键词数组，旧索引中是逗号或空格分隔的字符串
+     */
+    private static Set<String> docKeywords(Document document) {
+        Object value = document.getMetadata().get(IngestionService.DOC_KEYWORD);
+        Set<String> keywords = new HashSet<>();
+        if (value instanceof Collection<?> collection) {
+            for (Object keyword : collection) {
+                if (keyword != null) {
+                    keywords.add(keyword.toString().toLowerCase(Locale.ROOT));
+                }
+            }
+        } else if (value != null) {
+            for (String keyword : value.toString().split("[,，\\s]+")) {
+                if (!keyword.isEmpty()) {
+                    keywords.add(keyword.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return keywords;
+    }
+
+    private record TermStats(int textHash, Map<String, Integer> frequencies, int length) {
+
+        static TermStats of(String text) {
+            List<String> terms = TextRankUtil.parseTerms(text);
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : terms) {
+                frequencies.merge(term.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            }
+            return new TermStats(text.hashCode(), frequencies, terms.size());
+        }
+    }
+}
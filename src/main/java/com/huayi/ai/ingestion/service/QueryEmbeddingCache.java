@@ -0,0 +1,136 @@
+package com.huayi.ai.ingestion.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-10 09:30
+ * Description: 用户问题向量缓存
+ * <p>
+ * 按最近最少使用淘汰并带有过期时间；同一问题的并发请求共享一次进行中的向量化调用（single-flight），
+ * 只有第一个请求会真正访问 Ollama，其余请求等待其结果，等待的次数单独计入 shared 指标，不算作命中。
+ */
+final class QueryEmbeddingCache {
+
+    private final int maxEntries;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final Map<String, CompletableFuture<float[]>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sharedLoads;
+
+    QueryEmbeddingCache(int maxEntries, Duration ttl, MeterRegistry meterRegistry) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > QueryEmbeddingCache.this.maxEntries;
+            }
+        };
+        this.hits = Counter.builder("rag.embedding.query.cache.requests")
+                .tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("rag.embedding.query.cache.requests")
+                .tag("result", "miss").register(meterRegistry);
+        this.sharedLoads = Counter.builder("rag.embedding.query.cache.shared")
+                .description("等待其他请求进行中的向量化结果的次数").register(meterRegistry);
+        Gauge.builder("rag.embedding.query.cache.size", this, QueryEmbeddingCache::size).register(meterRegistry);
+        Gauge.builder("rag.embedding.query.cache.hit.ratio", this, QueryEmbeddingCache::hitRatio).register(meterRegistry);
+    }
+
+    /**
+     * 获取问题向量，未命中时通过 loader 加载，同一键同时只会有一个 loader 在执行
+     */
+    float[] get(String key, Supplier<float[]> loader) {
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        CompletableFuture<float[]> flight = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inflight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // 共享的加载可能失败，不计入命中
+            sharedLoads.increment();
+            return await(existing);
+        }
+        try {
+            // 获得加载权后再检查一次，避免与刚结束的加载重复请求
+            float[] vector = lookup(key);
+            if (vector == null) {
+                misses.increment();
+                vector = loader.get();
+                put(key, vector);
+            } else {
+                hits.increment();
+            }
+            flight.complete(vector);
+            return vector;
+        } catch (Throwable e) {
+            // Error 也必须传给等待者，否则它们会一直阻塞在 join 上
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, flight);
+        }
+    }
+
+    private synchronized float[] lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.createdAt > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.vector;
+    }
+
+    private synchronized void put(String key, float[] vector) {
+        if (maxEntries > 0) {
+            entries.put(key, new Entry(vector, System.nanoTime()));
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static float[] await(CompletableFuture<float[]> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(float[] vector, long createdAt) {
+    }
+}
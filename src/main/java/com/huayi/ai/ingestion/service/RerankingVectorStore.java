@@ -0,0 +1,54 @@
+package com.huayi.ai.ingestion.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-27 10:40
+ * Description: 检索时多取候选并经 {@link LexicalReranker} 重排的向量库装饰器
+ * <p>
+ * 按请求的 topK 返回结果，向被装饰的向量库请求时 topK 放大为配置的候选数量；写入与删除直接委托。
+ */
+public class RerankingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+
+    private final LexicalReranker reranker;
+
+    public RerankingVectorStore(VectorStore delegate, LexicalReranker reranker) {
+        this.delegate = delegate;
+        this.reranker = reranker;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        int candidates = Math.max(request.getTopK(), reranker.properties().getCandidates());
+        SearchRequest candidateRequest = SearchRequest.from(request).topK(candidates).build();
+        List<Document> documents = delegate.similaritySearch(candidateRequest);
+        return reranker.rerank(request.getQuery(), documents, request.getTopK());
+    }
+}
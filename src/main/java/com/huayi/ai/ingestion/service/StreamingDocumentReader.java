@@ -0,0 +1,166 @@
+package com.huayi.ai.ingestion.service;
+
+import com.huayi.ai.config.IngestionProperties;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-30 09:00
+ * Description: 流式解析文档并切分，边解析边输出文档块
+ * <p>
+ * {@code TikaDocumentReader} 先把全文提取成一个 Document 再切分，峰值内存与文档大小成正比。
+ * 这里由 SAX 内容处理器接收 Tika 输出的文本，累积到 parseBufferChars 个字符并遇到段落结束时切分一次，
+ * 除最后一个文档块外全部输出，最后一个文档块的原文留在缓冲区中与后续文本一起切分，
+ * 因此切分结果与整篇切分基本一致，而缓冲区大小只与 parseBufferChars 和文档块大小有关。
+ * 文件资源直接交给 Tika 随机读取，其他资源由 {@link TikaInputStream} 在需要时暂存到临时文件。线程安全。
+ */
+@Component
+public class StreamingDocumentReader {
+
+    /**
+     * 与 TikaDocumentReader 一致的来源元数据
+     */
+    static final String METADATA_SOURCE = "source";
+
+    /**
+     * Tika 输出的 XHTML 中表示段落结束的元素，只在这些位置切分，避免把一句话拆进两个缓冲区
+     */
+    private static final Set<String> BLOCK_ELEMENTS = Set.of(
+            "p", "div", "li", "tr", "table", "pre", "blockquote", "h1", "h2", "h3", "h4", "h5", "h6");
+
+    private final TokenTextSplitter splitter = IngestionService.newSplitter();
+
+    private final ExtractedTextFormatter formatter = ExtractedTextFormatter.defaults();
+
+    private final int bufferChars;
+
+    public StreamingDocumentReader(IngestionProperties properties) {
+        this.bufferChars = Math.max(1024, properties.getParseBufferChars());
+    }
+
+    /**
+     * 解析文档，按原文顺序逐个输出切分后的文档块；sink 阻塞时解析随之暂停
+     *
+     * @throws IOException 读取失败或 Tika 无法解析该文件
+     */
+    void read(Resource resource, IngestionPipeline.Emitter<Document> sink) throws IOException, InterruptedException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(METADATA_SOURCE, resource.getFilename() == null ? resource.getDescription() : resource.getFilename());
+        Metadata tikaMetadata = new Metadata();
+        if (resource.getFilename() != null) {
+            tikaMetadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, resource.getFilename());
+        }
+        ChunkingHandler handler = new ChunkingHandler(metadata, sink);
+        try (InputStream input = resource.isFile()
+                ? TikaInputStream.get(resource.getFile().toPath())
+                : TikaInputStream.get(resource.getInputStream())) {
+            new AutoDetectParser().parse(input, new BodyContentHandler(handler), tikaMetadata, new ParseContext());
+            handler.flush(true);
+        } catch (SAXException | TikaException e) {
+            handler.rethrowSinkFailure();
+            throw new IOException("文档解析失败：" + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            handler.rethrowSinkFailure();
+            throw e;
+        }
+    }
+
+    private final class ChunkingHandler extends DefaultHandler {
+        private final Map<String, Object> metadata;
+        private final IngestionPipeline.Emitter<Document> sink;
+        private final StringBuilder buffer = new StringBuilder();
+
+        /**
+         * 缓冲区达到该长度后在下一个段落结束处切分；上次切分留下的文本不计入，避免短文档块反复切分
+         */
+        private int flushAt = bufferChars;
+
+        /**
+         * sink 抛出的异常，Tika 可能将其包装为 SAXException 或 TikaException，解析结束后原样抛出
+         */
+        private Exception sinkFailure;
+
+        ChunkingHandler(Map<String, Object> metadata, IngestionPipeline.Emitter<Document> sink) {
+            this.metadata = metadata;
+            this.sink = sink;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            buffer.append(ch, start, length);
+            // 很长的段落（如没有分段的纯文本）也不能无限累积
+            if (buffer.length() >= flushAt + bufferChars) {
+                flush(false);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            buffer.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (buffer.length() >= flushAt && BLOCK_ELEMENTS.contains(localName)) {
+                flush(false);
+            }
+        }
+
+        /**
+         * 切分缓冲区中的文本并输出文档块，last 为 false 时最后一个文档块的原文留在缓冲区
+         */
+        void flush(boolean last) throws SAXException {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            String text = buffer.toString();
+            buffer.setLength(0);
+            List<Document> chunks = splitter.apply(List.of(new Document(formatter.format(text), new HashMap<>(metadata))));
+            int complete = last ? chunks.size() : chunks.size() - 1;
+            try {
+                for (int i = 0; i < complete; i++) {
+                    sink.emit(chunks.get(i));
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                sinkFailure = e;
+                throw new SAXException(e);
+            }
+            if (!last && !chunks.isEmpty()) {
+                // 用原文而不是切分后去掉首尾空白的文本，保证与后续文本拼接处的空格和换行不变
+                String tail = chunks.get(chunks.size() - 1).getText();
+                int from = text.lastIndexOf(tail);
+                buffer.append(from >= 0 ? text.substring(from) : tail);
+            }
+            flushAt = buffer.length() + bufferChars;
+        }
+
+        void rethrowSinkFailure() throws InterruptedException {
+            if (sinkFailure instanceof InterruptedException e) {
+                throw e;
+            }
+            if (sinkFailure instanceof RuntimeException e) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.huayi.ai.ingestion.store;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 09:10
+ * Description: 按块分配、可并发写入的对象数组
+ * <p>
+ * 下标对应的元素通过 volatile 语义发布，读取不加锁；容量按块增长，已有的块不会被复制，因此并发写入不会丢失。
+ */
+final class ChunkedArray<T> {
+    private static final int CHUNK_BITS = 13;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    T get(int index) {
+        AtomicReferenceArray<T> chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(index & (CHUNK_SIZE - 1));
+    }
+
+    void set(int index, T value) {
+        int chunkIndex = index >>> CHUNK_BITS;
+        if (chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalStateException("超出容量上限：" + index);
+        }
+        AtomicReferenceArray<T> chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        chunk.set(index & (CHUNK_SIZE - 1), value);
+    }
+}
@@ -0,0 +1,89 @@
+package com.huayi.ai.ingestion.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 09:20
+ * Description: 本地向量库的文档序列化与向量归一化
+ * <p>
+ * 文档以 {"text": ..., "metadata": {...}} 的 JSON 形式保存，文档编号单独存放。
+ */
+final class DocumentCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private DocumentCodec() {
+    }
+
+    static byte[] encode(Document document) {
+        Map<String, Object> source = new HashMap<>();
+        source.put("text", document.getText());
+        source.put("metadata", document.getMetadata());
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException("序列化文档失败：" + document.getId(), e);
+        }
+    }
+
+    static Document decode(String id, byte[] bytes) {
+        try {
+            Map<String, Object> source = OBJECT_MAPPER.readValue(bytes, new TypeReference<>() {
+            });
+            Object text = source.get("text");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> metadata = source.get("metadata") instanceof Map<?, ?> map
+                    ? (Map<String, Object>) map : new HashMap<>();
+            return Document.builder()
+                    .id(id)
+                    .text(text == null ? "" : text.toString())
+                    .metadata(metadata)
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("解析文档失败：" + id, e);
+        }
+    }
+
+    /**
+     * 校验维度并返回归一化后的副本，归一化后点积即余弦相似度
+     */
+    static float[] normalize(float[] embedding, int dims) {
+        if (embedding.length != dims) {
+            throw new IllegalArgumentException("向量维度为 " + embedding.length + "，与配置的 " + dims + " 不一致");
+        }
+        float[] vector = embedding.clone();
+        float norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = (float) Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 在检索结果的元数据中补充 distance，并以相似度作为文档得分
+     */
+    static Document withScore(Document document, float score) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put("distance", 1 - score);
+        return Document.builder()
+                .id(document.getId())
+                .text(document.getText())
+                .metadata(metadata)
+                .score((double) score)
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package com.huayi.ai.ingestion.store;
+
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 11:40
+ * Description: 可以直接写入已向量化文档块的本地向量库，导入流水线不必再次请求向量化模型
+ */
+public interface EmbeddedVectorStore extends VectorStore {
+
+    /**
+     * 写入已向量化的文档块，编号相同的文档会被替换
+     */
+    void addEmbedded(List<EmbeddedChunk> chunks);
+}
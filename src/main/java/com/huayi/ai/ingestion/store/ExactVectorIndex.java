@@ -0,0 +1,271 @@
+package com.huayi.ai.ingestion.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 10:40
+ * Description: 精确 top-K 向量检索引擎
+ * <p>
+ * 向量归一化后连续存放在一个 float[] 中；开启 int8 量化时另存一份按向量对称量化的 byte[]，
+ * 检索先扫描 int8 数据选出 topK * oversample 个候选，再用原始向量重新打分，扫描的数据量只有 float 的 1/4。
+ * 数据量超过分区阈值时按分区并行扫描，每个分区用大小为 K 的小顶堆选出局部 top-K 后合并。
+ * <p>
+ * 写入与删除串行执行，完成后发布新的 {@link Arena} 快照；检索只读取快照，不加锁。
+ * 删除只标记位图，不回收空间，由 {@link ExactVectorStore} 在删除占比过高时重建引擎。
+ * 受 Java 数组长度限制，768 维时单个引擎最多容纳约 270 万个向量，更大的语料请使用 HNSW 或 Elasticsearch。
+ */
+final class ExactVectorIndex {
+
+    private final int dims;
+
+    private final boolean quantized;
+
+    private final int oversample;
+
+    private final int minPartitionSize;
+
+    private final VectorScorer scorer;
+
+    private final ForkJoinPool pool;
+
+    private volatile Arena arena;
+
+    /**
+     * @param dims             向量维度
+     * @param quantized        是否使用 int8 量化扫描
+     * @param oversample       int8 扫描的候选倍数
+     * @param minPartitionSize 每个并行分区最少的向量数量
+     * @param scorer           点积实现
+     * @param pool             并行扫描使用的线程池
+     */
+    ExactVectorIndex(int dims, boolean quantized, int oversample, int minPartitionSize, VectorScorer scorer, ForkJoinPool pool) {
+        this.dims = dims;
+        this.quantized = quantized;
+        this.oversample = Math.max(1, oversample);
+        this.minPartitionSize = Math.max(1024, minPartitionSize);
+        this.scorer = scorer;
+        this.pool = pool;
+        this.arena = new Arena(new float[0], quantized ? new byte[0] : null, quantized ? new float[0] : null, new long[0], 0);
+    }
+
+    int dims() {
+        return dims;
+    }
+
+    int size() {
+        return arena.size;
+    }
+
+    VectorScorer scorer() {
+        return scorer;
+    }
+
+    /**
+     * 预先分配容纳 capacity 个向量的空间，已知数据量时（加载快照、批量导入）可避免扩容时的数组复制
+     */
+    synchronized void reserve(int capacity) {
+        Arena current = arena;
+        if ((long) capacity * dims > current.floats.length) {
+            arena = grow(current, capacity);
+        }
+    }
+
+    /**
+     * 追加一批已归一化的向量，返回第一个向量的编号
+     */
+    synchronized int addAll(List<float[]> vectors) {
+        Arena current = arena;
+        int size = current.size;
+        int required = size + vectors.size();
+        if ((long) required * dims > current.floats.length) {
+            current = grow(current, Math.max(required, (int) Math.min(maxVectors(), size + (size >> 1) + 16L)));
+        }
+        float[] floats = current.floats;
+        byte[] codes = current.codes;
+        float[] scales = current.scales;
+        long[] deleted = current.deleted;
+        // 新写入的位置在发布新快照之前对检索线程不可见，可以直接写入共享数组
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] vector = vectors.get(i);
+            int id = size + i;
+            System.arraycopy(vector, 0, floats, id * dims, dims);
+            if (quantized) {
+                scales[id] = quantize(vector, codes, id * dims);
+            }
+        }
+        arena = new Arena(floats, codes, scales, deleted, required);
+        return size;
+    }
+
+    private Arena grow(Arena current, int capacity) {
+        if (capacity > maxVectors()) {
+            throw new IllegalStateException("精确检索最多容纳 " + maxVectors() + " 个 " + dims + " 维向量");
+        }
+        float[] floats = Arrays.copyOf(current.floats, capacity * dims);
+        byte[] codes = quantized ? Arrays.copyOf(current.codes, capacity * dims) : null;
+        float[] scales = quantized ? Arrays.copyOf(current.scales, capacity) : null;
+        long[] deleted = Arrays.copyOf(current.deleted, (capacity + 63) >> 6);
+        return new Arena(floats, codes, scales, deleted, current.size);
+    }
+
+    private int maxVectors() {
+        return (Integer.MAX_VALUE - 8) / dims;
+    }
+
+    /**
+     * 批量标记删除，删除位图只复制一次再发布，正在进行的检索不受影响
+     */
+    synchronized void deleteAll(int[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        Arena current = arena;
+        long[] deleted = current.deleted.clone();
+        for (int id : ids) {
+            deleted[id >> 6] |= 1L << id;
+        }
+        arena = new Arena(current.floats, current.codes, current.scales, deleted, current.size);
+    }
+
+    boolean isLive(int id) {
+        Arena current = arena;
+        return id < current.size && !current.isDeleted(id);
+    }
+
+    void copyVector(int id, float[] out) {
+        System.arraycopy(arena.floats, id * dims, out, 0, dims);
+    }
+
+    /**
+     * 检索与查询向量最相似的 k 个向量
+     *
+     * @param query  已归一化的查询向量
+     * @param accept 过滤条件，为空时不过滤；只对可能进入 top-K 的向量求值
+     */
+    ScoredIds search(float[] query, int k, IntPredicate accept) {
+        Arena current = arena;
+        if (current.size == 0 || k <= 0) {
+            return ScoredIds.EMPTY;
+        }
+        if (!quantized) {
+            return scan(current, k, (from, to, heap) -> scanFloat(current, query, k, from, to, heap, accept));
+        }
+        byte[] queryCodes = new byte[dims];
+        float queryScale = quantize(query, queryCodes, 0);
+        int candidateCount = k * oversample;
+        ScoredIds candidates = scan(current, candidateCount,
+                (from, to, heap) -> scanInt8(current, queryCodes, queryScale, candidateCount, from, to, heap, accept));
+        // 用原始向量重新打分
+        ScoreHeap heap = new ScoreHeap(false, k + 1);
+        for (int id : candidates.ids()) {
+            offer(heap, k, id, scorer.dot(query, current.floats, id * dims));
+        }
+        return ScoredIds.drain(heap);
+    }
+
+    private ScoredIds scan(Arena current, int k, PartitionScan partitionScan) {
+        int size = current.size;
+        int partitions = Math.min(pool.getParallelism(), (size + minPartitionSize - 1) / minPartitionSize);
+        if (partitions <= 1) {
+            ScoreHeap heap = new ScoreHeap(false, k + 1);
+            partitionScan.scan(0, size, heap);
+            return ScoredIds.drain(heap);
+        }
+        int step = (size + partitions - 1) / partitions;
+        List<ForkJoinTask<ScoreHeap>> tasks = new ArrayList<>(partitions);
+        for (int from = 0; from < size; from += step) {
+            int start = from;
+            int end = Math.min(size, from + step);
+            tasks.add(pool.submit(() -> {
+                ScoreHeap heap = new ScoreHeap(false, k + 1);
+                partitionScan.scan(start, end, heap);
+                return heap;
+            }));
+        }
+        ScoreHeap merged = new ScoreHeap(false, k + 1);
+        for (ForkJoinTask<ScoreHeap> task : tasks) {
+            ScoreHeap heap = task.join();
+            while (!heap.isEmpty()) {
+                float score = heap.topScore();
+                offer(merged, k, heap.pop(), score);
+            }
+        }
+        return ScoredIds.drain(merged);
+    }
+
+    private void scanFloat(Arena current, float[] query, int k, int from, int to, ScoreHeap heap, IntPredicate accept) {
+        float[] floats = current.floats;
+        for (int id = from; id < to; id++) {
+            if (current.isDeleted(id)) {
+                continue;
+            }
+            float score = scorer.dot(query, floats, id * dims);
+            if (heap.size() < k || score > heap.topScore()) {
+                if (accept == null || accept.test(id)) {
+                    offer(heap, k, id, score);
+                }
+            }
+        }
+    }
+
+    private void scanInt8(Arena current, byte[] queryCodes, float queryScale, int k, int from, int to, ScoreHeap heap,
+                          IntPredicate accept) {
+        byte[] codes = current.codes;
+        float[] scales = current.scales;
+        for (int id = from; id < to; id++) {
+            if (current.isDeleted(id)) {
+                continue;
+            }
+            float score = scorer.dot(queryCodes, codes, id * dims) * scales[id] * queryScale;
+            if (heap.size() < k || score > heap.topScore()) {
+                if (accept == null || accept.test(id)) {
+                    offer(heap, k, id, score);
+                }
+            }
+        }
+    }
+
+    private static void offer(ScoreHeap heap, int k, int id, float score) {
+        if (heap.size() < k) {
+            heap.push(id, score);
+        } else if (score > heap.topScore()) {
+            heap.pop();
+            heap.push(id, score);
+        }
+    }
+
+    /**
+     * 对称量化：code = round(x / scale)，scale = max|x| / 127，返回 scale
+     */
+    private float quantize(float[] vector, byte[] codes, int offset) {
+        float max = 0;
+        for (int d = 0; d < dims; d++) {
+            max = Math.max(max, Math.abs(vector[d]));
+        }
+        float scale = max == 0 ? 1 : max / 127f;
+        for (int d = 0; d < dims; d++) {
+            codes[offset + d] = (byte) Math.round(vector[d] / scale);
+        }
+        return scale;
+    }
+
+    @FunctionalInterface
+    private interface PartitionScan {
+        void scan(int from, int to, ScoreHeap heap);
+    }
+
+    /**
+     * 不可变的数据快照；数组本身在扩容前会被后续写入追加内容，但只追加在 size 之后的位置
+     */
+    private record Arena(float[] floats, byte[] codes, float[] scales, long[] deleted, int size) {
+        boolean isDeleted(int id) {
+            return (deleted[id >> 6] & (1L << id)) != 0;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.huayi.ai.ingestion.store;
+
+import com.huayi.ai.config.LocalVectorStoreProperties;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 14:00
+ * Description: 基于精确检索的本地向量库，适合中小规模知识库
+ * <p>
+ * 检索由 {@link ExactVectorIndex} 完成，结果与暴力计算一致（int8 量化时为重新打分后的结果）。
+ * 配置了快照文件时，定期以及关闭时将向量与文档写入单个文件，启动时读取。
+ * <p>
+ * 删除和覆盖只在引擎中标记，被删除的向量占比达到 compactionRatio 时，把存活的向量复制到新的引擎中，
+ * 连同文档数组和编号映射一起切换；正在进行的检索继续使用旧的一份，重建期间内存占用短暂翻倍。
+ */
+public class ExactVectorStore implements EmbeddedVectorStore, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ExactVectorStore.class);
+
+    private static final int MAGIC = 0x45584354;
+    private static final int VERSION = 1;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final LocalVectorStoreProperties.Exact properties;
+
+    private final VectorScorer scorer;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * 当前的引擎、文档与编号映射，压缩时整体替换；检索读取一次后只使用这一份
+     */
+    private volatile Segment segment;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final Path file;
+
+    private final ScheduledExecutorService snapshotExecutor;
+
+    public ExactVectorStore(EmbeddingModel embeddingModel, LocalVectorStoreProperties.Exact properties) {
+        this.embeddingModel = embeddingModel;
+        this.properties = properties;
+        this.scorer = VectorScorer.create();
+        int parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism);
+        this.segment = newSegment();
+        logger.info("精确检索向量库初始化完成，点积实现：{}，int8 量化：{}，并行度：{}",
+                scorer.name(), properties.isQuantized(), parallelism);
+        this.file = properties.getFile() == null || properties.getFile().isBlank() ? null : Paths.get(properties.getFile());
+        if (file == null) {
+            this.snapshotExecutor = null;
+            return;
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载精确检索向量库失败：" + file, e);
+        }
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exact-vector-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshotExecutor.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "ExactVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        List<EmbeddedChunk> chunks = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            chunks.add(new EmbeddedChunk(documents.get(i), embeddings.get(i)));
+        }
+        addEmbedded(chunks);
+    }
+
+    @Override
+    public synchronized void addEmbedded(List<EmbeddedChunk> chunks) {
+        Segment current = segment;
+        ExactVectorIndex index = current.index;
+        List<float[]> vectors = new ArrayList<>(chunks.size());
+        for (EmbeddedChunk chunk : chunks) {
+            vectors.add(DocumentCodec.normalize(chunk.embedding(), index.dims()));
+        }
+        int first = index.size();
+        for (int i = 0; i < chunks.size(); i++) {
+            current.documents.set(first + i, chunks.get(i).document());
+        }
+        index.addAll(vectors);
+        int[] replaced = new int[chunks.size()];
+        int count = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            Integer previous = current.ids.put(chunks.get(i).document().getId(), first + i);
+            if (previous != null) {
+                replaced[count++] = previous;
+            }
+        }
+        index.deleteAll(Arrays.copyOf(replaced, count));
+        dirty.set(true);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void delete(List<String> idList) {
+        Segment current = segment;
+        int[] nodes = new int[idList.size()];
+        int count = 0;
+        for (String id : idList) {
+            Integer node = current.ids.remove(id);
+            if (node != null) {
+                nodes[count++] = node;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        current.index.deleteAll(Arrays.copyOf(nodes, count));
+        dirty.set(true);
+        compactIfNeeded();
+    }
+
+    public void delete(Filter.Expression filterExpression) {
+        MetadataFilter filter = MetadataFilter.of(filterExpression);
+        Segment current = segment;
+        List<String> matched = new ArrayList<>();
+        current.ids.forEach((id, node) -> {
+            if (filter == null || filter.test(current.documents.get(node).getMetadata())) {
+                matched.add(id);
+            }
+        });
+        delete(matched);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Segment current = segment;
+        float[] query = DocumentCodec.normalize(embeddingModel.embed(request.getQuery()), current.index.dims());
+        MetadataFilter filter = request.hasFilterExpression() ? MetadataFilter.of(request.getFilterExpression()) : null;
+        IntPredicate accept = filter == null ? null : node -> filter.test(current.documents.get(node).getMetadata());
+        ScoredIds results = current.index.search(query, request.getTopK(), accept);
+        List<Document> found = new ArrayList<>(results.ids().length);
+        for (int i = 0; i < results.ids().length; i++) {
+            float score = results.scores()[i];
+            if (score >= request.getSimilarityThreshold()) {
+                found.add(DocumentCodec.withScore(current.documents.get(results.ids()[i]), score));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 当前未删除的文档数量
+     */
+    public int size() {
+        return segment.ids.size();
+    }
+
+    /**
+     * 被删除的向量占比达到 compactionRatio 时，把存活的向量按原顺序复制到新的引擎中
+     */
+    private void compactIfNeeded() {
+        double ratio = properties.getCompactionRatio();
+        Segment current = segment;
+        int size = current.index.size();
+        int deleted = size - current.ids.size();
+        if (ratio <= 0 || deleted == 0 || deleted < size * ratio) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Segment rebuilt = newSegment();
+        int live = current.ids.size();
+        rebuilt.index.reserve(live);
+        List<float[]> vectors = new ArrayList<>(Math.min(live, 4096));
+        int next = 0;
+        for (int node = 0; node < size; node++) {
+            if (!current.index.isLive(node)) {
+                continue;
+            }
+            float[] vector = new float[current.index.dims()];
+            current.index.copyVector(node, vector);
+            vectors.add(vector);
+            Document document = current.documents.get(node);
+            rebuilt.documents.set(next, document);
+            rebuilt.ids.put(document.getId(), next);
+            next++;
+            if (vectors.size() == 4096) {
+                rebuilt.index.addAll(vectors);
+                vectors.clear();
+            }
+        }
+        rebuilt.index.addAll(vectors);
+        segment = rebuilt;
+        logger.info("精确检索向量库已压缩，向量数：{} -> {}，耗时：{} ms", size, next, System.currentTimeMillis() - start);
+    }
+
+    private Segment newSegment() {
+        ExactVectorIndex index = new ExactVectorIndex(properties.getDimensions(), properties.isQuantized(),
+                properties.getOversample(), properties.getMinPartitionSize(), scorer, pool);
+        return new Segment(index, new ChunkedArray<>(), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 保存快照，未配置文件或没有新的修改时直接返回
+     */
+    public synchronized void snapshot() throws IOException {
+        if (file == null || !dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Segment current = segment;
+            ExactVectorIndex index = current.index;
+            int size = index.size();
+            float[] vector = new float[index.dims()];
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(index.dims());
+                out.writeInt(current.ids.size());
+                for (int node = 0; node < size; node++) {
+                    if (!index.isLive(node)) {
+                        continue;
+                    }
+                    Document document = current.documents.get(node);
+                    byte[] id = document.getId().getBytes(StandardCharsets.UTF_8);
+                    byte[] body = DocumentCodec.encode(document);
+                    out.writeInt(id.length);
+                    out.write(id);
+                    out.writeInt(body.length);
+                    out.write(body);
+                    index.copyVector(node, vector);
+                    for (float value : vector) {
+                        out.writeFloat(value);
+                    }
+                }
+            }
+            // 先落盘再替换，避免掉电后新文件名指向未写入的数据
+            sync(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("精确检索向量库快照已保存，文档数：{}", current.ids.size());
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+        }
+        snapshotQuietly();
+        pool.shutdown();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            logger.error("保存精确检索向量库快照失败", e);
+        }
+    }
+
+    private static void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("无法识别的快照文件：" + file);
+            }
+            int dims = in.readInt();
+            if (dims != properties.getDimensions()) {
+                throw new IOException("快照向量维度为 " + dims + "，与配置的 " + properties.getDimensions() + " 不一致");
+            }
+            int count = in.readInt();
+            segment.index.reserve(count);
+            List<EmbeddedChunk> batch = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[in.readInt()];
+                in.readFully(id);
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                float[] vector = new float[dims];
+                for (int d = 0; d < dims; d++) {
+                    vector[d] = in.readFloat();
+                }
+                batch.add(new EmbeddedChunk(DocumentCodec.decode(new String(id, StandardCharsets.UTF_8), body), vector));
+                if (batch.size() == 4096) {
+                    addEmbedded(batch);
+                    batch.clear();
+                }
+            }
+            addEmbedded(batch);
+        }
+        dirty.set(false);
+        logger.info("精确检索向量库快照已加载，文档数：{}，耗时：{} ms", size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 向量编号同时是引擎和文档数组的下标，三者必须一起替换
+     */
+    private record Segment(ExactVectorIndex index, ChunkedArray<Document> documents, Map<String, Integer> ids) {
+    }
+}
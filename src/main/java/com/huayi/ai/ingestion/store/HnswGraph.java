@@ -0,0 +1,397 @@
+package com.huayi.ai.ingestion.store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 10:30
+ * Description: HNSW（分层可导航小世界）近似最近邻图
+ * <p>
+ * 向量保存在 {@link VectorSegments} 中并已归一化，点积即余弦相似度。每个节点每层的邻居是一个不可变的数组（附带相似度），
+ * 修改时在节点锁内复制出新数组再整体替换（copy-on-write），因此检索不加任何锁。新节点先计算好自己的邻居并发布，
+ * 再反向连接到邻居上，检索线程只会通过已发布节点的邻居表走到新节点。被删除的节点只做标记，仍参与图的遍历。
+ */
+final class HnswGraph {
+    private static final int MAX_LEVEL = 16;
+    private static final int[] EMPTY = new int[0];
+    private static final Neighbors NONE = new Neighbors(EMPTY, new float[0]);
+
+    private static final ThreadLocal<Visited> VISITED = ThreadLocal.withInitial(Visited::new);
+
+    private final VectorSegments vectors;
+
+    private final int m;
+
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final ChunkedArray<Node> nodes = new ChunkedArray<>();
+
+    private final Object entryLock = new Object();
+
+    private volatile Entry entry;
+
+    HnswGraph(VectorSegments vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    /**
+     * 插入节点，向量需要已经写入 {@link VectorSegments}，可被多个线程同时调用
+     */
+    void insert(int id, float[] vector) {
+        int level = randomLevel();
+        Node node = new Node(level);
+        Entry ep = entry;
+        if (ep == null) {
+            synchronized (entryLock) {
+                if (entry == null) {
+                    nodes.set(id, node);
+                    entry = new Entry(id, level);
+                    return;
+                }
+                ep = entry;
+            }
+        }
+        int current = ep.node();
+        float currentScore = vectors.dot(vector, current);
+        for (int l = ep.level(); l > level; l--) {
+            current = greedy(vector, current, l);
+            currentScore = vectors.dot(vector, current);
+        }
+        for (int l = Math.min(level, ep.level()); l >= 0; l--) {
+            ScoredIds found = searchLayer(vector, current, currentScore, efConstruction, l, null);
+            node.neighbors.set(l, select(found.ids(), found.scores(), maxM(l)));
+            current = found.ids()[0];
+            currentScore = found.scores()[0];
+        }
+        nodes.set(id, node);
+        for (int l = 0; l <= level; l++) {
+            for (int neighbor : node.neighbors.get(l).ids) {
+                link(neighbor, id, l);
+            }
+        }
+        if (level > ep.level()) {
+            synchronized (entryLock) {
+                if (level > entry.level()) {
+                    entry = new Entry(id, level);
+                }
+            }
+        }
+    }
+
+    /**
+     * 检索与查询向量最相似的 k 个节点，accept 为空时不过滤；已删除的节点不会出现在结果中
+     *
+     * @param ef 第 0 层的候选队列大小，越大召回率越高、耗时越长
+     */
+    ScoredIds search(float[] query, int k, int ef, IntPredicate accept) {
+        Entry ep = entry;
+        if (ep == null) {
+            return ScoredIds.EMPTY;
+        }
+        int current = ep.node();
+        for (int l = ep.level(); l > 0; l--) {
+            current = greedy(query, current, l);
+        }
+        IntPredicate live = id -> {
+            Node node = nodes.get(id);
+            return node != null && !node.deleted && (accept == null || accept.test(id));
+        };
+        ScoredIds results = searchLayer(query, current, vectors.dot(query, current), Math.max(ef, k), 0, live);
+        return results.limit(k);
+    }
+
+    void markDeleted(int id) {
+        Node node = nodes.get(id);
+        if (node != null) {
+            node.deleted = true;
+        }
+    }
+
+    boolean isLive(int id) {
+        Node node = nodes.get(id);
+        return node != null && !node.deleted;
+    }
+
+    /**
+     * 在较高层上贪心地移动到与查询最相似的节点
+     */
+    private int greedy(float[] query, int current, int level) {
+        float currentScore = vectors.dot(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : neighbors(current, level)) {
+                float score = vectors.dot(query, neighbor);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层上做 best-first 搜索，accept 不为空时只有满足条件的节点进入结果，但所有节点都参与遍历
+     */
+    private ScoredIds searchLayer(float[] query, int start, float startScore, int ef, int level, IntPredicate accept) {
+        Visited visited = VISITED.get();
+        visited.reset();
+        ScoreHeap candidates = new ScoreHeap(true, ef * 2);
+        ScoreHeap results = new ScoreHeap(false, ef + 1);
+        visited.mark(start);
+        candidates.push(start, startScore);
+        if (accept == null || accept.test(start)) {
+            results.push(start, startScore);
+        }
+        while (!candidates.isEmpty()) {
+            float score = candidates.topScore();
+            int current = candidates.pop();
+            if (results.size() >= ef && score < results.topScore()) {
+                break;
+            }
+            for (int neighbor : neighbors(current, level)) {
+                if (!visited.mark(neighbor)) {
+                    continue;
+                }
+                float neighborScore = vectors.dot(query, neighbor);
+                if (results.size() < ef || neighborScore > results.topScore()) {
+                    candidates.push(neighbor, neighborScore);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(neighbor, neighborScore);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return ScoredIds.drain(results);
+    }
+
+    /**
+     * 启发式选择邻居：候选按相似度从高到低考察，与已选邻居比与基准节点更相似的候选被跳过，
+     * 不足 max 个时再用被跳过的候选补齐，使邻居分布在不同方向上
+     *
+     * @param ids    候选编号，按与基准节点的相似度降序排列
+     * @param scores 对应的相似度
+     */
+    private Neighbors select(int[] ids, float[] scores, int max) {
+        if (ids.length <= max) {
+            return new Neighbors(ids.clone(), scores.clone());
+        }
+        int[] selected = new int[max];
+        float[] selectedScores = new float[max];
+        boolean[] used = new boolean[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length && count < max; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (vectors.dot(ids[i], selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count] = ids[i];
+                selectedScores[count++] = scores[i];
+                used[i] = true;
+            }
+        }
+        for (int i = 0; i < ids.length && count < max; i++) {
+            if (!used[i]) {
+                selected[count] = ids[i];
+                selectedScores[count++] = scores[i];
+            }
+        }
+        return new Neighbors(selected, selectedScores);
+    }
+
+    /**
+     * 将新节点加入邻居的邻居表；超过上限时，新节点比现有最差的邻居更相似才重新选择，否则不加入
+     */
+    private void link(int target, int id, int level) {
+        Node node = nodes.get(target);
+        if (node == null || level > node.level) {
+            return;
+        }
+        float score = vectors.dot(target, id);
+        synchronized (node) {
+            Neighbors current = node.neighbors.get(level);
+            int length = current.ids.length;
+            int worst = 0;
+            for (int i = 0; i < length; i++) {
+                if (current.ids[i] == id) {
+                    return;
+                }
+                if (current.scores[i] < current.scores[worst]) {
+                    worst = i;
+                }
+            }
+            if (length >= maxM(level) && score <= current.scores[worst]) {
+                return;
+            }
+            int[] ids = Arrays.copyOf(current.ids, length + 1);
+            float[] scores = Arrays.copyOf(current.scores, length + 1);
+            ids[length] = id;
+            scores[length] = score;
+            if (ids.length <= maxM(level)) {
+                node.neighbors.set(level, new Neighbors(ids, scores));
+                return;
+            }
+            sortDescending(ids, scores);
+            node.neighbors.set(level, select(ids, scores, maxM(level)));
+        }
+    }
+
+    private int[] neighbors(int id, int level) {
+        Node node = nodes.get(id);
+        if (node == null || level > node.level) {
+            return EMPTY;
+        }
+        return node.neighbors.get(level).ids;
+    }
+
+    private int maxM(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double random = ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random) * levelMultiplier));
+    }
+
+    private static void sortDescending(int[] ids, float[] scores) {
+        // 邻居表很短，插入排序即可
+        for (int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * 写出前 count 个节点的图结构，调用方需保证写出期间没有并发插入
+     */
+    void write(DataOutputStream out, int count) throws IOException {
+        Entry ep = entry;
+        out.writeInt(ep == null ? -1 : ep.node());
+        out.writeInt(ep == null ? -1 : ep.level());
+        for (int id = 0; id < count; id++) {
+            Node node = nodes.get(id);
+            if (node == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(node.level);
+            out.writeBoolean(node.deleted);
+            for (int l = 0; l <= node.level; l++) {
+                Neighbors neighbors = node.neighbors.get(l);
+                out.writeInt(neighbors.ids.length);
+                for (int i = 0; i < neighbors.ids.length; i++) {
+                    out.writeInt(neighbors.ids[i]);
+                    out.writeFloat(neighbors.scores[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从 {@link #write(DataOutputStream, int)} 写出的数据中恢复图结构
+     */
+    void read(ByteBuffer in, int count) {
+        int entryNode = in.getInt();
+        int entryLevel = in.getInt();
+        for (int id = 0; id < count; id++) {
+            int level = in.getInt();
+            if (level < 0) {
+                continue;
+            }
+            Node node = new Node(level);
+            node.deleted = in.get() != 0;
+            for (int l = 0; l <= level; l++) {
+                int length = in.getInt();
+                int[] ids = new int[length];
+                float[] scores = new float[length];
+                for (int i = 0; i < length; i++) {
+                    ids[i] = in.getInt();
+                    scores[i] = in.getFloat();
+                }
+                node.neighbors.set(l, new Neighbors(ids, scores));
+            }
+            nodes.set(id, node);
+        }
+        entry = entryNode < 0 ? null : new Entry(entryNode, entryLevel);
+    }
+
+    private record Entry(int node, int level) {
+    }
+
+    private static final class Node {
+        private final int level;
+        private final AtomicReferenceArray<Neighbors> neighbors;
+        private volatile boolean deleted;
+
+        private Node(int level) {
+            this.level = level;
+            this.neighbors = new AtomicReferenceArray<>(level + 1);
+            for (int l = 0; l <= level; l++) {
+                neighbors.set(l, NONE);
+            }
+        }
+    }
+
+    /**
+     * 邻居表：邻居编号及其与所属节点的相似度，创建后不再修改
+     */
+    private record Neighbors(int[] ids, float[] scores) {
+    }
+
+    /**
+     * 线程私有的访问标记，通过递增代数实现 O(1) 清空
+     */
+    private static final class Visited {
+        private int[] marks = new int[1024];
+        private int generation;
+
+        void reset() {
+            if (++generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        boolean mark(int id) {
+            if (id >= marks.length) {
+                marks = Arrays.copyOf(marks, Math.max(id + 1, marks.length * 2));
+            }
+            if (marks[id] == generation) {
+                return false;
+            }
+            marks[id] = generation;
+            return true;
+        }
+    }
+}
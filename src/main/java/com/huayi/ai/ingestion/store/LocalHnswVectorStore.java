@@ -0,0 +1,557 @@
+package com.huayi.ai.ingestion.store;
+
+import com.huayi.ai.config.LocalVectorStoreProperties;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 14:00
+ * Description: 进程内的 HNSW 向量库，用于没有 Elasticsearch 的边缘部署
+ * <p>
+ * 向量保存在内存映射的段文件中（堆外），图结构见 {@link HnswGraph}：写入可并发进行，检索不加锁。
+ * 快照由三部分组成：段文件本身、graph.bin（文档编号、文档偏移与图结构）和 documents-代数-序号.bin（文档正文与元数据），
+ * 启动时段文件和文档文件直接映射，文档在第一次被访问时才解析，因此加载耗时只与图结构大小有关。
+ * <p>
+ * 每次快照写出新的文档文件，graph.bin 记录它对应的文档文件和段文件代数，替换 graph.bin 是唯一的提交点：
+ * 替换前崩溃时旧的 graph.bin 仍指向未被修改的旧文件，提交后才删除不再引用的文件。
+ * 删除只做标记，被删除的节点超过 compactionRatio 时，在后台把存活的节点重建到新一代段文件和新图中再整体切换。
+ */
+public class LocalHnswVectorStore implements EmbeddedVectorStore, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LocalHnswVectorStore.class);
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 2;
+    private static final String GRAPH_FILE = "graph.bin";
+
+    /**
+     * 版本 1 快照的文档文件，段文件位于快照目录下，视为第 0 代
+     */
+    private static final String LEGACY_DOCUMENTS_FILE = "documents.bin";
+
+    private static final Pattern DOCUMENTS_FILE = Pattern.compile("documents.*\\.bin(\\.tmp)?");
+    private static final Pattern SEGMENT_FILE = Pattern.compile("vectors-\\d+\\.seg");
+    private static final Pattern GENERATION_DIR = Pattern.compile("gen-(\\d+)");
+    private static final byte[] EMPTY_DOCUMENT = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final EmbeddingModel embeddingModel;
+
+    private final LocalVectorStoreProperties.Local properties;
+
+    private final Path dir;
+
+    /**
+     * 当前一代的向量、图与文档，压缩时整体替换；检索开始时读取一次，之后始终使用同一代
+     */
+    private volatile State state;
+
+    /**
+     * 快照序号，用于生成文档文件名
+     */
+    private long snapshotSequence;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    /**
+     * 写入与删除持有读锁（可以并发），保存快照与压缩持有写锁；检索不加锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService snapshotExecutor;
+
+    public LocalHnswVectorStore(EmbeddingModel embeddingModel, LocalVectorStoreProperties.Local properties) {
+        this.embeddingModel = embeddingModel;
+        this.properties = properties;
+        this.dir = properties.getDir() == null || properties.getDir().isBlank() ? null : Paths.get(properties.getDir());
+        if (dir == null) {
+            this.state = newState(0);
+        } else {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("加载本地向量库失败：" + dir, e);
+            }
+        }
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-vector-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 只保存在内存中时也需要定期压缩，否则被删除的节点和文档一直占用内存
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshotExecutor.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "LocalHnswVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        List<EmbeddedChunk> chunks = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            chunks.add(new EmbeddedChunk(documents.get(i), embeddings.get(i)));
+        }
+        addEmbedded(chunks);
+    }
+
+    @Override
+    public void addEmbedded(List<EmbeddedChunk> chunks) {
+        lock.readLock().lock();
+        try {
+            State current = state;
+            for (EmbeddedChunk chunk : chunks) {
+                float[] vector = DocumentCodec.normalize(chunk.embedding(), current.vectors.dims());
+                int node = current.count.getAndIncrement();
+                current.vectors.ensureCapacity(node + 1);
+                current.vectors.set(node, vector);
+                Document document = chunk.document();
+                current.documents.set(node, new StoredDocument(document.getId(), document, null, -1, 0));
+                current.graph.insert(node, vector);
+                // 新节点可见之后再删除旧节点，替换期间检索不会丢失该文档
+                Integer previous = current.ids.put(document.getId(), node);
+                if (previous != null) {
+                    current.graph.markDeleted(previous);
+                }
+            }
+            dirty.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.readLock().lock();
+        try {
+            State current = state;
+            for (String id : idList) {
+                Integer node = current.ids.remove(id);
+                if (node != null) {
+                    current.graph.markDeleted(node);
+                    dirty.set(true);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void delete(Filter.Expression filterExpression) {
+        MetadataFilter filter = MetadataFilter.of(filterExpression);
+        State current = state;
+        List<String> matched = new ArrayList<>();
+        current.ids.forEach((id, node) -> {
+            if (filter == null || filter.test(resolve(current, node).getMetadata())) {
+                matched.add(id);
+            }
+        });
+        delete(matched);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        State current = state;
+        float[] query = DocumentCodec.normalize(embeddingModel.embed(request.getQuery()), current.vectors.dims());
+        MetadataFilter filter = request.hasFilterExpression() ? MetadataFilter.of(request.getFilterExpression()) : null;
+        IntPredicate accept = filter == null ? null : node -> filter.test(resolve(current, node).getMetadata());
+        int topK = request.getTopK();
+        ScoredIds results = current.graph.search(query, topK, Math.max(properties.getEfSearch(), topK), accept);
+        List<Document> found = new ArrayList<>(results.ids().length);
+        for (int i = 0; i < results.ids().length; i++) {
+            float score = results.scores()[i];
+            if (score < request.getSimilarityThreshold()) {
+                continue;
+            }
+            found.add(DocumentCodec.withScore(resolve(current, results.ids()[i]), score));
+        }
+        return found;
+    }
+
+    /**
+     * 当前未删除的文档数量
+     */
+    public int size() {
+        return state.ids.size();
+    }
+
+    /**
+     * 被删除的节点占比达到 compactionRatio 时，把存活的节点重建到新一代的段文件和图中
+     * <p>
+     * 重建期间写入等待，检索继续使用旧的一代；持久化的快照在下一次 {@link #snapshot()} 时切换到新一代。
+     */
+    public void compact() throws IOException {
+        double ratio = properties.getCompactionRatio();
+        if (ratio <= 0 || !needsCompaction(state, ratio)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            State current = state;
+            if (!needsCompaction(current, ratio)) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int size = current.count.get();
+            int generation = current.generation + 1;
+            Path segmentDir = segmentDir(generation);
+            if (segmentDir != null) {
+                // 上一次压缩失败时留下的同代文件
+                deleteRecursively(segmentDir);
+            }
+            State rebuilt = newState(generation);
+            int live = current.ids.size();
+            rebuilt.vectors.ensureCapacity(live);
+            float[] vector = new float[current.vectors.dims()];
+            int next = 0;
+            for (int node = 0; node < size; node++) {
+                if (!current.graph.isLive(node)) {
+                    continue;
+                }
+                StoredDocument document = current.documents.get(node);
+                current.vectors.get(node, vector);
+                rebuilt.vectors.set(next, vector);
+                rebuilt.documents.set(next, document);
+                rebuilt.ids.put(document.id, next);
+                next++;
+            }
+            int count = next;
+            // HnswGraph 支持并发插入，重建时并行构图
+            IntStream.range(0, count).parallel().forEach(node -> {
+                float[] v = new float[rebuilt.vectors.dims()];
+                rebuilt.vectors.get(node, v);
+                rebuilt.graph.insert(node, v);
+            });
+            rebuilt.count.set(count);
+            state = rebuilt;
+            dirty.set(true);
+            logger.info("本地向量库已压缩，节点数：{} -> {}，耗时：{} ms", size, count, System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean needsCompaction(State current, double ratio) {
+        int size = current.count.get();
+        int deleted = size - current.ids.size();
+        return deleted > 0 && deleted >= size * ratio;
+    }
+
+    /**
+     * 保存快照，没有目录或没有新的修改时直接返回
+     */
+    public void snapshot() throws IOException {
+        if (dir == null || !dirty.get()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            dirty.set(false);
+            State current = state;
+            int size = current.count.get();
+            current.vectors.force();
+            Files.createDirectories(dir);
+            long sequence = snapshotSequence + 1;
+            String documentsName = documentsFile(current.generation, sequence);
+            long[] offsets = new long[size];
+            int[] lengths = new int[size];
+            Path documentsTmp = dir.resolve(documentsName + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(documentsTmp))) {
+                long position = 0;
+                for (int node = 0; node < size; node++) {
+                    byte[] bytes = current.graph.isLive(node) ? bytesOf(current.documents.get(node)) : EMPTY_DOCUMENT;
+                    out.write(bytes);
+                    offsets[node] = position;
+                    lengths[node] = bytes.length;
+                    position += bytes.length;
+                }
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("文档文件超过 2GB，请改用 Elasticsearch 向量库");
+                }
+            }
+            sync(documentsTmp);
+            Files.move(documentsTmp, dir.resolve(documentsName), StandardCopyOption.ATOMIC_MOVE);
+            Path graphTmp = dir.resolve(GRAPH_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(graphTmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(current.vectors.dims());
+                out.writeInt(size);
+                out.writeInt(current.generation);
+                out.writeLong(sequence);
+                for (int node = 0; node < size; node++) {
+                    StoredDocument document = current.documents.get(node);
+                    byte[] id = (document == null ? "" : document.id).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(id.length);
+                    out.write(id);
+                    out.writeLong(offsets[node]);
+                    out.writeInt(lengths[node]);
+                }
+                current.graph.write(out, size);
+            }
+            sync(graphTmp);
+            // 提交点：此前崩溃时旧的 graph.bin 及其引用的文件都未被修改
+            Files.move(graphTmp, dir.resolve(GRAPH_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotSequence = sequence;
+            removeUnreferencedFiles(current.generation, documentsName);
+            logger.info("本地向量库快照已保存，节点数：{}，耗时：{} ms", size, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshotExecutor.shutdownNow();
+        snapshotQuietly();
+    }
+
+    private void maintain() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.error("压缩本地向量库失败", e);
+        }
+        snapshotQuietly();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            logger.error("保存本地向量库快照失败", e);
+        }
+    }
+
+    /**
+     * 映射段文件、文档文件和 graph.bin，文档只记录偏移，不在启动时解析
+     */
+    private void load() throws IOException {
+        Path graphFile = dir.resolve(GRAPH_FILE);
+        if (!Files.exists(graphFile)) {
+            logger.info("本地向量库目录 {} 中没有快照，从空库开始", dir);
+            state = newState(0);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ByteBuffer graphBuffer = map(graphFile);
+        int version;
+        if (graphBuffer.getInt() != MAGIC || (version = graphBuffer.getInt()) < 1 || version > VERSION) {
+            throw new IOException("无法识别的快照文件：" + graphFile);
+        }
+        int dims = graphBuffer.getInt();
+        if (dims != properties.getDimensions()) {
+            throw new IOException("快照向量维度为 " + dims + "，与配置的 " + properties.getDimensions() + " 不一致");
+        }
+        int size = graphBuffer.getInt();
+        int generation = 0;
+        String documentsName = LEGACY_DOCUMENTS_FILE;
+        if (version >= 2) {
+            generation = graphBuffer.getInt();
+            snapshotSequence = graphBuffer.getLong();
+            documentsName = documentsFile(generation, snapshotSequence);
+        }
+        State loaded = newState(generation);
+        ByteBuffer documents = map(dir.resolve(documentsName));
+        for (int node = 0; node < size; node++) {
+            byte[] id = new byte[graphBuffer.getInt()];
+            graphBuffer.get(id);
+            long offset = graphBuffer.getLong();
+            int length = graphBuffer.getInt();
+            loaded.documents.set(node, new StoredDocument(new String(id, StandardCharsets.UTF_8), null, documents, offset, length));
+        }
+        loaded.graph.read(graphBuffer, size);
+        loaded.vectors.ensureCapacity(size);
+        for (int node = 0; node < size; node++) {
+            if (loaded.graph.isLive(node)) {
+                loaded.ids.put(loaded.documents.get(node).id, node);
+            }
+        }
+        loaded.count.set(size);
+        state = loaded;
+        // 清理上次崩溃或压缩留下的未提交文件
+        removeUnreferencedFiles(generation, documentsName);
+        logger.info("本地向量库快照已加载，文档数：{}，耗时：{} ms", loaded.ids.size(), System.currentTimeMillis() - start);
+    }
+
+    private State newState(int generation) {
+        VectorSegments vectors = new VectorSegments(properties.getDimensions(), properties.getSegmentSize(), segmentDir(generation));
+        return new State(generation, vectors, new HnswGraph(vectors, properties.getM(), properties.getEfConstruction()));
+    }
+
+    /**
+     * 段文件目录：第 0 代位于快照目录下（与版本 1 的快照兼容），之后每一代使用单独的子目录
+     */
+    private Path segmentDir(int generation) {
+        if (dir == null) {
+            return null;
+        }
+        return generation == 0 ? dir : dir.resolve("gen-" + generation);
+    }
+
+    private static String documentsFile(int generation, long sequence) {
+        return "documents-" + generation + "-" + sequence + ".bin";
+    }
+
+    /**
+     * 删除当前快照不再引用的文档文件、临时文件和其他代的段文件；已映射的旧文件在 Linux 上删除后仍可访问
+     */
+    private void removeUnreferencedFiles(int generation, String documentsName) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                Matcher matcher = GENERATION_DIR.matcher(name);
+                boolean stale = (DOCUMENTS_FILE.matcher(name).matches() && !name.equals(documentsName))
+                        || name.equals(GRAPH_FILE + ".tmp")
+                        || (generation != 0 && SEGMENT_FILE.matcher(name).matches())
+                        || (matcher.matches() && Integer.parseInt(matcher.group(1)) != generation);
+                if (stale) {
+                    deleteRecursively(entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("清理本地向量库旧文件失败：{}", dir, e);
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("删除本地向量库旧文件失败：{}", path, e);
+        }
+    }
+
+    private static void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * 获取节点对应的文档，快照中的文档第一次访问时解析并缓存
+     */
+    private static Document resolve(State current, int node) {
+        StoredDocument stored = current.documents.get(node);
+        Document document = stored.document;
+        if (document != null) {
+            return document;
+        }
+        document = DocumentCodec.decode(stored.id, rawBytes(stored));
+        stored.document = document;
+        return document;
+    }
+
+    private static byte[] bytesOf(StoredDocument stored) {
+        if (stored.document == null) {
+            return rawBytes(stored);
+        }
+        return DocumentCodec.encode(stored.document);
+    }
+
+    private static byte[] rawBytes(StoredDocument stored) {
+        byte[] bytes = new byte[stored.length];
+        stored.source.get((int) stored.offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * 一代向量库：段文件、图、文档与编号映射，压缩时整体替换
+     */
+    private static final class State {
+        private final int generation;
+        private final VectorSegments vectors;
+        private final HnswGraph graph;
+        private final ChunkedArray<StoredDocument> documents = new ChunkedArray<>();
+
+        /**
+         * 文档编号到节点编号的映射，只包含未删除的文档
+         */
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        private State(int generation, VectorSegments vectors, HnswGraph graph) {
+            this.generation = generation;
+            this.vectors = vectors;
+            this.graph = graph;
+        }
+    }
+
+    private static final class StoredDocument {
+        private final String id;
+        private volatile Document document;
+
+        /**
+         * 文档所在的已映射文档文件，尚未解析的文档从这里读取；新写入的文档为 null
+         */
+        private final ByteBuffer source;
+        private final long offset;
+        private final int length;
+
+        private StoredDocument(String id, Document document, ByteBuffer source, long offset, int length) {
+            this.id = id;
+            this.document = document;
+            this.source = source;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
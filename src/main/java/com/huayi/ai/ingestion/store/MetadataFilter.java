@@ -0,0 +1,126 @@
+package com.huayi.ai.ingestion.store;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 11:10
+ * Description: 在内存中对文档元数据求值的过滤条件
+ * <p>
+ * 支持 AND/OR/NOT、EQ/NE、GT/GTE/LT/LTE、IN/NIN。元数据值为集合时（如 doc_keyword 关键词数组），
+ * EQ/IN 只要任一元素匹配即成立，NE/NIN 要求所有元素都不匹配，与 Elasticsearch 对多值字段的语义一致。
+ */
+public final class MetadataFilter implements Predicate<Map<String, Object>> {
+
+    private final Filter.Expression expression;
+
+    private MetadataFilter(Filter.Expression expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * 编译过滤条件，expression 为空时返回 null
+     */
+    public static MetadataFilter of(Filter.Expression expression) {
+        return expression == null ? null : new MetadataFilter(expression);
+    }
+
+    @Override
+    public boolean test(Map<String, Object> metadata) {
+        return evaluate(expression, metadata);
+    }
+
+    private static boolean evaluate(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return evaluate(group.content(), metadata);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤条件：" + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> evaluate(expression.left(), metadata) && evaluate(expression.right(), metadata);
+            case OR -> evaluate(expression.left(), metadata) || evaluate(expression.right(), metadata);
+            case NOT -> !evaluate(expression.left(), metadata);
+            case EQ -> anyMatch(valueOf(expression, metadata), value(expression), MetadataFilter::equal);
+            case NE -> !anyMatch(valueOf(expression, metadata), value(expression), MetadataFilter::equal);
+            case GT -> anyMatch(valueOf(expression, metadata), value(expression), (a, b) -> compare(a, b) > 0);
+            case GTE -> anyMatch(valueOf(expression, metadata), value(expression), (a, b) -> compare(a, b) >= 0);
+            case LT -> anyMatch(valueOf(expression, metadata), value(expression), (a, b) -> compare(a, b) < 0);
+            case LTE -> anyMatch(valueOf(expression, metadata), value(expression), (a, b) -> compare(a, b) <= 0);
+            case IN -> in(valueOf(expression, metadata), value(expression));
+            case NIN -> !in(valueOf(expression, metadata), value(expression));
+        };
+    }
+
+    private static Object valueOf(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("过滤条件左侧必须是字段名：" + expression);
+        }
+        return metadata.get(unquote(key.key()));
+    }
+
+    private static Object value(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("过滤条件右侧必须是值：" + expression);
+        }
+        return value.value();
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        if (!(expected instanceof Collection<?> values)) {
+            return anyMatch(actual, expected, MetadataFilter::equal);
+        }
+        for (Object value : values) {
+            if (anyMatch(actual, value, MetadataFilter::equal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean anyMatch(Object actual, Object expected, Matcher matcher) {
+        if (actual == null) {
+            return false;
+        }
+        if (actual instanceof Collection<?> values) {
+            for (Object value : values) {
+                if (value != null && matcher.matches(value, expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return matcher.matches(actual, expected);
+    }
+
+    private static boolean equal(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return String.valueOf(actual).compareTo(String.valueOf(expected));
+    }
+
+    private static String unquote(String key) {
+        if (key.length() > 1 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'"))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    @FunctionalInterface
+    private interface Matcher {
+        boolean matches(Object actual, Object expected);
+    }
+}
@@ -0,0 +1,68 @@
+package com.huayi.ai.ingestion.store;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 10:20
+ * Description: 基于 JDK Vector API 的点积实现
+ * <p>
+ * float 向量按首选宽度做 FMA；int8 向量每次读取 8 个字节并扩展为 8 个 int 后相乘累加，避免 byte 乘法溢出。
+ * 只通过 {@link VectorScorer#create()} 反射加载。
+ */
+final class PanamaVectorScorer implements VectorScorer {
+    private static final VectorSpecies<Float> FLOAT = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_64 = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Integer> INT_256 = IntVector.SPECIES_256;
+
+    @Override
+    public float dot(float[] query, float[] arena, int offset) {
+        int dims = query.length;
+        int step = FLOAT.length();
+        FloatVector acc0 = FloatVector.zero(FLOAT);
+        FloatVector acc1 = FloatVector.zero(FLOAT);
+        int i = 0;
+        // 两个累加器交替使用，隐藏 FMA 的延迟
+        for (int bound = FLOAT.loopBound(dims) - step; i < bound; i += 2 * step) {
+            acc0 = FloatVector.fromArray(FLOAT, query, i)
+                    .fma(FloatVector.fromArray(FLOAT, arena, offset + i), acc0);
+            acc1 = FloatVector.fromArray(FLOAT, query, i + step)
+                    .fma(FloatVector.fromArray(FLOAT, arena, offset + i + step), acc1);
+        }
+        for (int bound = FLOAT.loopBound(dims); i < bound; i += step) {
+            acc0 = FloatVector.fromArray(FLOAT, query, i)
+                    .fma(FloatVector.fromArray(FLOAT, arena, offset + i), acc0);
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < dims; i++) {
+            sum += query[i] * arena[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int dot(byte[] query, byte[] arena, int offset) {
+        int dims = query.length;
+        IntVector acc = IntVector.zero(INT_256);
+        int i = 0;
+        for (int bound = BYTE_64.loopBound(dims); i < bound; i += BYTE_64.length()) {
+            IntVector q = (IntVector) ByteVector.fromArray(BYTE_64, query, i).castShape(INT_256, 0);
+            IntVector a = (IntVector) ByteVector.fromArray(BYTE_64, arena, offset + i).castShape(INT_256, 0);
+            acc = acc.add(q.mul(a));
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dims; i++) {
+            sum += query[i] * arena[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "vector-api(" + FLOAT.vectorBitSize() + "bit)";
+    }
+}
@@ -0,0 +1,44 @@
+package com.huayi.ai.ingestion.store;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 10:10
+ * Description: 标量点积实现，四路累加以减少依赖链，JIT 可以对其做一定程度的自动向量化
+ */
+final class ScalarVectorScorer implements VectorScorer {
+
+    @Override
+    public float dot(float[] query, float[] arena, int offset) {
+        int dims = query.length;
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int bound = dims & ~3; i < bound; i += 4) {
+            s0 += query[i] * arena[offset + i];
+            s1 += query[i + 1] * arena[offset + i + 1];
+            s2 += query[i + 2] * arena[offset + i + 2];
+            s3 += query[i + 3] * arena[offset + i + 3];
+        }
+        for (; i < dims; i++) {
+            s0 += query[i] * arena[offset + i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    @Override
+    public int dot(byte[] query, byte[] arena, int offset) {
+        int dims = query.length;
+        int sum = 0;
+        for (int i = 0; i < dims; i++) {
+            sum += query[i] * arena[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,98 @@
+package com.huayi.ai.ingestion.store;
+
+import java.util.Arrays;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 10:05
+ * Description: 以原始类型数组实现的 (编号, 得分) 二叉堆
+ */
+final class ScoreHeap {
+
+    private final boolean maxHeap;
+
+    private int[] ids;
+
+    private float[] scores;
+
+    private int size;
+
+    /**
+     * @param maxHeap true 为大顶堆（堆顶得分最高），false 为小顶堆
+     */
+    ScoreHeap(boolean maxHeap, int capacity) {
+        this.maxHeap = maxHeap;
+        this.ids = new int[Math.max(4, capacity)];
+        this.scores = new float[ids.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int topId() {
+        return ids[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void push(int id, float score) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, scores[parent])) {
+                break;
+            }
+            ids[i] = ids[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    /**
+     * 弹出堆顶元素，返回其编号
+     */
+    int pop() {
+        int top = ids[0];
+        int lastId = ids[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && before(scores[right], scores[child])) {
+                child = right;
+            }
+            if (!before(scores[child], lastScore)) {
+                break;
+            }
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = lastId;
+        scores[i] = lastScore;
+        return top;
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
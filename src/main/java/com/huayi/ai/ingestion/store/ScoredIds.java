@@ -0,0 +1,34 @@
+package com.huayi.ai.ingestion.store;
+
+import java.util.Arrays;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 10:20
+ * Description: 向量检索结果：节点编号及相似度，按相似度降序排列
+ */
+record ScoredIds(int[] ids, float[] scores) {
+
+    static final ScoredIds EMPTY = new ScoredIds(new int[0], new float[0]);
+
+    /**
+     * 从小顶堆中依次弹出元素，得到按相似度降序排列的结果
+     */
+    static ScoredIds drain(ScoreHeap heap) {
+        int size = heap.size();
+        int[] ids = new int[size];
+        float[] scores = new float[size];
+        for (int i = size - 1; i >= 0; i--) {
+            scores[i] = heap.topScore();
+            ids[i] = heap.pop();
+        }
+        return new ScoredIds(ids, scores);
+    }
+
+    ScoredIds limit(int k) {
+        if (ids.length <= k) {
+            return this;
+        }
+        return new ScoredIds(Arrays.copyOf(ids, k), Arrays.copyOf(scores, k));
+    }
+}
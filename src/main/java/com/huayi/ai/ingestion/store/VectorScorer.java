@@ -0,0 +1,38 @@
+package com.huayi.ai.ingestion.store;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-18 10:00
+ * Description: 向量点积计算
+ * <p>
+ * 启动参数包含 --add-modules jdk.incubator.vector 时使用 JDK Vector API（SIMD）实现，否则使用标量实现。
+ */
+interface VectorScorer {
+
+    /**
+     * query 与 arena 中从 offset 开始、长度为 query.length 的向量的点积
+     */
+    float dot(float[] query, float[] arena, int offset);
+
+    /**
+     * int8 量化向量的点积
+     */
+    int dot(byte[] query, byte[] arena, int offset);
+
+    String name();
+
+    static VectorScorer create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // 通过反射加载，未启用孵化模块时不会触发 Vector API 类的加载
+                return (VectorScorer) Class.forName("com.huayi.ai.ingestion.store.PanamaVectorScorer")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LoggerFactory.getLogger(VectorScorer.class).warn("Vector API 不可用，使用标量实现", e);
+            }
+        }
+        return new ScalarVectorScorer();
+    }
+}
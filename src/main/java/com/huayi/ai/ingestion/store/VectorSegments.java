@@ -0,0 +1,137 @@
+package com.huayi.ai.ingestion.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-17 09:30
+ * Description: 堆外存储的定长向量
+ * <p>
+ * 向量按编号连续存放在固定容量的段中，每个段是一个内存映射文件（未指定目录时为直接内存）。
+ * 读取使用绝对位置访问，不修改缓冲区状态，因此可以被多个线程同时读取；扩容时复制段数组的引用，已有的段不会移动。
+ */
+final class VectorSegments {
+
+    private final int dims;
+
+    private final int segmentSize;
+
+    private final Path dir;
+
+    private volatile FloatBuffer[] segments = new FloatBuffer[0];
+
+    private volatile MappedByteBuffer[] mapped = new MappedByteBuffer[0];
+
+    /**
+     * @param dims        向量维度
+     * @param segmentSize 每个段容纳的向量数量
+     * @param dir         段文件所在目录，为空时使用直接内存
+     */
+    VectorSegments(int dims, int segmentSize, Path dir) {
+        this.dims = dims;
+        this.segmentSize = segmentSize;
+        this.dir = dir;
+    }
+
+    int dims() {
+        return dims;
+    }
+
+    /**
+     * 确保至少可以容纳 count 个向量，目录中已存在的段文件会被直接映射
+     */
+    synchronized void ensureCapacity(int count) throws IOException {
+        int required = (count + segmentSize - 1) / segmentSize;
+        if (required <= segments.length) {
+            return;
+        }
+        FloatBuffer[] grown = Arrays.copyOf(segments, required);
+        MappedByteBuffer[] grownMapped = Arrays.copyOf(mapped, required);
+        long bytes = (long) segmentSize * dims * Float.BYTES;
+        for (int i = segments.length; i < required; i++) {
+            ByteBuffer buffer;
+            if (dir == null) {
+                buffer = ByteBuffer.allocateDirect((int) bytes);
+            } else {
+                try (FileChannel channel = FileChannel.open(segmentFile(i),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                    grownMapped[i] = map;
+                    buffer = map;
+                }
+            }
+            grown[i] = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        mapped = grownMapped;
+        segments = grown;
+    }
+
+    void set(int id, float[] vector) {
+        FloatBuffer segment = segments[id / segmentSize];
+        int base = (id % segmentSize) * dims;
+        for (int d = 0; d < dims; d++) {
+            segment.put(base + d, vector[d]);
+        }
+    }
+
+    void get(int id, float[] out) {
+        FloatBuffer segment = segments[id / segmentSize];
+        int base = (id % segmentSize) * dims;
+        for (int d = 0; d < dims; d++) {
+            out[d] = segment.get(base + d);
+        }
+    }
+
+    /**
+     * 查询向量与指定编号向量的点积
+     */
+    float dot(float[] query, int id) {
+        FloatBuffer segment = segments[id / segmentSize];
+        int base = (id % segmentSize) * dims;
+        float sum = 0;
+        for (int d = 0; d < dims; d++) {
+            sum += query[d] * segment.get(base + d);
+        }
+        return sum;
+    }
+
+    /**
+     * 两个已存储向量的点积
+     */
+    float dot(int a, int b) {
+        FloatBuffer sa = segments[a / segmentSize];
+        FloatBuffer sb = segments[b / segmentSize];
+        int baseA = (a % segmentSize) * dims;
+        int baseB = (b % segmentSize) * dims;
+        float sum = 0;
+        for (int d = 0; d < dims; d++) {
+            sum += sa.get(baseA + d) * sb.get(baseB + d);
+        }
+        return sum;
+    }
+
+    /**
+     * 将映射文件中的修改写回磁盘
+     */
+    void force() {
+        for (MappedByteBuffer buffer : mapped) {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+
+    private Path segmentFile(int index) throws IOException {
+        Files.createDirectories(dir);
+        return dir.resolve(String.format("vectors-%05d.seg", index));
+    }
+}
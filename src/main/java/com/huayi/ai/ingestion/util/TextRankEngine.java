@@ -0,0 +1,279 @@
+package com.huayi.ai.ingestion.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-03 10:12
+ * Description: 基于原始类型数组的 TextRank 计算引擎
+ * <p>
+ * 词语先被映射为连续的 int 编号，共现窗口图以 CSR（offsets/neighbors 两个 int 数组）形式存储，
+ * 迭代过程只在两个可复用的 float 数组之间交替，避免了 HashMap/HashSet 与 Float 装箱带来的分配开销。
+ * 引擎实例持有可复用的缓冲区，因此不是线程安全的，多线程场景请通过 {@link #local()} 获取线程私有实例。
+ */
+public final class TextRankEngine {
+    private static final float MIN_DIFF = 0.001f; //差值最小
+    private static final int MAX_ITER = 200;//最大迭代次数
+    private static final int WINDOW = 2;  //窗口大小/2
+    private static final float D = 0.85f;
+
+    private static final ThreadLocal<TextRankEngine> LOCAL = ThreadLocal.withInitial(TextRankEngine::new);
+
+    /**
+     * 词语到编号的映射，每次计算前清空后复用
+     */
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+
+    private int[] sequence = new int[64];
+    private int[] edgeFrom = new int[256];
+    private int[] edgeTo = new int[256];
+    private int[] offsets = new int[65];
+    private int[] neighbors = new int[256];
+    private float[] weights = new float[64];
+    private float[] score = new float[64];
+    private float[] next = new float[64];
+    private int[] heap = new int[16];
+
+    /**
+     * 获取当前线程私有的引擎实例
+     */
+    public static TextRankEngine local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * 对分词结果计算 TextRank，返回得分最高的前 keywordNum 个词
+     *
+     * @param tokens     过滤后的分词序列（保持原文顺序）
+     * @param keywordNum 需要返回的关键词数量
+     * @return 按得分从高到低排列的关键词
+     */
+    public List<String> rank(List<String> tokens, int keywordNum) {
+        if (tokens == null || tokens.isEmpty() || keywordNum <= 0) {
+            return new ArrayList<>();
+        }
+        int n = intern(tokens);
+        buildGraph(tokens.size(), n);
+        iterate(n);
+        return topN(n, keywordNum);
+    }
+
+    /**
+     * 在调用方给定的 CSR 图上执行 TextRank 迭代，返回每个节点的得分
+     * <p>
+     * 与 {@link #rank(List, int)} 使用相同的投票公式：自环参与度数计算但不参与投票。
+     *
+     * @param n         节点数量
+     * @param offsets   长度为 n + 1 的行偏移数组
+     * @param neighbors 邻居数组，节点 u 的邻居为 neighbors[offsets[u], offsets[u + 1])
+     * @return 长度为 n 的得分数组（新分配，调用方可自由持有）
+     */
+    public float[] rankGraph(int n, int[] offsets, int[] neighbors) {
+        if (n == 0) {
+            return new float[0];
+        }
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        try {
+            iterate(n);
+            return Arrays.copyOf(score, n);
+        } finally {
+            // 不持有调用方的数组，下次调用时重新分配
+            this.offsets = new int[65];
+            this.neighbors = new int[256];
+        }
+    }
+
+    /**
+     * 将词语映射为从 0 开始的连续编号，编号按首次出现的顺序分配
+     */
+    private int intern(List<String> tokens) {
+        termIds.clear();
+        terms.clear();
+        int size = tokens.size();
+        if (sequence.length < size) {
+            sequence = new int[capacity(size)];
+        }
+        for (int i = 0; i < size; i++) {
+            String token = tokens.get(i);
+            Integer id = termIds.get(token);
+            if (id == null) {
+                id = terms.size();
+                termIds.put(token, id);
+                terms.add(token);
+            }
+            sequence[i] = id;
+        }
+        return terms.size();
+    }
+
+    /**
+     * 构建前后 WINDOW 个词的共现图，并按行去重得到 CSR 结构
+     */
+    private void buildGraph(int size, int n) {
+        // 每个位置最多与 2 * WINDOW 个位置相邻
+        int maxEdges = size * 2 * WINDOW;
+        if (edgeFrom.length < maxEdges) {
+            edgeFrom = new int[capacity(maxEdges)];
+            edgeTo = new int[edgeFrom.length];
+        }
+        if (offsets.length < n + 1) {
+            offsets = new int[capacity(n + 1)];
+        }
+        Arrays.fill(offsets, 0, n + 1, 0);
+
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            int from = Math.max(0, i - WINDOW);
+            int to = Math.min(size - 1, i + WINDOW);
+            for (int j = from; j <= to; j++) {
+                if (j == i) {
+                    continue;
+                }
+                edgeFrom[edges] = sequence[i];
+                edgeTo[edges] = sequence[j];
+                offsets[sequence[i] + 1]++;
+                edges++;
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+        if (neighbors.length < edges) {
+            neighbors = new int[capacity(edges)];
+        }
+        // 计数排序：借用 heap 数组作为每行的写入游标
+        if (heap.length < n) {
+            heap = new int[capacity(n)];
+        }
+        System.arraycopy(offsets, 0, heap, 0, n);
+        for (int e = 0; e < edges; e++) {
+            neighbors[heap[edgeFrom[e]]++] = edgeTo[e];
+        }
+
+        // 行内排序去重并原地压缩，等价于原实现中的 Set<String>
+        int write = 0;
+        int rowStart = 0;
+        for (int u = 0; u < n; u++) {
+            int rowEnd = offsets[u + 1];
+            Arrays.sort(neighbors, rowStart, rowEnd);
+            offsets[u] = write;
+            int last = -1;
+            for (int p = rowStart; p < rowEnd; p++) {
+                int v = neighbors[p];
+                if (v != last) {
+                    neighbors[write++] = v;
+                    last = v;
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[n] = write;
+    }
+
+    private void iterate(int n) {
+        if (score.length < n) {
+            score = new float[capacity(n)];
+            next = new float[score.length];
+            weights = new float[score.length];
+        }
+        Arrays.fill(score, 0, n, 0f);
+        for (int u = 0; u < n; u++) {
+            int degree = offsets[u + 1] - offsets[u];
+            weights[u] = degree == 0 ? 0f : D / degree;
+        }
+
+        for (int iter = 0; iter < MAX_ITER; iter++) {
+            float maxDiff = 0;
+            for (int u = 0; u < n; u++) {
+                //一个关键词的TextRank由其它成员投票出来
+                float s = 1 - D;
+                for (int p = offsets[u], end = offsets[u + 1]; p < end; p++) {
+                    int v = neighbors[p];
+                    if (v != u) {
+                        s += weights[v] * score[v];
+                    }
+                }
+                next[u] = s;
+                maxDiff = Math.max(maxDiff, Math.abs(s - score[u]));
+            }
+            float[] swap = score;
+            score = next;
+            next = swap;
+            if (maxDiff <= MIN_DIFF) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 使用大小为 keywordNum 的小顶堆选出得分最高的词，得分相同时先出现的词优先
+     */
+    private List<String> topN(int n, int keywordNum) {
+        int limit = Math.min(n, keywordNum);
+        if (heap.length < limit) {
+            heap = new int[capacity(limit)];
+        }
+        int size = 0;
+        for (int u = 0; u < n; u++) {
+            if (size < limit) {
+                heap[size] = u;
+                siftUp(size++);
+            } else if (better(u, heap[0])) {
+                heap[0] = u;
+                siftDown(0, size);
+            }
+        }
+        String[] result = new String[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = terms.get(heap[0]);
+            heap[0] = heap[i];
+            siftDown(0, i);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    private boolean better(int a, int b) {
+        return score[a] > score[b] || (score[a] == score[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+        int node = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], node)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = node;
+    }
+
+    private void siftDown(int i, int size) {
+        int node = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && better(heap[child], heap[right])) {
+                child = right;
+            }
+            if (!better(node, heap[child])) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = node;
+    }
+
+    private static int capacity(int required) {
+        return Math.max(16, Integer.highestOneBit(required - 1) << 1);
+    }
+}
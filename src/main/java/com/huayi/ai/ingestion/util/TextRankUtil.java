@@ -4,7 +4,8 @@ import org.ansj.domain.Term;
 import org.ansj.recognition.impl.StopRecognition;
 import org.ansj.splitWord.analysis.ToAnalysis;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Author: YuJian
@@ -12,74 +13,46 @@ import java.util.*;
  * Description:
  */
 public class TextRankUtil {
-    private static final float min_diff = 0.001f; //差值最小
-    private static final int max_iter = 200;//最大迭代次数
-    private static final int k = 2;  //窗口大小/2
-    private static final float d = 0.85f;
 
-    public static List<String> textRank(String field, int keywordNum) {
-        //分词
-        List<WOD<String>> wods = ToAnalysisParse(field);
-        Map<String, Set<String>> relationWords = new HashMap<>();
-        //获取每个关键词 前后k个的组合
-        for (int i = 0; i < wods.size(); i++) {
-            String keyword = wods.get(i).getName();
-            Set<String> keySets = relationWords.computeIfAbsent(keyword, k1 -> new HashSet<>());
+    /**
+     * 默认的停用过滤器，构建后只读，可在多线程间共享
+     */
+    private static final StopRecognition DEFAULT_FILTER = newStopRecognition();
 
-            for (int j = i - k; j <= i + k; j++) {
-                if (j < 0 || j >= wods.size() || j == i) {
-                    continue;
-                } else {
-                    keySets.add(wods.get(j).getName());
-                }
-            }
-        }
+    /**
+     * 提取文本关键词
+     * <p>
+     * 计算逻辑由 {@link TextRankEngine} 完成，此方法仅负责分词并保持原有的调用方式。
+     *
+     * @param field      待提取的文本
+     * @param keywordNum 需要返回的关键词数量
+     * @return 按 TextRank 得分从高到低排列的关键词
+     */
+    public static List<String> textRank(String field, int keywordNum) {
+        return textRank(field, keywordNum, DEFAULT_FILTER);
+    }
 
-        Map<String, Float> score = new HashMap<>();
-        //迭代
-        for (int i = 0; i < max_iter; i++) {
-            Map<String, Float> m = new HashMap<>();
-            float max_diff = 0;
-            for (String key : relationWords.keySet()) {
-                Set<String> value = relationWords.get(key);
-                //先给每个关键词一个默认rank值
-                m.put(key, 1 - d);
-                //一个关键词的TextRank由其它成员投票出来
-                for (String other : value) {
-                    int size = relationWords.get(other).size();
-                    if (key.equals(other) || size == 0) {
-                        continue;
-                    } else {
-                        m.put(key, m.get(key) + d / size * (score.get(other) == null ? 0 : score.get(other)));
-                    }
-                }
-                max_diff = Math.max(max_diff, Math.abs(m.get(key) - (score.get(key) == null ? 0 : score.get(key))));
-            }
-            score = m;
-            if (max_diff <= min_diff) {
-//                System.out.println("迭代次数：" + i);
-                break;
-            }
-        }
-        List<WOD<String>> scores = new ArrayList<>();
-        for (String s : score.keySet()) {
-            WOD<String> score1 = new WOD<>(s, score.get(s));
-            scores.add(score1);
-        }
+    /**
+     * 使用指定的停用过滤器提取文本关键词
+     */
+    public static List<String> textRank(String field, int keywordNum, StopRecognition filter) {
+        //分词
+        return TextRankEngine.local().rank(parseTerms(field, filter), keywordNum);
+    }
 
-        scores.sort(WOD::compareTo);
-        List<String> keywords = new ArrayList<>();
-        int index = 0;
-        for (WOD<String> score1 : scores) {
-            keywords.add(score1.getName());
-            index++;
-            if (index == keywordNum)
-                break;
-        }
-        return keywords;
+    /**
+     * 使用默认的停用过滤器分词
+     */
+    public static List<String> parseTerms(String str) {
+        return parseTerms(str, DEFAULT_FILTER);
     }
 
-    private static List<WOD<String>> ToAnalysisParse(String str) {
+    /**
+     * 创建关键词提取使用的停用过滤器
+     * <p>
+     * 过滤器在构建时编译正则，之后只做读操作，因此应当构建一次后复用。
+     */
+    public static StopRecognition newStopRecognition() {
         StopRecognition filter = new StopRecognition();
         filter.insertStopNatures("uj"); //过滤词性
         filter.insertStopNatures("ul");
@@ -87,12 +60,19 @@ public class TextRankUtil {
         filter.insertStopWords("了", "的"); //过滤单词
 //        filter.insertStopRegexes("[）|（|.|，|。|+|-|“|”|：|、|？|\\s]");
         filter.insertStopRegexes("([^\\u4e00-\\u9fa5a-zA-Z0-9])|^.{1}$");
-        List<WOD<String>> wods = new ArrayList<>();
+        return filter;
+    }
+
+    /**
+     * 分词并过滤停用词，返回保持原文顺序的词语序列
+     */
+    public static List<String> parseTerms(String str, StopRecognition filter) {
         List<Term> terms = ToAnalysis.parse(str).recognition(filter).getTerms();
+        List<String> tokens = new ArrayList<>(terms.size());
         for (Term term : terms) {
-            wods.add(new WOD<>(term.getName(), term.getNatureStr()));
+            tokens.add(term.getName());
         }
-        return wods;
+        return tokens;
     }
 
 }
@@ -0,0 +1,221 @@
+package com.huayi.ai.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-20 10:00
+ * Description: 持久化会话记忆的写入与崩溃恢复
+ * <p>
+ * close() 只刷盘、不封存当前段，关闭后的磁盘状态与进程在刷盘之后被杀死时相同；
+ * 追加或压缩中途崩溃通过直接改写、恢复段文件来模拟。
+ */
+class DurableChatMemoryTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final List<DurableChatMemory> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(DurableChatMemory::close);
+    }
+
+    @Test
+    void recoversMessagesAfterRestart() {
+        DurableChatMemory memory = open(100);
+        memory.add("a", List.of(new UserMessage("问题一"), new AssistantMessage("回答一")));
+        memory.add("b", new UserMessage("另一个会话"));
+        memory.add("a", new UserMessage("问题二"));
+        memory.close();
+
+        DurableChatMemory reopened = open(100);
+        assertThat(texts(reopened.get("a", 10))).containsExactly("问题一", "回答一", "问题二");
+        assertThat(texts(reopened.get("b", 10))).containsExactly("另一个会话");
+        assertThat(reopened.get("a", 10).get(1)).isInstanceOf(AssistantMessage.class);
+    }
+
+    @Test
+    void dropsTornRecordAtTailAndKeepsAppending() throws IOException {
+        DurableChatMemory memory = open(100);
+        for (int i = 0; i < 5; i++) {
+            memory.add("a", new UserMessage("m" + i));
+        }
+        memory.close();
+
+        // 进程在写最后一条记录的中途被杀死：只有前半条落盘
+        Path file = dir.resolve(ChatLogSegment.fileName(1));
+        int end = ChatLogSegment.open(file, 1, SEGMENT_BYTES).position();
+        byte[] record = ChatLogSegment.encode(ChatLogSegment.MESSAGE, 5, System.currentTimeMillis(), "a",
+                "未写完的消息".getBytes());
+        writeAt(file, end, ByteBuffer.wrap(record, 0, record.length / 2));
+
+        DurableChatMemory recovered = open(100);
+        assertThat(texts(recovered.get("a", 10))).containsExactly("m0", "m1", "m2", "m3", "m4");
+        recovered.add("a", new UserMessage("m5"));
+        recovered.close();
+
+        assertThat(texts(open(100).get("a", 10))).containsExactly("m0", "m1", "m2", "m3", "m4", "m5");
+    }
+
+    @Test
+    void dropsRecordWithBadChecksum() throws IOException {
+        DurableChatMemory memory = open(100);
+        memory.add("a", new UserMessage("m0"));
+        memory.add("a", new UserMessage("m1"));
+        memory.close();
+
+        // 最后一条记录的内容与 CRC 不一致（页缓存只写回了部分页）
+        Path file = dir.resolve(ChatLogSegment.fileName(1));
+        int end = ChatLogSegment.open(file, 1, SEGMENT_BYTES).position();
+        writeAt(file, end - 1, ByteBuffer.wrap(new byte[]{0x7f}));
+
+        assertThat(texts(open(100).get("a", 10))).containsExactly("m0");
+    }
+
+    @Test
+    void clearedConversationDoesNotComeBack() {
+        DurableChatMemory memory = open(100);
+        memory.add("a", new UserMessage("要清除的消息"));
+        memory.add("b", new UserMessage("保留的消息"));
+        memory.clear("a");
+        memory.close();
+
+        DurableChatMemory reopened = open(100);
+        assertThat(reopened.get("a", 10)).isEmpty();
+        assertThat(texts(reopened.get("b", 10))).containsExactly("保留的消息");
+    }
+
+    @Test
+    void sealsSegmentLeftUnsealedBySwitchCrash() throws IOException {
+        DurableChatMemory memory = open(100);
+        for (int i = 0; i < 40; i++) {
+            memory.add("a", new UserMessage(text("m" + i, 200)));
+        }
+        memory.close();
+        assertThat(segmentFiles()).hasSizeGreaterThan(1);
+
+        // 段已写满、新段已创建，但页脚还没写入
+        Path first = dir.resolve(ChatLogSegment.fileName(1));
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.truncate(SEGMENT_BYTES);
+        }
+
+        DurableChatMemory recovered = open(100);
+        assertThat(recovered.get("a", 100)).hasSize(40);
+        assertThat(Files.size(first)).isGreaterThan(SEGMENT_BYTES);
+    }
+
+    @Test
+    void compactionKeepsClearedConversationsClearedAcrossCrash() throws IOException {
+        DurableChatMemory memory = open(3);
+        // 第一个段中的 c 始终有效，使该段不被压缩，a 的旧消息因此一直留在磁盘上
+        memory.add("c", new UserMessage(text("c", 2500)));
+        memory.add("a", List.of(new UserMessage("a0"), new UserMessage("a1")));
+        int b = 0;
+        while (lastSegmentId() == 1) {
+            memory.add("b", new UserMessage(text("b" + b++, 200)));
+        }
+        // 清除标记与 d 的消息写在第二个段，d 在压缩时被复制到当前段
+        long tombstoneId = lastSegmentId();
+        memory.add("d", new UserMessage("d0"));
+        memory.clear("a");
+        // b 写满多个段，容量为 3，旧消息随即失效，清除标记所在的段可以被压缩
+        for (int i = 0; i < 40; i++) {
+            memory.add("b", new UserMessage(text("b" + b++, 200)));
+        }
+        List<String> lastB = List.of(text("b" + (b - 3), 200), text("b" + (b - 2), 200), text("b" + (b - 1), 200));
+        Path tombstoneSegment = dir.resolve(ChatLogSegment.fileName(tombstoneId));
+        Path backup = dir.resolveSibling(dir.getFileName() + "-backup.log");
+        Files.copy(tombstoneSegment, backup, StandardCopyOption.REPLACE_EXISTING);
+
+        memory.compact();
+        assertThat(dir.resolve(ChatLogSegment.fileName(1))).exists();
+        assertThat(tombstoneSegment).doesNotExist();
+        memory.close();
+
+        DurableChatMemory compacted = open(3);
+        assertThat(compacted.get("a", 10)).isEmpty();
+        assertThat(texts(compacted.get("b", 10))).isEqualTo(lastB);
+        assertThat(texts(compacted.get("c", 10))).containsExactly(text("c", 2500));
+        assertThat(texts(compacted.get("d", 10))).containsExactly("d0");
+        compacted.close();
+
+        // 压缩复制并刷盘之后、删除旧段之前崩溃：旧段与复制出的记录同时存在
+        Files.copy(backup, tombstoneSegment);
+        DurableChatMemory recovered = open(3);
+        assertThat(recovered.get("a", 10)).isEmpty();
+        assertThat(texts(recovered.get("b", 10))).isEqualTo(lastB);
+        assertThat(texts(recovered.get("c", 10))).containsExactly(text("c", 2500));
+        assertThat(texts(recovered.get("d", 10))).containsExactly("d0");
+    }
+
+    private DurableChatMemory open(int capacity) {
+        ChatMemoryProperties properties = new ChatMemoryProperties();
+        properties.setStore("durable");
+        properties.setCapacity(capacity);
+        properties.setIdleTtl(Duration.ofHours(1));
+        properties.setSweepInterval(Duration.ofHours(1));
+        ChatMemoryProperties.Durable durable = properties.getDurable();
+        durable.setDir(dir.toString());
+        durable.setSegmentSize(DataSize.ofBytes(SEGMENT_BYTES));
+        durable.setFlushInterval(Duration.ofMillis(10));
+        durable.setCompactionInterval(Duration.ofHours(1));
+        DurableChatMemory memory = new DurableChatMemory(properties, new SimpleMeterRegistry());
+        opened.add(memory);
+        return memory;
+    }
+
+    private long lastSegmentId() throws IOException {
+        return segmentFiles().stream()
+                .mapToLong(file -> Long.parseLong(file.getFileName().toString().replaceAll("\\D", "")))
+                .max().orElse(0);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("chat-")).toList();
+        }
+    }
+
+    private static void writeAt(Path file, long position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static String text(String prefix, int length) {
+        return prefix + "x".repeat(Math.max(0, length - prefix.length()));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,207 @@
+package com.huayi.ai.ingestion.store;
+
+import com.huayi.ai.config.LocalVectorStoreProperties;
+import com.huayi.ai.ingestion.domain.EmbeddedChunk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Author: YuJian
+ * Create: 2025-03-20 10:30
+ * Description: 本地 HNSW 向量库的快照与代切换恢复
+ * <p>
+ * 压缩后的快照写出新一代的段文件和文档文件，替换 graph.bin 是唯一的提交点。
+ * 替换前崩溃的磁盘状态通过把旧快照的文件拷回目录来模拟：旧 graph.bin 与新一代的文件同时存在。
+ */
+class LocalHnswVectorStoreTest {
+
+    private static final int DIMS = 8;
+
+    private static final int DOCUMENTS = 40;
+
+    @TempDir
+    Path dir;
+
+    private final List<LocalHnswVectorStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(LocalHnswVectorStore::close);
+    }
+
+    @Test
+    void reloadsSnapshot() throws IOException {
+        Path store = dir.resolve("store");
+        LocalHnswVectorStore vectors = open(store);
+        vectors.addEmbedded(chunks(0, DOCUMENTS));
+        vectors.delete(List.of("doc-3"));
+        vectors.snapshot();
+
+        LocalHnswVectorStore reloaded = open(store);
+        assertThat(reloaded.size()).isEqualTo(DOCUMENTS - 1);
+        assertThat(search(reloaded)).contains("doc-0").doesNotContain("doc-3");
+        assertThat(reloaded.similaritySearch(SearchRequest.builder().query("q").topK(1).build()).get(0).getText())
+                .isEqualTo("正文 0");
+    }
+
+    @Test
+    void switchesGenerationAfterCompaction() throws IOException {
+        Path store = dir.resolve("store");
+        LocalHnswVectorStore vectors = open(store);
+        vectors.addEmbedded(chunks(0, DOCUMENTS));
+        vectors.snapshot();
+        vectors.delete(ids(0, DOCUMENTS / 2));
+        vectors.compact();
+        vectors.snapshot();
+
+        assertThat(store.resolve("gen-1")).isDirectory();
+        assertThat(segmentFiles(store)).isEmpty();
+        LocalHnswVectorStore reloaded = open(store);
+        assertThat(reloaded.size()).isEqualTo(DOCUMENTS / 2);
+        assertThat(search(reloaded)).isSubsetOf(ids(DOCUMENTS / 2, DOCUMENTS)).contains("doc-" + DOCUMENTS / 2);
+    }
+
+    @Test
+    void keepsPreviousGenerationWhenCrashBeforeGraphSwitch() throws IOException {
+        Path store = dir.resolve("store");
+        Path previous = dir.resolve("previous");
+        LocalHnswVectorStore vectors = open(store);
+        vectors.addEmbedded(chunks(0, DOCUMENTS));
+        vectors.snapshot();
+        copyDirectory(store, previous);
+
+        vectors.delete(ids(0, DOCUMENTS / 2));
+        vectors.compact();
+        vectors.snapshot();
+
+        // 新一代的段文件、文档文件和 graph.bin.tmp 已写出，graph.bin 还没替换
+        Path crashed = dir.resolve("crashed");
+        copyDirectory(store, crashed);
+        Files.copy(store.resolve("graph.bin"), crashed.resolve("graph.bin.tmp"));
+        copyDirectory(previous, crashed);
+
+        LocalHnswVectorStore recovered = open(crashed);
+        assertThat(recovered.size()).isEqualTo(DOCUMENTS);
+        assertThat(search(recovered)).contains("doc-0");
+        assertThat(recovered.similaritySearch(SearchRequest.builder().query("q").topK(1).build()).get(0).getText())
+                .isEqualTo("正文 0");
+        // 未提交的新一代文件在加载时清理
+        assertThat(crashed.resolve("gen-1")).doesNotExist();
+        assertThat(crashed.resolve("graph.bin.tmp")).doesNotExist();
+
+        // 恢复后的库可以继续写入并再次切换到新一代
+        recovered.delete(ids(0, DOCUMENTS / 2));
+        recovered.compact();
+        recovered.snapshot();
+        assertThat(open(crashed).size()).isEqualTo(DOCUMENTS / 2);
+    }
+
+    private LocalHnswVectorStore open(Path store) {
+        LocalVectorStoreProperties.Local properties = new LocalVectorStoreProperties.Local();
+        properties.setDir(store.toString());
+        properties.setDimensions(DIMS);
+        properties.setSegmentSize(16);
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        LocalHnswVectorStore vectors = new LocalHnswVectorStore(new FixedEmbeddingModel(), properties);
+        opened.add(vectors);
+        return vectors;
+    }
+
+    /**
+     * 向量随编号单调偏离查询向量，编号越小越相似
+     */
+    private static List<EmbeddedChunk> chunks(int from, int to) {
+        List<EmbeddedChunk> chunks = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            float[] vector = new float[DIMS];
+            vector[0] = 1;
+            vector[1] = i / (float) DOCUMENTS;
+            chunks.add(new EmbeddedChunk(new Document("doc-" + i, "正文 " + i, Map.of("n", i)), vector));
+        }
+        return chunks;
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add("doc-" + i);
+        }
+        return ids;
+    }
+
+    private static Set<String> search(LocalHnswVectorStore vectors) {
+        return vectors.similaritySearch(SearchRequest.builder().query("q").topK(DOCUMENTS).build()).stream()
+                .map(Document::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private static List<Path> segmentFiles(Path store) throws IOException {
+        try (Stream<Path> files = Files.list(store)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).toList();
+        }
+    }
+
+    /**
+     * 把 source 下的文件拷贝到 target，已有的同名文件被覆盖
+     */
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.sorted(Comparator.naturalOrder()).toList()) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询向量固定为第一维单位向量
+     */
+    private static final class FixedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(query(), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return query();
+        }
+
+        private static float[] query() {
+            float[] vector = new float[DIMS];
+            vector[0] = 1;
+            return vector;
+        }
+    }
+}